@@ -0,0 +1,124 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.wss4j.performance;
+
+import org.apache.wss4j.common.saml.OpenSAMLUtil;
+import org.apache.wss4j.common.saml.SAMLCallback;
+import org.apache.wss4j.common.saml.SamlAssertionWrapper;
+import org.apache.wss4j.common.saml.bean.AuthenticationStatementBean;
+import org.apache.wss4j.common.saml.bean.SubjectBean;
+import org.apache.wss4j.common.saml.bean.Version;
+import org.apache.wss4j.common.saml.builder.SAML2Constants;
+import org.testng.Assert;
+import org.testng.annotations.*;
+import org.w3c.dom.Element;
+
+import java.io.*;
+
+/**
+ * Measures the time to the first SAML token in a fresh JVM, i.e. the time to bootstrap the OpenSAML
+ * library and to create and parse a SAML 2.0 Assertion, with all of the default OpenSAML
+ * configurations and with only the configurations that WSS4J uses. As the library can only be
+ * bootstrapped once per JVM, every sample is taken in a new JVM.
+ */
+public class SAMLBootstrapTimingTest {
+
+    private static final int SAMPLES = 10;
+
+    private FileWriter outSamples;
+
+    @BeforeClass
+    public void createSampleFile() throws Exception {
+        new File("target").mkdirs();
+        outSamples = new FileWriter("target/saml-bootstrap-samples.txt");
+    }
+
+    @AfterClass
+    public void closeSampleFile() throws Exception {
+        outSamples.close();
+    }
+
+    @Test(groups = "saml-bootstrap")
+    public void testTimeToFirstSAMLToken() throws Exception {
+        long allConfigs = 0;
+        long wss4jConfigs = 0;
+        for (int i = 0; i < SAMPLES; i++) {
+            long all = timeToFirstSAMLToken(true);
+            long wss4j = timeToFirstSAMLToken(false);
+            outSamples.write(all + " " + wss4j + "\n");
+            outSamples.flush();
+            allConfigs += all;
+            wss4jConfigs += wss4j;
+        }
+        System.out.println("Average time to first SAML token with all OpenSAML configurations: "
+                + allConfigs / SAMPLES + " ms");
+        System.out.println("Average time to first SAML token with the WSS4J OpenSAML configurations: "
+                + wss4jConfigs / SAMPLES + " ms");
+    }
+
+    private long timeToFirstSAMLToken(boolean includeAllConfigs) throws Exception {
+        ProcessBuilder processBuilder = new ProcessBuilder(
+                System.getProperty("java.home") + File.separator + "bin" + File.separator + "java",
+                "-cp", System.getProperty("java.class.path"),
+                SAMLBootstrapTimingTest.class.getName(), Boolean.toString(includeAllConfigs));
+        processBuilder.redirectErrorStream(true);
+        Process process = processBuilder.start();
+
+        String time = null;
+        BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("time=")) {
+                    time = line.substring("time=".length());
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        Assert.assertEquals(process.waitFor(), 0);
+        Assert.assertNotNull(time);
+        return Long.parseLong(time);
+    }
+
+    /**
+     * Bootstrap OpenSAML, create a SAML 2.0 Assertion and parse it again, and print the elapsed time
+     * in milliseconds.
+     */
+    public static void main(String[] args) throws Exception {
+        long start = System.nanoTime();
+
+        OpenSAMLUtil.initSamlEngine(Boolean.parseBoolean(args[0]));
+
+        SAMLCallback samlCallback = new SAMLCallback();
+        samlCallback.setSamlVersion(Version.SAML_20);
+        samlCallback.setIssuer("www.example.com");
+        samlCallback.setSubject(
+                new SubjectBean("uid=joe,ou=people,ou=saml-demo,o=example.com", "www.example.com",
+                        SAML2Constants.CONF_BEARER));
+        AuthenticationStatementBean authBean = new AuthenticationStatementBean();
+        authBean.setAuthenticationMethod("Password");
+        samlCallback.getAuthenticationStatementData().add(authBean);
+
+        Element assertionElement = new SamlAssertionWrapper(samlCallback).toDOM(null);
+        new SamlAssertionWrapper(assertionElement).getSaml2().getAuthnStatements();
+
+        System.out.println("time=" + (System.nanoTime() - start) / 1000000L);
+    }
+}
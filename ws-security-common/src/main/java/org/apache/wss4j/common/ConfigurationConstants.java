@@ -424,6 +424,15 @@ public class ConfigurationConstants {
      */
     public static final String ENABLE_REVOCATION = "enableRevocation";
 
+    /**
+     * This variable controls whether the Crypto instances that are loaded from properties (see
+     * {@link #SIG_PROP_FILE}) are taken from the JVM-wide registry of CryptoFactory, so that
+     * endpoints configured with the same properties share the loaded keystores. The default value
+     * is "false", meaning that each handler loads its own Crypto instances. A shared Crypto
+     * instance must not be modified by the application.
+     */
+    public static final String SHARED_CRYPTO = "sharedCrypto";
+
     /**
      * This parameter sets whether to use a single certificate or a whole certificate
      * chain when constructing a BinarySecurityToken used for direct reference in
@@ -30,6 +30,22 @@ public class EncryptionActionToken extends SignatureEncryptionActionToken {
     private String keyTransportAlgorithm;
     private boolean getSymmetricKeyFromCallbackHandler;
 
+    public EncryptionActionToken() {
+    }
+
+    /**
+     * Copy constructor, which copies the parts of the given token. See
+     * {@link SignatureEncryptionActionToken#SignatureEncryptionActionToken(SignatureEncryptionActionToken)}.
+     */
+    public EncryptionActionToken(EncryptionActionToken token) {
+        super(token);
+        encSymmetricEncryptionKey = token.encSymmetricEncryptionKey;
+        mgfAlgorithm = token.mgfAlgorithm;
+        symmetricAlgorithm = token.symmetricAlgorithm;
+        keyTransportAlgorithm = token.keyTransportAlgorithm;
+        getSymmetricKeyFromCallbackHandler = token.getSymmetricKeyFromCallbackHandler;
+    }
+
     public boolean isEncSymmetricEncryptionKey() {
         return encSymmetricEncryptionKey;
     }
@@ -28,6 +28,20 @@ public class SignatureActionToken extends SignatureEncryptionActionToken {
     private boolean useSingleCert = true;
     private String signatureAlgorithm;
 
+    public SignatureActionToken() {
+    }
+
+    /**
+     * Copy constructor, which copies the parts of the given token. See
+     * {@link SignatureEncryptionActionToken#SignatureEncryptionActionToken(SignatureEncryptionActionToken)}.
+     */
+    public SignatureActionToken(SignatureActionToken token) {
+        super(token);
+        c14nAlgorithm = token.c14nAlgorithm;
+        useSingleCert = token.useSingleCert;
+        signatureAlgorithm = token.signatureAlgorithm;
+    }
+
     public String getC14nAlgorithm() {
         return c14nAlgorithm;
     }
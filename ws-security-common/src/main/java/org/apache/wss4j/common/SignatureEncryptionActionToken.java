@@ -56,6 +56,42 @@ public abstract class SignatureEncryptionActionToken implements SecurityActionTo
     private int derivedKeyIdentifier;
     private boolean includeToken;
 
+    protected SignatureEncryptionActionToken() {
+    }
+
+    /**
+     * Copy constructor. The parts are copied, as the actions record the wsu:Ids of the parts they
+     * process on them, whereas the Crypto, certificate and key are shared with the given token.
+     */
+    protected SignatureEncryptionActionToken(SignatureEncryptionActionToken token) {
+        certificate = token.certificate;
+        key = token.key;
+        user = token.user;
+        keyInfoElement = token.keyInfoElement;
+        synchronized (token) {
+            crypto = token.crypto;
+            cryptoProperties = token.cryptoProperties;
+        }
+        keyIdentifier = token.keyIdentifier;
+        keyIdentifierId = token.keyIdentifierId;
+        digestAlgorithm = token.digestAlgorithm;
+        if (token.parts == null) {
+            parts = null;
+        } else {
+            for (WSEncryptionPart part : token.parts) {
+                parts.add(new WSEncryptionPart(part));
+            }
+        }
+        optionalParts = token.optionalParts;
+        tokenType = token.tokenType;
+        tokenId = token.tokenId;
+        sha1Value = token.sha1Value;
+        derivedKeyTokenReference = token.derivedKeyTokenReference;
+        derivedKeyLength = token.derivedKeyLength;
+        derivedKeyIdentifier = token.derivedKeyIdentifier;
+        includeToken = token.includeToken;
+    }
+
     public X509Certificate getCertificate() {
         return certificate;
     }
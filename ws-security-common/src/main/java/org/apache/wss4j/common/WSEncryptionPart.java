@@ -98,6 +98,22 @@ public class WSEncryptionPart {
         name = namespace = null;
     }
 
+    /**
+     * Copy constructor, e.g. to process the same part in many messages.
+     *
+     * @param part The part to copy
+     */
+    public WSEncryptionPart(WSEncryptionPart part) {
+        name = part.name;
+        namespace = part.namespace;
+        encModifier = part.encModifier;
+        encId = part.encId;
+        id = part.id;
+        element = part.element;
+        required = part.required;
+        xpath = part.xpath;
+    }
+
     /**
      * @return the local name of the element to encrypt.
      */
@@ -0,0 +1,268 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.cache;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.wss4j.common.util.WSCurrentTimeSource;
+import org.apache.wss4j.common.util.WSTimeSource;
+
+/**
+ * A ReplayCache that decorates another ReplayCache with a set of Bloom filters, so that an
+ * identifier that has never been added is reported as not contained without calling the backing
+ * cache. As almost every identifier that is checked is a new one, this avoids most calls to a
+ * backing cache that is comparatively expensive or takes a lock.
+ *
+ * The filters are bucketed by time. An identifier is added to the filter of the current time
+ * bucket, and a filter is only cleared (and reused) once every identifier in it is older than
+ * maxTTL seconds. Contains checks all of the live filters without taking a lock: if none of them
+ * might contain the identifier it is a definite miss, otherwise the backing cache is checked. The
+ * rate at which the filters report a false positive is available via getFalsePositiveRate.
+ *
+ * The backing cache must only be populated via this class, and must not cache an identifier
+ * added without an explicit TTL for longer than maxTTL seconds. If an identifier is added with a
+ * TTL greater than maxTTL, every check is passed through to the backing cache until it expires.
+ */
+public class BloomFilterReplayCache implements ReplayCache {
+
+    public static final long DEFAULT_MAX_TTL = 3600L;
+    public static final int DEFAULT_BUCKET_COUNT = 4;
+    public static final int DEFAULT_EXPECTED_ENTRIES = 100000;
+    public static final double DEFAULT_FALSE_POSITIVE_PROBABILITY = 0.01;
+
+    private final ReplayCache delegate;
+    private final long bucketMillis;
+    private final int bitCount;
+    private final int hashCount;
+    private final AtomicReferenceArray<Filter> filters;
+    private final AtomicLong passThroughUntil = new AtomicLong();
+    private final LongAdder definiteMisses = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+    private WSTimeSource timeSource = new WSCurrentTimeSource();
+
+    public BloomFilterReplayCache(ReplayCache delegate) {
+        this(delegate, DEFAULT_MAX_TTL, DEFAULT_BUCKET_COUNT,
+             DEFAULT_EXPECTED_ENTRIES, DEFAULT_FALSE_POSITIVE_PROBABILITY);
+    }
+
+    /**
+     * @param delegate the backing ReplayCache
+     * @param maxTTL the maximum time in seconds for which the backing cache holds an identifier
+     * @param bucketCount the number of time buckets that maxTTL is split into
+     * @param expectedEntries the expected number of identifiers added per time bucket
+     * @param falsePositiveProbability the target probability of a false positive per filter
+     */
+    public BloomFilterReplayCache(
+        ReplayCache delegate, long maxTTL, int bucketCount,
+        int expectedEntries, double falsePositiveProbability
+    ) {
+        if (delegate == null || maxTTL <= 0 || bucketCount <= 0 || expectedEntries <= 0
+            || falsePositiveProbability <= 0 || falsePositiveProbability >= 1) {
+            throw new IllegalArgumentException("Invalid Bloom filter replay cache configuration");
+        }
+        this.delegate = delegate;
+        bucketMillis = Math.max(1L, maxTTL * 1000L / bucketCount);
+        // One extra filter, so that the filters still cover maxTTL while the oldest is replaced
+        int filterCount = (int)((maxTTL * 1000L + bucketMillis - 1) / bucketMillis) + 1;
+        filters = new AtomicReferenceArray<>(filterCount);
+
+        double bits = -expectedEntries * Math.log(falsePositiveProbability) / (Math.log(2) * Math.log(2));
+        bitCount = (int)Math.min(Integer.MAX_VALUE - 63L, Math.max(64L, (long)Math.ceil(bits)));
+        hashCount = Math.max(1, (int)Math.round((double)bitCount / expectedEntries * Math.log(2)));
+    }
+
+    /**
+     * Add the given identifier to the cache. It will be cached for a default amount of time.
+     * @param identifier The identifier to be added
+     */
+    public void add(String identifier) {
+        if (identifier == null || "".equals(identifier)) {
+            return;
+        }
+        getCurrentFilter(now()).add(identifier, hashCount, bitCount);
+        delegate.add(identifier);
+    }
+
+    /**
+     * Add the given identifier to the cache to be cached for the given time
+     * @param identifier The identifier to be added
+     * @param timeToLive The length of time to cache the Identifier in seconds
+     */
+    public void add(String identifier, long timeToLive) {
+        if (identifier == null || "".equals(identifier)) {
+            return;
+        }
+        long now = now();
+        if (timeToLive * 1000L > bucketMillis * (filters.length() - 1)) {
+            // The filters will not cover the whole lifetime of this identifier
+            long expires = now + timeToLive * 1000L;
+            passThroughUntil.accumulateAndGet(expires, Math::max);
+        }
+        getCurrentFilter(now).add(identifier, hashCount, bitCount);
+        delegate.add(identifier, timeToLive);
+    }
+
+    /**
+     * Return true if the given identifier is contained in the cache
+     * @param identifier The identifier to check
+     */
+    public boolean contains(String identifier) {
+        if (identifier == null || "".equals(identifier)) {
+            return false;
+        }
+        long now = now();
+        if (now < passThroughUntil.get()) {
+            return delegate.contains(identifier);
+        }
+
+        long bucket = now / bucketMillis;
+        long oldestBucket = bucket - filters.length() + 1;
+        for (int i = 0; i < filters.length(); i++) {
+            Filter filter = filters.get(i);
+            if (filter != null && filter.bucket >= oldestBucket
+                && filter.mightContain(identifier, hashCount, bitCount)) {
+                if (delegate.contains(identifier)) {
+                    return true;
+                }
+                falsePositives.increment();
+                return false;
+            }
+        }
+        definiteMisses.increment();
+        return false;
+    }
+
+    /**
+     * @return the number of checks answered by the Bloom filters without calling the backing cache
+     */
+    public long getDefiniteMissCount() {
+        return definiteMisses.sum();
+    }
+
+    /**
+     * @return the number of checks for which a Bloom filter reported a match, but the identifier
+     * was not contained in the backing cache
+     */
+    public long getFalsePositiveCount() {
+        return falsePositives.sum();
+    }
+
+    /**
+     * @return the proportion of checks for an identifier that was not contained in the cache,
+     * which had to be passed to the backing cache because of a Bloom filter false positive
+     */
+    public double getFalsePositiveRate() {
+        long fp = falsePositives.sum();
+        long total = fp + definiteMisses.sum();
+        return total == 0 ? 0.0 : (double)fp / total;
+    }
+
+    public void setTimeSource(WSTimeSource timeSource) {
+        this.timeSource = timeSource;
+    }
+
+    private long now() {
+        return timeSource.now().getTime();
+    }
+
+    private Filter getCurrentFilter(long now) {
+        long bucket = now / bucketMillis;
+        int index = (int)(bucket % filters.length());
+        while (true) {
+            Filter filter = filters.get(index);
+            if (filter != null && filter.bucket >= bucket) {
+                return filter;
+            }
+            Filter newFilter = new Filter(bucket, bitCount);
+            if (filters.compareAndSet(index, filter, newFilter)) {
+                return newFilter;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (int i = 0; i < filters.length(); i++) {
+            filters.set(i, null);
+        }
+        passThroughUntil.set(0L);
+        delegate.close();
+    }
+
+    private static final class Filter {
+        private final long bucket;
+        private final AtomicLongArray bits;
+
+        Filter(long bucket, int bitCount) {
+            this.bucket = bucket;
+            bits = new AtomicLongArray((bitCount + 63) / 64);
+        }
+
+        void add(String identifier, int hashCount, int bitCount) {
+            long hash1 = hash(identifier);
+            long hash2 = mix(hash1);
+            for (int i = 0; i < hashCount; i++) {
+                int bit = (int)(((hash1 + i * hash2) & Long.MAX_VALUE) % bitCount);
+                long mask = 1L << bit;
+                int word = bit >>> 6;
+                if ((bits.get(word) & mask) == 0) {
+                    bits.accumulateAndGet(word, mask, (current, m) -> current | m);
+                }
+            }
+        }
+
+        boolean mightContain(String identifier, int hashCount, int bitCount) {
+            long hash1 = hash(identifier);
+            long hash2 = mix(hash1);
+            for (int i = 0; i < hashCount; i++) {
+                int bit = (int)(((hash1 + i * hash2) & Long.MAX_VALUE) % bitCount);
+                if ((bits.get(bit >>> 6) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // 64-bit FNV-1a
+        private static long hash(String identifier) {
+            long hash = 0xcbf29ce484222325L;
+            for (int i = 0; i < identifier.length(); i++) {
+                hash ^= identifier.charAt(i);
+                hash *= 0x100000001b3L;
+            }
+            return hash;
+        }
+
+        // The MurmurHash3 finalizer
+        private static long mix(long value) {
+            long hash = value;
+            hash ^= hash >>> 33;
+            hash *= 0xff51afd7ed558ccdL;
+            hash ^= hash >>> 33;
+            hash *= 0xc4ceb9fe1a85ec53L;
+            hash ^= hash >>> 33;
+            return hash | 1L;
+        }
+    }
+}
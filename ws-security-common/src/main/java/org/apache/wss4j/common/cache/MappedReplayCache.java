@@ -0,0 +1,285 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.apache.wss4j.common.util.WSCurrentTimeSource;
+import org.apache.wss4j.common.util.WSTimeSource;
+
+/**
+ * A ReplayCache that is persisted to a memory-mapped file, so that replay protection holds
+ * across a restart of the node. The default TTL is 5 minutes and the max TTL is 60 minutes.
+ *
+ * The file is a fixed-size hash table of 128-bit (truncated SHA-256) identifier hashes and their
+ * expiry times, so its size does not depend on the length of the identifiers. The table is
+ * split into buckets of 16 slots. An identifier is always stored in the bucket selected by its
+ * hash. Entries are read in place from the mapped file, and a slot whose entry has expired is
+ * reused by the next identifier added to that bucket, so expiry needs no separate sweep.
+ *
+ * The cache must be sized for the number of identifiers that are received within the maximum TTL.
+ * A live entry is never overwritten. If an identifier is added to a bucket in which every slot
+ * holds a live entry, the bucket is marked as overflowed until the identifier would have expired,
+ * and until then every identifier of that bucket is reported as contained in the cache. So an
+ * undersized cache fails closed, by rejecting some fresh messages as replays, rather than
+ * accepting a replay.
+ *
+ * A slot is written by clearing its expiry time, then writing the hash, and finally the new
+ * expiry time. A crash part way through an add therefore leaves an empty slot rather than a
+ * corrupt entry. The operating system writes the mapped pages back to the file, so entries
+ * survive the process exiting. The flush method forces them to the storage device.
+ */
+public class MappedReplayCache implements ReplayCache {
+
+    public static final long DEFAULT_TTL = 60L * 5L;
+    public static final long MAX_TTL = DEFAULT_TTL * 12L;
+    public static final int DEFAULT_MAX_ENTRIES = 1 << 20;
+
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(MappedReplayCache.class);
+
+    private static final long MAGIC = 0x5753533452433032L; // "WSS4JRC2"
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 24;
+    private static final int SLOTS_PER_BUCKET = 16;
+    private static final int BUCKET_SIZE = SLOT_SIZE * SLOTS_PER_BUCKET;
+    // The time until which a bucket is overflowed, stored after the buckets
+    private static final int OVERFLOW_SIZE = 8;
+    private static final int LOCK_STRIPES = 256;
+
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    private final int bucketCount;
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private volatile boolean closed;
+    private WSTimeSource timeSource = new WSCurrentTimeSource();
+
+    /**
+     * Create (or reopen) a cache of up to DEFAULT_MAX_ENTRIES identifiers in the given file.
+     * @param cacheFile the file in which to store the cache
+     * @throws IOException if the file could not be mapped
+     */
+    public MappedReplayCache(File cacheFile) throws IOException {
+        this(cacheFile, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Create (or reopen) a cache of up to maxEntries identifiers in the given file. If the file
+     * exists but was created with a different size, its content is discarded.
+     * @param cacheFile the file in which to store the cache
+     * @param maxEntries the maximum number of identifiers to cache
+     * @throws IOException if the file could not be mapped
+     */
+    public MappedReplayCache(File cacheFile, int maxEntries) throws IOException {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+        long buckets = Math.max(1, (maxEntries + SLOTS_PER_BUCKET - 1) / SLOTS_PER_BUCKET);
+        buckets = Math.min(buckets, (Integer.MAX_VALUE - HEADER_SIZE) / (BUCKET_SIZE + OVERFLOW_SIZE));
+        bucketCount = (int)buckets;
+        int fileSize = HEADER_SIZE + bucketCount * (BUCKET_SIZE + OVERFLOW_SIZE);
+
+        file = new RandomAccessFile(cacheFile, "rw");
+        try {
+            boolean reuse = file.length() == fileSize;
+            buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+            if (reuse && buffer.getLong(0) == MAGIC && buffer.getInt(8) == bucketCount) {
+                LOG.debug("Reusing the replay cache in {}", cacheFile);
+            } else {
+                LOG.debug("Initializing the replay cache in {}", cacheFile);
+                initialize();
+            }
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    private void initialize() {
+        // Clear the magic number first, so that a partially initialized file is not reused
+        buffer.putLong(0, 0L);
+        ByteBuffer zeros = ByteBuffer.allocate(BUCKET_SIZE);
+        for (int i = 0; i < bucketCount; i++) {
+            ByteBuffer target = ((ByteBuffer)buffer).duplicate();
+            target.position(HEADER_SIZE + i * BUCKET_SIZE);
+            zeros.clear();
+            target.put(zeros);
+        }
+        for (int i = 0; i < bucketCount; i++) {
+            buffer.putLong(getOverflowOffset(i), 0L);
+        }
+        buffer.putInt(8, bucketCount);
+        buffer.putLong(0, MAGIC);
+    }
+
+    /**
+     * Add the given identifier to the cache. It will be cached for a default amount of time.
+     * @param identifier The identifier to be added
+     */
+    public void add(String identifier) {
+        add(identifier, DEFAULT_TTL);
+    }
+
+    /**
+     * Add the given identifier to the cache to be cached for the given time
+     * @param identifier The identifier to be added
+     * @param timeToLive The length of time to cache the Identifier in seconds
+     */
+    public void add(String identifier, long timeToLive) {
+        if (identifier == null || "".equals(identifier) || closed) {
+            return;
+        }
+
+        long ttl = timeToLive;
+        if (ttl < 0 || ttl > MAX_TTL) {
+            ttl = DEFAULT_TTL;
+        }
+
+        long now = timeSource.now().getTime();
+        long expires = now + ttl * 1000L;
+        byte[] hash = hash(identifier);
+        long hi = ByteBuffer.wrap(hash).getLong(0);
+        long lo = ByteBuffer.wrap(hash).getLong(8);
+        int bucket = getBucket(hi);
+        int bucketOffset = HEADER_SIZE + bucket * BUCKET_SIZE;
+
+        synchronized (locks[bucket % LOCK_STRIPES]) {
+            int target = -1;
+            for (int i = 0; i < SLOTS_PER_BUCKET; i++) {
+                int offset = bucketOffset + i * SLOT_SIZE;
+                long slotExpires = buffer.getLong(offset + 16);
+                if (slotExpires > now && buffer.getLong(offset) == hi && buffer.getLong(offset + 8) == lo) {
+                    // Already cached, so just extend the expiry time if required
+                    if (expires > slotExpires) {
+                        buffer.putLong(offset + 16, expires);
+                    }
+                    return;
+                }
+                if (target == -1 && slotExpires <= now) {
+                    // An empty or expired slot
+                    target = offset;
+                }
+            }
+
+            if (target == -1) {
+                // Every slot holds a live entry, so fail closed for this bucket rather than
+                // dropping one of them
+                int overflowOffset = getOverflowOffset(bucket);
+                long overflowUntil = buffer.getLong(overflowOffset);
+                if (overflowUntil <= now) {
+                    LOG.warn("Replay cache bucket {} is full, all of its identifiers will be treated as "
+                             + "replayed for {} seconds. The cache should be configured with a larger "
+                             + "maximum number of entries", bucket, ttl);
+                }
+                if (expires > overflowUntil) {
+                    buffer.putLong(overflowOffset, expires);
+                }
+                return;
+            }
+            buffer.putLong(target + 16, 0L);
+            buffer.putLong(target, hi);
+            buffer.putLong(target + 8, lo);
+            buffer.putLong(target + 16, expires);
+        }
+    }
+
+    /**
+     * Return true if the given identifier is contained in the cache
+     * @param identifier The identifier to check
+     */
+    public boolean contains(String identifier) {
+        if (identifier == null || "".equals(identifier) || closed) {
+            return false;
+        }
+
+        long now = timeSource.now().getTime();
+        byte[] hash = hash(identifier);
+        long hi = ByteBuffer.wrap(hash).getLong(0);
+        long lo = ByteBuffer.wrap(hash).getLong(8);
+        int bucket = getBucket(hi);
+        int bucketOffset = HEADER_SIZE + bucket * BUCKET_SIZE;
+
+        synchronized (locks[bucket % LOCK_STRIPES]) {
+            if (buffer.getLong(getOverflowOffset(bucket)) > now) {
+                return true;
+            }
+            for (int i = 0; i < SLOTS_PER_BUCKET; i++) {
+                int offset = bucketOffset + i * SLOT_SIZE;
+                if (buffer.getLong(offset + 16) > now
+                    && buffer.getLong(offset) == hi && buffer.getLong(offset + 8) == lo) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Force any changes to the cache to be written to the storage device containing the file
+     */
+    public void flush() {
+        if (!closed) {
+            buffer.force();
+        }
+    }
+
+    public void setTimeSource(WSTimeSource timeSource) {
+        this.timeSource = timeSource;
+    }
+
+    private int getOverflowOffset(int bucket) {
+        return HEADER_SIZE + bucketCount * BUCKET_SIZE + bucket * OVERFLOW_SIZE;
+    }
+
+    private int getBucket(long hash) {
+        return (int)((hash & Long.MAX_VALUE) % bucketCount);
+    }
+
+    private static byte[] hash(String identifier) {
+        MessageDigest digest = DIGEST.get();
+        digest.reset();
+        return digest.digest(identifier.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            buffer.force();
+            file.close();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.cache;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A factory to return a MappedReplayCache instance. If the configuration is a File, or a String
+ * file name, the cache is stored in that file. Otherwise it is stored in a file in the
+ * temporary directory named after the key, so that each cache key has its own file. If the file
+ * cannot be mapped, an in-memory ShardedReplayCache is returned instead.
+ */
+public class MappedReplayCacheFactory extends ReplayCacheFactory {
+
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(MappedReplayCacheFactory.class);
+
+    public ReplayCache newReplayCache(String key, Object configuration) {
+        File cacheFile;
+        if (configuration instanceof File) {
+            cacheFile = (File)configuration;
+        } else if (configuration instanceof String) {
+            cacheFile = new File((String)configuration);
+        } else {
+            String name = key == null ? "default" : key.replaceAll("[^A-Za-z0-9._-]", "_");
+            cacheFile = new File(System.getProperty("java.io.tmpdir"), "wss4j-replay-" + name + ".cache");
+        }
+
+        try {
+            return new MappedReplayCache(cacheFile);
+        } catch (IOException e) {
+            LOG.warn("Cannot map the replay cache file {}, using an in-memory cache instead", cacheFile, e);
+            return new ShardedReplayCache();
+        }
+    }
+
+}
@@ -26,7 +26,7 @@ import org.apache.wss4j.common.util.Loader;
 
 /**
  * An abstract factory to return a ReplayCache instance. It returns an EHCacheReplayCacheFactory
- * if EH-Cache is available. Otherwise it returns a MemoryReplayCacheFactory.
+ * if EH-Cache is available. Otherwise it returns a ShardedReplayCacheFactory.
  */
 public abstract class ReplayCacheFactory {
 
@@ -55,7 +55,7 @@ public abstract class ReplayCacheFactory {
             return new EHCacheReplayCacheFactory();
         }
 
-        return new MemoryReplayCacheFactory();
+        return new ShardedReplayCacheFactory();
     }
 
     public abstract ReplayCache newReplayCache(String key, Object configuration);
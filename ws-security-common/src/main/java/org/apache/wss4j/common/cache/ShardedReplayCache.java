@@ -0,0 +1,301 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.cache;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.wss4j.common.util.WSCurrentTimeSource;
+import org.apache.wss4j.common.util.WSTimeSource;
+
+/**
+ * An in-memory cache to prevent against replay attacks, which is designed for use by many
+ * concurrent threads. The default TTL is 5 minutes and the max TTL is 60 minutes.
+ *
+ * The identifiers are held in a set of striped ConcurrentHashMaps, so that neither add nor
+ * contains takes a lock. Expiry is tracked by a two-level timing wheel: the first level has a slot
+ * per second for the next 64 seconds, and the second level a slot per 64 seconds for the next
+ * ~68 minutes. Expired identifiers are removed a slot at a time, by whichever calling thread first
+ * notices that the wheel is due to advance, so that the cost of cleanup is amortized across calls
+ * and other threads never wait on it. An identifier is never reported as contained once it has
+ * expired, even if it has not yet been removed.
+ *
+ * The number of identifiers is capped (at 1,000,000 by default). If the cap is reached, the
+ * identifiers that are closest to expiry are evicted first.
+ */
+public class ShardedReplayCache implements ReplayCache {
+
+    public static final long DEFAULT_TTL = 60L * 5L;
+    public static final long MAX_TTL = DEFAULT_TTL * 12L;
+    public static final int DEFAULT_MAX_ENTRIES = 1000000;
+
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(ShardedReplayCache.class);
+
+    private static final long TICK_MILLIS = 1000L;
+    private static final int WHEEL_BITS = 6;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+    private final ConcurrentHashMap<String, CacheEntry>[] shards;
+    private final Queue<CacheEntry>[] wheel = newWheel();
+    private final Queue<CacheEntry>[] overflowWheel = newWheel();
+    private final AtomicBoolean advancing = new AtomicBoolean();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+    private final AtomicInteger size = new AtomicInteger();
+    private final int maxEntries;
+    private volatile long currentTick;
+    private WSTimeSource timeSource = new WSCurrentTimeSource();
+
+    public ShardedReplayCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param maxEntries the maximum number of identifiers to cache
+     */
+    @SuppressWarnings("unchecked")
+    public ShardedReplayCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+        int shardCount = 16;
+        while (shardCount < Runtime.getRuntime().availableProcessors() * 4) {
+            shardCount <<= 1;
+        }
+        shards = new ConcurrentHashMap[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new ConcurrentHashMap<>();
+        }
+        currentTick = now() / TICK_MILLIS;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Queue<CacheEntry>[] newWheel() {
+        Queue<CacheEntry>[] slots = new Queue[WHEEL_SIZE];
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            slots[i] = new ConcurrentLinkedQueue<>();
+        }
+        return slots;
+    }
+
+    /**
+     * Add the given identifier to the cache. It will be cached for a default amount of time.
+     * @param identifier The identifier to be added
+     */
+    public void add(String identifier) {
+        add(identifier, DEFAULT_TTL);
+    }
+
+    /**
+     * Add the given identifier to the cache to be cached for the given time
+     * @param identifier The identifier to be added
+     * @param timeToLive The length of time to cache the Identifier in seconds
+     */
+    public void add(String identifier, long timeToLive) {
+        if (identifier == null || "".equals(identifier)) {
+            return;
+        }
+
+        long ttl = timeToLive;
+        if (ttl < 0 || ttl > MAX_TTL) {
+            ttl = DEFAULT_TTL;
+        }
+
+        long now = now();
+        advance(now);
+
+        CacheEntry entry = new CacheEntry(identifier, now + ttl * 1000L);
+        boolean added = getShard(identifier).put(identifier, entry) == null;
+        // Schedule the entry before counting it, so that it can be evicted if it exceeds the cap
+        schedule(entry, currentTick);
+        if (added && size.incrementAndGet() > maxEntries) {
+            evict();
+        }
+    }
+
+    /**
+     * Return true if the given identifier is contained in the cache
+     * @param identifier The identifier to check
+     */
+    public boolean contains(String identifier) {
+        if (identifier == null || "".equals(identifier)) {
+            return false;
+        }
+
+        long now = now();
+        advance(now);
+
+        CacheEntry entry = getShard(identifier).get(identifier);
+        return entry != null && entry.expires > now;
+    }
+
+    /**
+     * @return the number of identifiers currently cached, including any that have expired but
+     * have not yet been removed
+     */
+    public int size() {
+        return size.get();
+    }
+
+    public void setTimeSource(WSTimeSource timeSource) {
+        this.timeSource = timeSource;
+        currentTick = now() / TICK_MILLIS;
+    }
+
+    private long now() {
+        return timeSource.now().getTime();
+    }
+
+    private ConcurrentHashMap<String, CacheEntry> getShard(String identifier) {
+        int hash = identifier.hashCode();
+        hash ^= hash >>> 16;
+        return shards[hash & (shards.length - 1)];
+    }
+
+    /**
+     * Place the entry in the slot of the timing wheel for the tick at which it expires
+     */
+    private void schedule(CacheEntry entry, long fromTick) {
+        long expiryTick = (entry.expires + TICK_MILLIS - 1) / TICK_MILLIS;
+        long delta = expiryTick - fromTick;
+        if (delta < WHEEL_SIZE) {
+            wheel[(int)(Math.max(expiryTick, fromTick + 1) & WHEEL_MASK)].add(entry);
+        } else {
+            long overflowDelta = Math.min((expiryTick >> WHEEL_BITS) - (fromTick >> WHEEL_BITS), WHEEL_MASK);
+            overflowWheel[(int)(((fromTick >> WHEEL_BITS) + overflowDelta) & WHEEL_MASK)].add(entry);
+        }
+    }
+
+    /**
+     * Advance the timing wheel to the current time, removing the expired identifiers. Only one
+     * thread advances the wheel at a time - any other thread just carries on.
+     */
+    private void advance(long now) {
+        long nowTick = now / TICK_MILLIS;
+        if (nowTick <= currentTick || !advancing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long tick = currentTick;
+            if (nowTick - tick > (long)WHEEL_SIZE * WHEEL_SIZE) {
+                // The wheel has not moved for a full revolution of the overflow wheel
+                tick = nowTick - (long)WHEEL_SIZE * WHEEL_SIZE;
+            }
+            while (tick < nowTick) {
+                tick++;
+                if ((tick & WHEEL_MASK) == 0) {
+                    // Cascade the entries of the next overflow slot down to the first wheel
+                    drain(overflowWheel[(int)((tick >> WHEEL_BITS) & WHEEL_MASK)], now, tick);
+                }
+                drain(wheel[(int)(tick & WHEEL_MASK)], now, tick);
+                currentTick = tick;
+            }
+        } finally {
+            advancing.set(false);
+        }
+    }
+
+    private void drain(Queue<CacheEntry> slot, long now, long tick) {
+        int count = slot.size();
+        for (int i = 0; i < count; i++) {
+            CacheEntry entry = slot.poll();
+            if (entry == null) {
+                return;
+            }
+            if (entry.expires <= now) {
+                remove(entry);
+            } else {
+                schedule(entry, tick);
+            }
+        }
+    }
+
+    private void remove(CacheEntry entry) {
+        if (getShard(entry.identifier).remove(entry.identifier, entry)) {
+            size.decrementAndGet();
+        }
+    }
+
+    /**
+     * Evict the identifiers that are closest to expiry, until the cache is 10% below its cap.
+     * Eviction has its own lock, so that it is not skipped while another thread advances the
+     * wheel (the slots are concurrent queues, which both may poll). A thread that finds another
+     * thread evicting does not carry on regardless, but evicts down to the cap itself, so that
+     * the cache cannot grow past the cap faster than the evicting thread can shrink it.
+     */
+    private void evict() {
+        if (!evicting.compareAndSet(false, true)) {
+            evict(maxEntries);
+            return;
+        }
+        try {
+            LOG.warn("The replay cache has reached its maximum size of {} entries, "
+                     + "evicting the entries closest to expiry", maxEntries);
+            evict(maxEntries - maxEntries / 10);
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    private void evict(int targetSize) {
+        long tick = currentTick;
+        for (int i = 1; i <= WHEEL_SIZE && size.get() > targetSize; i++) {
+            evict(wheel[(int)((tick + i) & WHEEL_MASK)], targetSize);
+        }
+        for (int i = 1; i <= WHEEL_SIZE && size.get() > targetSize; i++) {
+            evict(overflowWheel[(int)(((tick >> WHEEL_BITS) + i) & WHEEL_MASK)], targetSize);
+        }
+    }
+
+    private void evict(Queue<CacheEntry> slot, int targetSize) {
+        while (size.get() > targetSize) {
+            CacheEntry entry = slot.poll();
+            if (entry == null) {
+                return;
+            }
+            remove(entry);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (ConcurrentHashMap<String, CacheEntry> shard : shards) {
+            shard.clear();
+        }
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel[i].clear();
+            overflowWheel[i].clear();
+        }
+        size.set(0);
+    }
+
+    private static final class CacheEntry {
+        private final String identifier;
+        private final long expires;
+
+        CacheEntry(String identifier, long expires) {
+            this.identifier = identifier;
+            this.expires = expires;
+        }
+    }
+}
@@ -35,6 +35,8 @@ public abstract class CryptoFactory {
     private static final org.slf4j.Logger LOG =
         org.slf4j.LoggerFactory.getLogger(CryptoFactory.class);
 
+    private static final CryptoRegistry SHARED_REGISTRY = new CryptoRegistry();
+
     /**
      * getInstance
      * <p/>
@@ -143,6 +145,37 @@ public abstract class CryptoFactory {
         return loadClass(cryptoClass, properties, classLoader);
     }
 
+    /**
+     * getSharedInstance
+     * <p/>
+     * Returns an instance of Crypto from the shared CryptoRegistry. The same Crypto instance is
+     * returned for every call with the same (effective) properties and class loader, so that the
+     * keystores are only loaded once. It must therefore not be modified by the caller. The WSS4J
+     * handlers only use the shared CryptoRegistry if the "sharedCrypto" option is enabled.
+     * <p/>
+     *
+     * @param properties      The Properties that are forwarded to the crypto implementation
+     *                        and the Crypto impl class name.
+     * @param classLoader   The class loader to use
+     * @param passwordEncryptor The PasswordEncryptor to use to decrypt encrypted passwords
+     * @return The (shared) crypto implementation
+     * @throws WSSecurityException if there is an error in loading the crypto properties
+     */
+    public static Crypto getSharedInstance(
+        Properties properties,
+        ClassLoader classLoader,
+        PasswordEncryptor passwordEncryptor
+    ) throws WSSecurityException {
+        return SHARED_REGISTRY.getCrypto(properties, classLoader, passwordEncryptor);
+    }
+
+    /**
+     * @return the CryptoRegistry that holds the Crypto instances returned by getSharedInstance
+     */
+    public static CryptoRegistry getSharedRegistry() {
+        return SHARED_REGISTRY;
+    }
+
     /**
      * getInstance
      * <p/>
@@ -0,0 +1,209 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.crypto;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+
+/**
+ * A bounded, thread-safe registry of Crypto instances, keyed by the effective set of Crypto
+ * properties (including any defaults), together with the ClassLoader that is used to load them.
+ * It allows a Crypto instance (and the keystores it loads) to be shared between all of the
+ * endpoints or handlers of a service that are configured with the same properties.
+ *
+ * Each Crypto instance is loaded lazily on first use. Concurrent requests for the same
+ * properties wait for a single load rather than each loading the keystores. A failed load is not
+ * cached. When the registry is full, the least recently used entry is evicted.
+ *
+ * The PasswordEncryptor only forms part of the key if the properties contain an encrypted
+ * ("ENC(...)") value, as otherwise it has no bearing on how the Crypto instance is loaded.
+ */
+public class CryptoRegistry {
+
+    public static final int DEFAULT_MAX_ENTRIES = 100;
+
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(CryptoRegistry.class);
+
+    private final Map<Key, Entry> registry = new ConcurrentHashMap<>();
+    private final AtomicLong clock = new AtomicLong();
+    private final int maxEntries;
+
+    public CryptoRegistry() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param maxEntries the maximum number of Crypto instances to hold
+     */
+    public CryptoRegistry(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Get a Crypto instance for the given properties file, loading it if it is not already held.
+     * @param propFilename The name of the property file to load
+     * @param classLoader The class loader to use
+     * @param passwordEncryptor The PasswordEncryptor to use to decrypt encrypted passwords
+     * @return a (possibly shared) Crypto instance
+     * @throws WSSecurityException if there is an error in loading the crypto properties
+     */
+    public Crypto getCrypto(
+        String propFilename,
+        ClassLoader classLoader,
+        PasswordEncryptor passwordEncryptor
+    ) throws WSSecurityException {
+        Properties properties = CryptoFactory.getProperties(propFilename, classLoader);
+        return getCrypto(properties, classLoader, passwordEncryptor);
+    }
+
+    /**
+     * Get a Crypto instance for the given properties, loading it if it is not already held.
+     * @param properties The Properties that are forwarded to the crypto implementation
+     * @param classLoader The class loader to use
+     * @param passwordEncryptor The PasswordEncryptor to use to decrypt encrypted passwords
+     * @return a (possibly shared) Crypto instance
+     * @throws WSSecurityException if there is an error in loading the crypto properties
+     */
+    public Crypto getCrypto(
+        Properties properties,
+        ClassLoader classLoader,
+        PasswordEncryptor passwordEncryptor
+    ) throws WSSecurityException {
+        if (properties == null || maxEntries <= 0) {
+            return CryptoFactory.getInstance(properties, classLoader, passwordEncryptor);
+        }
+
+        Key key = new Key(properties, classLoader, passwordEncryptor);
+        Entry entry = registry.get(key);
+        if (entry == null) {
+            if (registry.size() >= maxEntries) {
+                evict();
+            }
+            entry = registry.computeIfAbsent(key, k -> new Entry());
+        }
+        entry.lastAccess = clock.incrementAndGet();
+
+        try {
+            return entry.getCrypto(properties, classLoader, passwordEncryptor);
+        } catch (WSSecurityException | RuntimeException ex) {
+            registry.remove(key, entry);
+            throw ex;
+        }
+    }
+
+    private void evict() {
+        while (registry.size() >= maxEntries) {
+            Map.Entry<Key, Entry> oldest = null;
+            for (Map.Entry<Key, Entry> mapEntry : registry.entrySet()) {
+                if (oldest == null || mapEntry.getValue().lastAccess < oldest.getValue().lastAccess) {
+                    oldest = mapEntry;
+                }
+            }
+            if (oldest == null) {
+                return;
+            }
+            LOG.debug("Evicting the least recently used Crypto instance from the registry");
+            registry.remove(oldest.getKey(), oldest.getValue());
+        }
+    }
+
+    /**
+     * Remove all of the Crypto instances held by the registry
+     */
+    public void clear() {
+        registry.clear();
+    }
+
+    /**
+     * @return the number of Crypto instances held by the registry
+     */
+    public int size() {
+        return registry.size();
+    }
+
+    private static final class Entry {
+        private volatile Crypto crypto;
+        private volatile long lastAccess;
+
+        Crypto getCrypto(
+            Properties properties,
+            ClassLoader classLoader,
+            PasswordEncryptor passwordEncryptor
+        ) throws WSSecurityException {
+            Crypto result = crypto;
+            if (result == null) {
+                synchronized (this) {
+                    result = crypto;
+                    if (result == null) {
+                        LOG.debug("Loading a new Crypto instance for the registry");
+                        result = CryptoFactory.getInstance(properties, classLoader, passwordEncryptor);
+                        crypto = result;
+                    }
+                }
+            }
+            return result;
+        }
+    }
+
+    private static final class Key {
+        private final Map<Object, Object> properties = new HashMap<>();
+        private final ClassLoader classLoader;
+        private final PasswordEncryptor passwordEncryptor;
+        private final int hash;
+
+        Key(Properties cryptoProperties, ClassLoader classLoader, PasswordEncryptor passwordEncryptor) {
+            boolean encrypted = false;
+            for (String name : cryptoProperties.stringPropertyNames()) {
+                String value = cryptoProperties.getProperty(name);
+                properties.put(name, value);
+                encrypted |= value.startsWith("ENC(");
+            }
+            // Keep any non-String values (compared using equals) as well
+            for (Map.Entry<Object, Object> entry : cryptoProperties.entrySet()) {
+                properties.putIfAbsent(entry.getKey(), entry.getValue());
+            }
+            this.classLoader = classLoader;
+            this.passwordEncryptor = encrypted ? passwordEncryptor : null;
+            this.hash = 31 * properties.hashCode() + System.identityHashCode(classLoader);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key)obj;
+            return classLoader == other.classLoader
+                && passwordEncryptor == other.passwordEncryptor
+                && properties.equals(other.properties);
+        }
+    }
+}
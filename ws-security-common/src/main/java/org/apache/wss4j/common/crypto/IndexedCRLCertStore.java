@@ -0,0 +1,380 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.crypto;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.math.BigInteger;
+import java.net.URL;
+import java.net.URLConnection;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.Provider;
+import java.security.cert.CRL;
+import java.security.cert.CRLException;
+import java.security.cert.CRLSelector;
+import java.security.cert.CertSelector;
+import java.security.cert.CertStore;
+import java.security.cert.CertStoreSpi;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509CRL;
+import java.security.cert.X509CRLEntry;
+import java.security.cert.X509CRLSelector;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+
+/**
+ * A CertStore of X509CRLs, which indexes the CRLs by issuer, and the revoked serial numbers of
+ * each issuer in a hash set. When used for PKIX revocation checking, only the CRLs of the issuer
+ * of the certificate being checked are returned to the validator, rather than every CRL held by
+ * the store. The isRevoked method allows a certificate to be rejected with a single hash lookup.
+ *
+ * If the CRLs were loaded from a set of locations, the store can periodically check whether any
+ * of them have changed in a background thread. If so, the CRLs are reloaded and the index is
+ * replaced atomically, so that request threads never wait on a reload. If a reload fails, the
+ * existing CRLs continue to be used.
+ */
+public class IndexedCRLCertStore extends CertStore {
+
+    public static final String TYPE = "IndexedCRL";
+
+    private static final String ISSUING_DISTRIBUTION_POINT_OID = "2.5.29.28"; //NOPMD
+
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(IndexedCRLCertStore.class);
+
+    private static ScheduledExecutorService reloadExecutor;
+
+    private final IndexedCRLCertStoreSpi spi;
+    private final List<URL> crlLocations;
+    private final CertificateFactory certificateFactory;
+    private List<Long> lastModified;
+    private ScheduledFuture<?> reloadTask;
+
+    /**
+     * Create a store of the given CRLs, which are never reloaded.
+     * @param crls the CRLs to hold
+     */
+    public IndexedCRLCertStore(Collection<? extends X509CRL> crls) {
+        this(createSpi(new CRLIndex(crls, 0L)), null, Collections.<URL>emptyList(), null);
+    }
+
+    /**
+     * Create a store of the CRLs at the given locations, loading them immediately.
+     * @param crlLocations the locations of the CRLs to hold
+     * @param certificateFactory the CertificateFactory with which to parse the CRLs
+     * @throws WSSecurityException if a CRL could not be loaded
+     */
+    public IndexedCRLCertStore(
+        List<URL> crlLocations, CertificateFactory certificateFactory
+    ) throws WSSecurityException {
+        this(crlLocations, certificateFactory, null);
+    }
+
+    /**
+     * Create a store of the CRLs at the given locations, loading them immediately.
+     * @param crlLocations the locations of the CRLs to hold
+     * @param certificateFactory the CertificateFactory with which to parse the CRLs
+     * @param provider the provider of the store, or null for the default
+     * @throws WSSecurityException if a CRL could not be loaded
+     */
+    public IndexedCRLCertStore(
+        List<URL> crlLocations, CertificateFactory certificateFactory, Provider provider
+    ) throws WSSecurityException {
+        this(createSpi(null), provider, crlLocations, certificateFactory);
+        List<Long> modified = getLastModified();
+        spi.index = new CRLIndex(loadCRLs(), 0L);
+        lastModified = modified;
+    }
+
+    private IndexedCRLCertStore(
+        IndexedCRLCertStoreSpi spi, Provider provider, List<URL> crlLocations,
+        CertificateFactory certificateFactory
+    ) {
+        super(spi, provider, TYPE, null);
+        this.spi = spi;
+        this.crlLocations = new ArrayList<>(crlLocations);
+        this.certificateFactory = certificateFactory;
+    }
+
+    private static IndexedCRLCertStoreSpi createSpi(CRLIndex index) {
+        try {
+            return new IndexedCRLCertStoreSpi(index);
+        } catch (InvalidAlgorithmParameterException e) {
+            // Not thrown, as the store takes no CertStoreParameters
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param cert the certificate to check
+     * @return true if the given certificate is listed as revoked by a CRL of its issuer
+     */
+    public boolean isRevoked(X509Certificate cert) {
+        List<IssuerCRL> issuerCRLs = spi.index.issuerMap.get(cert.getIssuerX500Principal());
+        if (issuerCRLs != null) {
+            for (IssuerCRL issuerCRL : issuerCRLs) {
+                if (issuerCRL.revokedSerials.contains(cert.getSerialNumber())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the CRLs currently held by the store
+     */
+    public List<X509CRL> getCRLs() {
+        return spi.index.crls;
+    }
+
+    /**
+     * @return a counter that is incremented every time the CRLs are reloaded
+     */
+    public long getVersion() {
+        return spi.index.version;
+    }
+
+    /**
+     * Reload the CRLs if any of their locations have been modified since they were last loaded.
+     * @return true if the CRLs were reloaded
+     * @throws WSSecurityException if a CRL could not be loaded
+     */
+    public synchronized boolean reload() throws WSSecurityException {
+        if (crlLocations.isEmpty()) {
+            return false;
+        }
+        List<Long> modified = getLastModified();
+        if (modified.equals(lastModified)) {
+            return false;
+        }
+
+        CRLIndex index = new CRLIndex(loadCRLs(), spi.index.version + 1);
+        spi.index = index;
+        lastModified = modified;
+        LOG.debug("Reloaded {} CRLs", index.crls.size());
+        return true;
+    }
+
+    /**
+     * Check the CRL locations for modifications in a background thread, at the given interval.
+     * @param interval the interval in seconds, or 0 to stop checking for modifications
+     */
+    public synchronized void setReloadInterval(long interval) {
+        if (reloadTask != null) {
+            reloadTask.cancel(false);
+            reloadTask = null;
+        }
+        if (interval > 0 && !crlLocations.isEmpty()) {
+            ReloadTask task = new ReloadTask(this);
+            reloadTask =
+                getReloadExecutor().scheduleWithFixedDelay(
+                    task, interval, interval, TimeUnit.SECONDS
+                );
+            task.future = reloadTask;
+        }
+    }
+
+    private static synchronized ScheduledExecutorService getReloadExecutor() {
+        if (reloadExecutor == null) {
+            reloadExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "wss4j-crl-reload");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return reloadExecutor;
+    }
+
+    private List<Long> getLastModified() {
+        List<Long> modified = new ArrayList<>(crlLocations.size());
+        for (URL crlLocation : crlLocations) {
+            try {
+                URLConnection connection = crlLocation.openConnection();
+                modified.add(connection.getLastModified());
+                // Close the underlying stream that some URLConnections open
+                connection.getInputStream().close();
+            } catch (IOException e) {
+                LOG.debug(e.getMessage(), e);
+                modified.add(-1L);
+            }
+        }
+        return modified;
+    }
+
+    private List<X509CRL> loadCRLs() throws WSSecurityException {
+        List<X509CRL> crls = new ArrayList<>(crlLocations.size());
+        for (URL crlLocation : crlLocations) {
+            try (InputStream is = crlLocation.openStream()) {
+                crls.add((X509CRL)certificateFactory.generateCRL(is));
+            } catch (IOException | CRLException e) {
+                LOG.debug(e.getMessage(), e);
+                throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e, "ioError00");
+            }
+        }
+        return crls;
+    }
+
+    /**
+     * The background task that reloads the CRLs. It only holds a weak reference to the store, and
+     * cancels itself once the store is no longer in use.
+     */
+    private static final class ReloadTask implements Runnable {
+        private final WeakReference<IndexedCRLCertStore> storeRef;
+        private volatile ScheduledFuture<?> future;
+
+        ReloadTask(IndexedCRLCertStore store) {
+            storeRef = new WeakReference<>(store);
+        }
+
+        @Override
+        public void run() {
+            IndexedCRLCertStore store = storeRef.get();
+            if (store == null) {
+                LOG.debug("Cancelling the reload of the CRLs as the CRL store is no longer in use");
+                if (future != null) {
+                    future.cancel(false);
+                }
+                return;
+            }
+            try {
+                store.reload();
+            } catch (WSSecurityException | RuntimeException e) {
+                LOG.warn("Error reloading the CRLs, the existing CRLs will continue to be used: "
+                         + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * An immutable snapshot of the CRLs held by the store.
+     */
+    private static final class CRLIndex {
+        private final List<X509CRL> crls;
+        private final Map<X500Principal, List<IssuerCRL>> issuerMap = new HashMap<>();
+        // CRLs with an IssuingDistributionPoint extension may be indirect, and so are always
+        // returned to the validator
+        private final List<X509CRL> unindexedCRLs = new ArrayList<>();
+        private final long version;
+
+        CRLIndex(Collection<? extends X509CRL> crls, long version) {
+            this.crls = Collections.unmodifiableList(new ArrayList<X509CRL>(crls));
+            this.version = version;
+            for (X509CRL crl : crls) {
+                issuerMap.computeIfAbsent(crl.getIssuerX500Principal(), k -> new ArrayList<>(1))
+                    .add(new IssuerCRL(crl));
+                if (crl.getExtensionValue(ISSUING_DISTRIBUTION_POINT_OID) != null) {
+                    unindexedCRLs.add(crl);
+                }
+            }
+        }
+
+        Collection<X509CRL> getCandidates(X509CRLSelector selector) {
+            Collection<X500Principal> issuers = selector.getIssuers();
+            if (issuers == null && selector.getCertificateChecking() != null) {
+                issuers = Collections.singleton(selector.getCertificateChecking().getIssuerX500Principal());
+            }
+            if (issuers == null) {
+                return crls;
+            }
+
+            Set<X509CRL> candidates = new HashSet<>(unindexedCRLs);
+            for (X500Principal issuer : issuers) {
+                List<IssuerCRL> issuerCRLs = issuerMap.get(issuer);
+                if (issuerCRLs != null) {
+                    for (IssuerCRL issuerCRL : issuerCRLs) {
+                        candidates.add(issuerCRL.crl);
+                    }
+                }
+            }
+            return candidates;
+        }
+    }
+
+    private static final class IssuerCRL {
+        private final X509CRL crl;
+        private final Set<BigInteger> revokedSerials = new HashSet<>();
+
+        IssuerCRL(X509CRL crl) {
+            this.crl = crl;
+            Set<? extends X509CRLEntry> entries = crl.getRevokedCertificates();
+            if (entries != null) {
+                for (X509CRLEntry entry : entries) {
+                    // Entries for another issuer (of an indirect CRL) are left to the validator
+                    if (entry.getCertificateIssuer() == null
+                        || entry.getCertificateIssuer().equals(crl.getIssuerX500Principal())) {
+                        revokedSerials.add(entry.getSerialNumber());
+                    }
+                }
+            }
+        }
+    }
+
+    private static final class IndexedCRLCertStoreSpi extends CertStoreSpi {
+        private volatile CRLIndex index;
+
+        IndexedCRLCertStoreSpi(CRLIndex index) throws InvalidAlgorithmParameterException {
+            super(null);
+            this.index = index;
+        }
+
+        @Override
+        public Collection<? extends Certificate> engineGetCertificates(CertSelector selector) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public Collection<? extends CRL> engineGetCRLs(CRLSelector selector) {
+            CRLIndex currentIndex = index;
+            Collection<X509CRL> candidates = currentIndex.crls;
+            if (selector instanceof X509CRLSelector) {
+                candidates = currentIndex.getCandidates((X509CRLSelector)selector);
+            }
+            if (selector == null) {
+                return candidates;
+            }
+
+            List<X509CRL> matches = new ArrayList<>(candidates.size());
+            for (X509CRL crl : candidates) {
+                if (selector.match(crl)) {
+                    matches.add(crl);
+                }
+            }
+            return matches;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.crypto;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of JCE MessageDigest instances, keyed by algorithm and provider name. Getting an
+ * instance from the pool avoids the provider lookup of MessageDigest.getInstance. An instance
+ * that is obtained from the pool must not be used by more than one thread at a time, and should
+ * be returned to the pool once it is no longer needed. An instance that is not returned is simply
+ * garbage collected.
+ *
+ * The pool uses lock-free queues rather than ThreadLocals or synchronization, so that instances
+ * are shared between (virtual) threads, and a thread never blocks on the pool. At most
+ * MAX_IDLE_INSTANCES idle instances are kept per algorithm and provider.
+ *
+ * Only MessageDigest instances are pooled, as they hold no key material, and are reset when
+ * they are returned. A Cipher or Mac retains the last key that it was initialized with, and so
+ * is never pooled.
+ */
+public final class JCEPrimitivePool {
+
+    public static final int MAX_IDLE_INSTANCES = 32;
+
+    private static final ConcurrentHashMap<String, Pool<MessageDigest>> DIGESTS = new ConcurrentHashMap<>();
+
+    private JCEPrimitivePool() {
+        // complete
+    }
+
+    /**
+     * Get a MessageDigest instance for the given algorithm and provider
+     * @param algorithm the JCE algorithm
+     * @param provider the provider name, or null for the default provider
+     */
+    public static MessageDigest getMessageDigest(String algorithm, String provider)
+        throws NoSuchAlgorithmException, NoSuchProviderException {
+        MessageDigest digest = poll(DIGESTS, algorithm, provider);
+        if (digest != null) {
+            return digest;
+        }
+        return provider == null
+            ? MessageDigest.getInstance(algorithm) : MessageDigest.getInstance(algorithm, provider);
+    }
+
+    /**
+     * Reset a MessageDigest instance that was obtained with getMessageDigest, and return it to
+     * the pool
+     * @param digest the MessageDigest instance
+     * @param provider the provider name that was passed to getMessageDigest
+     */
+    public static void returnMessageDigest(MessageDigest digest, String provider) {
+        if (digest != null) {
+            digest.reset();
+            offer(DIGESTS, digest.getAlgorithm(), provider, digest);
+        }
+    }
+
+    /**
+     * Discard all of the pooled instances, e.g. after a security provider has been removed
+     */
+    public static void clear() {
+        DIGESTS.clear();
+    }
+
+    private static <T> T poll(ConcurrentHashMap<String, Pool<T>> pools, String algorithm, String provider) {
+        Pool<T> pool = pools.get(getKey(algorithm, provider));
+        return pool == null ? null : pool.poll();
+    }
+
+    private static <T> void offer(
+        ConcurrentHashMap<String, Pool<T>> pools, String algorithm, String provider, T instance
+    ) {
+        pools.computeIfAbsent(getKey(algorithm, provider), k -> new Pool<>()).offer(instance);
+    }
+
+    private static String getKey(String algorithm, String provider) {
+        return provider == null ? algorithm : algorithm + '\u0000' + provider;
+    }
+
+    private static final class Pool<T> {
+        private final Queue<T> instances = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+
+        T poll() {
+            T instance = instances.poll();
+            if (instance != null) {
+                size.decrementAndGet();
+            }
+            return instance;
+        }
+
+        void offer(T instance) {
+            if (size.incrementAndGet() > MAX_IDLE_INSTANCES) {
+                size.decrementAndGet();
+            } else {
+                instances.offer(instance);
+            }
+        }
+    }
+}
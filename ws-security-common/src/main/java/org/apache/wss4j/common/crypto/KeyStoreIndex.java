@@ -0,0 +1,245 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.crypto;
+
+import java.math.BigInteger;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+
+/**
+ * An immutable set of lookup tables over the certificate (chains) held in a KeyStore. It allows
+ * Merlin to locate a certificate (chain) by issuer/serial, SKI, SHA-1 thumbprint, subject DN or
+ * public key without enumerating every alias of the KeyStore on each lookup.
+ *
+ * An index is a snapshot of the KeyStore at the time it was built. Merlin builds a new index if
+ * the KeyStore has had entries added or removed since, but an entry that is replaced in place
+ * cannot be detected without reading every entry, and so requires an explicit call to
+ * Merlin.refreshIndex. Where more than one alias matches a given key, the alias that was
+ * enumerated first by the KeyStore wins, as was the case with the linear search.
+ */
+final class KeyStoreIndex {
+
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(KeyStoreIndex.class);
+
+    private final KeyStore keyStore;
+    private final int size;
+    private final Map<IssuerSerial, Certificate[]> issuerSerialMap = new HashMap<>();
+    private final Map<BytesKey, Certificate[]> skiMap = new HashMap<>();
+    private final Map<BytesKey, Certificate[]> thumbprintMap = new HashMap<>();
+    private final Map<Object, List<Certificate[]>> subjectMap = new HashMap<>();
+    private final Map<BytesKey, String> publicKeyMap = new HashMap<>();
+    private final Map<Certificate, String> certificateMap = new HashMap<>();
+    private final List<X509Certificate> certificates = new ArrayList<>();
+
+    private KeyStoreIndex(KeyStore keyStore, int size) {
+        this.keyStore = keyStore;
+        this.size = size;
+    }
+
+    /**
+     * Build an index over all of the aliases of the given KeyStore.
+     * @param keyStore the KeyStore to index
+     * @param crypto the CryptoBase instance used to normalize DNs and compute SKI bytes
+     * @return an index over the KeyStore
+     * @throws WSSecurityException if the KeyStore could not be read
+     */
+    static KeyStoreIndex build(KeyStore keyStore, CryptoBase crypto) throws WSSecurityException {
+        MessageDigest sha = null;
+        try {
+            sha = MessageDigest.getInstance("SHA1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new WSSecurityException(
+                WSSecurityException.ErrorCode.FAILURE, e, "decoding.general"
+            );
+        }
+
+        try {
+            KeyStoreIndex index = new KeyStoreIndex(keyStore, keyStore.size());
+            for (Enumeration<String> e = keyStore.aliases(); e.hasMoreElements();) {
+                String alias = e.nextElement();
+                Certificate[] certs = keyStore.getCertificateChain(alias);
+                if (certs == null || certs.length == 0) {
+                    // no cert chain, so lets check if getCertificate gives us a result.
+                    Certificate cert = keyStore.getCertificate(alias);
+                    if (cert != null) {
+                        certs = new Certificate[]{cert};
+                    }
+                }
+
+                if (certs != null && certs.length > 0 && certs[0] instanceof X509Certificate) {
+                    index.add(alias, certs, crypto, sha);
+                }
+            }
+            LOG.debug("Indexed {} keystore aliases", index.size);
+            return index;
+        } catch (KeyStoreException e) {
+            throw new WSSecurityException(
+                WSSecurityException.ErrorCode.FAILURE, e, "keystore"
+            );
+        }
+    }
+
+    private void add(
+        String alias, Certificate[] certs, CryptoBase crypto, MessageDigest sha
+    ) throws WSSecurityException {
+        X509Certificate x509cert = (X509Certificate) certs[0];
+
+        Object issuerName = crypto.createBCX509Name(x509cert.getIssuerX500Principal().getName());
+        issuerSerialMap.putIfAbsent(new IssuerSerial(issuerName, x509cert.getSerialNumber()), certs);
+
+        Object subjectName = crypto.createBCX509Name(x509cert.getSubjectX500Principal().getName());
+        subjectMap.computeIfAbsent(subjectName, k -> new ArrayList<>(1)).add(certs);
+
+        try {
+            skiMap.putIfAbsent(new BytesKey(crypto.getSKIBytesFromCert(x509cert)), certs);
+        } catch (WSSecurityException ex) {
+            LOG.debug("No SKI available for keystore alias {}: {}", alias, ex.getMessage());
+        }
+
+        try {
+            thumbprintMap.putIfAbsent(new BytesKey(sha.digest(x509cert.getEncoded())), certs);
+        } catch (CertificateEncodingException ex) {
+            throw new WSSecurityException(
+                WSSecurityException.ErrorCode.SECURITY_TOKEN_UNAVAILABLE, ex, "encodeError"
+            );
+        }
+
+        byte[] encodedKey = x509cert.getPublicKey().getEncoded();
+        if (encodedKey != null) {
+            publicKeyMap.putIfAbsent(new BytesKey(encodedKey), alias);
+        }
+        certificateMap.putIfAbsent(x509cert, alias);
+        certificates.add(x509cert);
+    }
+
+    /**
+     * @return true if this index was built from the given KeyStore, and the KeyStore has not had
+     * entries added or removed since. An entry that has been replaced in place is not detected.
+     */
+    boolean isIndexOf(KeyStore store) {
+        if (store != keyStore) {
+            return false;
+        }
+        try {
+            return store.size() == size;
+        } catch (KeyStoreException e) {
+            return false;
+        }
+    }
+
+    Certificate[] getCertificatesByIssuerSerial(Object issuerName, BigInteger serialNumber) {
+        return issuerSerialMap.get(new IssuerSerial(issuerName, serialNumber));
+    }
+
+    Certificate[] getCertificatesBySKI(byte[] skiBytes) {
+        return skiMap.get(new BytesKey(skiBytes));
+    }
+
+    Certificate[] getCertificatesByThumbprint(byte[] thumbprint) {
+        return thumbprintMap.get(new BytesKey(thumbprint));
+    }
+
+    List<Certificate[]> getCertificatesBySubject(Object subjectName) {
+        List<Certificate[]> certs = subjectMap.get(subjectName);
+        if (certs == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(certs);
+    }
+
+    /**
+     * @return the (first) certificate of each alias of the KeyStore
+     */
+    List<X509Certificate> getCertificates() {
+        return Collections.unmodifiableList(certificates);
+    }
+
+    String getAlias(X509Certificate cert) {
+        return certificateMap.get(cert);
+    }
+
+    String getAlias(PublicKey publicKey) {
+        byte[] encodedKey = publicKey.getEncoded();
+        if (encodedKey == null) {
+            return null;
+        }
+        return publicKeyMap.get(new BytesKey(encodedKey));
+    }
+
+    private static final class IssuerSerial {
+        private final Object issuer;
+        private final BigInteger serial;
+
+        IssuerSerial(Object issuer, BigInteger serial) {
+            this.issuer = issuer;
+            this.serial = serial;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * issuer.hashCode() + serial.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof IssuerSerial)) {
+                return false;
+            }
+            IssuerSerial other = (IssuerSerial)obj;
+            return serial.equals(other.serial) && issuer.equals(other.issuer);
+        }
+    }
+
+    private static final class BytesKey {
+        private final byte[] bytes;
+        private final int hash;
+
+        BytesKey(byte[] bytes) {
+            this.bytes = bytes;
+            this.hash = Arrays.hashCode(bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof BytesKey && Arrays.equals(bytes, ((BytesKey)obj).bytes);
+        }
+    }
+}
@@ -19,11 +19,13 @@
 
 package org.apache.wss4j.common.crypto;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.math.BigInteger;
 import java.net.MalformedURLException;
+import java.nio.charset.StandardCharsets;
 import java.security.GeneralSecurityException;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.Key;
@@ -33,21 +35,20 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
 import java.security.PrivateKey;
+import java.security.Provider;
 import java.security.PublicKey;
+import java.security.Security;
 import java.security.UnrecoverableKeyException;
 import java.security.cert.CertPath;
 import java.security.cert.CertPathValidator;
 import java.security.cert.CertStore;
 import java.security.cert.Certificate;
-import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateExpiredException;
 import java.security.cert.CertificateFactory;
 import java.security.cert.CertificateNotYetValidException;
-import java.security.cert.CollectionCertStoreParameters;
 import java.security.cert.PKIXParameters;
 import java.security.cert.TrustAnchor;
-import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -55,8 +56,10 @@ import java.util.Collection;
 import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 import javax.security.auth.callback.Callback;
@@ -99,6 +102,7 @@ public class Merlin extends CryptoBase {
     public static final String KEYSTORE_TYPE = "keystore.type";
     public static final String KEYSTORE_ALIAS = "keystore.alias";
     public static final String KEYSTORE_PRIVATE_PASSWORD = "keystore.private.password";
+    public static final String KEYSTORE_PRIVATE_CACHING = "keystore.private.caching";
 
     /*
      * TrustStore configuration types
@@ -113,6 +117,13 @@ public class Merlin extends CryptoBase {
      * CRL configuration
      */
     public static final String X509_CRL_FILE = "x509crl.file";
+    public static final String X509_CRL_RELOAD_INTERVAL = "x509crl.reload.interval";
+
+    /*
+     * Trust verification cache configuration
+     */
+    public static final String TRUST_CACHE_SIZE = "trust.cache.size";
+    public static final String TRUST_CACHE_TTL = "trust.cache.ttl";
 
     private static final org.slf4j.Logger LOG =
         org.slf4j.LoggerFactory.getLogger(Merlin.class);
@@ -127,6 +138,14 @@ public class Merlin extends CryptoBase {
     protected boolean privatePasswordSet;
     protected PasswordEncryptor passwordEncryptor;
 
+    private volatile KeyStoreIndex keystoreIndex;
+    private volatile KeyStoreIndex truststoreIndex;
+    private volatile long trustCacheCrlVersion;
+    private volatile PKIXSettings pkixSettings;
+    private final ThreadLocal<CertPathValidator> certPathValidators = new ThreadLocal<>();
+    private TrustVerificationCache trustVerificationCache;
+    private volatile Map<String, CachedPrivateKey> privateKeyCache;
+
     public Merlin() {
         // default constructor
     }
@@ -306,41 +325,12 @@ public class Merlin extends CryptoBase {
         //
         String crlLocations = properties.getProperty(prefix + X509_CRL_FILE);
         if (crlLocations != null) {
-            String[] splittedCrlsLocations = crlLocations.split(COMMA_SEPARATOR);
-            List<X509CRL> crls = new ArrayList<>(splittedCrlsLocations.length);
-            for (String crlLocation : splittedCrlsLocations) {
-                try (InputStream is = loadInputStream(loader, crlLocation.trim())) {
-                    CertificateFactory cf = getCertificateFactory();
-                    X509CRL crl = (X509CRL)cf.generateCRL(is);
-                    crls.add(crl);
-                } catch (Exception e) {
-                    if (DO_DEBUG) {
-                        LOG.debug(e.getMessage(), e);
-                    }
-                    throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE,e, "ioError00");
-                }
-            }
-            try {
-                if (keystoreProvider == null || keystoreProvider.length() == 0) {
-                    crlCertStore =
-                            CertStore.getInstance(
-                                    "Collection",
-                                    new CollectionCertStoreParameters(crls)
-                            );
-
-                } else {
-                    crlCertStore =
-                            CertStore.getInstance(
-                                    "Collection",
-                                    new CollectionCertStoreParameters(crls),
-                                    keystoreProvider
-                            );
-                }
-            } catch (Exception e) {
-                if (DO_DEBUG) {
-                    LOG.debug(e.getMessage(), e);
-                }
-                throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE,e, "ioError00");
+            IndexedCRLCertStore indexedCertStore =
+                loadCRLCertStore(crlLocations, loader, keystoreProvider);
+            crlCertStore = indexedCertStore;
+            long reloadInterval = getLongProperty(properties, prefix + X509_CRL_RELOAD_INTERVAL, 0L);
+            if (reloadInterval > 0) {
+                indexedCertStore.setReloadInterval(reloadInterval);
             }
             if (DO_DEBUG) {
                 LOG.debug(
@@ -349,6 +339,100 @@ public class Merlin extends CryptoBase {
             }
 
         }
+
+        initializeCaches(properties, prefix);
+    }
+
+    /**
+     * Configure the caches of this Crypto instance from the given properties, and index the
+     * certificates of the KeyStore and TrustStore up front
+     */
+    private void initializeCaches(Properties properties, String prefix) throws WSSecurityException {
+        long trustCacheSize = getLongProperty(properties, prefix + TRUST_CACHE_SIZE, 0L);
+        if (trustCacheSize > 0) {
+            long ttl =
+                getLongProperty(properties, prefix + TRUST_CACHE_TTL, TrustVerificationCache.DEFAULT_TTL);
+            trustVerificationCache =
+                new TrustVerificationCache((int)Math.min(trustCacheSize, Integer.MAX_VALUE), ttl);
+        }
+        clearTrustVerificationCache();
+
+        String privateKeyCaching = properties.getProperty(prefix + KEYSTORE_PRIVATE_CACHING);
+        if (privateKeyCaching != null) {
+            setPrivateKeyCaching(Boolean.valueOf(privateKeyCaching.trim()));
+        }
+        clearPrivateKeyCache();
+
+        getKeyStoreIndex();
+        getTrustStoreIndex();
+    }
+
+    /**
+     * Get the (numeric) value of the given property
+     * @throws WSSecurityException if the value of the property is not a number
+     */
+    private static long getLongProperty(
+        Properties properties, String name, long defaultValue
+    ) throws WSSecurityException {
+        String value = properties.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException ex) {
+            throw new WSSecurityException(
+                WSSecurityException.ErrorCode.FAILURE, ex, "empty",
+                new Object[] {"The value of the property " + name + " is not a number: " + value}
+            );
+        }
+    }
+
+    /**
+     * Load the CRL file(s) at the given (comma separated) locations into an IndexedCRLCertStore
+     */
+    private IndexedCRLCertStore loadCRLCertStore(
+        String crlLocations, ClassLoader loader, String keystoreProvider
+    ) throws WSSecurityException {
+        String[] splittedCrlsLocations = crlLocations.split(COMMA_SEPARATOR);
+        List<java.net.URL> urls = new ArrayList<>(splittedCrlsLocations.length);
+        for (String crlLocation : splittedCrlsLocations) {
+            String location = crlLocation.trim();
+            java.net.URL url = null;
+            try {
+                url = new java.net.URL(location);
+            } catch (MalformedURLException ex) { //NOPMD
+                // skip
+            }
+            if (url == null) {
+                url = Loader.getResource(loader, location);
+            }
+            if (url == null) {
+                File file = new File(location);
+                if (!file.exists()) {
+                    throw new WSSecurityException(
+                        WSSecurityException.ErrorCode.FAILURE, "proxyNotFound", new Object[] {location}
+                    );
+                }
+                try {
+                    url = file.toURI().toURL();
+                } catch (MalformedURLException e) {
+                    throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e, "ioError00");
+                }
+            }
+            urls.add(url);
+        }
+        Provider provider = null;
+        if (keystoreProvider != null) {
+            provider = Security.getProvider(keystoreProvider);
+            if (provider == null) {
+                throw new WSSecurityException(
+                    WSSecurityException.ErrorCode.FAILURE, "empty",
+                    new Object[] {"The keystore provider " + keystoreProvider + " is not installed"}
+                );
+            }
+        }
+        return new IndexedCRLCertStore(urls, getCertificateFactory(), provider);
     }
 
     /**
@@ -436,12 +520,16 @@ public class Merlin extends CryptoBase {
     }
 
     /**
-     * Set the Keystore on this Crypto instance
+     * Set the Keystore on this Crypto instance. The certificates of the Keystore are indexed
+     * again on the next certificate lookup.
      *
      * @param keyStore the Keystore to set
      */
     public void setKeyStore(KeyStore keyStore) {
         keystore = keyStore;
+        keystoreIndex = null;
+        clearTrustVerificationCache();
+        clearPrivateKeyCache();
     }
 
     /**
@@ -454,12 +542,31 @@ public class Merlin extends CryptoBase {
     }
 
     /**
-     * Set the trust store on this Crypto instance
+     * Set the trust store on this Crypto instance. The certificates of the trust store are
+     * indexed again on the next certificate lookup.
      *
      * @param trustStore the trust store to set
      */
     public void setTrustStore(KeyStore trustStore) {
         truststore = trustStore;
+        truststoreIndex = null;
+        clearTrustVerificationCache();
+    }
+
+    /**
+     * Index the certificates of the Keystore and trust store again on the next certificate
+     * lookup, and remove all of the cached PrivateKeys and certificate path validation results.
+     *
+     * The index detects a Keystore or trust store that has had entries added or removed, but not
+     * an entry that has been replaced in place (e.g. by calling KeyStore.setKeyEntry or
+     * KeyStore.setCertificateEntry with an existing alias). This method must be called after
+     * such a change, or the previous certificate and PrivateKey of the entry may still be used.
+     */
+    public void refreshIndex() {
+        keystoreIndex = null;
+        truststoreIndex = null;
+        clearTrustVerificationCache();
+        clearPrivateKeyCache();
     }
 
     /**
@@ -470,6 +577,7 @@ public class Merlin extends CryptoBase {
      */
     public void setCRLCertStore(CertStore crlCertStore) {
         this.crlCertStore = crlCertStore;
+        clearTrustVerificationCache();
     }
 
     /**
@@ -482,6 +590,98 @@ public class Merlin extends CryptoBase {
         return crlCertStore;
     }
 
+    /**
+     * Set the cache of successful certificate chain validations. It is cleared whenever the
+     * keystore, truststore or CRL CertStore of this Crypto instance changes.
+     * @param trustVerificationCache the cache of certificate chain validations, or null to
+     * disable caching
+     */
+    public void setTrustVerificationCache(TrustVerificationCache trustVerificationCache) {
+        this.trustVerificationCache = trustVerificationCache;
+    }
+
+    /**
+     * Get the cache of successful certificate chain validations
+     * @return the cache of certificate chain validations, or null if caching is disabled
+     */
+    public TrustVerificationCache getTrustVerificationCache() {
+        return trustVerificationCache;
+    }
+
+    /**
+     * Set whether to cache the PrivateKeys that are retrieved from the keystore. Retrieving a
+     * PrivateKey may involve an expensive password-based decryption, e.g. for PKCS12 keystores.
+     * A cached PrivateKey is only returned if the same password is supplied as was used to
+     * retrieve it. The cache is cleared whenever the keystore is replaced or reloaded.
+     * @param privateKeyCaching whether to cache PrivateKeys or not
+     */
+    public void setPrivateKeyCaching(boolean privateKeyCaching) {
+        if (privateKeyCaching) {
+            if (privateKeyCache == null) {
+                privateKeyCache = new ConcurrentHashMap<>();
+            }
+        } else {
+            privateKeyCache = null;
+        }
+    }
+
+    /**
+     * Remove all of the cached PrivateKeys. Call refreshIndex instead if the entries of the
+     * keystore have been changed in place, as the certificate index is then stale too.
+     */
+    public void clearPrivateKeyCache() {
+        Map<String, CachedPrivateKey> cache = privateKeyCache;
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+    private void clearTrustVerificationCache() {
+        TrustVerificationCache cache = trustVerificationCache;
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * Get the certificate index of the Keystore, (re-)building it if the Keystore has been
+     * replaced or has had entries added or removed since the index was built.
+     * @return the certificate index of the Keystore, or null if there is no Keystore
+     */
+    private KeyStoreIndex getKeyStoreIndex() throws WSSecurityException {
+        KeyStore store = keystore;
+        if (store == null) {
+            return null;
+        }
+        KeyStoreIndex index = keystoreIndex;
+        if (index == null || !index.isIndexOf(store)) {
+            index = KeyStoreIndex.build(store, this);
+            keystoreIndex = index;
+            clearTrustVerificationCache();
+            clearPrivateKeyCache();
+        }
+        return index;
+    }
+
+    /**
+     * Get the certificate index of the trust store, (re-)building it if the trust store has been
+     * replaced or has had entries added or removed since the index was built.
+     * @return the certificate index of the trust store, or null if there is no trust store
+     */
+    private KeyStoreIndex getTrustStoreIndex() throws WSSecurityException {
+        KeyStore store = truststore;
+        if (store == null) {
+            return null;
+        }
+        KeyStoreIndex index = truststoreIndex;
+        if (index == null || !index.isIndexOf(store)) {
+            index = KeyStoreIndex.build(store, this);
+            truststoreIndex = index;
+            clearTrustVerificationCache();
+        }
+        return index;
+    }
+
     /**
      * Singleton certificate factory for this Crypto instance.
      * <p/>
@@ -630,12 +830,14 @@ public class Merlin extends CryptoBase {
     public String getX509Identifier(X509Certificate cert) throws WSSecurityException {
         String identifier = null;
 
-        if (keystore != null) {
-            identifier = getIdentifier(cert, keystore);
+        KeyStoreIndex index = getKeyStoreIndex();
+        if (index != null) {
+            identifier = index.getAlias(cert);
         }
 
-        if (identifier == null && truststore != null) {
-            identifier = getIdentifier(cert, truststore);
+        index = getTrustStoreIndex();
+        if (identifier == null && index != null) {
+            identifier = index.getAlias(cert);
         }
 
         return identifier;
@@ -661,7 +863,7 @@ public class Merlin extends CryptoBase {
                                           new Object[] {"The CallbackHandler is null"});
         }
 
-        String identifier = getIdentifier(certificate, keystore);
+        String identifier = getKeyStoreIndex().getAlias(certificate);
         if (identifier == null) {
             try {
                 String msg = "Cannot find key for certificate";
@@ -700,7 +902,7 @@ public class Merlin extends CryptoBase {
                                           new Object[] {"The CallbackHandler is null"});
         }
 
-        String identifier = getIdentifier(publicKey, keystore);
+        String identifier = getKeyStoreIndex().getAlias(publicKey);
         if (identifier == null) {
             try {
                 String msg = "Cannot find key for corresponding public key";
@@ -753,6 +955,17 @@ public class Merlin extends CryptoBase {
                     pwd = decryptPassword(pwd, passwordEncryptor);
                 }
             }
+
+            Map<String, CachedPrivateKey> cache = privateKeyCache;
+            byte[] passwordDigest = null;
+            if (cache != null) {
+                passwordDigest = digestPassword(pwd);
+                CachedPrivateKey cachedKey = cache.get(identifier);
+                if (cachedKey != null && cachedKey.matches(passwordDigest)) {
+                    return cachedKey.privateKey;
+                }
+            }
+
             Key keyTmp = keystore.getKey(identifier, pwd == null
                                          ? new char[]{} : pwd.toCharArray());
             if (!(keyTmp instanceof PrivateKey)) {
@@ -762,6 +975,9 @@ public class Merlin extends CryptoBase {
                 throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, "empty",
                                               new Object[] {msg});
             }
+            if (cache != null) {
+                cache.put(identifier, new CachedPrivateKey((PrivateKey) keyTmp, passwordDigest));
+            }
             return (PrivateKey) keyTmp;
         } catch (KeyStoreException | UnrecoverableKeyException | NoSuchAlgorithmException ex) {
             throw new WSSecurityException(
@@ -816,6 +1032,8 @@ public class Merlin extends CryptoBase {
             }
         }
 
+        checkRevokedCertificates(certs, enableRevocation);
+
         //
         // SECOND step - Search for the issuer cert (chain) of the transmitted certificate in the
         // keystore or the truststore
@@ -826,13 +1044,15 @@ public class Merlin extends CryptoBase {
             
             Object subject = convertSubjectToPrincipal(issuerString);
 
-            if (keystore != null) {
-                foundIssuingCertChains = getCertificates(subject, keystore);
+            KeyStoreIndex index = getKeyStoreIndex();
+            if (index != null) {
+                foundIssuingCertChains = getCertificates(subject, index);
             }
 
             //If we can't find the issuer in the keystore then look at the truststore
-            if ((foundIssuingCertChains == null || foundIssuingCertChains.isEmpty()) && truststore != null) {
-                foundIssuingCertChains = getCertificates(subject, truststore);
+            index = getTrustStoreIndex();
+            if ((foundIssuingCertChains == null || foundIssuingCertChains.isEmpty()) && index != null) {
+                foundIssuingCertChains = getCertificates(subject, index);
             }
 
             if (foundIssuingCertChains == null || foundIssuingCertChains.isEmpty() 
@@ -861,50 +1081,9 @@ public class Merlin extends CryptoBase {
         }
 
         try {
-            Set<TrustAnchor> set = new HashSet<>();
-            if (truststore != null) {
-                Enumeration<String> truststoreAliases = truststore.aliases();
-                while (truststoreAliases.hasMoreElements()) {
-                    String alias = truststoreAliases.nextElement();
-                    X509Certificate cert =
-                        (X509Certificate) truststore.getCertificate(alias);
-                    if (cert != null) {
-                        TrustAnchor anchor =
-                            new TrustAnchor(cert, cert.getExtensionValue(NAME_CONSTRAINTS_OID));
-                        set.add(anchor);
-                    }
-                }
-            }
-
-            //
-            // Add certificates from the keystore - only if there is no TrustStore, apart from
-            // the case that the truststore is the JDK CA certs. This behaviour is preserved
-            // for backwards compatibility reasons
-            //
-            if (keystore != null && (truststore == null || loadCACerts)) {
-                Enumeration<String> aliases = keystore.aliases();
-                while (aliases.hasMoreElements()) {
-                    String alias = aliases.nextElement();
-                    X509Certificate cert =
-                        (X509Certificate) keystore.getCertificate(alias);
-                    if (cert != null) {
-                        TrustAnchor anchor =
-                            new TrustAnchor(cert, cert.getExtensionValue(NAME_CONSTRAINTS_OID));
-                        set.add(anchor);
-                    }
-                }
-            }
-
-            // Verify the trust path using the above settings
-            String provider = getCryptoProvider();
-            CertPathValidator validator = null;
-            if (provider == null || provider.length() == 0) {
-                validator = CertPathValidator.getInstance("PKIX");
-            } else {
-                validator = CertPathValidator.getInstance("PKIX", provider);
-            }
-
-            PKIXParameters param = createPKIXParameters(set, enableRevocation);
+            // Verify the trust path using the trust anchors of the keystore/truststore
+            CertPathValidator validator = getCertPathValidator();
+            PKIXParameters param = getPKIXParameters(enableRevocation);
             
             // Generate cert path
             if (foundIssuingCertChains != null && !foundIssuingCertChains.isEmpty()) {
@@ -939,8 +1118,7 @@ public class Merlin extends CryptoBase {
             }
         } catch (NoSuchProviderException | NoSuchAlgorithmException
             | CertificateException | InvalidAlgorithmParameterException
-            | java.security.cert.CertPathValidatorException
-            | KeyStoreException e) {
+            | java.security.cert.CertPathValidatorException e) {
                 throw new WSSecurityException(
                     WSSecurityException.ErrorCode.FAILURE, e, "certpath"
                 );
@@ -956,10 +1134,110 @@ public class Merlin extends CryptoBase {
     public void verifyTrust(X509Certificate[] certs, boolean enableRevocation, 
                             Collection<Pattern> subjectCertConstraints,
                             Collection<Pattern> issuerCertConstraints) throws WSSecurityException {
+        TrustVerificationCache cache = trustVerificationCache;
+        String cacheKey = null;
+        if (cache != null && certs != null && certs.length > 0) {
+            // The CRL version is read once, before validating, and is part of the cache key. A
+            // result that was validated against CRLs that have since been reloaded is then never
+            // found, even if it is added after another thread has cleared the cache.
+            long crlVersion = 0;
+            if (crlCertStore instanceof IndexedCRLCertStore) {
+                crlVersion = ((IndexedCRLCertStore)crlCertStore).getVersion();
+                if (crlVersion != trustCacheCrlVersion) {
+                    // Discard the cached results that were validated against the old CRLs
+                    cache.clear();
+                    trustCacheCrlVersion = crlVersion;
+                }
+            }
+            cacheKey = crlVersion + "|"
+                + cache.getKey(certs, enableRevocation, subjectCertConstraints, issuerCertConstraints);
+            if (cache.contains(cacheKey)) {
+                LOG.debug("Trust verification result found in the cache");
+                return;
+            }
+        }
+
         verifyTrust(certs, enableRevocation, subjectCertConstraints);
         if (!matchesIssuerDnPattern(certs[0], issuerCertConstraints)) {
             throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_AUTHENTICATION);
         }
+
+        if (cacheKey != null) {
+            cache.add(cacheKey, certs, getIssuingCertificates(certs));
+        }
+    }
+
+    /**
+     * Get the certificates of the keystore and truststore that may have issued the given
+     * certificate chain, following the issuers up to a self-signed certificate. The chain was
+     * validated against (a subset of) these certificates, and so a cached validation result must
+     * not outlive any of them.
+     *
+     * @param certs the certificate chain that was validated
+     * @return the certificates of the keystore and truststore that may have issued the chain
+     * @throws WSSecurityException if the keystore or truststore could not be read
+     */
+    private List<X509Certificate> getIssuingCertificates(X509Certificate[] certs)
+        throws WSSecurityException {
+        List<X509Certificate> issuingCerts = new ArrayList<>();
+        KeyStoreIndex[] indexes = {getKeyStoreIndex(), getTrustStoreIndex()};
+        Set<X500Principal> searchedIssuers = new HashSet<>();
+        List<X509Certificate> pending = new ArrayList<>();
+        pending.add(certs[certs.length - 1]);
+        while (!pending.isEmpty()) {
+            X509Certificate cert = pending.remove(pending.size() - 1);
+            X500Principal issuer = cert.getIssuerX500Principal();
+            if (issuer.equals(cert.getSubjectX500Principal()) || !searchedIssuers.add(issuer)) {
+                continue;
+            }
+            Object subject = convertSubjectToPrincipal(issuer.getName());
+            for (KeyStoreIndex index : indexes) {
+                if (index == null) {
+                    continue;
+                }
+                for (Certificate[] chain : getCertificates(subject, index)) {
+                    for (Certificate issuingCert : chain) {
+                        if (issuingCert instanceof X509Certificate) {
+                            issuingCerts.add((X509Certificate)issuingCert);
+                        }
+                    }
+                    if (chain.length > 0 && chain[chain.length - 1] instanceof X509Certificate) {
+                        pending.add((X509Certificate)chain[chain.length - 1]);
+                    }
+                }
+            }
+        }
+        return issuingCerts;
+    }
+
+    /**
+     * If revocation is enabled and the CRLs are held in an IndexedCRLCertStore, reject a revoked
+     * certificate of the chain with a hash lookup, before validating the certificate path.
+     *
+     * @param certs Certificate chain to validate
+     * @param enableRevocation whether to enable CRL verification or not
+     * @throws WSSecurityException if a certificate of the chain has been revoked
+     */
+    protected void checkRevokedCertificates(
+        X509Certificate[] certs, boolean enableRevocation
+    ) throws WSSecurityException {
+        if (enableRevocation && crlCertStore instanceof IndexedCRLCertStore) {
+            IndexedCRLCertStore indexedCertStore = (IndexedCRLCertStore)crlCertStore;
+            for (X509Certificate cert : certs) {
+                if (indexedCertStore.isRevoked(cert)) {
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug(
+                            "The certificate for " + cert.getSubjectX500Principal().getName()
+                            + " has been revoked"
+                        );
+                    }
+                    throw new WSSecurityException(
+                        WSSecurityException.ErrorCode.FAILURE, "certpath",
+                        new Object[] {"Certificate has been revoked"}
+                    );
+                }
+            }
+        }
     }
 
     // Separated out to allow subclasses to override it
@@ -975,6 +1253,74 @@ public class Merlin extends CryptoBase {
         return param;
     }
 
+    /**
+     * Get the PKIXParameters with which to validate a certificate path. The trust anchors, and the
+     * PKIXParameters template for each revocation setting, are built once for a given snapshot of
+     * the keystore, truststore and CRL CertStore, and are rebuilt only when one of these changes.
+     *
+     * @param enableRevocation whether to enable CRL verification or not
+     * @return a copy of the PKIXParameters template for the given revocation setting
+     * @throws WSSecurityException if the keystore or truststore could not be read
+     * @throws InvalidAlgorithmParameterException if there are no trust anchors
+     */
+    protected PKIXParameters getPKIXParameters(boolean enableRevocation)
+        throws WSSecurityException, InvalidAlgorithmParameterException {
+        KeyStoreIndex keystoreIdx = getKeyStoreIndex();
+        KeyStoreIndex truststoreIdx = getTrustStoreIndex();
+        PKIXSettings settings = pkixSettings;
+        if (settings == null
+            || !settings.isCurrent(keystoreIdx, truststoreIdx, loadCACerts, crlCertStore)) {
+            Set<TrustAnchor> trustAnchors = new HashSet<>();
+            if (truststoreIdx != null) {
+                addTrustAnchors(truststoreIdx, trustAnchors);
+            }
+
+            //
+            // Add certificates from the keystore - only if there is no TrustStore, apart from
+            // the case that the truststore is the JDK CA certs. This behaviour is preserved
+            // for backwards compatibility reasons
+            //
+            if (keystoreIdx != null && (truststoreIdx == null || loadCACerts)) {
+                addTrustAnchors(keystoreIdx, trustAnchors);
+            }
+
+            settings =
+                new PKIXSettings(keystoreIdx, truststoreIdx, loadCACerts, crlCertStore,
+                                 createPKIXParameters(trustAnchors, false),
+                                 createPKIXParameters(trustAnchors, true));
+            pkixSettings = settings;
+        }
+
+        return (PKIXParameters)settings.getParameters(enableRevocation).clone();
+    }
+
+    private static void addTrustAnchors(KeyStoreIndex index, Set<TrustAnchor> trustAnchors) {
+        for (X509Certificate cert : index.getCertificates()) {
+            trustAnchors.add(new TrustAnchor(cert, cert.getExtensionValue(NAME_CONSTRAINTS_OID)));
+        }
+    }
+
+    /**
+     * Get a PKIX CertPathValidator for the configured crypto provider. A CertPathValidator is not
+     * guaranteed to be thread-safe, so one instance is kept per thread.
+     */
+    protected CertPathValidator getCertPathValidator()
+        throws NoSuchAlgorithmException, NoSuchProviderException {
+        String provider = getCryptoProvider();
+        boolean defaultProvider = provider == null || provider.length() == 0;
+        CertPathValidator validator = certPathValidators.get();
+        if (validator == null
+            || !defaultProvider && !provider.equals(validator.getProvider().getName())) {
+            if (defaultProvider) {
+                validator = CertPathValidator.getInstance("PKIX");
+            } else {
+                validator = CertPathValidator.getInstance("PKIX", provider);
+            }
+            certPathValidators.set(validator);
+        }
+        return validator;
+    }
+
     /**
      * Evaluate whether a given public key should be trusted.
      *
@@ -993,8 +1339,8 @@ public class Merlin extends CryptoBase {
         // Search the keystore for the transmitted public key (direct trust). If not found
         // then search the truststore for the transmitted public key (direct trust)
         //
-        if (!findPublicKeyInKeyStore(publicKey, keystore)
-            && !findPublicKeyInKeyStore(publicKey, truststore)) {
+        if (!findPublicKeyInKeyStore(publicKey, getKeyStoreIndex())
+            && !findPublicKeyInKeyStore(publicKey, getTrustStoreIndex())) {
             throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_AUTHENTICATION);
         }
     }
@@ -1027,13 +1373,15 @@ public class Merlin extends CryptoBase {
             issuerName = createBCX509Name(issuer);
         }
         Certificate[] certs = null;
-        if (keystore != null) {
-            certs = getCertificates(issuerName, serialNumber, keystore);
+        KeyStoreIndex index = getKeyStoreIndex();
+        if (index != null) {
+            certs = getCertificates(issuerName, serialNumber, index);
         }
 
         //If we can't find the issuer in the keystore then look at the truststore
-        if ((certs == null || certs.length == 0) && truststore != null) {
-            certs = getCertificates(issuerName, serialNumber, truststore);
+        index = getTrustStoreIndex();
+        if ((certs == null || certs.length == 0) && index != null) {
+            certs = getCertificates(issuerName, serialNumber, index);
         }
 
         if (certs == null || certs.length == 0) {
@@ -1044,50 +1392,23 @@ public class Merlin extends CryptoBase {
     }
 
     /**
-     * Get an X509 Certificate (chain) of the X500Principal argument in the supplied KeyStore
+     * Get an X509 Certificate (chain) of the X500Principal argument in the supplied KeyStore index
      * @param issuerRDN either an X500Principal or a BouncyCastle X509Name instance.
-     * @param store The KeyStore
+     * @param index The KeyStore index
      * @return an X509 Certificate (chain)
-     * @throws WSSecurityException
      */
     private Certificate[] getCertificates(
         Object issuerRDN,
         BigInteger serialNumber,
-        KeyStore store
-    ) throws WSSecurityException {
+        KeyStoreIndex index
+    ) {
         LOG.debug("Searching keystore for cert with issuer {} and serial {}", issuerRDN, serialNumber);
-        try {
-            for (Enumeration<String> e = store.aliases(); e.hasMoreElements();) {
-                String alias = e.nextElement();
-                Certificate[] certs = store.getCertificateChain(alias);
-                if (certs == null || certs.length == 0) {
-                    // no cert chain, so lets check if getCertificate gives us a result.
-                    Certificate cert = store.getCertificate(alias);
-                    if (cert != null) {
-                        certs = new Certificate[]{cert};
-                    }
-                }
-
-                if (certs != null && certs.length > 0 && certs[0] instanceof X509Certificate) {
-                    X509Certificate x509cert = (X509Certificate) certs[0];
-                    LOG.debug("Keystore alias {} has issuer {} and serial {}", alias, 
-                              x509cert.getIssuerX500Principal().getName(), x509cert.getSerialNumber());
-                    if (x509cert.getSerialNumber().compareTo(serialNumber) == 0) {
-                        Object certName =
-                            createBCX509Name(x509cert.getIssuerX500Principal().getName());
-                        if (certName.equals(issuerRDN)) {
-                            LOG.debug("Issuer Serial match found using keystore alias {}", alias);
-                            return certs;
-                        }
-                    }
-                }
-            }
-        } catch (KeyStoreException e) {
-            throw new WSSecurityException(
-                WSSecurityException.ErrorCode.FAILURE, e, "keystore"
-            );
+        Certificate[] certs = index.getCertificatesByIssuerSerial(issuerRDN, serialNumber);
+        if (certs != null) {
+            LOG.debug("Issuer Serial match found in keystore");
+            return certs;
         }
-        
+
         LOG.debug("No issuer serial match found in keystore");
         return new Certificate[]{};
     }
@@ -1100,23 +1421,16 @@ public class Merlin extends CryptoBase {
      * @throws WSSecurityException if problems during keystore handling or wrong certificate
      */
     private X509Certificate[] getX509Certificates(byte[] thumbprint) throws WSSecurityException {
-        MessageDigest sha = null;
-
-        try {
-            sha = MessageDigest.getInstance("SHA1");
-        } catch (NoSuchAlgorithmException e) {
-            throw new WSSecurityException(
-                WSSecurityException.ErrorCode.FAILURE, e, "decoding.general"
-            );
-        }
         Certificate[] certs = null;
-        if (keystore != null) {
-            certs = getCertificates(thumbprint, keystore, sha);
+        KeyStoreIndex index = getKeyStoreIndex();
+        if (index != null) {
+            certs = getCertificatesByThumbprint(thumbprint, index);
         }
 
         //If we can't find the issuer in the keystore then look at the truststore
-        if ((certs == null || certs.length == 0) && truststore != null) {
-            certs = getCertificates(thumbprint, truststore, sha);
+        index = getTrustStoreIndex();
+        if ((certs == null || certs.length == 0) && index != null) {
+            certs = getCertificatesByThumbprint(thumbprint, index);
         }
 
         if (certs == null || certs.length == 0) {
@@ -1127,53 +1441,22 @@ public class Merlin extends CryptoBase {
     }
 
     /**
-     * Get an X509 Certificate (chain) of the X500Principal argument in the supplied KeyStore
+     * Get an X509 Certificate (chain) of the SHA-1 thumbprint argument in the supplied KeyStore index
      * @param thumbprint
-     * @param store The KeyStore
+     * @param index The KeyStore index
      * @return an X509 Certificate (chain)
-     * @throws WSSecurityException
      */
-    private Certificate[] getCertificates(
+    private Certificate[] getCertificatesByThumbprint(
         byte[] thumbprint,
-        KeyStore store,
-        MessageDigest sha
-    ) throws WSSecurityException {
+        KeyStoreIndex index
+    ) {
         LOG.debug("Searching keystore for cert using a SHA-1 thumbprint");
-        try {
-            for (Enumeration<String> e = store.aliases(); e.hasMoreElements();) {
-                String alias = e.nextElement();
-                Certificate[] certs = store.getCertificateChain(alias);
-                if (certs == null || certs.length == 0) {
-                    // no cert chain, so lets check if getCertificate gives us a result.
-                    Certificate cert = store.getCertificate(alias);
-                    if (cert != null) {
-                        certs = new Certificate[]{cert};
-                    }
-                }
-
-                if (certs != null && certs.length > 0 && certs[0] instanceof X509Certificate) {
-                    X509Certificate x509cert = (X509Certificate) certs[0];
-                    try {
-                        sha.update(x509cert.getEncoded());
-                    } catch (CertificateEncodingException ex) {
-                        throw new WSSecurityException(
-                            WSSecurityException.ErrorCode.SECURITY_TOKEN_UNAVAILABLE, ex, "encodeError"
-                        );
-                    }
-                    byte[] data = sha.digest();
-
-                    if (Arrays.equals(data, thumbprint)) {
-                        LOG.debug("Thumbprint match found using keystore alias {}", alias);
-                        return certs;
-                    }
-                }
-            }
-        } catch (KeyStoreException e) {
-            throw new WSSecurityException(
-                WSSecurityException.ErrorCode.FAILURE, e, "keystore"
-            );
+        Certificate[] certs = index.getCertificatesByThumbprint(thumbprint);
+        if (certs != null) {
+            LOG.debug("Thumbprint match found in keystore");
+            return certs;
         }
-        
+
         LOG.debug("No thumbprint match found in keystore");
         return new Certificate[]{};
     }
@@ -1186,13 +1469,15 @@ public class Merlin extends CryptoBase {
      */
     private X509Certificate[] getX509CertificatesSKI(byte[] skiBytes) throws WSSecurityException {
         Certificate[] certs = null;
-        if (keystore != null) {
-            certs = getCertificates(skiBytes, keystore);
+        KeyStoreIndex index = getKeyStoreIndex();
+        if (index != null) {
+            certs = getCertificatesBySKI(skiBytes, index);
         }
 
         //If we can't find the issuer in the keystore then look at the truststore
-        if ((certs == null || certs.length == 0) && truststore != null) {
-            certs = getCertificates(skiBytes, truststore);
+        index = getTrustStoreIndex();
+        if ((certs == null || certs.length == 0) && index != null) {
+            certs = getCertificatesBySKI(skiBytes, index);
         }
 
         if (certs == null || certs.length == 0) {
@@ -1203,44 +1488,22 @@ public class Merlin extends CryptoBase {
     }
 
     /**
-     * Get an X509 Certificate (chain) of the X500Principal argument in the supplied KeyStore
+     * Get an X509 Certificate (chain) of the SKI bytes argument in the supplied KeyStore index
      * @param skiBytes
-     * @param store The KeyStore
+     * @param index The KeyStore index
      * @return an X509 Certificate (chain)
-     * @throws WSSecurityException
      */
-    private Certificate[] getCertificates(
+    private Certificate[] getCertificatesBySKI(
         byte[] skiBytes,
-        KeyStore store
-    ) throws WSSecurityException {
+        KeyStoreIndex index
+    ) {
         LOG.debug("Searching keystore for cert using Subject Key Identifier bytes");
-        try {
-            for (Enumeration<String> e = store.aliases(); e.hasMoreElements();) {
-                String alias = e.nextElement();
-                Certificate[] certs = store.getCertificateChain(alias);
-                if (certs == null || certs.length == 0) {
-                    // no cert chain, so lets check if getCertificate gives us a result.
-                    Certificate cert = store.getCertificate(alias);
-                    if (cert != null) {
-                        certs = new Certificate[]{cert};
-                    }
-                }
-
-                if (certs != null && certs.length > 0 && certs[0] instanceof X509Certificate) {
-                    X509Certificate x509cert = (X509Certificate) certs[0];
-                    byte[] data = getSKIBytesFromCert(x509cert);
-                    if (data.length == skiBytes.length && Arrays.equals(data, skiBytes)) {
-                        LOG.debug("SKI match found using keystore alias {}", alias);
-                        return certs;
-                    }
-                }
-            }
-        } catch (KeyStoreException e) {
-            throw new WSSecurityException(
-                WSSecurityException.ErrorCode.FAILURE, e, "keystore"
-            );
+        Certificate[] certs = index.getCertificatesBySKI(skiBytes);
+        if (certs != null) {
+            LOG.debug("SKI match found in keystore");
+            return certs;
         }
-        
+
         LOG.debug("No SKI match found in keystore");
         return new Certificate[]{};
     }
@@ -1256,13 +1519,15 @@ public class Merlin extends CryptoBase {
         Object subject = convertSubjectToPrincipal(subjectDN);
 
         List<Certificate[]> certs = null;
-        if (keystore != null) {
-            certs = getCertificates(subject, keystore);
+        KeyStoreIndex index = getKeyStoreIndex();
+        if (index != null) {
+            certs = getCertificates(subject, index);
         }
 
         //If we can't find the issuer in the keystore then look at the truststore
-        if ((certs == null || certs.isEmpty()) && truststore != null) {
-            certs = getCertificates(subject, truststore);
+        index = getTrustStoreIndex();
+        if ((certs == null || certs.isEmpty()) && index != null) {
+            certs = getCertificates(subject, index);
         }
 
         if (certs == null || certs.isEmpty()) {
@@ -1340,78 +1605,33 @@ public class Merlin extends CryptoBase {
     }
 
     /**
-     * Find the Public Key in a keystore.
+     * Find the Public Key in a keystore index.
      */
-    private boolean findPublicKeyInKeyStore(PublicKey publicKey, KeyStore keyStoreToSearch) {
-        if (keyStoreToSearch == null) {
+    private boolean findPublicKeyInKeyStore(PublicKey publicKey, KeyStoreIndex index) {
+        if (index == null) {
             return false;
         }
         LOG.debug("Searching keystore for public key {}", publicKey);
-        try {
-            for (Enumeration<String> e = keyStoreToSearch.aliases(); e.hasMoreElements();) {
-                String alias = e.nextElement();
-                Certificate[] certs = keyStoreToSearch.getCertificateChain(alias);
-                if (certs == null || certs.length == 0) {
-                    // no cert chain, so lets check if getCertificate gives us a result.
-                    Certificate cert = keyStoreToSearch.getCertificate(alias);
-                    if (cert != null) {
-                        certs = new Certificate[]{cert};
-                    }
-                }
-
-                if (certs != null && certs.length > 0 && certs[0] instanceof X509Certificate
-                    && publicKey.equals(((X509Certificate)certs[0]).getPublicKey())) {
-                    LOG.debug("PublicKey match found using keystore alias {}", alias);
-                    return true;
-                }
-            }
-        } catch (KeyStoreException e) {
-            return false;
+        String alias = index.getAlias(publicKey);
+        if (alias != null) {
+            LOG.debug("PublicKey match found using keystore alias {}", alias);
+            return true;
         }
-        
+
         LOG.debug("No PublicKey match found in keystore");
         return false;
     }
 
     /**
-     * Get an X509 Certificate (chain) of the X500Principal argument in the supplied KeyStore. If multiple
-     * certs match the Subject DN, then multiple cert chains are returned.
+     * Get an X509 Certificate (chain) of the X500Principal argument in the supplied KeyStore index.
+     * If multiple certs match the Subject DN, then multiple cert chains are returned.
      * @param subjectRDN either an X500Principal or a BouncyCastle X509Name instance.
-     * @param store The KeyStore
+     * @param index The KeyStore index
      * @return an X509 Certificate (chain)
-     * @throws WSSecurityException
      */
-    private List<Certificate[]> getCertificates(Object subjectRDN, KeyStore store)
-        throws WSSecurityException {
+    private List<Certificate[]> getCertificates(Object subjectRDN, KeyStoreIndex index) {
         LOG.debug("Searching keystore for cert with Subject {}", subjectRDN);
-        List<Certificate[]> foundCerts = new ArrayList<>();
-        try {
-            for (Enumeration<String> e = store.aliases(); e.hasMoreElements();) {
-                String alias = e.nextElement();
-                Certificate[] certs = store.getCertificateChain(alias);
-                if (certs == null || certs.length == 0) {
-                    // no cert chain, so lets check if getCertificate gives us a result.
-                    Certificate cert = store.getCertificate(alias);
-                    if (cert != null) {
-                        certs = new Certificate[]{cert};
-                    }
-                }
-                if (certs != null && certs.length > 0 && certs[0] instanceof X509Certificate) {
-                    X500Principal foundRDN = ((X509Certificate)certs[0]).getSubjectX500Principal();
-                    Object certName = createBCX509Name(foundRDN.getName());
-
-                    if (subjectRDN.equals(certName)) {
-                        LOG.debug("Subject certificate match found using keystore alias {}", alias);
-                        foundCerts.add(certs);
-                    }
-                }
-            }
-        } catch (KeyStoreException e) {
-            throw new WSSecurityException(
-                WSSecurityException.ErrorCode.FAILURE, e, "keystore"
-            );
-        }
-        
+        List<Certificate[]> foundCerts = index.getCertificatesBySubject(subjectRDN);
         if (foundCerts.isEmpty()) {
             LOG.debug("No Subject match found in keystore");
         }
@@ -1436,63 +1656,6 @@ public class Merlin extends CryptoBase {
         return msg;
     }
 
-    /**
-     * Get an implementation-specific identifier that corresponds to the X509Certificate. In
-     * this case, the identifier is the KeyStore alias.
-     * @param cert The X509Certificate corresponding to the returned identifier
-     * @param store The KeyStore to search
-     * @return An implementation-specific identifier that corresponds to the X509Certificate
-     */
-    private String getIdentifier(X509Certificate cert, KeyStore store)
-        throws WSSecurityException {
-        try {
-            for (Enumeration<String> e = store.aliases(); e.hasMoreElements();) {
-                String alias = e.nextElement();
-
-                Certificate[] certs = store.getCertificateChain(alias);
-                if (certs == null || certs.length == 0) {
-                    // no cert chain, so lets check if getCertificate gives us a  result.
-                    Certificate retrievedCert = store.getCertificate(alias);
-                    if (retrievedCert != null) {
-                        certs = new Certificate[]{retrievedCert};
-                    }
-                }
-
-                if (certs != null && certs.length > 0 && certs[0].equals(cert)) {
-                    return alias;
-                }
-            }
-        } catch (KeyStoreException e) {
-            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e, "keystore");
-        }
-        return null;
-    }
-    
-    private String getIdentifier(PublicKey publicKey, KeyStore store)
-        throws WSSecurityException {
-        try {
-            for (Enumeration<String> e = store.aliases(); e.hasMoreElements();) {
-                String alias = e.nextElement();
-
-                Certificate[] certs = store.getCertificateChain(alias);
-                if (certs == null || certs.length == 0) {
-                    // no cert chain, so lets check if getCertificate gives us a  result.
-                    Certificate retrievedCert = store.getCertificate(alias);
-                    if (retrievedCert != null) {
-                        certs = new Certificate[]{retrievedCert};
-                    }
-                }
-
-                if (certs != null && certs.length > 0 && certs[0].getPublicKey().equals(publicKey)) {
-                    return alias;
-                }
-            }
-        } catch (KeyStoreException e) {
-            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e, "keystore");
-        }
-        return null;
-    }
-
     /**
      * Get a password from the CallbackHandler
      * @param identifier The identifier to give to the Callback
@@ -1518,6 +1681,14 @@ public class Merlin extends CryptoBase {
         return pwCb.getPassword();
     }
 
+    private static byte[] digestPassword(String password) throws NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        if (password != null) {
+            digest.update(password.getBytes(StandardCharsets.UTF_8));
+        }
+        return digest.digest();
+    }
+
     protected String decryptPassword(String password, PasswordEncryptor passwordEncryptor) {
         if (password.startsWith(ENCRYPTED_PASSWORD_PREFIX)
             && password.endsWith(ENCRYPTED_PASSWORD_SUFFIX)) {
@@ -1538,4 +1709,61 @@ public class Merlin extends CryptoBase {
     public void setPasswordEncryptor(PasswordEncryptor passwordEncryptor) {
         this.passwordEncryptor = passwordEncryptor;
     }
+
+    /**
+     * A PrivateKey retrieved from the keystore, together with a digest of the password that was
+     * used to retrieve it.
+     */
+    private static final class CachedPrivateKey {
+        private final PrivateKey privateKey;
+        private final byte[] passwordDigest;
+
+        CachedPrivateKey(PrivateKey privateKey, byte[] passwordDigest) {
+            this.privateKey = privateKey;
+            this.passwordDigest = passwordDigest;
+        }
+
+        boolean matches(byte[] digest) {
+            return MessageDigest.isEqual(passwordDigest, digest);
+        }
+    }
+
+    /**
+     * The trust anchors of a given keystore/truststore snapshot, in the form of a PKIXParameters
+     * template for each revocation setting.
+     */
+    private static final class PKIXSettings {
+        private final KeyStoreIndex keystoreIndex;
+        private final KeyStoreIndex truststoreIndex;
+        private final boolean loadCACerts;
+        private final CertStore crlCertStore;
+        private final PKIXParameters parameters;
+        private final PKIXParameters revocationParameters;
+
+        PKIXSettings(
+            KeyStoreIndex keystoreIndex, KeyStoreIndex truststoreIndex, boolean loadCACerts,
+            CertStore crlCertStore, PKIXParameters parameters, PKIXParameters revocationParameters
+        ) {
+            this.keystoreIndex = keystoreIndex;
+            this.truststoreIndex = truststoreIndex;
+            this.loadCACerts = loadCACerts;
+            this.crlCertStore = crlCertStore;
+            this.parameters = parameters;
+            this.revocationParameters = revocationParameters;
+        }
+
+        boolean isCurrent(
+            KeyStoreIndex keystoreIdx, KeyStoreIndex truststoreIdx, boolean loadCA, CertStore crlStore
+        ) {
+            return keystoreIdx == keystoreIndex && truststoreIdx == truststoreIndex
+                && loadCA == loadCACerts && crlStore == crlCertStore;
+        }
+
+        PKIXParameters getParameters(boolean enableRevocation) {
+            if (enableRevocation) {
+                return revocationParameters;
+            }
+            return parameters;
+        }
+    }
 }
@@ -0,0 +1,224 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.crypto;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.WSCurrentTimeSource;
+import org.apache.wss4j.common.util.WSTimeSource;
+
+/**
+ * A bounded in-memory cache of certificate chains that have been successfully validated by a
+ * Crypto implementation. An entry is keyed by a digest of the chain, together with the
+ * revocation setting and the subject/issuer DN constraints that were applied. It expires after a
+ * configurable TTL (5 minutes by default), and never outlives the earliest "notAfter" date of the
+ * chain or of the trusted certificates it was validated against. Only successful validations are
+ * cached.
+ *
+ * The Crypto implementation is responsible for clearing the cache whenever its trust material
+ * (keystore, truststore or CRLs) changes.
+ */
+public class TrustVerificationCache {
+
+    public static final long DEFAULT_TTL = 60L * 5L;
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(TrustVerificationCache.class);
+
+    private final Map<String, Long> cache = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final int maxEntries;
+    private final long ttl;
+    private WSTimeSource timeSource = new WSCurrentTimeSource();
+
+    public TrustVerificationCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_TTL);
+    }
+
+    /**
+     * @param maxEntries the maximum number of certificate chains to cache
+     * @param timeToLive the maximum length of time to cache a certificate chain in seconds
+     */
+    public TrustVerificationCache(int maxEntries, long timeToLive) {
+        this.maxEntries = maxEntries;
+        this.ttl = timeToLive;
+    }
+
+    /**
+     * Get the key under which the validation result of the given certificate chain is cached.
+     * @param certs the certificate chain
+     * @param enableRevocation whether CRL verification is enabled or not
+     * @param subjectCertConstraints the constraints on the Subject DN of the certificates
+     * @param issuerCertConstraints the constraints on the Issuer DN of the certificates
+     * @return the cache key
+     * @throws WSSecurityException if the certificates could not be encoded
+     */
+    public String getKey(
+        X509Certificate[] certs,
+        boolean enableRevocation,
+        Collection<Pattern> subjectCertConstraints,
+        Collection<Pattern> issuerCertConstraints
+    ) throws WSSecurityException {
+        StringBuilder key = new StringBuilder();
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (X509Certificate cert : certs) {
+                digest.update(cert.getEncoded());
+            }
+            key.append(Base64.getEncoder().encodeToString(digest.digest()));
+        } catch (NoSuchAlgorithmException e) {
+            throw new WSSecurityException(
+                WSSecurityException.ErrorCode.FAILURE, e, "decoding.general"
+            );
+        } catch (CertificateEncodingException e) {
+            throw new WSSecurityException(
+                WSSecurityException.ErrorCode.SECURITY_TOKEN_UNAVAILABLE, e, "encodeError"
+            );
+        }
+
+        key.append('|').append(enableRevocation);
+        appendPatterns(key, subjectCertConstraints);
+        appendPatterns(key, issuerCertConstraints);
+        return key.toString();
+    }
+
+    private static void appendPatterns(StringBuilder key, Collection<Pattern> patterns) {
+        key.append('|');
+        if (patterns != null) {
+            for (Pattern pattern : patterns) {
+                key.append(pattern.flags()).append(':').append(pattern.pattern()).append('\u0000');
+            }
+        }
+    }
+
+    /**
+     * @param key the cache key, as returned by getKey
+     * @return true if a successful validation result is cached for the given key
+     */
+    public boolean contains(String key) {
+        Long expires = cache.get(key);
+        if (expires != null) {
+            if (expires > timeSource.now().getTime()) {
+                hits.incrementAndGet();
+                return true;
+            }
+            cache.remove(key, expires);
+        }
+        misses.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Cache a successful validation result for the given certificate chain.
+     * @param key the cache key, as returned by getKey
+     * @param certs the certificate chain that was validated
+     */
+    public void add(String key, X509Certificate[] certs) {
+        add(key, certs, null);
+    }
+
+    /**
+     * Cache a successful validation result for the given certificate chain. The result never
+     * outlives the earliest "notAfter" date of the chain, or of the trusted certificates it was
+     * validated against.
+     * @param key the cache key, as returned by getKey
+     * @param certs the certificate chain that was validated
+     * @param trustedCerts the (issuer or trust anchor) certificates of the keystore or truststore
+     *                     that the chain was validated against, or null
+     */
+    public void add(String key, X509Certificate[] certs, Collection<X509Certificate> trustedCerts) {
+        long now = timeSource.now().getTime();
+        long expires = now + ttl * 1000L;
+        for (X509Certificate cert : certs) {
+            expires = Math.min(expires, cert.getNotAfter().getTime());
+        }
+        if (trustedCerts != null) {
+            for (X509Certificate cert : trustedCerts) {
+                expires = Math.min(expires, cert.getNotAfter().getTime());
+            }
+        }
+        if (expires <= now || maxEntries <= 0) {
+            return;
+        }
+
+        if (cache.size() >= maxEntries) {
+            processExpiry(now);
+            // Still full, so evict an arbitrary entry to make room
+            Iterator<String> iterator = cache.keySet().iterator();
+            while (cache.size() >= maxEntries && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+        cache.put(key, expires);
+    }
+
+    private void processExpiry(long now) {
+        cache.values().removeIf(expires -> expires <= now);
+    }
+
+    /**
+     * Remove all of the cached validation results
+     */
+    public void clear() {
+        if (!cache.isEmpty()) {
+            LOG.debug("Clearing the certificate trust verification cache");
+            cache.clear();
+        }
+    }
+
+    /**
+     * @return the number of certificate chains currently cached
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    /**
+     * @return the number of lookups for which a validation result was cached
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of lookups for which no validation result was cached
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public void setTimeSource(WSTimeSource timeSource) {
+        this.timeSource = timeSource;
+    }
+}
@@ -0,0 +1,195 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.crypto;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+
+/**
+ * A bounded, thread-safe cache of parsed X.509 certificates, keyed by their encoded (DER) bytes.
+ * It avoids parsing the same BinarySecurityToken certificate (or PKIPath) through a
+ * CertificateFactory on every message.
+ *
+ * Entries are also keyed by the Crypto implementation class and its security provider, as these
+ * determine how the bytes are parsed. Only the parsing is cached - the returned certificates must
+ * still be validated by the caller. When the cache is full, an arbitrary entry is evicted.
+ */
+public class X509CertificateCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    private static final X509CertificateCache INSTANCE = new X509CertificateCache();
+
+    private final Map<Key, CachedCertificates> cache = new ConcurrentHashMap<>();
+    private final int maxEntries;
+
+    public X509CertificateCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param maxEntries the maximum number of certificates (or certificate paths) to cache
+     */
+    public X509CertificateCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * @return the X509CertificateCache shared by the BinarySecurityToken processors
+     */
+    public static X509CertificateCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Get the X509Certificate corresponding to the given encoded certificate.
+     * @param data the encoded (DER) certificate
+     * @param crypto the Crypto instance with which to parse the certificate
+     * @return the (possibly cached) X509Certificate
+     * @throws WSSecurityException if the certificate could not be parsed
+     */
+    public X509Certificate getCertificate(byte[] data, Crypto crypto) throws WSSecurityException {
+        return getCachedCertificate(data, crypto).certs[0];
+    }
+
+    /**
+     * Get the X509Certificates corresponding to the given encoded PKIPath.
+     * @param data the encoded PKIPath
+     * @param crypto the Crypto instance with which to parse the PKIPath
+     * @return the (possibly cached) X509Certificates
+     * @throws WSSecurityException if the PKIPath could not be parsed
+     */
+    public X509Certificate[] getCertificates(byte[] data, Crypto crypto) throws WSSecurityException {
+        Key key = new Key(data, crypto, true);
+        CachedCertificates cached = cache.get(key);
+        if (cached == null) {
+            X509Certificate[] certs = crypto.getCertificatesFromBytes(data);
+            if (certs == null || certs.length == 0) {
+                return certs;
+            }
+            cached = add(key, certs);
+        }
+        return cached.certs.clone();
+    }
+
+    private CachedCertificates getCachedCertificate(
+        byte[] data, Crypto crypto
+    ) throws WSSecurityException {
+        Key key = new Key(data, crypto, false);
+        CachedCertificates cached = cache.get(key);
+        if (cached == null) {
+            try (InputStream in = new ByteArrayInputStream(data)) {
+                X509Certificate cert = crypto.loadCertificate(in);
+                cached = add(key, new X509Certificate[] {cert});
+            } catch (IOException e) {
+                throw new WSSecurityException(
+                    WSSecurityException.ErrorCode.SECURITY_TOKEN_UNAVAILABLE, e, "parseError"
+                );
+            }
+        }
+        return cached;
+    }
+
+    private CachedCertificates add(Key key, X509Certificate[] certs) {
+        CachedCertificates cached = new CachedCertificates(certs);
+        if (maxEntries <= 0) {
+            return cached;
+        }
+        if (cache.size() >= maxEntries) {
+            Iterator<Key> iterator = cache.keySet().iterator();
+            while (cache.size() >= maxEntries && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+        // Copy the bytes, so that the key is not affected by any later change to the caller's array
+        Key storedKey = new Key(key.data.clone(), key.cryptoClass, key.provider, key.path);
+        CachedCertificates existing = cache.putIfAbsent(storedKey, cached);
+        return existing != null ? existing : cached;
+    }
+
+    /**
+     * Remove all of the cached certificates
+     */
+    public void clear() {
+        cache.clear();
+    }
+
+    /**
+     * @return the number of certificates (or certificate paths) currently cached
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    private static final class CachedCertificates {
+        private final X509Certificate[] certs;
+
+        CachedCertificates(X509Certificate[] certs) {
+            this.certs = certs.clone();
+        }
+    }
+
+    private static final class Key {
+        private final byte[] data;
+        private final Class<?> cryptoClass;
+        private final String provider;
+        private final boolean path;
+        private final int hash;
+
+        Key(byte[] data, Crypto crypto, boolean path) {
+            this(data, crypto.getClass(), crypto.getCryptoProvider(), path);
+        }
+
+        Key(byte[] data, Class<?> cryptoClass, String provider, boolean path) {
+            this.data = data;
+            this.cryptoClass = cryptoClass;
+            this.provider = provider;
+            this.path = path;
+            this.hash = 31 * Arrays.hashCode(data) + cryptoClass.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key)obj;
+            return path == other.path
+                && cryptoClass == other.cryptoClass
+                && Objects.equals(provider, other.provider)
+                && Arrays.equals(data, other.data);
+        }
+    }
+}
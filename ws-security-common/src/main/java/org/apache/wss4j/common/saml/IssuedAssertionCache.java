@@ -0,0 +1,267 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.saml;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.WSCurrentTimeSource;
+import org.apache.wss4j.common.util.WSTimeSource;
+import org.apache.wss4j.common.util.XMLUtils;
+import org.joda.time.DateTime;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.saml.common.SAMLVersion;
+import org.opensaml.saml.saml2.core.SubjectConfirmation;
+import org.w3c.dom.Document;
+
+/**
+ * A bounded in-memory cache of (signed) SAML Assertions that have been issued on the outbound
+ * side. Building and signing an Assertion for every message is expensive, even though the
+ * Assertion is often identical for many messages (same Subject, Issuer and attributes) and a
+ * validity period of some minutes is acceptable. If the SAML CallbackHandler sets a cache key
+ * on the SAMLCallback, then the Assertion that is issued for it is cached, and a copy of the same
+ * signed Assertion is handed out for subsequent messages with the same cache key. The Assertion is
+ * cached in its serialized form, which each message parses into a Document of its own, so that
+ * concurrent messages do not share (or lock) a DOM.
+ *
+ * An entry is reused for a configurable TTL (5 minutes by default). It is refreshed (i.e. a new
+ * Assertion is issued) a configurable time (1 minute by default) before the NotOnOrAfter
+ * Condition or SubjectConfirmationData of the Assertion, so that a recipient never receives an
+ * Assertion that is about to expire.
+ *
+ * The cache key must identify all of the information that the CallbackHandler puts into the
+ * Assertion. Assertions with a OneTimeUse (SAML 2.0) Condition are never cached.
+ */
+public class IssuedAssertionCache {
+
+    public static final long DEFAULT_TTL = 60L * 5L;
+    public static final long DEFAULT_REFRESH_BEFORE_EXPIRY = 60L;
+    public static final int DEFAULT_MAX_ENTRIES = 100;
+
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(IssuedAssertionCache.class);
+
+    private final Map<String, Entry> cache = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final int maxEntries;
+    private final long ttl;
+    private final long refreshBeforeExpiry;
+    private WSTimeSource timeSource = new WSCurrentTimeSource();
+
+    public IssuedAssertionCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_TTL, DEFAULT_REFRESH_BEFORE_EXPIRY);
+    }
+
+    /**
+     * @param maxEntries the maximum number of Assertions to cache
+     * @param timeToLive the maximum length of time to reuse an Assertion in seconds
+     * @param refreshBeforeExpiry the length of time in seconds before the expiry of an Assertion
+     *        at which a new Assertion is issued
+     */
+    public IssuedAssertionCache(int maxEntries, long timeToLive, long refreshBeforeExpiry) {
+        this.maxEntries = maxEntries;
+        this.ttl = timeToLive;
+        this.refreshBeforeExpiry = refreshBeforeExpiry;
+    }
+
+    /**
+     * Get a copy of the Assertion that was issued for the cache key of the given SAMLCallback.
+     * @param samlCallback the SAMLCallback, as populated by the SAML CallbackHandler
+     * @return the cached Assertion, or null if the SAMLCallback has no cache key or if no
+     *         Assertion is cached for it
+     * @throws WSSecurityException if the cached Assertion could not be parsed
+     */
+    public SamlAssertionWrapper get(SAMLCallback samlCallback) throws WSSecurityException {
+        String key = samlCallback.getCacheKey();
+        if (key == null) {
+            return null;
+        }
+
+        Entry entry = cache.get(key);
+        if (entry != null) {
+            if (entry.refreshAt > timeSource.now().getTime()) {
+                hits.incrementAndGet();
+                samlCallback.setAssertionElement(entry.parse().getDocumentElement());
+                return new SamlAssertionWrapper(samlCallback);
+            }
+            cache.remove(key, entry);
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Cache the Assertion that was issued for the cache key of the given SAMLCallback. The
+     * Assertion is marshalled (and signed, if a signature was set on it) as part of this call.
+     * @param samlCallback the SAMLCallback, as populated by the SAML CallbackHandler
+     * @param samlAssertion the Assertion that was issued for the SAMLCallback
+     * @return the Assertion to use for the current message. This is a copy of the cached Assertion
+     *         if it was cached, and otherwise the given Assertion.
+     * @throws WSSecurityException if the Assertion could not be marshalled or signed
+     */
+    public SamlAssertionWrapper add(
+        SAMLCallback samlCallback, SamlAssertionWrapper samlAssertion
+    ) throws WSSecurityException {
+        String key = samlCallback.getCacheKey();
+        if (key == null || maxEntries <= 0 || isOneTimeUse(samlAssertion)) {
+            return samlAssertion;
+        }
+
+        long now = timeSource.now().getTime();
+        long refreshAt = now + ttl * 1000L;
+        DateTime notOnOrAfter = getNotOnOrAfter(samlAssertion);
+        if (notOnOrAfter != null) {
+            refreshAt = Math.min(refreshAt, notOnOrAfter.getMillis() - refreshBeforeExpiry * 1000L);
+        }
+        if (refreshAt <= now) {
+            LOG.debug("Not caching the issued SAML Assertion as it expires too soon");
+            return samlAssertion;
+        }
+
+        // Marshal (and sign) the Assertion into a Document of its own, and serialize it
+        Entry entry = new Entry(serialize(samlAssertion), refreshAt);
+
+        if (cache.size() >= maxEntries) {
+            processExpiry(now);
+            // Still full, so evict an arbitrary entry to make room
+            Iterator<String> iterator = cache.keySet().iterator();
+            while (cache.size() >= maxEntries && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+        cache.put(key, entry);
+
+        samlCallback.setAssertionElement(entry.parse().getDocumentElement());
+        return new SamlAssertionWrapper(samlCallback);
+    }
+
+    private static byte[] serialize(SamlAssertionWrapper samlAssertion) throws WSSecurityException {
+        try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            XMLUtils.elementToStream(samlAssertion.toDOM(null), out);
+            return out.toByteArray();
+        } catch (Exception ex) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, ex);
+        }
+    }
+
+    private static boolean isOneTimeUse(SamlAssertionWrapper samlAssertion) {
+        return samlAssertion.getSamlVersion() == SAMLVersion.VERSION_20
+            && samlAssertion.getSaml2().getConditions() != null
+            && samlAssertion.getSaml2().getConditions().getOneTimeUse() != null;
+    }
+
+    private static DateTime getNotOnOrAfter(SamlAssertionWrapper samlAssertion) {
+        DateTime notOnOrAfter = null;
+        if (samlAssertion.getSamlVersion() == SAMLVersion.VERSION_20) {
+            org.opensaml.saml.saml2.core.Assertion assertion = samlAssertion.getSaml2();
+            if (assertion.getConditions() != null) {
+                notOnOrAfter = assertion.getConditions().getNotOnOrAfter();
+            }
+            if (assertion.getSubject() != null) {
+                for (SubjectConfirmation confirmation : assertion.getSubject().getSubjectConfirmations()) {
+                    if (confirmation.getSubjectConfirmationData() != null) {
+                        notOnOrAfter =
+                            min(notOnOrAfter, confirmation.getSubjectConfirmationData().getNotOnOrAfter());
+                    }
+                }
+            }
+        } else if (samlAssertion.getSaml1().getConditions() != null) {
+            notOnOrAfter = samlAssertion.getSaml1().getConditions().getNotOnOrAfter();
+        }
+        return notOnOrAfter;
+    }
+
+    private static DateTime min(DateTime first, DateTime second) {
+        if (first == null || second != null && second.isBefore(first)) {
+            return second;
+        }
+        return first;
+    }
+
+    private void processExpiry(long now) {
+        cache.values().removeIf(entry -> entry.refreshAt <= now);
+    }
+
+    /**
+     * Remove all of the cached Assertions, e.g. when the signing key changes
+     */
+    public void clear() {
+        if (!cache.isEmpty()) {
+            LOG.debug("Clearing the issued SAML Assertion cache");
+            cache.clear();
+        }
+    }
+
+    /**
+     * @return the number of Assertions currently cached
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    /**
+     * @return the number of lookups for which an Assertion was cached
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of lookups for which no Assertion was cached
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public void setTimeSource(WSTimeSource timeSource) {
+        this.timeSource = timeSource;
+    }
+
+    /**
+     * A cached Assertion. The serialized Assertion is never modified, and so may be parsed by
+     * concurrent threads.
+     */
+    private static final class Entry {
+        private final byte[] assertion;
+        private final long refreshAt;
+
+        Entry(byte[] assertion, long refreshAt) {
+            this.assertion = assertion;
+            this.refreshAt = refreshAt;
+        }
+
+        Document parse() throws WSSecurityException {
+            try {
+                return XMLObjectProviderRegistrySupport.getParserPool().parse(
+                    new ByteArrayInputStream(assertion)
+                );
+            } catch (Exception ex) {
+                throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.saml;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.namespace.QName;
+
+import net.shibboleth.utilities.java.support.xml.QNameSupport;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.core.xml.io.Unmarshaller;
+import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.saml.saml2.core.AttributeStatement;
+import org.opensaml.saml.saml2.core.AuthnStatement;
+import org.opensaml.saml.saml2.core.AuthzDecisionStatement;
+import org.opensaml.saml.saml2.core.Statement;
+import org.opensaml.saml.saml2.core.impl.AssertionImpl;
+import org.opensaml.saml.saml2.core.impl.AssertionUnmarshaller;
+import org.w3c.dom.Element;
+
+/**
+ * A SAML 2.0 Assertion that is unmarshalled from a DOM Element without its statements. The
+ * Issuer, Signature, Subject, Conditions and Advice of the Assertion are unmarshalled up front,
+ * but the (AuthnStatement, AttributeStatement etc.) statement children are only unmarshalled
+ * when they are first accessed, e.g. when getAttributeStatements() is called. Statements of a
+ * given type are unmarshalled independently of the other statements, and are inserted in
+ * document order.
+ *
+ * Unmarshalling a statement does not release the cached DOM of the Assertion.
+ */
+final class LazyAssertion extends AssertionImpl {
+
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(LazyAssertion.class);
+
+    /**
+     * The statement Elements in document order, or null once they have all been unmarshalled
+     */
+    private List<Element> statementElements;
+
+    /**
+     * The unmarshalled objects of the statement Elements, which are null until unmarshalled
+     */
+    private XMLObject[] statementObjects;
+
+    private LazyAssertion(String namespaceURI, String elementLocalName, String namespacePrefix) {
+        super(namespaceURI, elementLocalName, namespacePrefix);
+    }
+
+    /**
+     * Unmarshal the given SAML 2.0 Assertion Element, apart from its statements
+     * @param element the Assertion Element
+     * @return the LazyAssertion
+     * @throws WSSecurityException if the Element could not be unmarshalled
+     */
+    static LazyAssertion fromDom(Element element) throws WSSecurityException {
+        try {
+            LazyAssertion assertion =
+                (LazyAssertion)new LazyAssertionUnmarshaller().unmarshall(element);
+            if (assertion.statementElements != null) {
+                assertion.statementObjects = new XMLObject[assertion.statementElements.size()];
+            }
+            return assertion;
+        } catch (UnmarshallingException ex) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, ex, "empty",
+                                          new Object[] {"Error unmarshalling a SAML assertion"});
+        }
+    }
+
+    @Override
+    public List<Statement> getStatements() {
+        unmarshalStatements(null);
+        return super.getStatements();
+    }
+
+    @Override
+    public List<Statement> getStatements(QName typeOrName) {
+        unmarshalStatements(null);
+        return super.getStatements(typeOrName);
+    }
+
+    @Override
+    public List<AuthnStatement> getAuthnStatements() {
+        unmarshalStatements(AuthnStatement.DEFAULT_ELEMENT_NAME);
+        return super.getAuthnStatements();
+    }
+
+    @Override
+    public List<AuthzDecisionStatement> getAuthzDecisionStatements() {
+        unmarshalStatements(AuthzDecisionStatement.DEFAULT_ELEMENT_NAME);
+        return super.getAuthzDecisionStatements();
+    }
+
+    @Override
+    public List<AttributeStatement> getAttributeStatements() {
+        unmarshalStatements(AttributeStatement.DEFAULT_ELEMENT_NAME);
+        return super.getAttributeStatements();
+    }
+
+    @Override
+    public List<XMLObject> getOrderedChildren() {
+        unmarshalStatements(null);
+        return super.getOrderedChildren();
+    }
+
+    /**
+     * Unmarshal the statements with the given element name, or all of the statements if it is null
+     */
+    private synchronized void unmarshalStatements(QName elementName) {
+        if (statementElements == null || statementObjects == null) {
+            // Nothing to unmarshal, or the Assertion itself is still being unmarshalled
+            return;
+        }
+
+        // Adding a child releases the DOM of this object, which is still valid
+        Element dom = getDOM();
+        List<Statement> statements = super.getStatements();
+        int index = 0;
+        boolean complete = true;
+        for (int i = 0; i < statementElements.size(); i++) {
+            if (statementObjects[i] == null) {
+                Element statementElement = statementElements.get(i);
+                if (elementName == null || elementName.equals(QNameSupport.getNodeQName(statementElement))) {
+                    statementObjects[i] = unmarshalStatement(statementElement);
+                    // The same as AssertionUnmarshaller, which ignores anything but a Statement
+                    if (statementObjects[i] instanceof Statement) {
+                        statements.add(Math.min(index, statements.size()), (Statement)statementObjects[i]);
+                    }
+                } else {
+                    complete = false;
+                }
+            }
+            if (statementObjects[i] instanceof Statement) {
+                index++;
+            }
+        }
+        if (complete) {
+            statementElements = null;
+            statementObjects = null;
+        }
+        if (dom != null && getDOM() == null) {
+            setDOM(dom);
+        }
+    }
+
+    private static XMLObject unmarshalStatement(Element statementElement) {
+        Unmarshaller unmarshaller =
+            XMLObjectProviderRegistrySupport.getUnmarshallerFactory().getUnmarshaller(statementElement);
+        try {
+            return unmarshaller.unmarshall(statementElement);
+        } catch (UnmarshallingException | RuntimeException ex) {
+            // e.g. an IllegalArgumentException for an invalid dateTime value
+            LOG.debug(ex.getMessage(), ex);
+            throw new IllegalStateException("Error unmarshalling a SAML statement", ex);
+        }
+    }
+
+    /**
+     * An AssertionUnmarshaller that creates a LazyAssertion, and defers the unmarshalling of
+     * its statements.
+     */
+    private static final class LazyAssertionUnmarshaller extends AssertionUnmarshaller {
+
+        @Override
+        protected XMLObject buildXMLObject(Element domElement) {
+            return new LazyAssertion(
+                domElement.getNamespaceURI(), domElement.getLocalName(), domElement.getPrefix()
+            );
+        }
+
+        @Override
+        protected void unmarshallChildElement(XMLObject xmlObject, Element childElement)
+            throws UnmarshallingException {
+            if (isStatement(childElement)) {
+                LazyAssertion assertion = (LazyAssertion)xmlObject;
+                if (assertion.statementElements == null) {
+                    assertion.statementElements = new ArrayList<>();
+                }
+                assertion.statementElements.add(childElement);
+            } else {
+                super.unmarshallChildElement(xmlObject, childElement);
+            }
+        }
+
+        private static boolean isStatement(Element element) {
+            if (!Statement.DEFAULT_ELEMENT_NAME.getNamespaceURI().equals(element.getNamespaceURI())) {
+                return false;
+            }
+            String localName = element.getLocalName();
+            return Statement.DEFAULT_ELEMENT_LOCAL_NAME.equals(localName)
+                || AuthnStatement.DEFAULT_ELEMENT_LOCAL_NAME.equals(localName)
+                || AuthzDecisionStatement.DEFAULT_ELEMENT_LOCAL_NAME.equals(localName)
+                || AttributeStatement.DEFAULT_ELEMENT_LOCAL_NAME.equals(localName);
+        }
+    }
+}
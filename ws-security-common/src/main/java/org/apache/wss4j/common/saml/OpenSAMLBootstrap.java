@@ -66,6 +66,21 @@ public final class OpenSAMLBootstrap {
         "/saml2-xacml2-profile.xml",
     };
 
+    /**
+     * The configuration files of the objects that WSS4J itself uses, i.e. SAML 1.1 and 2.0 Assertions
+     * (including the delegation restriction Condition) with XML Signature and Encryption. The SAML
+     * protocol, metadata and XACML objects are not included.
+     */
+    private static final String[] WSS4J_XML_CONFIGS = {
+        "/default-config.xml",
+        "/schema-config.xml",
+        "/saml1-assertion-config.xml",
+        "/saml2-assertion-config.xml",
+        "/saml2-assertion-delegation-restriction-config.xml",
+        "/signature-config.xml",
+        "/encryption-config.xml",
+    };
+
     private OpenSAMLBootstrap() {
         // complete
     }
@@ -76,13 +91,24 @@ public final class OpenSAMLBootstrap {
      * @throws ConfigurationException thrown if there is a problem initializing the OpenSAML library
      */
     public static synchronized void bootstrap() throws XMLConfigurationException {
+        bootstrap(true);
+    }
+
+    /**
+     * Initializes the OpenSAML library.
+     *
+     * @param includeAllConfigs whether to load all of the default configurations, or only the
+     *        configurations of the objects that WSS4J itself uses, which is considerably faster
+     * @throws ConfigurationException thrown if there is a problem initializing the OpenSAML library
+     */
+    public static synchronized void bootstrap(boolean includeAllConfigs) throws XMLConfigurationException {
         ClassLoader loader = Thread.currentThread().getContextClassLoader();
         try {
             XMLConfigurator configurator = new XMLConfigurator();
 
             Thread.currentThread().setContextClassLoader(XMLObjectProviderRegistrySupport.class.getClassLoader());
 
-            for (String config : XML_CONFIGS) {
+            for (String config : includeAllConfigs ? XML_CONFIGS : WSS4J_XML_CONFIGS) {
                 //most are found in the Configuration.class classloader
                 InputStream ins = Configuration.class.getResourceAsStream(config);
                 if (ins == null) {
@@ -59,7 +59,12 @@ public final class OpenSAMLUtil {
     private static XMLObjectBuilderFactory builderFactory;
     private static MarshallerFactory marshallerFactory;
     private static UnmarshallerFactory unmarshallerFactory;
-    private static boolean samlEngineInitialized = false;
+    private static volatile boolean samlEngineInitialized = false;
+
+    // Resolved once after the library has been bootstrapped, as they are needed for every Assertion
+    private static Marshaller saml1AssertionMarshaller;
+    private static Marshaller saml2AssertionMarshaller;
+    private static XMLObjectBuilder<Signature> signatureBuilder;
 
     private OpenSAMLUtil() {
         // Complete
@@ -68,7 +73,27 @@ public final class OpenSAMLUtil {
     /**
      * Initialise the SAML library
      */
-    public static synchronized void initSamlEngine() {
+    public static void initSamlEngine() {
+        initSamlEngine(true);
+    }
+
+    /**
+     * Initialise the SAML library. Only the first call has an effect, and so an application that
+     * wants to initialise the library with only the configurations that WSS4J itself uses (see
+     * OpenSAMLBootstrap) must call this method with false on startup, before any other SAML
+     * processing.
+     *
+     * @param includeAllConfigs whether to load all of the default OpenSAML configurations,
+     *        including the SAML protocol, metadata and XACML objects
+     */
+    public static void initSamlEngine(boolean includeAllConfigs) {
+        if (!samlEngineInitialized) {
+            doInitSamlEngine(includeAllConfigs);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static synchronized void doInitSamlEngine(boolean includeAllConfigs) {
         if (!samlEngineInitialized) {
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Initializing the opensaml2 library...");
@@ -83,7 +108,7 @@ public final class OpenSAMLUtil {
                                    ConfigurationService.DEFAULT_PARTITION_NAME);
 
             try {
-                OpenSAMLBootstrap.bootstrap();
+                OpenSAMLBootstrap.bootstrap(includeAllConfigs);
 
                 SAMLConfiguration samlConfiguration = new SAMLConfiguration();
 
@@ -94,6 +119,13 @@ public final class OpenSAMLUtil {
                 marshallerFactory = XMLObjectProviderRegistrySupport.getMarshallerFactory();
                 unmarshallerFactory = XMLObjectProviderRegistrySupport.getUnmarshallerFactory();
 
+                saml1AssertionMarshaller =
+                    marshallerFactory.getMarshaller(org.opensaml.saml.saml1.core.Assertion.DEFAULT_ELEMENT_NAME);
+                saml2AssertionMarshaller =
+                    marshallerFactory.getMarshaller(org.opensaml.saml.saml2.core.Assertion.DEFAULT_ELEMENT_NAME);
+                signatureBuilder =
+                    (XMLObjectBuilder<Signature>)builderFactory.getBuilder(Signature.DEFAULT_ELEMENT_NAME);
+
                 try {
                     configureParserPool(providerRegistry);
                 } catch (Throwable t) {
@@ -174,7 +206,7 @@ public final class OpenSAMLUtil {
         Document doc,
         boolean signObject
     ) throws WSSecurityException {
-        Marshaller marshaller = marshallerFactory.getMarshaller(xmlObject);
+        Marshaller marshaller = getMarshaller(xmlObject);
         Element element = null;
         DocumentFragment frag = doc == null ? null : doc.createDocumentFragment();
         try {
@@ -208,6 +240,21 @@ public final class OpenSAMLUtil {
         return element;
     }
 
+    private static Marshaller getMarshaller(XMLObject xmlObject) {
+        if (xmlObject.getSchemaType() == null) {
+            // The factory would select the marshaller by element name here
+            QName elementName = xmlObject.getElementQName();
+            if (org.opensaml.saml.saml2.core.Assertion.DEFAULT_ELEMENT_NAME.equals(elementName)
+                && saml2AssertionMarshaller != null) {
+                return saml2AssertionMarshaller;
+            } else if (org.opensaml.saml.saml1.core.Assertion.DEFAULT_ELEMENT_NAME.equals(elementName)
+                && saml1AssertionMarshaller != null) {
+                return saml1AssertionMarshaller;
+            }
+        }
+        return marshallerFactory.getMarshaller(xmlObject);
+    }
+
     private static void signXMLObject(XMLObject xmlObject) throws WSSecurityException {
         if (xmlObject instanceof org.opensaml.saml.saml1.core.Response) {
             org.opensaml.saml.saml1.core.Response response =
@@ -277,11 +324,9 @@ public final class OpenSAMLUtil {
      *
      * @return Signature
      */
-    @SuppressWarnings("unchecked")
     public static Signature buildSignature() {
         QName qName = Signature.DEFAULT_ELEMENT_NAME;
-        XMLObjectBuilder<Signature> builder =
-            (XMLObjectBuilder<Signature>)builderFactory.getBuilder(qName);
+        XMLObjectBuilder<Signature> builder = signatureBuilder;
         if (builder == null) {
             LOG.error(
                 "Unable to retrieve builder for object QName "
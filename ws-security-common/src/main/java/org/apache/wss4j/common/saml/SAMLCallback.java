@@ -115,6 +115,11 @@ public class SAMLCallback implements Callback {
 
     private String signatureDigestAlgorithm;
 
+    /**
+     * The key under which the issued Assertion can be cached, see IssuedAssertionCache
+     */
+    private String cacheKey;
+
     /**
      * Constructor SAMLCallback creates a new SAMLCallback instance.
      */
@@ -406,6 +411,26 @@ public class SAMLCallback implements Callback {
         return issuerQualifier;
     }
 
+    /**
+     * Set the key under which the issued (signed) Assertion can be cached and reused for
+     * subsequent messages, if an IssuedAssertionCache is configured. The key must identify
+     * all of the information that the CallbackHandler puts into the Assertion (Subject,
+     * Issuer, statements, signing key etc). It is not set by default, and so the Assertion
+     * is not cached.
+     * @param cacheKey the key under which the issued Assertion can be cached
+     */
+    public void setCacheKey(String cacheKey) {
+        this.cacheKey = cacheKey;
+    }
+
+    /**
+     * Get the key under which the issued Assertion can be cached
+     * @return the key under which the issued Assertion can be cached
+     */
+    public String getCacheKey() {
+        return cacheKey;
+    }
+
     public void setIssuerQualifier(String issuerQualifier) {
         this.issuerQualifier = issuerQualifier;
     }
@@ -42,6 +42,7 @@ import org.opensaml.saml.common.SAMLObject;
 import org.opensaml.saml.common.SAMLObjectContentReference;
 import org.opensaml.saml.common.SAMLVersion;
 import org.opensaml.saml.common.SignableSAMLObject;
+import org.opensaml.saml.common.xml.SAMLConstants;
 import org.opensaml.saml.saml1.core.AttributeStatement;
 import org.opensaml.saml.saml1.core.AuthenticationStatement;
 import org.opensaml.saml.saml1.core.AuthorizationDecisionStatement;
@@ -127,6 +128,11 @@ public class SamlAssertionWrapper {
      */
     private final boolean fromDOM;
 
+    /**
+     * Whether to defer unmarshalling the statements of a SAML 2.0 Assertion until they are accessed
+     */
+    private final boolean lazy;
+
     /**
      * Constructor SamlAssertionWrapper creates a new SamlAssertionWrapper instance.
      *
@@ -134,8 +140,28 @@ public class SamlAssertionWrapper {
      * @throws WSSecurityException
      */
     public SamlAssertionWrapper(Element element) throws WSSecurityException {
+        this(element, false);
+    }
+
+    /**
+     * Constructor SamlAssertionWrapper creates a new SamlAssertionWrapper instance.
+     *
+     * If lazy is true, then the statements (AuthnStatement, AttributeStatement etc.) of a
+     * SAML 2.0 Assertion are only unmarshalled when they are first accessed, e.g. via
+     * getSaml2().getAttributeStatements(). The ID, Issuer, Subject, Conditions and Signature
+     * are unmarshalled up front. A SAML 1.1 Assertion is always unmarshalled in full, as its
+     * Subject is contained in its statements. As the getters of the statements cannot throw a
+     * checked exception, an IllegalStateException is thrown if a statement cannot be
+     * unmarshalled when it is accessed.
+     *
+     * @param element of type Element
+     * @param lazy whether to defer unmarshalling the statements of the Assertion
+     * @throws WSSecurityException
+     */
+    public SamlAssertionWrapper(Element element, boolean lazy) throws WSSecurityException {
         OpenSAMLUtil.initSamlEngine();
 
+        this.lazy = lazy;
         parseElement(element);
         fromDOM = true;
     }
@@ -166,6 +192,7 @@ public class SamlAssertionWrapper {
                                                         + "SamlAssertionWrapper"});
         }
         fromDOM = false;
+        lazy = false;
     }
 
     /**
@@ -178,6 +205,7 @@ public class SamlAssertionWrapper {
     public SamlAssertionWrapper(SAMLCallback samlCallback) throws WSSecurityException {
         OpenSAMLUtil.initSamlEngine();
 
+        lazy = false;
         if (samlCallback.getAssertionElement() != null) {
             parseElement(samlCallback.getAssertionElement());
             fromDOM = true;
@@ -719,6 +747,16 @@ public class SamlAssertionWrapper {
         return signatureKeyInfo;
     }
 
+    /**
+     * Set the SAMLKeyInfo associated with the signature of the assertion, without verifying
+     * the signature. This is only for an assertion whose signature is already known to be
+     * valid, e.g. as it was found in a ValidatedAssertionCache.
+     * @param signatureKeyInfo the SAMLKeyInfo associated with the signature of the assertion
+     */
+    public void setSignatureKeyInfo(SAMLKeyInfo signatureKeyInfo) {
+        this.signatureKeyInfo = signatureKeyInfo;
+    }
+
     /**
      * Get the SAMLKeyInfo associated with the Subject KeyInfo
      * @return the SAMLKeyInfo associated with the Subject KeyInfo
@@ -976,7 +1014,13 @@ public class SamlAssertionWrapper {
      * Parse the DOM Element into Opensaml objects.
      */
     private void parseElement(Element element) throws WSSecurityException {
-        XMLObject xmlObject = OpenSAMLUtil.fromDom(element);
+        XMLObject xmlObject = null;
+        if (lazy && org.opensaml.saml.saml2.core.Assertion.DEFAULT_ELEMENT_LOCAL_NAME.equals(element.getLocalName())
+            && SAMLConstants.SAML20_NS.equals(element.getNamespaceURI())) {
+            xmlObject = LazyAssertion.fromDom(element);
+        } else {
+            xmlObject = OpenSAMLUtil.fromDom(element);
+        }
         if (xmlObject instanceof org.opensaml.saml.saml1.core.Assertion) {
             this.samlObject = (SAMLObject)xmlObject;
             samlVersion = SAMLVersion.VERSION_11;
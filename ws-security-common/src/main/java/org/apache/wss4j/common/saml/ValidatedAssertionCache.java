@@ -0,0 +1,281 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.saml;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.wss4j.common.crypto.JCEPrimitivePool;
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.WSCurrentTimeSource;
+import org.apache.wss4j.common.util.WSTimeSource;
+import org.apache.xml.security.c14n.CanonicalizationException;
+import org.apache.xml.security.c14n.Canonicalizer;
+import org.apache.xml.security.c14n.InvalidCanonicalizerException;
+import org.joda.time.DateTime;
+import org.opensaml.saml.common.SAMLVersion;
+import org.w3c.dom.Element;
+
+/**
+ * A bounded in-memory cache of signed SAML Assertions that have been successfully validated, i.e.
+ * whose signature has been verified and whose signing credential has been trusted. A client
+ * typically reuses an Assertion that it obtained from an STS for many requests, and a hit in this
+ * cache allows the recipient to skip the signature and trust validation of the Assertion. The
+ * Conditions of the Assertion are still checked for every request.
+ *
+ * An entry is keyed by the Assertion ID together with a digest of the (inclusive) canonical form
+ * of the Assertion, so that a modified Assertion never matches. The entry records the credential
+ * (certificate or public key) with which the signature was verified, and a lookup only matches if
+ * the KeyInfo of the Assertion resolves to exactly the same credential. It expires after a
+ * configurable TTL (5 minutes by default), and never outlives the NotOnOrAfter Condition of the
+ * Assertion or the "notAfter" date of the signing certificate. Assertions with a OneTimeUse
+ * (SAML 2.0) or a DoNotCache (SAML 1.1) Condition are never cached.
+ *
+ * The SamlAssertionValidator still checks the revocation status of the signing certificate for a
+ * cached Assertion if revocation is enabled. Otherwise, the TTL bounds the length of time that a
+ * change to the trust settings can go unnoticed for a cached Assertion.
+ *
+ * A cache must only be shared between configurations that use the same signature trust settings
+ * (signature verification Crypto, certificate constraints, revocation etc).
+ */
+public class ValidatedAssertionCache {
+
+    public static final long DEFAULT_TTL = 60L * 5L;
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(ValidatedAssertionCache.class);
+
+    private final Map<String, Entry> cache = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final int maxEntries;
+    private final long ttl;
+    private WSTimeSource timeSource = new WSCurrentTimeSource();
+
+    public ValidatedAssertionCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_TTL);
+    }
+
+    /**
+     * @param maxEntries the maximum number of Assertions to cache
+     * @param timeToLive the maximum length of time to cache an Assertion in seconds
+     */
+    public ValidatedAssertionCache(int maxEntries, long timeToLive) {
+        this.maxEntries = maxEntries;
+        this.ttl = timeToLive;
+    }
+
+    /**
+     * Get the key under which the validation result of the given Assertion is cached.
+     * @param samlAssertion the (DOM-based) Assertion
+     * @return the cache key, or null if the Assertion must not be cached
+     * @throws WSSecurityException if the Assertion could not be canonicalized
+     */
+    public String getKey(SamlAssertionWrapper samlAssertion) throws WSSecurityException {
+        Element element = samlAssertion.getElement();
+        String id = samlAssertion.getId();
+        if (element == null || id == null || "".equals(id) || !samlAssertion.isSigned()
+            || isDoNotCache(samlAssertion)) {
+            return null;
+        }
+
+        MessageDigest digest = null;
+        try {
+            Canonicalizer canon = Canonicalizer.getInstance(Canonicalizer.ALGO_ID_C14N_OMIT_COMMENTS);
+            byte[] canonicalBytes = canon.canonicalizeSubtree(element);
+            digest = JCEPrimitivePool.getMessageDigest("SHA-256", null);
+            return id + '|' + Base64.getEncoder().encodeToString(digest.digest(canonicalBytes));
+        } catch (InvalidCanonicalizerException | CanonicalizationException | GeneralSecurityException e) {
+            throw new WSSecurityException(
+                WSSecurityException.ErrorCode.FAILURE, e, "decoding.general"
+            );
+        } finally {
+            JCEPrimitivePool.returnMessageDigest(digest, null);
+        }
+    }
+
+    private static boolean isDoNotCache(SamlAssertionWrapper samlAssertion) {
+        if (samlAssertion.getSamlVersion() == SAMLVersion.VERSION_20) {
+            org.opensaml.saml.saml2.core.Conditions conditions =
+                samlAssertion.getSaml2().getConditions();
+            return conditions != null && conditions.getOneTimeUse() != null;
+        }
+        org.opensaml.saml.saml1.core.Conditions conditions =
+            samlAssertion.getSaml1().getConditions();
+        return conditions != null && !conditions.getDoNotCacheConditions().isEmpty();
+    }
+
+    /**
+     * @param key the cache key, as returned by getKey
+     * @param signatureKeyInfo the credential that the KeyInfo of the Signature of the Assertion
+     *        resolves to
+     * @return true if a successful validation result is cached for the given key, and the
+     *         signature was verified with the given credential
+     * @throws WSSecurityException if the credential could not be encoded
+     */
+    public boolean contains(String key, SAMLKeyInfo signatureKeyInfo) throws WSSecurityException {
+        Entry entry = cache.get(key);
+        if (entry != null) {
+            if (entry.expires <= timeSource.now().getTime()) {
+                cache.remove(key, entry);
+            } else if (MessageDigest.isEqual(entry.credential, getEncodedCredential(signatureKeyInfo))) {
+                hits.incrementAndGet();
+                return true;
+            } else {
+                LOG.debug("The cached SAML Assertion was verified with a different credential");
+            }
+        }
+        misses.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Cache a successful validation result for the given Assertion, together with the credential
+     * with which its signature was verified.
+     * @param key the cache key, as returned by getKey
+     * @param samlAssertion the Assertion that was validated
+     * @throws WSSecurityException if the credential could not be encoded
+     */
+    public void add(String key, SamlAssertionWrapper samlAssertion) throws WSSecurityException {
+        byte[] credential = getEncodedCredential(samlAssertion.getSignatureKeyInfo());
+        if (credential == null) {
+            return;
+        }
+
+        long now = timeSource.now().getTime();
+        long expires = now + ttl * 1000L;
+
+        DateTime notOnOrAfter = null;
+        if (samlAssertion.getSamlVersion() == SAMLVersion.VERSION_20) {
+            if (samlAssertion.getSaml2().getConditions() != null) {
+                notOnOrAfter = samlAssertion.getSaml2().getConditions().getNotOnOrAfter();
+            }
+        } else if (samlAssertion.getSaml1().getConditions() != null) {
+            notOnOrAfter = samlAssertion.getSaml1().getConditions().getNotOnOrAfter();
+        }
+        if (notOnOrAfter != null) {
+            expires = Math.min(expires, notOnOrAfter.getMillis());
+        }
+
+        SAMLKeyInfo signatureKeyInfo = samlAssertion.getSignatureKeyInfo();
+        if (signatureKeyInfo.getCerts() != null) {
+            for (X509Certificate cert : signatureKeyInfo.getCerts()) {
+                expires = Math.min(expires, cert.getNotAfter().getTime());
+            }
+        }
+        if (expires <= now || maxEntries <= 0) {
+            return;
+        }
+
+        if (cache.size() >= maxEntries) {
+            processExpiry(now);
+            // Still full, so evict an arbitrary entry to make room
+            Iterator<String> iterator = cache.keySet().iterator();
+            while (cache.size() >= maxEntries && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+        cache.put(key, new Entry(expires, credential));
+    }
+
+    /**
+     * Get the encoded signing certificate, or else the encoded public key, of the given credential
+     */
+    private static byte[] getEncodedCredential(SAMLKeyInfo signatureKeyInfo)
+        throws WSSecurityException {
+        if (signatureKeyInfo == null) {
+            return null;
+        }
+        X509Certificate[] certs = signatureKeyInfo.getCerts();
+        if (certs != null && certs.length > 0 && certs[0] != null) {
+            try {
+                return certs[0].getEncoded();
+            } catch (CertificateEncodingException e) {
+                throw new WSSecurityException(
+                    WSSecurityException.ErrorCode.SECURITY_TOKEN_UNAVAILABLE, e, "encodeError"
+                );
+            }
+        } else if (signatureKeyInfo.getPublicKey() != null) {
+            return signatureKeyInfo.getPublicKey().getEncoded();
+        }
+        return null;
+    }
+
+    private void processExpiry(long now) {
+        cache.values().removeIf(entry -> entry.expires <= now);
+    }
+
+    /**
+     * Remove all of the cached validation results, e.g. when the signature trust settings change
+     */
+    public void clear() {
+        if (!cache.isEmpty()) {
+            LOG.debug("Clearing the validated SAML Assertion cache");
+            cache.clear();
+        }
+    }
+
+    /**
+     * @return the number of Assertions currently cached
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    /**
+     * @return the number of lookups for which a validation result was cached
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of lookups for which no validation result was cached
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public void setTimeSource(WSTimeSource timeSource) {
+        this.timeSource = timeSource;
+    }
+
+    /**
+     * A cached validation result
+     */
+    private static final class Entry {
+        private final long expires;
+        private final byte[] credential;
+
+        Entry(long expires, byte[] credential) {
+            this.expires = expires;
+            this.credential = credential;
+        }
+    }
+}
@@ -242,6 +242,23 @@ public class BinarySecurity {
         }
     }
 
+    /**
+     * Set the token information, whose Base-64 encoding has already been computed. The data
+     * array is not copied.
+     *
+     * @param data the token information
+     * @param base64Data the Base-64 encoding of the token information
+     */
+    protected void setToken(byte[] data, String base64Data) throws WSSecurityException {
+        if (storeBytesInAttachment && attachmentCallbackHandler != null) {
+            setToken(data);
+        } else {
+            Text node = getFirstNode();
+            node.setData(base64Data);
+            this.data = data;
+        }
+    }
+
     /**
      * Set the raw token data, without Base-64 encoding it into the Element.
      */
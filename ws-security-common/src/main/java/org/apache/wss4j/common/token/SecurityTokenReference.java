@@ -20,7 +20,6 @@
 package org.apache.wss4j.common.token;
 
 import java.math.BigInteger;
-import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
 import java.util.Arrays;
 import java.util.Base64;
@@ -36,10 +35,8 @@ import org.apache.wss4j.common.bsp.BSPEnforcer;
 import org.apache.wss4j.common.bsp.BSPRule;
 import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.crypto.CryptoType;
-import org.apache.wss4j.common.crypto.Merlin;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.util.DOM2Writer;
-import org.apache.wss4j.common.util.KeyUtils;
 import org.apache.wss4j.common.util.XMLUtils;
 
 /**
@@ -183,15 +180,8 @@ public class SecurityTokenReference {
     public void setKeyIdentifier(X509Certificate cert)
         throws WSSecurityException {
         Document doc = element.getOwnerDocument();
-        byte[] data = null;
-        try {
-            data = cert.getEncoded();
-        } catch (CertificateEncodingException e) {
-            throw new WSSecurityException(
-                WSSecurityException.ErrorCode.SECURITY_TOKEN_UNAVAILABLE, e, "encodeError"
-            );
-        }
-        Text text = doc.createTextNode(Base64.getMimeEncoder().encodeToString(data));
+        String encoded = X509TokenTemplateCache.getInstance().getTemplate(cert).getBase64Encoded();
+        Text text = doc.createTextNode(encoded);
 
         createKeyIdentifier(doc, X509_V3_TYPE, text, true);
     }
@@ -217,14 +207,9 @@ public class SecurityTokenReference {
         }
 
         Document doc = element.getOwnerDocument();
-        // Fall back to Merlin if crypto parameter is null
-        Crypto skiCrypto = crypto;
-        if (skiCrypto == null) {
-            skiCrypto = new Merlin();
-        }
-        byte[] data = skiCrypto.getSKIBytesFromCert(cert);
+        String ski = X509TokenTemplateCache.getInstance().getTemplate(cert).getSKI(crypto);
 
-        Text text = doc.createTextNode(Base64.getMimeEncoder().encodeToString(data));
+        Text text = doc.createTextNode(ski);
         createKeyIdentifier(doc, SKI_URI, text, true);
     }
 
@@ -240,17 +225,10 @@ public class SecurityTokenReference {
      */
     public void setKeyIdentifierThumb(X509Certificate cert) throws WSSecurityException {
         Document doc = element.getOwnerDocument();
-        byte[] encodedCert = null;
-        try {
-            encodedCert = cert.getEncoded();
-        } catch (CertificateEncodingException e1) {
-            throw new WSSecurityException(
-                WSSecurityException.ErrorCode.SECURITY_TOKEN_UNAVAILABLE, e1, "encodeError"
-            );
-        }
+        X509TokenTemplateCache.Template template =
+            X509TokenTemplateCache.getInstance().getTemplate(cert);
         try {
-            byte[] encodedBytes = KeyUtils.generateDigest(encodedCert);
-            Text text = doc.createTextNode(Base64.getMimeEncoder().encodeToString(encodedBytes));
+            Text text = doc.createTextNode(template.getThumbprint());
             createKeyIdentifier(doc, THUMB_URI, text, true);
         } catch (WSSecurityException e1) {
             throw new WSSecurityException(
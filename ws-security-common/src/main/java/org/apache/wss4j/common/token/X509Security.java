@@ -24,14 +24,11 @@ import org.apache.wss4j.common.bsp.BSPEnforcer;
 import org.apache.wss4j.common.bsp.BSPRule;
 import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.crypto.Merlin;
+import org.apache.wss4j.common.crypto.X509CertificateCache;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.ByteArrayInputStream;
-import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
 
 /**
@@ -92,15 +89,8 @@ public class X509Security extends BinarySecurity {
             throw new WSSecurityException(
                 WSSecurityException.ErrorCode.FAILURE, "invalidCertData", new Object[] {"0"});
         }
-        try (InputStream in = new ByteArrayInputStream(data)) {
-            cachedCert = certCrypto.loadCertificate(in);
-            return cachedCert;
-        } catch (IOException e) {
-            throw new WSSecurityException(
-                WSSecurityException.ErrorCode.SECURITY_TOKEN_UNAVAILABLE, e, "parseError"
-            );
-        }
-
+        cachedCert = X509CertificateCache.getInstance().getCertificate(data, certCrypto);
+        return cachedCert;
     }
 
     /**
@@ -117,12 +107,8 @@ public class X509Security extends BinarySecurity {
             throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, "noCert");
         }
         cachedCert = cert;
-        try {
-            setToken(cert.getEncoded());
-        } catch (CertificateEncodingException e) {
-            throw new WSSecurityException(
-                WSSecurityException.ErrorCode.SECURITY_TOKEN_UNAVAILABLE, e, "encodeError"
-            );
-        }
+        X509TokenTemplateCache.Template template =
+            X509TokenTemplateCache.getInstance().getTemplate(cert);
+        setToken(template.getEncoded(), template.getBase64Encoded());
     }
 }
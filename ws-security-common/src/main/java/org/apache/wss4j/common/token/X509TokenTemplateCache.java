@@ -0,0 +1,188 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.token;
+
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.wss4j.common.crypto.Crypto;
+import org.apache.wss4j.common.crypto.Merlin;
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.KeyUtils;
+
+/**
+ * A bounded, thread-safe cache of the values that are needed to reference an outbound X.509
+ * certificate, keyed by the certificate. It avoids encoding the same (signing) certificate, and
+ * computing its Base-64 encoding, thumbprint and SKI, for every message.
+ *
+ * The cached values are immutable Strings rather than pre-built DOM fragments, as a DOM is not
+ * safe for concurrent access - a BinarySecurityToken or KeyIdentifier is still created in the
+ * Document of each message (with a fresh wsu:Id), but its text is taken from the cache. When the
+ * cache is full, an arbitrary entry is evicted.
+ */
+public class X509TokenTemplateCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 100;
+
+    private static final X509TokenTemplateCache INSTANCE = new X509TokenTemplateCache();
+
+    private final Map<X509Certificate, Template> cache = new ConcurrentHashMap<>();
+    private final int maxEntries;
+
+    public X509TokenTemplateCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param maxEntries the maximum number of certificates to cache
+     */
+    public X509TokenTemplateCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * @return the X509TokenTemplateCache shared by the outbound token builders
+     */
+    public static X509TokenTemplateCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Get the Template of the given certificate
+     * @param cert the X509Certificate
+     * @return the (possibly cached) Template
+     * @throws WSSecurityException if the certificate could not be encoded
+     */
+    public Template getTemplate(X509Certificate cert) throws WSSecurityException {
+        Template template = cache.get(cert);
+        if (template == null) {
+            template = new Template(cert);
+            if (maxEntries > 0) {
+                if (cache.size() >= maxEntries) {
+                    Iterator<X509Certificate> iterator = cache.keySet().iterator();
+                    while (cache.size() >= maxEntries && iterator.hasNext()) {
+                        iterator.next();
+                        iterator.remove();
+                    }
+                }
+                Template existing = cache.putIfAbsent(cert, template);
+                if (existing != null) {
+                    template = existing;
+                }
+            }
+        }
+        return template;
+    }
+
+    /**
+     * Remove all of the cached templates
+     */
+    public void clear() {
+        cache.clear();
+    }
+
+    /**
+     * @return the number of certificates currently cached
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    /**
+     * The precomputed values of a certificate
+     */
+    public static final class Template {
+        private final X509Certificate certificate;
+        private final byte[] encoded;
+        private final String base64Encoded;
+        private volatile String thumbprint;
+        private volatile SKIValue ski;
+
+        Template(X509Certificate certificate) throws WSSecurityException {
+            this.certificate = certificate;
+            try {
+                encoded = certificate.getEncoded();
+            } catch (CertificateEncodingException e) {
+                throw new WSSecurityException(
+                    WSSecurityException.ErrorCode.SECURITY_TOKEN_UNAVAILABLE, e, "encodeError"
+                );
+            }
+            base64Encoded = Base64.getMimeEncoder().encodeToString(encoded);
+        }
+
+        /**
+         * @return the encoded (DER) certificate
+         */
+        public byte[] getEncoded() {
+            return encoded.clone();
+        }
+
+        /**
+         * @return the (MIME) Base-64 encoding of the encoded certificate
+         */
+        public String getBase64Encoded() {
+            return base64Encoded;
+        }
+
+        /**
+         * @return the (MIME) Base-64 encoding of the SHA-1 thumbprint of the certificate
+         */
+        public String getThumbprint() throws WSSecurityException {
+            String value = thumbprint;
+            if (value == null) {
+                value = Base64.getMimeEncoder().encodeToString(KeyUtils.generateDigest(encoded));
+                thumbprint = value;
+            }
+            return value;
+        }
+
+        /**
+         * @param crypto the Crypto implementation with which to get the SKI bytes, or null
+         * @return the (MIME) Base-64 encoding of the SKI bytes of the certificate
+         */
+        public String getSKI(Crypto crypto) throws WSSecurityException {
+            // The SKI bytes are cached for the Crypto implementation that computed them
+            Class<?> cryptoClass = crypto == null ? Merlin.class : crypto.getClass();
+            SKIValue value = ski;
+            if (value == null || value.cryptoClass != cryptoClass) {
+                // Fall back to Merlin if crypto parameter is null
+                Crypto skiCrypto = crypto == null ? new Merlin() : crypto;
+                byte[] data = skiCrypto.getSKIBytesFromCert(certificate);
+                value = new SKIValue(cryptoClass, Base64.getMimeEncoder().encodeToString(data));
+                ski = value;
+            }
+            return value.base64Encoded;
+        }
+    }
+
+    private static final class SKIValue {
+        private final Class<?> cryptoClass;
+        private final String base64Encoded;
+
+        SKIValue(Class<?> cryptoClass, String base64Encoded) {
+            this.cryptoClass = cryptoClass;
+            this.base64Encoded = base64Encoded;
+        }
+    }
+}
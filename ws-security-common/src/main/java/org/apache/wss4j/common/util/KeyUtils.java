@@ -19,6 +19,7 @@
 
 package org.apache.wss4j.common.util;
 
+import org.apache.wss4j.common.crypto.JCEPrimitivePool;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.xml.security.algorithms.JCEMapper;
 import org.apache.xml.security.encryption.XMLCipher;
@@ -39,11 +40,6 @@ public final class KeyUtils {
     private static final int MAX_SYMMETRIC_KEY_SIZE = 1024;
     public static final String RSA_ECB_OAEPWITH_SHA1_AND_MGF1_PADDING = "RSA/ECB/OAEPWithSHA1AndMGF1Padding";
 
-    /**
-     * A cached MessageDigest object
-     */
-    private static MessageDigest digest;
-
     private KeyUtils() {
         // complete
     }
@@ -204,21 +200,22 @@ public final class KeyUtils {
 
     /**
      * Generate a (SHA1) digest of the input bytes. The MessageDigest instance that backs this
-     * method is cached for efficiency.
+     * method is taken from the JCEPrimitivePool for efficiency.
      * @param inputBytes the bytes to digest
      * @return the digest of the input bytes
      * @throws WSSecurityException
      */
-    public static synchronized byte[] generateDigest(byte[] inputBytes) throws WSSecurityException {
+    public static byte[] generateDigest(byte[] inputBytes) throws WSSecurityException {
+        MessageDigest digest = null;
         try {
-            if (digest == null) {
-                digest = MessageDigest.getInstance("SHA-1");
-            }
+            digest = JCEPrimitivePool.getMessageDigest("SHA-1", null);
             return digest.digest(inputBytes);
         } catch (Exception e) {
             throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e, "empty",
                                           new Object[] {"Error in generating digest"}
             );
+        } finally {
+            JCEPrimitivePool.returnMessageDigest(digest, null);
         }
     }
 }
@@ -22,7 +22,9 @@ package org.apache.wss4j.common.util;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
 
+import org.apache.wss4j.common.crypto.JCEPrimitivePool;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.xml.security.stax.ext.XMLSecurityConstants;
 
@@ -58,8 +60,8 @@ public final class UsernameTokenUtil {
 
         MessageDigest sha = null;
         try {
-            sha = MessageDigest.getInstance("SHA1");
-        } catch (NoSuchAlgorithmException e) {
+            sha = JCEPrimitivePool.getMessageDigest("SHA1", null);
+        } catch (NoSuchAlgorithmException | NoSuchProviderException e) {
             if (LOG.isDebugEnabled()) {
                 LOG.debug(e.getMessage(), e);
             }
@@ -67,21 +69,25 @@ public final class UsernameTokenUtil {
                 WSSecurityException.ErrorCode.FAILURE, e, "decoding.general"
             );
         }
-        //
-        // Make the first hash round with start value
-        //
-        byte[] k = sha.digest(pwSalt);
-        //
-        // Perform the 1st up to iteration-1 hash rounds
-        //
-        int iter = iteration;
-        if (iter <= 0) {
-            iter = DEFAULT_ITERATION;
-        }
-        for (int i = 1; i < iter; i++) {
-            k = sha.digest(k);
+        try {
+            //
+            // Make the first hash round with start value
+            //
+            byte[] k = sha.digest(pwSalt);
+            //
+            // Perform the 1st up to iteration-1 hash rounds
+            //
+            int iter = iteration;
+            if (iter <= 0) {
+                iter = DEFAULT_ITERATION;
+            }
+            for (int i = 1; i < iter; i++) {
+                k = sha.digest(k);
+            }
+            return k;
+        } finally {
+            JCEPrimitivePool.returnMessageDigest(sha, null);
         }
-        return k;
     }
 
     /**
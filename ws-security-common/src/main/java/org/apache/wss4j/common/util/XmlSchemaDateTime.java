@@ -0,0 +1,318 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.util;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+/**
+ * A parsed value of the dateTime simpleType as specified in the XML Schema specification, and
+ * a formatter for the Zulu (UTC) form of such values. See
+ * <a href="http://www.w3.org/TR/xmlschema-2/#dateTime">XML Schema Part 2: Datatypes,
+ * Section 3.2.7</a>.
+ *
+ * Parsing and formatting work directly on the characters of the value, and hold no shared state,
+ * so they are thread-safe without any locking. Parsing accepts the same values as
+ * DatatypeFactory.newXMLGregorianCalendar(String), and gives the same instant as
+ * XMLGregorianCalendar.toGregorianCalendar().getTime(): fractional seconds are truncated to
+ * milliseconds, and a value without a timezone is taken to be in the default timezone.
+ */
+public final class XmlSchemaDateTime {
+
+    private static final long MILLIS_PER_DAY = 24L * 60L * 60L * 1000L;
+
+    private final long time;
+    private final int second;
+    private final int fractionalSecondDigits;
+    private final boolean timezone;
+
+    private XmlSchemaDateTime(long time, int second, int fractionalSecondDigits, boolean timezone) {
+        this.time = time;
+        this.second = second;
+        this.fractionalSecondDigits = fractionalSecondDigits;
+        this.timezone = timezone;
+    }
+
+    /**
+     * Parse the lexical representation of an xsd:dateTime value
+     * @param value the value to parse
+     * @return the parsed value
+     * @throws IllegalArgumentException if the value is not a valid xsd:dateTime
+     */
+    public static XmlSchemaDateTime parse(String value) {
+        if (value == null) {
+            throw new IllegalArgumentException("INVALID_XSD_DATETIME: null");
+        }
+        int length = value.length();
+        int index = 0;
+
+        boolean negative = length > 0 && value.charAt(0) == '-';
+        if (negative) {
+            index++;
+        }
+        int yearStart = index;
+        while (index < length && isDigit(value.charAt(index))) {
+            index++;
+        }
+        int yearDigits = index - yearStart;
+        if (yearDigits < 4 || yearDigits > 9 || yearDigits > 4 && value.charAt(yearStart) == '0') {
+            throw invalid(value);
+        }
+        int year = parseDigits(value, yearStart, index);
+        if (year == 0) {
+            throw invalid(value);
+        }
+
+        int month = parseField(value, index, '-');
+        int day = parseField(value, index + 3, '-');
+        int hour = parseField(value, index + 6, 'T');
+        int minute = parseField(value, index + 9, ':');
+        int seconds = parseField(value, index + 12, ':');
+        index += 15;
+
+        int fractionalDigits = 0;
+        int millis = 0;
+        boolean zeroFraction = true;
+        if (index < length && value.charAt(index) == '.') {
+            int fractionStart = ++index;
+            while (index < length && isDigit(value.charAt(index))) {
+                if (index - fractionStart < 3) {
+                    millis = millis * 10 + value.charAt(index) - '0';
+                }
+                zeroFraction &= value.charAt(index) == '0';
+                index++;
+            }
+            fractionalDigits = index - fractionStart;
+            if (fractionalDigits == 0) {
+                throw invalid(value);
+            }
+            for (int i = fractionalDigits; i < 3; i++) {
+                millis *= 10;
+            }
+        }
+
+        boolean hasTimezone = false;
+        int offsetMinutes = 0;
+        if (index < length) {
+            char c = value.charAt(index);
+            if (c == 'Z') {
+                index++;
+            } else if (c == '+' || c == '-') {
+                int offsetHours = parseDigits(value, index + 1, index + 3);
+                int minutes = parseField(value, index + 3, ':');
+                if (offsetHours > 14 || minutes > 59 || offsetHours == 14 && minutes != 0) {
+                    throw invalid(value);
+                }
+                offsetMinutes = offsetHours * 60 + minutes;
+                if (c == '-') {
+                    offsetMinutes = -offsetMinutes;
+                }
+                index += 6;
+            } else {
+                throw invalid(value);
+            }
+            hasTimezone = true;
+        }
+
+        if (index != length || month < 1 || month > 12 || day < 1
+            || day > getDaysInMonth(negative ? 1 - year : year, month)
+            || hour > 24 || minute > 59 || seconds > 60
+            || hour == 24 && (minute != 0 || seconds != 0 || !zeroFraction)) {
+            throw invalid(value);
+        }
+
+        long time;
+        if (hasTimezone) {
+            long isoYear = negative ? 1L - year : year;
+            time = getEpochDay(isoYear, month, day) * MILLIS_PER_DAY
+                + ((hour * 60L + minute - offsetMinutes) * 60L + seconds) * 1000L + millis;
+        } else {
+            time = getLocalTime(negative, year, month, day, hour, minute, seconds, millis);
+        }
+        return new XmlSchemaDateTime(time, seconds, fractionalDigits, hasTimezone);
+    }
+
+    /**
+     * Format the given Date in the Zulu (UTC) form of xsd:dateTime, i.e.
+     * "yyyy-MM-dd'T'HH:mm:ss'Z'" or "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'".
+     * @param date the Date to format
+     * @param milliseconds whether to include the milliseconds
+     * @return the formatted Date
+     */
+    public static String format(Date date, boolean milliseconds) {
+        return format(date.getTime(), milliseconds);
+    }
+
+    /**
+     * Format the given time in milliseconds since the epoch in the Zulu (UTC) form of
+     * xsd:dateTime, i.e. "yyyy-MM-dd'T'HH:mm:ss'Z'" or "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'".
+     * @param time the time to format
+     * @param milliseconds whether to include the milliseconds
+     * @return the formatted time
+     */
+    public static String format(long time, boolean milliseconds) {
+        long epochDay = Math.floorDiv(time, MILLIS_PER_DAY);
+        int millisOfDay = (int)Math.floorMod(time, MILLIS_PER_DAY);
+
+        // Convert the epoch day to a (proleptic Gregorian) year, month and day
+        long days = epochDay + 719468L;
+        long era = Math.floorDiv(days, 146097L);
+        int dayOfEra = (int)(days - era * 146097L);
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int shiftedMonth = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+        int month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+        long year = yearOfEra + era * 400L + (month <= 2 ? 1 : 0);
+
+        StringBuilder builder = new StringBuilder(milliseconds ? 24 : 20);
+        if (year <= 0) {
+            // There is no year zero in xsd:dateTime
+            builder.append('-');
+            year = 1 - year;
+        }
+        String yearString = Long.toString(year);
+        for (int i = yearString.length(); i < 4; i++) {
+            builder.append('0');
+        }
+        builder.append(yearString).append('-');
+        appendTwoDigits(builder, month).append('-');
+        appendTwoDigits(builder, day).append('T');
+        appendTwoDigits(builder, millisOfDay / 3600000).append(':');
+        appendTwoDigits(builder, millisOfDay / 60000 % 60).append(':');
+        appendTwoDigits(builder, millisOfDay / 1000 % 60);
+        if (milliseconds) {
+            int millis = millisOfDay % 1000;
+            builder.append('.').append((char)('0' + millis / 100));
+            appendTwoDigits(builder, millis % 100);
+        }
+        return builder.append('Z').toString();
+    }
+
+    /**
+     * @return the number of milliseconds since the epoch of this value
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * @return this value as a Date
+     */
+    public Date toDate() {
+        return new Date(time);
+    }
+
+    /**
+     * @return the seconds field of this value, which may be 60 for a leap second
+     */
+    public int getSecond() {
+        return second;
+    }
+
+    /**
+     * @return the number of digits of the fractional seconds of this value, or 0 if it has none
+     */
+    public int getFractionalSecondDigits() {
+        return fractionalSecondDigits;
+    }
+
+    /**
+     * @return whether this value has a timezone
+     */
+    public boolean hasTimezone() {
+        return timezone;
+    }
+
+    private static long getEpochDay(long year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400L);
+        long yearOfEra = y - era * 400L;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365L + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468L;
+    }
+
+    private static long getLocalTime(
+        boolean negative, int year, int month, int day, int hour, int minute, int seconds, int millis
+    ) {
+        // The same conversion as XMLGregorianCalendar.toGregorianCalendar() for a value without
+        // a timezone, which uses the default timezone
+        GregorianCalendar calendar = new GregorianCalendar(TimeZone.getDefault());
+        calendar.setGregorianChange(new Date(Long.MIN_VALUE));
+        calendar.clear();
+        calendar.set(Calendar.ERA, negative ? GregorianCalendar.BC : GregorianCalendar.AD);
+        calendar.set(Calendar.YEAR, year);
+        calendar.set(Calendar.MONTH, month - 1);
+        calendar.set(Calendar.DAY_OF_MONTH, day);
+        calendar.set(Calendar.HOUR_OF_DAY, hour);
+        calendar.set(Calendar.MINUTE, minute);
+        calendar.set(Calendar.SECOND, seconds);
+        calendar.set(Calendar.MILLISECOND, millis);
+        return calendar.getTimeInMillis();
+    }
+
+    private static int getDaysInMonth(long year, int month) {
+        if (month == 2) {
+            boolean leapYear = year % 4 == 0 && (year % 100 != 0 || year % 400 == 0);
+            return leapYear ? 29 : 28;
+        }
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+
+    /**
+     * Parse a two digit field, which follows the given separator at the given index
+     */
+    private static int parseField(String value, int index, char separator) {
+        if (index >= value.length() || value.charAt(index) != separator) {
+            throw invalid(value);
+        }
+        return parseDigits(value, index + 1, index + 3);
+    }
+
+    private static int parseDigits(String value, int start, int end) {
+        if (end > value.length()) {
+            throw invalid(value);
+        }
+        int result = 0;
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            if (!isDigit(c)) {
+                throw invalid(value);
+            }
+            result = result * 10 + c - '0';
+        }
+        return result;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static StringBuilder appendTwoDigits(StringBuilder builder, int value) {
+        return builder.append((char)('0' + value / 10)).append((char)('0' + value % 10));
+    }
+
+    private static IllegalArgumentException invalid(String value) {
+        return new IllegalArgumentException("INVALID_XSD_DATETIME: " + value);
+    }
+}
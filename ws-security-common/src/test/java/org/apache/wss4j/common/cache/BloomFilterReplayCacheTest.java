@@ -0,0 +1,147 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.cache;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.UUID;
+
+import org.apache.wss4j.common.util.WSTimeSource;
+import org.junit.Test;
+
+/**
+ * Some tests for the BloomFilterReplayCache.
+ */
+public class BloomFilterReplayCacheTest extends org.junit.Assert {
+
+    @Test
+    public void testAddAndContains() throws Exception {
+        CountingReplayCache backingCache = new CountingReplayCache();
+        BloomFilterReplayCache replayCache = new BloomFilterReplayCache(backingCache);
+        assertFalse(replayCache.contains("id1"));
+        replayCache.add("id1");
+        replayCache.add("id2", 10L);
+        assertTrue(replayCache.contains("id1"));
+        assertTrue(replayCache.contains("id2"));
+        assertEquals(2, backingCache.containsCount);
+
+        // Definite misses do not reach the backing cache
+        for (int i = 0; i < 1000; i++) {
+            assertFalse(replayCache.contains(UUID.randomUUID().toString()));
+        }
+        assertEquals(1001L, replayCache.getDefiniteMissCount()
+                     + replayCache.getFalsePositiveCount());
+        assertEquals(2 + replayCache.getFalsePositiveCount(), backingCache.containsCount);
+
+        replayCache.close();
+        assertTrue(backingCache.closed);
+    }
+
+    @Test
+    public void testFalsePositiveRate() throws Exception {
+        BloomFilterReplayCache replayCache =
+            new BloomFilterReplayCache(new ShardedReplayCache(), 3600L, 4, 1000, 0.01);
+        for (int i = 0; i < 1000; i++) {
+            replayCache.add(UUID.randomUUID().toString());
+        }
+        for (int i = 0; i < 10000; i++) {
+            assertFalse(replayCache.contains(UUID.randomUUID().toString()));
+        }
+        assertTrue(replayCache.getFalsePositiveCount() > 0);
+        assertTrue(replayCache.getFalsePositiveRate() < 0.05);
+    }
+
+    @Test
+    public void testExpiry() throws Exception {
+        MutableTimeSource timeSource = new MutableTimeSource();
+        ShardedReplayCache backingCache = new ShardedReplayCache();
+        backingCache.setTimeSource(timeSource);
+        BloomFilterReplayCache replayCache =
+            new BloomFilterReplayCache(backingCache, 3600L, 4, 1000, 0.01);
+        replayCache.setTimeSource(timeSource);
+
+        replayCache.add("id1", 3600L);
+        // The filter of a bucket is not replaced until maxTTL has passed
+        for (int i = 0; i < 4; i++) {
+            timeSource.advance(899L);
+            replayCache.add("other" + i);
+            assertTrue(replayCache.contains("id1"));
+        }
+        timeSource.advance(3600L);
+        assertFalse(replayCache.contains("id1"));
+    }
+
+    @Test
+    public void testLongTTL() throws Exception {
+        MutableTimeSource timeSource = new MutableTimeSource();
+        CountingReplayCache backingCache = new CountingReplayCache();
+        BloomFilterReplayCache replayCache =
+            new BloomFilterReplayCache(backingCache, 60L, 2, 1000, 0.01);
+        replayCache.setTimeSource(timeSource);
+
+        // The filters do not cover this TTL, so checks are passed through until it expires
+        replayCache.add("id1", 600L);
+        timeSource.advance(300L);
+        replayCache.add("id2");
+        assertTrue(replayCache.contains("id1"));
+        assertFalse(replayCache.contains("id3"));
+        assertEquals(0L, replayCache.getDefiniteMissCount());
+
+        timeSource.advance(301L);
+        assertFalse(replayCache.contains("id3"));
+        assertEquals(1L, replayCache.getDefiniteMissCount());
+    }
+
+    private static class CountingReplayCache implements ReplayCache {
+        private final ReplayCache replayCache = new ShardedReplayCache();
+        private int containsCount;
+        private boolean closed;
+
+        public void add(String identifier) {
+            replayCache.add(identifier);
+        }
+
+        public void add(String identifier, long timeToLive) {
+            replayCache.add(identifier, timeToLive);
+        }
+
+        public boolean contains(String identifier) {
+            containsCount++;
+            return replayCache.contains(identifier);
+        }
+
+        public void close() throws IOException {
+            closed = true;
+            replayCache.close();
+        }
+    }
+
+    private static class MutableTimeSource implements WSTimeSource {
+        private long time = System.currentTimeMillis();
+
+        void advance(long seconds) {
+            time += seconds * 1000L;
+        }
+
+        public Date now() {
+            return new Date(time);
+        }
+    }
+}
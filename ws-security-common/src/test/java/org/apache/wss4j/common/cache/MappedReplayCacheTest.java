@@ -0,0 +1,154 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.cache;
+
+import java.io.File;
+import java.util.Date;
+
+import org.apache.wss4j.common.util.WSTimeSource;
+import org.junit.Test;
+
+/**
+ * Some tests for the MappedReplayCache.
+ */
+public class MappedReplayCacheTest extends org.junit.Assert {
+
+    @Test
+    public void testPersistence() throws Exception {
+        File cacheFile = File.createTempFile("wss4j-replay", ".cache");
+        cacheFile.deleteOnExit();
+
+        MappedReplayCache replayCache = new MappedReplayCache(cacheFile, 1000);
+        assertFalse(replayCache.contains("id1"));
+        replayCache.add("id1");
+        replayCache.add("id2", 10L);
+        replayCache.add("");
+        assertTrue(replayCache.contains("id1"));
+        assertTrue(replayCache.contains("id2"));
+        assertFalse(replayCache.contains("id3"));
+        assertFalse(replayCache.contains(""));
+        replayCache.close();
+        assertFalse(replayCache.contains("id1"));
+
+        // The identifiers are still cached after reopening the file
+        replayCache = new MappedReplayCache(cacheFile, 1000);
+        assertTrue(replayCache.contains("id1"));
+        assertTrue(replayCache.contains("id2"));
+        assertFalse(replayCache.contains("id3"));
+        replayCache.close();
+
+        // A cache of a different size discards the content of the file
+        replayCache = new MappedReplayCache(cacheFile, 2000);
+        assertFalse(replayCache.contains("id1"));
+        replayCache.close();
+    }
+
+    @Test
+    public void testExpiry() throws Exception {
+        File cacheFile = File.createTempFile("wss4j-replay", ".cache");
+        cacheFile.deleteOnExit();
+
+        MutableTimeSource timeSource = new MutableTimeSource();
+        MappedReplayCache replayCache = new MappedReplayCache(cacheFile, 1000);
+        replayCache.setTimeSource(timeSource);
+
+        replayCache.add("short", 5L);
+        replayCache.add("default");
+        replayCache.add("long", MappedReplayCache.MAX_TTL);
+        // An invalid TTL falls back to the default
+        replayCache.add("invalid", MappedReplayCache.MAX_TTL + 1L);
+
+        timeSource.advance(6L);
+        assertFalse(replayCache.contains("short"));
+        assertTrue(replayCache.contains("default"));
+
+        timeSource.advance(MappedReplayCache.DEFAULT_TTL);
+        assertFalse(replayCache.contains("default"));
+        assertFalse(replayCache.contains("invalid"));
+        assertTrue(replayCache.contains("long"));
+
+        // An expired identifier can be added again
+        replayCache.add("short", 5L);
+        assertTrue(replayCache.contains("short"));
+        replayCache.close();
+    }
+
+    @Test
+    public void testMaxEntries() throws Exception {
+        File cacheFile = File.createTempFile("wss4j-replay", ".cache");
+        cacheFile.deleteOnExit();
+
+        MutableTimeSource timeSource = new MutableTimeSource();
+        // A single bucket of 16 slots
+        MappedReplayCache replayCache = new MappedReplayCache(cacheFile, 16);
+        replayCache.setTimeSource(timeSource);
+        replayCache.add("first", 10L);
+        for (int i = 0; i < 15; i++) {
+            replayCache.add("id" + i, 300L);
+        }
+        assertFalse(replayCache.contains("unknown"));
+
+        // A live entry is never dropped. Instead, the full bucket fails closed
+        replayCache.add("overflow", 60L);
+        assertTrue(replayCache.contains("first"));
+        assertTrue(replayCache.contains("overflow"));
+        assertTrue(replayCache.contains("unknown"));
+        replayCache.close();
+
+        // The overflow is persisted
+        replayCache = new MappedReplayCache(cacheFile, 16);
+        replayCache.setTimeSource(timeSource);
+        assertTrue(replayCache.contains("unknown"));
+
+        // Once the overflowing identifier would have expired, the bucket is usable again
+        timeSource.advance(61L);
+        assertFalse(replayCache.contains("unknown"));
+        assertFalse(replayCache.contains("first"));
+        assertTrue(replayCache.contains("id0"));
+        replayCache.add("overflow", 60L);
+        assertTrue(replayCache.contains("overflow"));
+        assertFalse(replayCache.contains("unknown"));
+        replayCache.close();
+    }
+
+    @Test
+    public void testFactory() throws Exception {
+        File cacheFile = File.createTempFile("wss4j-replay", ".cache");
+        cacheFile.deleteOnExit();
+
+        ReplayCache replayCache = new MappedReplayCacheFactory().newReplayCache("key", cacheFile);
+        assertTrue(replayCache instanceof MappedReplayCache);
+        replayCache.add("id1");
+        replayCache.close();
+        assertTrue(cacheFile.length() > 0);
+    }
+
+    private static class MutableTimeSource implements WSTimeSource {
+        private long time = System.currentTimeMillis();
+
+        void advance(long seconds) {
+            time += seconds * 1000L;
+        }
+
+        public Date now() {
+            return new Date(time);
+        }
+    }
+}
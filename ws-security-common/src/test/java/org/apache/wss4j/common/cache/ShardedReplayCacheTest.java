@@ -0,0 +1,188 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.cache;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.wss4j.common.util.WSTimeSource;
+import org.junit.Test;
+
+/**
+ * Some tests for the ShardedReplayCache.
+ */
+public class ShardedReplayCacheTest extends org.junit.Assert {
+
+    @Test
+    public void testAddAndContains() throws Exception {
+        ShardedReplayCache replayCache = new ShardedReplayCache();
+        assertFalse(replayCache.contains("id1"));
+        replayCache.add("id1");
+        replayCache.add("id2", 10L);
+        assertTrue(replayCache.contains("id1"));
+        assertTrue(replayCache.contains("id2"));
+        assertFalse(replayCache.contains("id3"));
+
+        // Empty identifiers are ignored
+        replayCache.add("");
+        replayCache.add(null);
+        assertFalse(replayCache.contains(""));
+        assertEquals(2, replayCache.size());
+
+        replayCache.close();
+        assertFalse(replayCache.contains("id1"));
+        assertEquals(0, replayCache.size());
+    }
+
+    @Test
+    public void testExpiry() throws Exception {
+        MutableTimeSource timeSource = new MutableTimeSource();
+        ShardedReplayCache replayCache = new ShardedReplayCache();
+        replayCache.setTimeSource(timeSource);
+
+        replayCache.add("short", 5L);
+        replayCache.add("default");
+        replayCache.add("long", ShardedReplayCache.MAX_TTL);
+        // An invalid TTL falls back to the default
+        replayCache.add("invalid", ShardedReplayCache.MAX_TTL + 1L);
+
+        timeSource.advance(6L);
+        assertFalse(replayCache.contains("short"));
+        assertTrue(replayCache.contains("default"));
+        assertEquals(3, replayCache.size());
+
+        timeSource.advance(ShardedReplayCache.DEFAULT_TTL);
+        assertFalse(replayCache.contains("default"));
+        assertFalse(replayCache.contains("invalid"));
+        assertTrue(replayCache.contains("long"));
+        assertEquals(1, replayCache.size());
+
+        timeSource.advance(ShardedReplayCache.MAX_TTL);
+        assertFalse(replayCache.contains("long"));
+        assertEquals(0, replayCache.size());
+    }
+
+    @Test
+    public void testIdleExpiry() throws Exception {
+        MutableTimeSource timeSource = new MutableTimeSource();
+        ShardedReplayCache replayCache = new ShardedReplayCache();
+        replayCache.setTimeSource(timeSource);
+
+        replayCache.add("id1", ShardedReplayCache.MAX_TTL);
+        // Nothing happens for longer than the timing wheel covers
+        timeSource.advance(ShardedReplayCache.MAX_TTL * 4L);
+        replayCache.add("id2");
+        assertFalse(replayCache.contains("id1"));
+        assertTrue(replayCache.contains("id2"));
+        assertEquals(1, replayCache.size());
+    }
+
+    @Test
+    public void testMaxEntries() throws Exception {
+        ShardedReplayCache replayCache = new ShardedReplayCache(100);
+        replayCache.add("first", 10L);
+        for (int i = 0; i < 200; i++) {
+            replayCache.add("id" + i, 300L);
+        }
+        assertTrue(replayCache.size() <= 100);
+        // The entry closest to expiry is evicted first
+        assertFalse(replayCache.contains("first"));
+        assertTrue(replayCache.contains("id199"));
+    }
+
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        final ShardedReplayCache replayCache = new ShardedReplayCache();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Callable<Boolean>> tasks = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                tasks.add(() -> {
+                    for (int j = 0; j < 1000; j++) {
+                        String id = UUID.randomUUID().toString();
+                        if (replayCache.contains(id)) {
+                            return false;
+                        }
+                        replayCache.add(id);
+                        if (!replayCache.contains(id)) {
+                            return false;
+                        }
+                    }
+                    return true;
+                });
+            }
+            for (Future<Boolean> result : executor.invokeAll(tasks)) {
+                assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(8000, replayCache.size());
+    }
+
+    @Test
+    public void testConcurrentEviction() throws Exception {
+        final ShardedReplayCache replayCache = new ShardedReplayCache(1000);
+        // Move the clock on by a second on every call, so that the wheel is often being advanced
+        final AtomicLong time = new AtomicLong(System.currentTimeMillis());
+        replayCache.setTimeSource(() -> new Date(time.addAndGet(1000L)));
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Callable<Boolean>> tasks = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                tasks.add(() -> {
+                    for (int j = 0; j < 5000; j++) {
+                        replayCache.add(UUID.randomUUID().toString(), ShardedReplayCache.MAX_TTL);
+                        // Only the identifiers that other threads are still adding may exceed the cap
+                        if (replayCache.size() > 1000 + 8) {
+                            return false;
+                        }
+                    }
+                    return true;
+                });
+            }
+            for (Future<Boolean> result : executor.invokeAll(tasks)) {
+                assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(replayCache.size() <= 1000);
+    }
+
+    private static class MutableTimeSource implements WSTimeSource {
+        private long time = System.currentTimeMillis();
+
+        void advance(long seconds) {
+            time += seconds * 1000L;
+        }
+
+        public Date now() {
+            return new Date(time);
+        }
+    }
+}
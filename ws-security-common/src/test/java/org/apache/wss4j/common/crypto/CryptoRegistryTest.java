@@ -0,0 +1,123 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.crypto;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.Loader;
+import org.junit.Test;
+
+/**
+ * Some tests for the shared registry of Crypto instances.
+ */
+public class CryptoRegistryTest extends org.junit.Assert {
+
+    private static final ClassLoader LOADER = Loader.getClassLoader(CryptoRegistryTest.class);
+
+    @Test
+    public void testSharedInstances() throws Exception {
+        CryptoRegistry registry = new CryptoRegistry();
+        Crypto crypto = registry.getCrypto("wss40.properties", LOADER, null);
+        assertSame(crypto, registry.getCrypto("wss40.properties", LOADER, null));
+        assertSame(crypto, registry.getCrypto(CryptoFactory.getProperties("wss40.properties", LOADER),
+                                              LOADER, null));
+        assertEquals(1, registry.size());
+
+        Crypto otherCrypto = registry.getCrypto("alice.properties", LOADER, null);
+        assertNotSame(crypto, otherCrypto);
+        assertEquals(2, registry.size());
+
+        // Default values are part of the effective property set
+        Properties properties = new Properties(CryptoFactory.getProperties("wss40.properties", LOADER));
+        assertSame(crypto, registry.getCrypto(properties, LOADER, null));
+
+        registry.clear();
+        assertNotSame(crypto, registry.getCrypto("wss40.properties", LOADER, null));
+    }
+
+    @Test
+    public void testMaxEntries() throws Exception {
+        CryptoRegistry registry = new CryptoRegistry(2);
+        Crypto crypto = registry.getCrypto("wss40.properties", LOADER, null);
+        registry.getCrypto("alice.properties", LOADER, null);
+        // Access the first entry so that the second is the least recently used
+        registry.getCrypto("wss40.properties", LOADER, null);
+        registry.getCrypto("wss40CA.properties", LOADER, null);
+        assertEquals(2, registry.size());
+        assertSame(crypto, registry.getCrypto("wss40.properties", LOADER, null));
+    }
+
+    @Test
+    public void testFailedLoadIsNotCached() throws Exception {
+        CryptoRegistry registry = new CryptoRegistry();
+        Properties properties = new Properties();
+        properties.put("org.apache.wss4j.crypto.provider", "org.apache.wss4j.common.crypto.UnknownCrypto");
+        try {
+            registry.getCrypto(properties, LOADER, null);
+            fail("Failure expected on an unknown Crypto provider");
+        } catch (WSSecurityException ex) {
+            assertEquals(WSSecurityException.ErrorCode.FAILURE, ex.getErrorCode());
+        }
+        assertEquals(0, registry.size());
+    }
+
+    @Test
+    public void testSingleLoad() throws Exception {
+        final CryptoRegistry registry = new CryptoRegistry();
+        final Properties properties = CryptoFactory.getProperties("wss40.properties", LOADER);
+        properties.put("org.apache.wss4j.crypto.provider", CountingMerlin.class.getName());
+        CountingMerlin.COUNT.set(0);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Callable<Crypto>> tasks = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                tasks.add(() -> registry.getCrypto(properties, LOADER, null));
+            }
+            List<Future<Crypto>> results = executor.invokeAll(tasks);
+            Crypto crypto = results.get(0).get();
+            for (Future<Crypto> result : results) {
+                assertSame(crypto, result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, CountingMerlin.COUNT.get());
+    }
+
+    public static class CountingMerlin extends Merlin {
+        static final AtomicInteger COUNT = new AtomicInteger();
+
+        public CountingMerlin(Properties properties, ClassLoader loader)
+            throws WSSecurityException, IOException {
+            super(properties, loader, null);
+            COUNT.incrementAndGet();
+        }
+    }
+}
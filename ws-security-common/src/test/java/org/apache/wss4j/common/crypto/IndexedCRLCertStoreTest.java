@@ -0,0 +1,125 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.crypto;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509CRLSelector;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.Properties;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.Loader;
+import org.junit.Test;
+
+/**
+ * Some tests for the IndexedCRLCertStore.
+ */
+public class IndexedCRLCertStoreTest extends org.junit.Assert {
+
+    public IndexedCRLCertStoreTest() {
+        WSProviderConfig.init();
+    }
+
+    @Test
+    public void testRevocationLookup() throws Exception {
+        Merlin crypto = (Merlin)CryptoFactory.getInstance("wss40CA.properties");
+        assertTrue(crypto.getCRLCertStore() instanceof IndexedCRLCertStore);
+        IndexedCRLCertStore crlCertStore = (IndexedCRLCertStore)crypto.getCRLCertStore();
+        assertEquals(1, crlCertStore.getCRLs().size());
+
+        X509Certificate revokedCert = getCertificate("wss40rev.properties", "wss40rev");
+        X509Certificate cert = getCertificate("wss40.properties", "wss40");
+        assertTrue(crlCertStore.isRevoked(revokedCert));
+        assertFalse(crlCertStore.isRevoked(cert));
+
+        // Only the CRL of the issuer of the certificate being checked is selected
+        X509CRLSelector selector = new X509CRLSelector();
+        selector.setCertificateChecking(revokedCert);
+        assertEquals(1, crlCertStore.getCRLs(selector).size());
+
+        selector = new X509CRLSelector();
+        selector.addIssuer(new X500Principal("CN=Unknown,O=Apache"));
+        assertTrue(crlCertStore.getCRLs(selector).isEmpty());
+
+        // A revoked certificate is rejected up front
+        try {
+            crypto.verifyTrust(new X509Certificate[] {revokedCert}, true, null, null);
+            fail("Failure expected on a revoked certificate");
+        } catch (WSSecurityException ex) {
+            assertTrue(ex.getMessage().contains("revoked"));
+        }
+    }
+
+    @Test
+    public void testReload() throws Exception {
+        File crlFile = File.createTempFile("wss4j-crl", ".pem");
+        crlFile.deleteOnExit();
+        ClassLoader loader = Loader.getClassLoader(IndexedCRLCertStoreTest.class);
+        try (InputStream is = Merlin.loadInputStream(loader, "keys/wss40CACRL.pem")) {
+            Files.copy(is, crlFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        IndexedCRLCertStore crlCertStore =
+            new IndexedCRLCertStore(Collections.singletonList(crlFile.toURI().toURL()),
+                                    CertificateFactory.getInstance("X.509"));
+        assertEquals(0L, crlCertStore.getVersion());
+        assertFalse(crlCertStore.reload());
+
+        assertTrue(crlFile.setLastModified(crlFile.lastModified() + 10000L));
+        assertTrue(crlCertStore.reload());
+        assertEquals(1L, crlCertStore.getVersion());
+        assertTrue(crlCertStore.isRevoked(getCertificate("wss40rev.properties", "wss40rev")));
+        assertFalse(crlCertStore.reload());
+    }
+
+    @Test
+    public void testKeystoreProvider() throws Exception {
+        Properties properties = CryptoFactory.getProperties("wss40CA.properties", getClass().getClassLoader());
+        properties.put("org.apache.wss4j.crypto.merlin.keystore.provider", "SUN");
+        Merlin crypto = (Merlin)CryptoFactory.getInstance(properties);
+        assertEquals("SUN", crypto.getCRLCertStore().getProvider().getName());
+    }
+
+    @Test
+    public void testMalformedReloadInterval() throws Exception {
+        Properties properties = CryptoFactory.getProperties("wss40CA.properties", getClass().getClassLoader());
+        properties.put("org.apache.wss4j.crypto.merlin." + Merlin.X509_CRL_RELOAD_INTERVAL, "hourly");
+        try {
+            new Merlin(properties, getClass().getClassLoader(), null);
+            fail("Failure expected on a malformed reload interval");
+        } catch (WSSecurityException ex) {
+            assertTrue(ex.getMessage().contains(Merlin.X509_CRL_RELOAD_INTERVAL));
+        }
+    }
+
+    private static X509Certificate getCertificate(String propFilename, String alias) throws Exception {
+        Crypto crypto = CryptoFactory.getInstance(propFilename);
+        CryptoType cryptoType = new CryptoType(CryptoType.TYPE.ALIAS);
+        cryptoType.setAlias(alias);
+        return crypto.getX509Certificates(cryptoType)[0];
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.crypto;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.wss4j.common.util.KeyUtils;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Some tests for the pool of JCE MessageDigest instances.
+ */
+public class JCEPrimitivePoolTest extends org.junit.Assert {
+
+    @After
+    public void clearPool() {
+        JCEPrimitivePool.clear();
+    }
+
+    @Test
+    public void testMessageDigest() throws Exception {
+        byte[] data = "some data".getBytes(StandardCharsets.UTF_8);
+        byte[] expected = MessageDigest.getInstance("SHA-1").digest(data);
+
+        MessageDigest digest = JCEPrimitivePool.getMessageDigest("SHA-1", null);
+        digest.update("partial".getBytes(StandardCharsets.UTF_8));
+        JCEPrimitivePool.returnMessageDigest(digest, null);
+
+        // The returned instance is reused, and was reset
+        MessageDigest pooledDigest = JCEPrimitivePool.getMessageDigest("SHA-1", null);
+        assertSame(digest, pooledDigest);
+        assertArrayEquals(expected, pooledDigest.digest(data));
+
+        // Another algorithm or provider has its own instances
+        assertNotSame(digest, JCEPrimitivePool.getMessageDigest("SHA-1", "SUN"));
+        assertArrayEquals(expected, KeyUtils.generateDigest(data));
+    }
+
+    @Test
+    public void testMaxIdleInstances() throws Exception {
+        List<MessageDigest> digests = new ArrayList<>();
+        for (int i = 0; i < JCEPrimitivePool.MAX_IDLE_INSTANCES + 1; i++) {
+            digests.add(JCEPrimitivePool.getMessageDigest("SHA-256", null));
+        }
+        for (MessageDigest digest : digests) {
+            JCEPrimitivePool.returnMessageDigest(digest, null);
+        }
+        for (int i = 0; i < JCEPrimitivePool.MAX_IDLE_INSTANCES; i++) {
+            assertTrue(digests.contains(JCEPrimitivePool.getMessageDigest("SHA-256", null)));
+        }
+        assertFalse(digests.contains(JCEPrimitivePool.getMessageDigest("SHA-256", null)));
+    }
+}
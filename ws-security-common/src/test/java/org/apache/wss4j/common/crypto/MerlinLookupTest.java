@@ -0,0 +1,136 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.crypto;
+
+import java.io.InputStream;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.cert.X509Certificate;
+
+import org.apache.wss4j.common.util.Loader;
+import org.junit.Test;
+
+/**
+ * Some tests for the indexed certificate lookups of the Merlin Crypto implementation.
+ */
+public class MerlinLookupTest extends org.junit.Assert {
+
+    @Test
+    public void testLookups() throws Exception {
+        Crypto crypto = CryptoFactory.getInstance("wss40.properties");
+
+        CryptoType cryptoType = new CryptoType(CryptoType.TYPE.ALIAS);
+        cryptoType.setAlias("wss40");
+        X509Certificate[] certs = crypto.getX509Certificates(cryptoType);
+        assertTrue(certs != null && certs.length > 0);
+        X509Certificate cert = certs[0];
+
+        cryptoType = new CryptoType(CryptoType.TYPE.ISSUER_SERIAL);
+        cryptoType.setIssuerSerial(cert.getIssuerX500Principal().getName(), cert.getSerialNumber());
+        assertEquals(cert, crypto.getX509Certificates(cryptoType)[0]);
+
+        cryptoType = new CryptoType(CryptoType.TYPE.SKI_BYTES);
+        cryptoType.setBytes(crypto.getSKIBytesFromCert(cert));
+        assertEquals(cert, crypto.getX509Certificates(cryptoType)[0]);
+
+        cryptoType = new CryptoType(CryptoType.TYPE.THUMBPRINT_SHA1);
+        cryptoType.setBytes(MessageDigest.getInstance("SHA-1").digest(cert.getEncoded()));
+        assertEquals(cert, crypto.getX509Certificates(cryptoType)[0]);
+
+        cryptoType = new CryptoType(CryptoType.TYPE.SUBJECT_DN);
+        cryptoType.setSubjectDN(cert.getSubjectX500Principal().getName());
+        assertEquals(cert, crypto.getX509Certificates(cryptoType)[0]);
+
+        assertEquals("wss40", crypto.getX509Identifier(cert));
+        crypto.verifyTrust(cert.getPublicKey());
+
+        // Unknown values
+        cryptoType = new CryptoType(CryptoType.TYPE.ISSUER_SERIAL);
+        cryptoType.setIssuerSerial(cert.getIssuerX500Principal().getName(),
+                                   cert.getSerialNumber().add(java.math.BigInteger.ONE));
+        assertNull(crypto.getX509Certificates(cryptoType));
+
+        cryptoType = new CryptoType(CryptoType.TYPE.SUBJECT_DN);
+        cryptoType.setSubjectDN("CN=Unknown,O=Apache");
+        assertNull(crypto.getX509Certificates(cryptoType));
+    }
+
+    @Test
+    public void testKeyStoreChanges() throws Exception {
+        Merlin crypto = new Merlin();
+        KeyStore keyStore = loadKeyStore("keys/wss40.jks");
+        crypto.setKeyStore(keyStore);
+
+        X509Certificate caCert = (X509Certificate)keyStore.getCertificate("wss40ca");
+        assertNotNull(caCert);
+
+        CryptoType cryptoType = new CryptoType(CryptoType.TYPE.SUBJECT_DN);
+        cryptoType.setSubjectDN(caCert.getSubjectX500Principal().getName());
+        X509Certificate[] foundCerts = crypto.getX509Certificates(cryptoType);
+        assertTrue(foundCerts != null && foundCerts[0].equals(caCert));
+
+        // Remove the CA cert from the keystore - the index must be refreshed
+        keyStore.deleteEntry("wss40ca");
+        assertNull(crypto.getX509Certificates(cryptoType));
+
+        // Now add it to an (initially empty) truststore
+        KeyStore trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
+        trustStore.load(null, "security".toCharArray());
+        crypto.setTrustStore(trustStore);
+        assertNull(crypto.getX509Certificates(cryptoType));
+
+        trustStore.setCertificateEntry("ca", caCert);
+        foundCerts = crypto.getX509Certificates(cryptoType);
+        assertTrue(foundCerts != null && foundCerts[0].equals(caCert));
+        assertEquals("ca", crypto.getX509Identifier(caCert));
+    }
+
+    @Test
+    public void testReplacedEntry() throws Exception {
+        Merlin crypto = new Merlin();
+        KeyStore trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
+        trustStore.load(null, "security".toCharArray());
+        crypto.setTrustStore(trustStore);
+
+        KeyStore keyStore = loadKeyStore("keys/wss40.jks");
+        X509Certificate caCert = (X509Certificate)keyStore.getCertificate("wss40ca");
+        X509Certificate cert = (X509Certificate)keyStore.getCertificate("wss40");
+        trustStore.setCertificateEntry("entry", caCert);
+        assertEquals("entry", crypto.getX509Identifier(caCert));
+
+        // Replacing the entry in place is not detected until the index is refreshed
+        trustStore.setCertificateEntry("entry", cert);
+        assertEquals("entry", crypto.getX509Identifier(caCert));
+        assertNull(crypto.getX509Identifier(cert));
+
+        crypto.refreshIndex();
+        assertNull(crypto.getX509Identifier(caCert));
+        assertEquals("entry", crypto.getX509Identifier(cert));
+    }
+
+    private KeyStore loadKeyStore(String location) throws Exception {
+        KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+        ClassLoader loader = Loader.getClassLoader(MerlinLookupTest.class);
+        try (InputStream input = Merlin.loadInputStream(loader, location)) {
+            keyStore.load(input, "security".toCharArray());
+        }
+        return keyStore;
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.crypto;
+
+import java.security.PrivateKey;
+import java.util.Properties;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.Loader;
+import org.junit.Test;
+
+/**
+ * Some tests for caching the PrivateKeys retrieved by the Merlin Crypto implementation.
+ */
+public class PrivateKeyCacheTest extends org.junit.Assert {
+
+    @Test
+    public void testCachedPrivateKey() throws Exception {
+        Properties properties = CryptoFactory.getProperties("alice.properties",
+                                                            Loader.getClassLoader(PrivateKeyCacheTest.class));
+        properties.put(Merlin.PREFIX + Merlin.KEYSTORE_PRIVATE_CACHING, "true");
+        Merlin crypto = (Merlin)CryptoFactory.getInstance(properties);
+
+        PrivateKey privateKey = crypto.getPrivateKey("alice", "password");
+        assertNotNull(privateKey);
+        assertSame(privateKey, crypto.getPrivateKey("alice", "password"));
+
+        // A cached key must not be returned for the wrong password
+        try {
+            crypto.getPrivateKey("alice", "wrongpassword");
+            fail("Failure expected on a bad password");
+        } catch (WSSecurityException ex) {
+            assertEquals(WSSecurityException.ErrorCode.FAILURE, ex.getErrorCode());
+        }
+
+        // Replacing the keystore clears the cache
+        crypto.setKeyStore(crypto.getKeyStore());
+        PrivateKey reloadedKey = crypto.getPrivateKey("alice", "password");
+        assertNotSame(privateKey, reloadedKey);
+        assertEquals(privateKey, reloadedKey);
+
+        // As does refreshing the index after changing an entry in place
+        crypto.refreshIndex();
+        assertNotSame(reloadedKey, crypto.getPrivateKey("alice", "password"));
+    }
+
+    @Test
+    public void testNoCaching() throws Exception {
+        Merlin crypto = (Merlin)CryptoFactory.getInstance("alice.properties");
+        PrivateKey privateKey = crypto.getPrivateKey("alice", "password");
+        assertNotSame(privateKey, crypto.getPrivateKey("alice", "password"));
+    }
+}
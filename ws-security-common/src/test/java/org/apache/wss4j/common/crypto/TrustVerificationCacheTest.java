@@ -0,0 +1,227 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.crypto;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.KeyStore;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Properties;
+import java.util.regex.Pattern;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.Loader;
+import org.apache.wss4j.common.util.WSTimeSource;
+import org.junit.Test;
+
+/**
+ * Some tests for caching the result of certificate chain validation.
+ */
+public class TrustVerificationCacheTest extends org.junit.Assert {
+
+    public TrustVerificationCacheTest() {
+        WSProviderConfig.init();
+    }
+
+    @Test
+    public void testCacheHits() throws Exception {
+        CountingMerlin crypto = new CountingMerlin();
+        TrustVerificationCache cache = createCache(10, 300L);
+        crypto.setTrustVerificationCache(cache);
+
+        X509Certificate[] certs = getCertificates();
+        crypto.verifyTrust(certs, false, null, null);
+        crypto.verifyTrust(certs, false, null, null);
+        assertEquals(1, crypto.count);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        // Different constraints or revocation settings must not hit the cache
+        Collection<Pattern> constraints = Collections.singletonList(Pattern.compile(".*"));
+        crypto.verifyTrust(certs, false, constraints, null);
+        crypto.verifyTrust(certs, true, null, null);
+        assertEquals(3, crypto.count);
+
+        // Changing the CRLs flushes the cache
+        crypto.setCRLCertStore(null);
+        assertEquals(0, cache.size());
+        crypto.verifyTrust(certs, false, null, null);
+        assertEquals(4, crypto.count);
+    }
+
+    @Test
+    public void testExpiry() throws Exception {
+        X509Certificate[] certs = getCertificates();
+        TrustVerificationCache cache = new TrustVerificationCache(10, 300L);
+
+        // The certificate has expired, so the result is not cached
+        final Date afterNotAfter = new Date(certs[0].getNotAfter().getTime() + 1000L);
+        cache.setTimeSource(new FixedTimeSource(afterNotAfter));
+        String key = cache.getKey(certs, false, null, null);
+        cache.add(key, certs);
+        assertFalse(cache.contains(key));
+
+        // The entry expires at the certificate "notAfter" date, before the TTL
+        cache.setTimeSource(new FixedTimeSource(new Date(certs[0].getNotAfter().getTime() - 1000L)));
+        cache.add(key, certs);
+        assertTrue(cache.contains(key));
+        cache.setTimeSource(new FixedTimeSource(afterNotAfter));
+        assertFalse(cache.contains(key));
+    }
+
+    @Test
+    public void testIssuerExpiry() throws Exception {
+        CountingMerlin crypto = new CountingMerlin();
+        KeyStore trustStore = KeyStore.getInstance("JKS");
+        ClassLoader loader = Loader.getClassLoader(TrustVerificationCacheTest.class);
+        try (InputStream is = Merlin.loadInputStream(loader, "keys/wss40CA.jks")) {
+            trustStore.load(is, "security".toCharArray());
+        }
+        crypto.setTrustStore(trustStore);
+        X509Certificate issuer = (X509Certificate)trustStore.getCertificate("wss40ca");
+
+        // The entry expires at the "notAfter" date of the trusted issuer certificate
+        TrustVerificationCache cache = new TrustVerificationCache(10, 300L);
+        cache.setTimeSource(new FixedTimeSource(new Date(issuer.getNotAfter().getTime() - 1000L)));
+        crypto.setTrustVerificationCache(cache);
+        X509Certificate[] certs = getCertificates();
+        assertTrue(certs[0].getNotAfter().after(issuer.getNotAfter()));
+        crypto.verifyTrust(certs, false, null, null);
+        crypto.verifyTrust(certs, false, null, null);
+        assertEquals(1, crypto.count);
+
+        cache.setTimeSource(new FixedTimeSource(new Date(issuer.getNotAfter().getTime() + 1000L)));
+        crypto.verifyTrust(certs, false, null, null);
+        assertEquals(2, crypto.count);
+    }
+
+    @Test
+    public void testCRLReloadDuringValidation() throws Exception {
+        File crlFile = File.createTempFile("wss4j-crl", ".pem");
+        crlFile.deleteOnExit();
+        ClassLoader loader = Loader.getClassLoader(TrustVerificationCacheTest.class);
+        try (InputStream is = Merlin.loadInputStream(loader, "keys/wss40CACRL.pem")) {
+            Files.copy(is, crlFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        final IndexedCRLCertStore crlCertStore =
+            new IndexedCRLCertStore(Collections.singletonList(crlFile.toURI().toURL()),
+                                    CertificateFactory.getInstance("X.509"));
+
+        final CountingMerlin crypto = new CountingMerlin();
+        crypto.setCRLCertStore(crlCertStore);
+        crypto.setTrustVerificationCache(createCache(10, 300L));
+        final X509Certificate[] certs = getCertificates();
+
+        // The CRLs are reloaded, and another thread validates a chain, while the first chain is
+        // being validated against the old CRLs
+        crypto.duringValidation = () -> {
+            crypto.duringValidation = null;
+            assertTrue(crlFile.setLastModified(crlFile.lastModified() + 10000L));
+            assertTrue(crlCertStore.reload());
+            crypto.verifyTrust(certs, true, null, null);
+        };
+        crypto.verifyTrust(certs, false, null, null);
+        assertEquals(2, crypto.count);
+
+        // The result that was validated against the old CRLs is not used
+        crypto.verifyTrust(certs, false, null, null);
+        assertEquals(3, crypto.count);
+        crypto.verifyTrust(certs, false, null, null);
+        assertEquals(3, crypto.count);
+    }
+
+    @Test
+    public void testMaxEntries() throws Exception {
+        X509Certificate[] certs = getCertificates();
+        TrustVerificationCache cache = createCache(2, 300L);
+        cache.add(cache.getKey(certs, false, null, null), certs);
+        cache.add(cache.getKey(certs, true, null, null), certs);
+        cache.add(cache.getKey(certs, true, Collections.singletonList(Pattern.compile(".*")), null), certs);
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testMalformedProperty() throws Exception {
+        Properties properties = new Properties();
+        properties.put("org.apache.wss4j.crypto.merlin.keystore.type", "jks");
+        properties.put("org.apache.wss4j.crypto.merlin.keystore.password", "security");
+        properties.put("org.apache.wss4j.crypto.merlin.keystore.file", "keys/wss40.jks");
+        properties.put("org.apache.wss4j.crypto.merlin." + Merlin.TRUST_CACHE_SIZE, "ten");
+        try {
+            new Merlin(properties, this.getClass().getClassLoader(), null);
+            fail("Failure expected on a malformed property");
+        } catch (WSSecurityException ex) {
+            assertTrue(ex.getMessage().contains(Merlin.TRUST_CACHE_SIZE));
+        }
+    }
+
+    private static TrustVerificationCache createCache(int maxEntries, long ttl) throws Exception {
+        TrustVerificationCache cache = new TrustVerificationCache(maxEntries, ttl);
+        // The test certificates may have expired, so go back to a time at which they were valid
+        X509Certificate cert = getCertificates()[0];
+        cache.setTimeSource(new FixedTimeSource(new Date(cert.getNotBefore().getTime() + 1000L)));
+        return cache;
+    }
+
+    private static X509Certificate[] getCertificates() throws Exception {
+        Crypto crypto = CryptoFactory.getInstance("wss40.properties");
+        CryptoType cryptoType = new CryptoType(CryptoType.TYPE.ALIAS);
+        cryptoType.setAlias("wss40");
+        X509Certificate[] certs = crypto.getX509Certificates(cryptoType);
+        return new X509Certificate[] {certs[0]};
+    }
+
+    private static class CountingMerlin extends Merlin {
+        int count;
+        Validation duringValidation;
+
+        @Override
+        protected void verifyTrust(
+            X509Certificate[] certs, boolean enableRevocation, Collection<Pattern> subjectCertConstraints
+        ) throws WSSecurityException {
+            count++;
+            if (duringValidation != null) {
+                duringValidation.run();
+            }
+        }
+    }
+
+    private interface Validation {
+        void run() throws WSSecurityException;
+    }
+
+    private static class FixedTimeSource implements WSTimeSource {
+        private final Date date;
+
+        FixedTimeSource(Date date) {
+            this.date = date;
+        }
+
+        public Date now() {
+            return date;
+        }
+    }
+}
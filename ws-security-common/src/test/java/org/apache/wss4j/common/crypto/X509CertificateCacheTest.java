@@ -0,0 +1,93 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.crypto;
+
+import java.security.cert.X509Certificate;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.junit.Test;
+
+/**
+ * Some tests for the cache of parsed X.509 certificates.
+ */
+public class X509CertificateCacheTest extends org.junit.Assert {
+
+    @Test
+    public void testCachedCertificate() throws Exception {
+        Crypto crypto = CryptoFactory.getInstance("wss40.properties");
+        X509Certificate[] certs = getCertificates(crypto);
+        byte[] data = certs[0].getEncoded();
+
+        X509CertificateCache cache = new X509CertificateCache(10);
+        X509Certificate cert = cache.getCertificate(data, crypto);
+        assertEquals(certs[0], cert);
+        assertSame(cert, cache.getCertificate(data.clone(), crypto));
+        assertEquals(1, cache.size());
+
+        // Changing the caller's array does not affect the cached entry
+        data[data.length - 1]++;
+        assertSame(cert, cache.getCertificate(certs[0].getEncoded(), crypto));
+
+        // A different Crypto implementation has its own entry
+        assertEquals(cert, cache.getCertificate(certs[0].getEncoded(), new MerlinAKI()));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testCachedCertPath() throws Exception {
+        Crypto crypto = CryptoFactory.getInstance("wss40.properties");
+        byte[] data = crypto.getBytesFromCertificates(getCertificates(crypto));
+
+        X509CertificateCache cache = new X509CertificateCache(10);
+        X509Certificate[] certs = cache.getCertificates(data, crypto);
+        X509Certificate[] cachedCerts = cache.getCertificates(data, crypto);
+        assertNotSame(certs, cachedCerts);
+        assertSame(certs[0], cachedCerts[0]);
+    }
+
+    @Test
+    public void testMaxEntries() throws Exception {
+        Crypto crypto = CryptoFactory.getInstance("wss40.properties");
+        X509Certificate[] certs = getCertificates(crypto);
+
+        X509CertificateCache cache = new X509CertificateCache(1);
+        cache.getCertificate(certs[0].getEncoded(), crypto);
+        cache.getCertificate(certs[1].getEncoded(), crypto);
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testParseError() throws Exception {
+        X509CertificateCache cache = new X509CertificateCache(10);
+        try {
+            cache.getCertificate(new byte[] {1, 2, 3}, new Merlin());
+            fail("Failure expected on an invalid certificate");
+        } catch (WSSecurityException ex) {
+            assertEquals(WSSecurityException.ErrorCode.SECURITY_TOKEN_UNAVAILABLE, ex.getErrorCode());
+        }
+        assertEquals(0, cache.size());
+    }
+
+    private static X509Certificate[] getCertificates(Crypto crypto) throws Exception {
+        CryptoType cryptoType = new CryptoType(CryptoType.TYPE.ALIAS);
+        cryptoType.setAlias("wss40");
+        return crypto.getX509Certificates(cryptoType);
+    }
+}
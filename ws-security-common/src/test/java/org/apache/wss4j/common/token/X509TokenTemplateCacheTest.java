@@ -0,0 +1,114 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.token;
+
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Base64;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.apache.wss4j.common.crypto.Crypto;
+import org.apache.wss4j.common.crypto.CryptoFactory;
+import org.apache.wss4j.common.crypto.CryptoType;
+import org.apache.wss4j.common.util.KeyUtils;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+/**
+ * Some tests for the cache of precomputed certificate token values.
+ */
+public class X509TokenTemplateCacheTest extends org.junit.Assert {
+
+    @Test
+    public void testTemplate() throws Exception {
+        Crypto crypto = CryptoFactory.getInstance("wss40.properties");
+        X509Certificate cert = getCertificates(crypto)[0];
+
+        X509TokenTemplateCache cache = new X509TokenTemplateCache(10);
+        X509TokenTemplateCache.Template template = cache.getTemplate(cert);
+        assertSame(template, cache.getTemplate(cert));
+        assertEquals(1, cache.size());
+
+        assertTrue(Arrays.equals(cert.getEncoded(), template.getEncoded()));
+        assertEquals(
+            Base64.getMimeEncoder().encodeToString(cert.getEncoded()), template.getBase64Encoded()
+        );
+        assertEquals(
+            Base64.getMimeEncoder().encodeToString(KeyUtils.generateDigest(cert.getEncoded())),
+            template.getThumbprint()
+        );
+        assertEquals(
+            Base64.getMimeEncoder().encodeToString(crypto.getSKIBytesFromCert(cert)),
+            template.getSKI(crypto)
+        );
+
+        // Changing the returned array does not affect the cached entry
+        byte[] encoded = template.getEncoded();
+        encoded[encoded.length - 1]++;
+        assertTrue(Arrays.equals(cert.getEncoded(), template.getEncoded()));
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertNotSame(template, cache.getTemplate(cert));
+    }
+
+    @Test
+    public void testMaxEntries() throws Exception {
+        Crypto crypto = CryptoFactory.getInstance("wss40.properties");
+        X509Certificate[] certs = getCertificates(crypto);
+
+        X509TokenTemplateCache cache = new X509TokenTemplateCache(1);
+        cache.getTemplate(certs[0]);
+        cache.getTemplate(certs[1]);
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testBinarySecurityTokens() throws Exception {
+        Crypto crypto = CryptoFactory.getInstance("wss40.properties");
+        X509Certificate cert = getCertificates(crypto)[0];
+
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        Document doc = factory.newDocumentBuilder().newDocument();
+
+        // Each token has its own wsu:Id, but the same (cached) certificate
+        X509Security bst1 = new X509Security(doc);
+        bst1.setX509Certificate(cert);
+        bst1.setID("X509-1");
+        X509Security bst2 = new X509Security(doc);
+        bst2.setX509Certificate(cert);
+        bst2.setID("X509-2");
+
+        assertEquals("X509-1", bst1.getID());
+        assertEquals("X509-2", bst2.getID());
+        assertNotSame(bst1.getElement(), bst2.getElement());
+        assertEquals(cert, bst1.getX509Certificate(crypto));
+        assertEquals(cert, bst2.getX509Certificate(crypto));
+        assertTrue(Arrays.equals(cert.getEncoded(), bst2.getToken()));
+    }
+
+    private static X509Certificate[] getCertificates(Crypto crypto) throws Exception {
+        CryptoType cryptoType = new CryptoType(CryptoType.TYPE.ALIAS);
+        cryptoType.setAlias("wss40");
+        return crypto.getX509Certificates(cryptoType);
+    }
+}
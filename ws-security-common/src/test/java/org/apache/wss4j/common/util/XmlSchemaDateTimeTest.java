@@ -0,0 +1,146 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.util;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+import javax.xml.datatype.DatatypeConstants;
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.datatype.XMLGregorianCalendar;
+
+import org.junit.Test;
+
+/**
+ * Some tests for parsing and formatting xsd:dateTime values.
+ */
+public class XmlSchemaDateTimeTest extends org.junit.Assert {
+
+    private static final String[] VALID_VALUES = {
+        "2017-03-08T10:15:30Z",
+        "2017-03-08T10:15:30.123Z",
+        "2017-03-08T10:15:30.1Z",
+        "2017-03-08T10:15:30.12Z",
+        "2017-03-08T10:15:30.1239Z",
+        "2017-03-08T10:15:30.999999Z",
+        "2017-03-08T10:15:30+05:30",
+        "2017-03-08T10:15:30.5-08:00",
+        "2017-03-08T10:15:30+14:00",
+        "2017-03-08T10:15:30-14:00",
+        "2016-02-29T23:59:59Z",
+        "2000-02-29T00:00:00Z",
+        "2016-12-31T23:59:60Z",
+        "2016-12-31T24:00:00Z",
+        "1969-12-31T23:59:59.999Z",
+        "1970-01-01T00:00:00Z",
+        "0001-01-01T00:00:00Z",
+        "9999-12-31T23:59:59.999Z",
+        "12345-06-07T08:09:10Z",
+        "-0001-01-01T00:00:00Z",
+        "2017-03-08T10:15:30",
+        "2017-03-08T10:15:30.123",
+    };
+
+    private static final String[] INVALID_VALUES = {
+        "",
+        "2017-03-08",
+        "2017-03-08T10:15",
+        "2017-03-08 10:15:30Z",
+        "17-03-08T10:15:30Z",
+        "02017-03-08T10:15:30Z",
+        "0000-03-08T10:15:30Z",
+        "+2017-03-08T10:15:30Z",
+        "2017-3-08T10:15:30Z",
+        "2017-13-08T10:15:30Z",
+        "2017-00-08T10:15:30Z",
+        "2017-02-29T10:15:30Z",
+        "2017-04-31T10:15:30Z",
+        "2017-03-08T25:15:30Z",
+        "2017-03-08T24:00:01Z",
+        "2017-03-08T24:00:00.1Z",
+        "2017-03-08T10:60:30Z",
+        "2017-03-08T10:15:61Z",
+        "2017-03-08T10:15:30.Z",
+        "2017-03-08T10:15:30ZZ",
+        "2017-03-08T10:15:30+15:00",
+        "2017-03-08T10:15:30+14:01",
+        "2017-03-08T10:15:30+0530",
+        "2017-03-08T10:15:30+05:60",
+        "2017-03-08T10:15:30 ",
+        "2017-03-08T1a:15:30Z",
+    };
+
+    @Test
+    public void testParseValidValues() throws Exception {
+        DatatypeFactory datatypeFactory = DatatypeFactory.newInstance();
+        for (String value : VALID_VALUES) {
+            XMLGregorianCalendar calendar = datatypeFactory.newXMLGregorianCalendar(value);
+            XmlSchemaDateTime dateTime = XmlSchemaDateTime.parse(value);
+
+            assertEquals(value, calendar.toGregorianCalendar().getTimeInMillis(), dateTime.getTime());
+            assertEquals(value, calendar.getSecond(), dateTime.getSecond());
+            int scale = calendar.getFractionalSecond() == null ? 0 : calendar.getFractionalSecond().scale();
+            assertEquals(value, scale, dateTime.getFractionalSecondDigits());
+            assertEquals(value, calendar.getTimezone() != DatatypeConstants.FIELD_UNDEFINED,
+                         dateTime.hasTimezone());
+        }
+    }
+
+    @Test
+    public void testParseInvalidValues() throws Exception {
+        for (String value : INVALID_VALUES) {
+            try {
+                XmlSchemaDateTime.parse(value);
+                fail("Failure expected on " + value);
+            } catch (IllegalArgumentException ex) {
+                assertTrue(ex.getMessage().startsWith("INVALID_XSD_DATETIME"));
+            }
+        }
+    }
+
+    @Test
+    public void testFormat() throws Exception {
+        DateFormat millisFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.ENGLISH);
+        millisFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        DateFormat secondsFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.ENGLISH);
+        secondsFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+        Random random = new Random(12345L);
+        long[] times = new long[1000];
+        times[0] = 0L;
+        times[1] = -1L;
+        times[2] = 253402300799999L; // 9999-12-31T23:59:59.999Z
+        times[3] = 951782400000L; // 2000-02-29T00:00:00Z
+        for (int i = 4; i < times.length; i++) {
+            times[i] = (long)(random.nextDouble() * 253402300799999L);
+        }
+
+        for (long time : times) {
+            Date date = new Date(time);
+            assertEquals(millisFormat.format(date), XmlSchemaDateTime.format(date, true));
+            assertEquals(secondsFormat.format(date), XmlSchemaDateTime.format(date, false));
+            assertEquals(time, XmlSchemaDateTime.parse(XmlSchemaDateTime.format(time, true)).getTime());
+        }
+    }
+}
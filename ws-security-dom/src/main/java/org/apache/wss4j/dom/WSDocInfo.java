@@ -33,9 +33,10 @@ package org.apache.wss4j.dom;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.xml.crypto.dom.DOMCryptoContext;
 
@@ -57,8 +58,15 @@ public class WSDocInfo {
     // creation or validation
     private final Map<String, TokenValue> tokens = new HashMap<>();
 
-    private final List<WSSecurityEngineResult> results = new LinkedList<>();
+    // The results are indexed by action and by Id, so that looking them up does not need to
+    // iterate over the results
+    private final List<WSSecurityEngineResult> results = new ArrayList<>();
+    private final List<WSSecurityEngineResult> resultsView = Collections.unmodifiableList(results);
     private final Map<Integer, List<WSSecurityEngineResult>> actionResults = new HashMap<>();
+    private final Map<Integer, List<WSSecurityEngineResult>> actionResultsView =
+        Collections.unmodifiableMap(actionResults);
+    private final Map<Integer, ActionIndex> actionIndexes = new HashMap<>();
+    private final Map<String, WSSecurityEngineResult> resultsById = new HashMap<>();
     private CallbackLookup callbackLookup;
     private Element securityHeader;
 
@@ -86,6 +94,8 @@ public class WSDocInfo {
         tokens.clear();
         results.clear();
         actionResults.clear();
+        actionIndexes.clear();
+        resultsById.clear();
     }
 
     /**
@@ -207,42 +217,43 @@ public class WSDocInfo {
 
 
     /**
-     * Store a WSSecurityEngineResult for later retrieval.
+     * Store a WSSecurityEngineResult for later retrieval. The result is indexed by its action
+     * and Id, and so these should be set on it before it is stored.
      * @param result is the WSSecurityEngineResult to store
      */
     public void addResult(WSSecurityEngineResult result) {
         results.add(result);
-        Integer resultTag = (Integer)result.get(WSSecurityEngineResult.TAG_ACTION);
+        String id = result.getId();
+        if (id != null) {
+            resultsById.putIfAbsent(id, result);
+        }
+        Integer resultTag = result.getAction();
         if (resultTag != null) {
-            List<WSSecurityEngineResult> storedResults = actionResults.get(resultTag);
-            if (storedResults == null) {
-                storedResults = new ArrayList<>();
+            ActionIndex actionIndex = actionIndexes.get(resultTag);
+            if (actionIndex == null) {
+                actionIndex = new ActionIndex();
+                actionIndexes.put(resultTag, actionIndex);
+                actionResults.put(resultTag, actionIndex.resultsView);
+            }
+            actionIndex.results.add(result);
+            if (id != null) {
+                actionIndex.ids.add(id);
             }
-            storedResults.add(result);
-            actionResults.put(resultTag, storedResults);
         }
     }
 
     /**
-     * Get a copy of the security results list. Modifying the subsequent list does not
-     * change the internal results list.
+     * Get an unmodifiable view of the security results list.
      */
     public List<WSSecurityEngineResult> getResults() {
-        if (results.isEmpty()) {
-            return Collections.emptyList();
-        }
-        return new ArrayList<>(results);
+        return resultsView;
     }
 
     /**
-     * Return a copy of the map between security actions + results. Modifying the subsequent
-     * map does not change the internal map.
+     * Return an unmodifiable view of the map between security actions + results.
      */
     public Map<Integer, List<WSSecurityEngineResult>> getActionResults() {
-        if (actionResults.isEmpty()) {
-            return Collections.emptyMap();
-        }
-        return new HashMap<>(actionResults);
+        return actionResultsView;
     }
 
     /**
@@ -255,27 +266,18 @@ public class WSDocInfo {
         if (id == null) {
             return null;
         }
-
-        if (!results.isEmpty()) {
-            for (WSSecurityEngineResult result : results) {
-                String cId = (String)result.get(WSSecurityEngineResult.TAG_ID);
-                if (id.equals(cId)) {
-                    return result;
-                }
-            }
-        }
-        return null;
+        return resultsById.get(id);
     }
 
     /**
      * Get a unmodifiable list of WSSecurityEngineResults of the given Integer tag
      */
     public List<WSSecurityEngineResult> getResultsByTag(Integer tag) {
-        if (actionResults.isEmpty() || !actionResults.containsKey(tag)) {
+        ActionIndex actionIndex = actionIndexes.get(tag);
+        if (actionIndex == null) {
             return Collections.emptyList();
         }
-
-        return Collections.unmodifiableList(actionResults.get(tag));
+        return actionIndex.resultsView;
     }
 
     /**
@@ -287,16 +289,8 @@ public class WSDocInfo {
             return false;
         }
 
-        if (!actionResults.isEmpty() && actionResults.containsKey(tag)) {
-            for (WSSecurityEngineResult result : actionResults.get(tag)) {
-                String cId = (String)result.get(WSSecurityEngineResult.TAG_ID);
-                if (id.equals(cId)) {
-                    return true;
-                }
-            }
-        }
-
-        return false;
+        ActionIndex actionIndex = actionIndexes.get(tag);
+        return actionIndex != null && actionIndex.ids.contains(id);
     }
 
     /**
@@ -352,6 +346,12 @@ public class WSDocInfo {
         this.securityHeader = securityHeader;
     }
 
+    private static class ActionIndex {
+        private final List<WSSecurityEngineResult> results = new ArrayList<>();
+        private final List<WSSecurityEngineResult> resultsView = Collections.unmodifiableList(results);
+        private final Set<String> ids = new HashSet<>();
+    }
+
     private static class TokenValue {
         private final String idName;
         private final String idNamespace;
@@ -24,6 +24,7 @@ import javax.security.auth.callback.CallbackHandler;
 import org.apache.wss4j.common.SecurityActionToken;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.saml.SamlAssertionWrapper;
+import org.apache.wss4j.common.saml.IssuedAssertionCache;
 import org.apache.wss4j.common.saml.SAMLCallback;
 import org.apache.wss4j.common.saml.SAMLUtil;
 import org.apache.wss4j.dom.handler.RequestData;
@@ -53,16 +54,26 @@ public class SAMLTokenUnsignedAction implements Action {
         SAMLCallback samlCallback = new SAMLCallback();
         SAMLUtil.doSAMLCallback(samlCallbackHandler, samlCallback);
 
-        SamlAssertionWrapper samlAssertion = new SamlAssertionWrapper(samlCallback);
-        if (samlCallback.isSignAssertion()) {
-            samlAssertion.signAssertion(
-                samlCallback.getIssuerKeyName(),
-                samlCallback.getIssuerKeyPassword(),
-                samlCallback.getIssuerCrypto(),
-                samlCallback.isSendKeyValue(),
-                samlCallback.getCanonicalizationAlgorithm(),
-                samlCallback.getSignatureAlgorithm()
-            );
+        IssuedAssertionCache issuedAssertionCache = reqData.getIssuedAssertionCache();
+        SamlAssertionWrapper samlAssertion = null;
+        if (issuedAssertionCache != null) {
+            samlAssertion = issuedAssertionCache.get(samlCallback);
+        }
+        if (samlAssertion == null) {
+            samlAssertion = new SamlAssertionWrapper(samlCallback);
+            if (samlCallback.isSignAssertion()) {
+                samlAssertion.signAssertion(
+                    samlCallback.getIssuerKeyName(),
+                    samlCallback.getIssuerKeyPassword(),
+                    samlCallback.getIssuerCrypto(),
+                    samlCallback.isSendKeyValue(),
+                    samlCallback.getCanonicalizationAlgorithm(),
+                    samlCallback.getSignatureAlgorithm()
+                );
+            }
+            if (issuedAssertionCache != null) {
+                samlAssertion = issuedAssertionCache.add(samlCallback, samlAssertion);
+            }
         }
 
         // add the SAMLAssertion Token to the SOAP Envelope
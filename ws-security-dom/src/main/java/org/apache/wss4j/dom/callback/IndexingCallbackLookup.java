@@ -0,0 +1,297 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.dom.callback;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.crypto.dom.DOMCryptoContext;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.XMLUtils;
+import org.apache.wss4j.dom.WSConstants;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * This class locates Elements that are referenced via an Id using an index of the Id values in
+ * the document. The index is built in a single pass over the document on the first lookup, so
+ * that each lookup does not require a walk of the whole tree. It contains the wsu:Id and Id
+ * attributes, and the SAML ID and AssertionID attributes, of every Element.
+ *
+ * Every Element with a given Id is indexed, so that duplicate Ids are still detected when
+ * checkMultipleElements is true. Elements that are removed from the document, or no longer have
+ * the Id, are dropped from the index when they are next looked up. Elements that are added to the
+ * document after the first lookup must be indexed by calling updateIndex. The decrypting
+ * processors do this for the nodes that replace an EncryptedData element, and so must any custom
+ * processor that adds Elements to the document, as otherwise an added Element with a duplicate Id
+ * would not be detected. If an Id is not in the index, the tree is walked as in DOMCallbackLookup.
+ */
+public class IndexingCallbackLookup extends DOMCallbackLookup {
+
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(IndexingCallbackLookup.class);
+
+    private final Document doc;
+    private Map<String, List<Element>> idIndex;
+    private Map<String, List<Element>> samlIdIndex;
+
+    public IndexingCallbackLookup(Document doc) {
+        super(doc);
+        this.doc = doc;
+    }
+
+    /**
+     * Get the DOM element that corresponds to the given id and ValueType reference. The Id can
+     * be a wsu:Id or else an Id attribute, or a SAML Id when the ValueType refers to a SAML
+     * Assertion. The implementation is also responsible to register the retrieved Element on the
+     * DOMCryptoContext argument, so that the XML Signature implementation can find the Element.
+     *
+     * @param id The id of the element to locate
+     * @param valueType The ValueType attribute of the element to locate (can be null)
+     * @param checkMultipleElements If true then return null if there are multiple elements
+     *        with the same Id
+     * @param context The DOMCryptoContext to store the Element in
+     * @return the located element
+     * @throws WSSecurityException
+     */
+    @Override
+    public Element getAndRegisterElement(
+        String id, String valueType, boolean checkMultipleElements, DOMCryptoContext context
+    ) throws WSSecurityException {
+        String idToMatch = XMLUtils.getIDFromReference(id);
+        if (idToMatch == null) {
+            return null;
+        }
+
+        //
+        // Try the SOAP Body first
+        //
+        Element bodyElement = getSOAPBody();
+        if (bodyElement != null) {
+            String cId = bodyElement.getAttributeNS(WSConstants.WSU_NS, "Id");
+            if (cId.equals(idToMatch)) {
+                if (context != null) {
+                    context.setIdAttributeNS(bodyElement, WSConstants.WSU_NS, "Id");
+                }
+                return bodyElement;
+            }
+        }
+
+        if (idIndex == null) {
+            buildIndex();
+        }
+
+        // Otherwise use the index
+        Element foundElement = getIndexedElement(idIndex, idToMatch, false, checkMultipleElements);
+        if (foundElement != null) {
+            if (context != null) {
+                if (foundElement.hasAttributeNS(WSConstants.WSU_NS, "Id")
+                    && idToMatch.equals(foundElement.getAttributeNS(WSConstants.WSU_NS, "Id"))) {
+                    context.setIdAttributeNS(foundElement, WSConstants.WSU_NS, "Id");
+                }
+                if (foundElement.hasAttributeNS(null, "Id")
+                    && idToMatch.equals(foundElement.getAttributeNS(null, "Id"))) {
+                    context.setIdAttributeNS(foundElement, null, "Id");
+                }
+            }
+            return foundElement;
+        }
+
+        //
+        // Try to find a SAML Assertion Element if the ValueType corresponds to a SAML Assertion
+        // (or is empty)
+        //
+        if (WSConstants.WSS_SAML_KI_VALUE_TYPE.equals(valueType)
+            || WSConstants.WSS_SAML2_KI_VALUE_TYPE.equals(valueType)
+            || "".equals(valueType)
+            || valueType == null) {
+            foundElement = getIndexedElement(samlIdIndex, idToMatch, true, true);
+            if (foundElement != null) {
+                if (context != null) {
+                    if (foundElement.hasAttributeNS(null, "ID")
+                        && idToMatch.equals(foundElement.getAttributeNS(null, "ID"))) {
+                        context.setIdAttributeNS(foundElement, null, "ID");
+                    }
+                    if (foundElement.hasAttributeNS(null, "AssertionID")
+                        && idToMatch.equals(foundElement.getAttributeNS(null, "AssertionID"))) {
+                        context.setIdAttributeNS(foundElement, null, "AssertionID");
+                    }
+                }
+                return foundElement;
+            }
+        }
+
+        // Not indexed, so fall back to walking the tree
+        return super.getAndRegisterElement(id, valueType, checkMultipleElements, context);
+    }
+
+    /**
+     * Add the Id values of the given node, and all of its descendants, to the index. This must be
+     * called when Elements are added to the document after the first lookup.
+     * @param node the node that was added to the document
+     */
+    public void updateIndex(Node node) {
+        if (idIndex != null && node != null) {
+            indexTree(node);
+        }
+    }
+
+    private void buildIndex() {
+        idIndex = new HashMap<>();
+        samlIdIndex = new HashMap<>();
+        indexTree(doc.getDocumentElement());
+    }
+
+    /**
+     * Index the Id values of the given node and its descendants, using the same depth-first-loop
+     * as XMLUtils.findElementById, but without going on to the siblings of the given node
+     */
+    private void indexTree(Node node) {
+        if (node == null) {
+            return;
+        }
+        Node startNode = node;
+        Node processedNode = null;
+
+        while (startNode != null) {
+            if (startNode.getNodeType() == Node.ELEMENT_NODE) {
+                Element se = (Element) startNode;
+                String wsuId = se.getAttributeNS(WSConstants.WSU_NS, "Id");
+                String id = se.getAttributeNS(null, "Id");
+                addToIndex(idIndex, wsuId, se);
+                if (!id.equals(wsuId)) {
+                    addToIndex(idIndex, id, se);
+                }
+
+                String samlId = se.getAttributeNS(null, "ID");
+                String assertionId = se.getAttributeNS(null, "AssertionID");
+                addToIndex(samlIdIndex, samlId, se);
+                if (!assertionId.equals(samlId)) {
+                    addToIndex(samlIdIndex, assertionId, se);
+                }
+            }
+
+            processedNode = startNode;
+            startNode = startNode.getFirstChild();
+
+            // no child, this node is done.
+            if (startNode == null) {
+                if (processedNode == node) {
+                    return;
+                }
+                // close node processing, get sibling
+                startNode = processedNode.getNextSibling();
+            }
+            // no more siblings, get parent, all children
+            // of parent are processed.
+            while (startNode == null) {
+                processedNode = processedNode.getParentNode();
+                if (processedNode == node) {
+                    return;
+                }
+                // close parent node processing (processed node now)
+                startNode = processedNode.getNextSibling();
+            }
+        }
+    }
+
+    private static void addToIndex(Map<String, List<Element>> index, String id, Element element) {
+        if ("".equals(id)) {
+            return;
+        }
+        List<Element> elements = index.get(id);
+        if (elements == null) {
+            elements = new ArrayList<>(1);
+            index.put(id, elements);
+        } else {
+            for (Element existing : elements) {
+                if (existing == element) {
+                    return;
+                }
+            }
+        }
+        elements.add(element);
+    }
+
+    /**
+     * Get the Element with the given Id from the index. Elements that are no longer in the
+     * document, or no longer have the Id, are removed from the index.
+     */
+    private Element getIndexedElement(
+        Map<String, List<Element>> index, String id, boolean samlId, boolean checkMultipleElements
+    ) {
+        List<Element> elements = index.get(id);
+        if (elements == null) {
+            return null;
+        }
+
+        Element foundElement = null;
+        Iterator<Element> iterator = elements.iterator();
+        while (iterator.hasNext()) {
+            Element element = iterator.next();
+            if (!hasId(element, id, samlId) || !isInDocument(element, doc)) {
+                iterator.remove();
+            } else if (foundElement == null) {
+                foundElement = element;
+            } else if (checkMultipleElements) {
+                if (samlId) {
+                    LOG.warn("Multiple elements with the same 'ID' attribute value!");
+                } else {
+                    LOG.warn("Multiple elements with the same 'Id' attribute value!");
+                }
+                return null;
+            } else if ((element.compareDocumentPosition(foundElement)
+                & Node.DOCUMENT_POSITION_FOLLOWING) != 0) {
+                // Return the first matching Element in document order
+                foundElement = element;
+            }
+        }
+        if (elements.isEmpty()) {
+            index.remove(id);
+        }
+        return foundElement;
+    }
+
+    private static boolean hasId(Element element, String id, boolean samlId) {
+        if (samlId) {
+            return id.equals(element.getAttributeNS(null, "ID"))
+                || id.equals(element.getAttributeNS(null, "AssertionID"));
+        }
+        return id.equals(element.getAttributeNS(WSConstants.WSU_NS, "Id"))
+            || id.equals(element.getAttributeNS(null, "Id"));
+    }
+
+    private static boolean isInDocument(Node node, Document doc) {
+        Node parent = node.getParentNode();
+        while (parent != null) {
+            if (parent.getNodeType() == Node.DOCUMENT_NODE) {
+                return parent == doc;
+            }
+            parent = parent.getParentNode();
+        }
+        return false;
+    }
+
+}
@@ -23,7 +23,10 @@ import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.security.Security;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.xml.datatype.DatatypeConfigurationException;
 import javax.xml.datatype.DatatypeFactory;
@@ -239,6 +242,20 @@ public final class WSSConfig {
         DEFAULT_VALIDATORS = java.util.Collections.unmodifiableMap(tmp);
     }
 
+    /**
+     * The default processors and validators are thread-safe and hold no per-message state, so a
+     * single instance of each is shared, rather than creating a new instance for every security
+     * header element. The SamlAssertionValidator is excluded, as it has configuration setters.
+     */
+    private static final Set<Class<?>> SHARED_CLASSES;
+    static {
+        final Set<Class<?>> tmp = new HashSet<>(DEFAULT_PROCESSORS.values());
+        tmp.addAll(DEFAULT_VALIDATORS.values());
+        tmp.remove(org.apache.wss4j.dom.validate.SamlAssertionValidator.class);
+        SHARED_CLASSES = java.util.Collections.unmodifiableSet(tmp);
+    }
+    private static final Map<Class<?>, Object> SHARED_INSTANCES = new ConcurrentHashMap<>();
+
     /**
      * a static boolean flag that determines whether default JCE providers
      * should be added at the time of construction.
@@ -451,6 +468,9 @@ public final class WSSConfig {
      * Associate a SOAP processor name with a specified SOAP Security header
      * element QName.  Processors registered under this QName will be
      * called when processing header elements with the specified type.
+     *
+     * A new instance of the class is created per invocation, unless it is one of the
+     * default (thread-safe) processors, in which case a single instance is shared.
      */
     public Class<?> setProcessor(QName el, Class<?> clazz) {
         Object result = processorMap.put(el, clazz);
@@ -484,6 +504,9 @@ public final class WSSConfig {
      * Associate a SOAP validator name with a specified SOAP Security header
      * element QName.  validator registered under this QName will be
      * called when processing header elements with the specified type.
+     *
+     * A new instance of the class is created per invocation, unless it is one of the
+     * default (thread-safe) validators, in which case a single instance is shared.
      */
     public Class<?> setValidator(QName el, Class<?> clazz) {
         Object result = validatorMap.put(el, clazz);
@@ -506,15 +529,7 @@ public final class WSSConfig {
         final Object validatorObject = validatorMap.get(el);
 
         if (validatorObject instanceof Class<?>) {
-            try {
-                return (Validator)((Class<?>)validatorObject).newInstance();
-            } catch (Exception ex) {
-                if (LOG.isDebugEnabled()) {
-                    LOG.debug(ex.getMessage(), ex);
-                }
-                throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, ex,
-                    "unableToLoadClass", new Object[] {((Class<?>)validatorObject).getName()});
-            }
+            return (Validator)getInstance((Class<?>)validatorObject);
         } else if (validatorObject instanceof Validator) {
             return (Validator)validatorObject;
         }
@@ -532,21 +547,44 @@ public final class WSSConfig {
         final Object processorObject = processorMap.get(el);
 
         if (processorObject instanceof Class<?>) {
-            try {
-                return (Processor)((Class<?>)processorObject).newInstance();
-            } catch (Exception ex) {
-                if (LOG.isDebugEnabled()) {
-                    LOG.debug(ex.getMessage(), ex);
-                }
-                throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, ex,
-                        "unableToLoadClass", new Object[] {((Class<?>)processorObject).getName()});
-            }
+            return (Processor)getInstance((Class<?>)processorObject);
         } else if (processorObject instanceof Processor) {
             return (Processor)processorObject;
         }
         return null;
     }
 
+    /**
+     * Get an instance of the given Processor or Validator class. The shared instance is returned
+     * for a default class, otherwise a new instance is created.
+     */
+    private static Object getInstance(Class<?> clazz) throws WSSecurityException {
+        if (!SHARED_CLASSES.contains(clazz)) {
+            return newInstance(clazz);
+        }
+        Object instance = SHARED_INSTANCES.get(clazz);
+        if (instance == null) {
+            instance = newInstance(clazz);
+            Object existing = SHARED_INSTANCES.putIfAbsent(clazz, instance);
+            if (existing != null) {
+                instance = existing;
+            }
+        }
+        return instance;
+    }
+
+    private static Object newInstance(Class<?> clazz) throws WSSecurityException {
+        try {
+            return clazz.newInstance();
+        } catch (Exception ex) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(ex.getMessage(), ex);
+            }
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, ex,
+                    "unableToLoadClass", new Object[] {clazz.getName()});
+        }
+    }
+
     public WSTimeSource getCurrentTime() {
         if (currentTime != null) {
             return currentTime;
@@ -19,7 +19,9 @@
 
 package org.apache.wss4j.dom.engine;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -33,7 +35,7 @@ import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.WSDocInfo;
 import org.apache.wss4j.dom.callback.CallbackLookup;
-import org.apache.wss4j.dom.callback.DOMCallbackLookup;
+import org.apache.wss4j.dom.callback.IndexingCallbackLookup;
 import org.apache.wss4j.dom.handler.RequestData;
 import org.apache.wss4j.dom.handler.WSHandlerResult;
 import org.apache.wss4j.dom.processor.Processor;
@@ -83,7 +85,8 @@ public class WSSecurityEngine {
     }
 
     /**
-     * Set the CallbackLookup object to use to locate elements
+     * Set the CallbackLookup object to use to locate elements. If it is not set, an
+     * IndexingCallbackLookup is used for each security header that is processed.
      * @param callbackLookup the CallbackLookup object to use to locate elements
      */
     public void setCallbackLookup(CallbackLookup callbackLookup) {
@@ -312,7 +315,7 @@ public class WSSecurityEngine {
         WSDocInfo wsDocInfo = new WSDocInfo(securityHeader.getOwnerDocument());
         CallbackLookup callbackLookupToUse = callbackLookup;
         if (callbackLookupToUse == null) {
-            callbackLookupToUse = new DOMCallbackLookup(securityHeader.getOwnerDocument());
+            callbackLookupToUse = new IndexingCallbackLookup(securityHeader.getOwnerDocument());
         }
         wsDocInfo.setCallbackLookup(callbackLookupToUse);
         wsDocInfo.setCrypto(requestData.getSigVerCrypto());
@@ -368,8 +371,14 @@ public class WSSecurityEngine {
             }
         }
 
+        // The WSDocInfo only has an unmodifiable view of the results by action, so copy it
+        Map<Integer, List<WSSecurityEngineResult>> actionResults = new HashMap<>();
+        for (Map.Entry<Integer, List<WSSecurityEngineResult>> entry
+            : wsDocInfo.getActionResults().entrySet()) {
+            actionResults.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+        }
         WSHandlerResult handlerResult =
-            new WSHandlerResult(requestData.getActor(), returnResults, wsDocInfo.getActionResults());
+            new WSHandlerResult(requestData.getActor(), returnResults, actionResults);
 
         // Validate SAML Subject Confirmation requirements
         if (requestData.isValidateSamlSubjectConfirmation()) {
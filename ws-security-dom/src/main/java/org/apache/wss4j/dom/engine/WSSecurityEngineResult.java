@@ -358,5 +358,18 @@ public class WSSecurityEngineResult extends java.util.HashMap<String, Object> {
         put(TAG_TOKEN_ELEMENT, token.getElement());
     }
 
+    /**
+     * @return the value of the TAG_ACTION tag, or null if it is not set
+     */
+    public Integer getAction() {
+        return (Integer)get(TAG_ACTION);
+    }
+
+    /**
+     * @return the value of the TAG_ID tag, or null if it is not set
+     */
+    public String getId() {
+        return (String)get(TAG_ID);
+    }
 
 }
@@ -25,6 +25,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Executor;
 import java.util.regex.Pattern;
 
 import javax.security.auth.callback.CallbackHandler;
@@ -39,6 +40,8 @@ import org.apache.wss4j.common.crypto.AlgorithmSuite;
 import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.crypto.PasswordEncryptor;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.saml.IssuedAssertionCache;
+import org.apache.wss4j.common.saml.ValidatedAssertionCache;
 import org.apache.wss4j.dom.SOAPConstants;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.engine.WSSConfig;
@@ -72,6 +75,9 @@ public class RequestData {
     private ReplayCache timestampReplayCache;
     private ReplayCache nonceReplayCache;
     private ReplayCache samlOneTimeUseReplayCache;
+    private ValidatedAssertionCache validatedAssertionCache;
+    private boolean lazySamlUnmarshalling;
+    private IssuedAssertionCache issuedAssertionCache;
     private Collection<Pattern> subjectDNPatterns = new ArrayList<>();
     private Collection<Pattern> issuerDNPatterns = new ArrayList<>();
     private final List<BSPRule> ignoredBSPRules = new LinkedList<>();
@@ -192,6 +198,147 @@ public class RequestData {
 
     private boolean expandXopIncludeForSignature = true;
 
+    /**
+     * The Executor on which to decrypt the EncryptedData elements of a received message
+     * concurrently. The default is null, meaning that they are decrypted sequentially.
+     */
+    private Executor decryptionExecutor;
+
+    /**
+     * The Executor on which to validate the References of a received Signature concurrently.
+     * The default is null, meaning that they are validated sequentially.
+     */
+    private Executor signatureVerificationExecutor;
+
+    public RequestData() {
+    }
+
+    /**
+     * Create a RequestData with the configuration of the given RequestData, but without its
+     * message specific state. See {@link #setConfiguration(RequestData)}.
+     */
+    public RequestData(RequestData configuration) {
+        setConfiguration(configuration);
+    }
+
+    /**
+     * Copy the configuration of the given RequestData to this RequestData, e.g. to apply a
+     * configuration that has been decoded once to many messages. The message specific state
+     * (the message context, security header, signature values and TLS certificates) is not
+     * copied. The settings of the configuration replace those of this RequestData, apart from
+     * the user name, and the configured objects (e.g. the Crypto instances, CallbackHandler and
+     * caches), which are shared with the configuration, and only copied if this RequestData does
+     * not have one already. The Signature and Encryption action tokens are copied, as the actions
+     * record the wsu:Ids of the parts they process on them.
+     */
+    void setConfiguration(RequestData configuration) {
+        if (soapConstants == null) {
+            soapConstants = configuration.soapConstants;
+        }
+        actor = configuration.actor;
+        if (username == null) {
+            username = configuration.username;
+        }
+        pwType = configuration.pwType;
+        if (sigVerCrypto == null) {
+            sigVerCrypto = configuration.sigVerCrypto;
+        }
+        if (decCrypto == null) {
+            decCrypto = configuration.decCrypto;
+        }
+        if (configuration.signatureToken != null) {
+            signatureToken = new SignatureActionToken(configuration.signatureToken);
+        }
+        if (configuration.encryptionToken != null) {
+            encryptionToken = new EncryptionActionToken(configuration.encryptionToken);
+        }
+        if (wssConfig == null) {
+            wssConfig = configuration.wssConfig;
+        }
+        derivedKeyIterations = configuration.derivedKeyIterations;
+        useDerivedKeyForMAC = configuration.useDerivedKeyForMAC;
+        if (callback == null) {
+            callback = configuration.callback;
+        }
+        if (attachmentCallbackHandler == null) {
+            attachmentCallbackHandler = configuration.attachmentCallbackHandler;
+        }
+        enableRevocation = configuration.enableRevocation;
+        requireSignedEncryptedDataElements = configuration.requireSignedEncryptedDataElements;
+        if (timestampReplayCache == null) {
+            timestampReplayCache = configuration.timestampReplayCache;
+        }
+        if (nonceReplayCache == null) {
+            nonceReplayCache = configuration.nonceReplayCache;
+        }
+        if (samlOneTimeUseReplayCache == null) {
+            samlOneTimeUseReplayCache = configuration.samlOneTimeUseReplayCache;
+        }
+        if (validatedAssertionCache == null) {
+            validatedAssertionCache = configuration.validatedAssertionCache;
+        }
+        lazySamlUnmarshalling = configuration.lazySamlUnmarshalling;
+        if (issuedAssertionCache == null) {
+            issuedAssertionCache = configuration.issuedAssertionCache;
+        }
+        if (subjectDNPatterns.isEmpty()) {
+            subjectDNPatterns.addAll(configuration.subjectDNPatterns);
+        }
+        if ((issuerDNPatterns == null || issuerDNPatterns.isEmpty())
+            && configuration.issuerDNPatterns != null) {
+            issuerDNPatterns = new ArrayList<>(configuration.issuerDNPatterns);
+        }
+        if (ignoredBSPRules.isEmpty()) {
+            ignoredBSPRules.addAll(configuration.ignoredBSPRules);
+        }
+        appendSignatureAfterTimestamp = configuration.appendSignatureAfterTimestamp;
+        originalSignatureActionPosition = configuration.originalSignatureActionPosition;
+        if (algorithmSuite == null) {
+            algorithmSuite = configuration.algorithmSuite;
+        }
+        if (samlAlgorithmSuite == null) {
+            samlAlgorithmSuite = configuration.samlAlgorithmSuite;
+        }
+        disableBSPEnforcement = configuration.disableBSPEnforcement;
+        allowRSA15KeyTransportAlgorithm = configuration.allowRSA15KeyTransportAlgorithm;
+        addUsernameTokenNonce = configuration.addUsernameTokenNonce;
+        addUsernameTokenCreated = configuration.addUsernameTokenCreated;
+        if (passwordEncryptor == null) {
+            passwordEncryptor = configuration.passwordEncryptor;
+        }
+        derivedKeyTokenReference = configuration.derivedKeyTokenReference;
+        use200512Namespace = configuration.use200512Namespace;
+        if (audienceRestrictions.isEmpty()) {
+            audienceRestrictions.addAll(configuration.audienceRestrictions);
+        }
+        requireTimestampExpires = configuration.requireTimestampExpires;
+        storeBytesInAttachment = configuration.storeBytesInAttachment;
+        if (encryptionSerializer == null) {
+            encryptionSerializer = configuration.encryptionSerializer;
+        }
+        addInclusivePrefixes = configuration.addInclusivePrefixes;
+        precisionInMilliSeconds = configuration.precisionInMilliSeconds;
+        enableSignatureConfirmation = configuration.enableSignatureConfirmation;
+        timeStampStrict = configuration.timeStampStrict;
+        requiredPasswordType = configuration.requiredPasswordType;
+        allowUsernameTokenNoPassword = configuration.allowUsernameTokenNoPassword;
+        timeStampTTL = configuration.timeStampTTL;
+        timeStampFutureTTL = configuration.timeStampFutureTTL;
+        utTTL = configuration.utTTL;
+        utFutureTTL = configuration.utFutureTTL;
+        handleCustomPasswordTypes = configuration.handleCustomPasswordTypes;
+        allowNamespaceQualifiedPasswordTypes = configuration.allowNamespaceQualifiedPasswordTypes;
+        encodePasswords = configuration.encodePasswords;
+        validateSamlSubjectConfirmation = configuration.validateSamlSubjectConfirmation;
+        expandXopIncludeForSignature = configuration.expandXopIncludeForSignature;
+        if (decryptionExecutor == null) {
+            decryptionExecutor = configuration.decryptionExecutor;
+        }
+        if (signatureVerificationExecutor == null) {
+            signatureVerificationExecutor = configuration.signatureVerificationExecutor;
+        }
+    }
+
     public Object getMsgContext() {
         return msgContext;
     }
@@ -432,6 +579,48 @@ public class RequestData {
         return samlOneTimeUseReplayCache;
     }
 
+    /**
+     * Set the cache of SAML Assertions that have been successfully validated. It is not
+     * set by default.
+     */
+    public void setValidatedAssertionCache(ValidatedAssertionCache newCache) {
+        validatedAssertionCache = newCache;
+    }
+
+    /**
+     * Get the cache of SAML Assertions that have been successfully validated
+     */
+    public ValidatedAssertionCache getValidatedAssertionCache() {
+        return validatedAssertionCache;
+    }
+
+    /**
+     * Set whether to defer unmarshalling the statements of a received SAML 2.0 Assertion
+     * until they are first accessed. The default is false.
+     */
+    public void setLazySamlUnmarshalling(boolean lazySamlUnmarshalling) {
+        this.lazySamlUnmarshalling = lazySamlUnmarshalling;
+    }
+
+    public boolean isLazySamlUnmarshalling() {
+        return lazySamlUnmarshalling;
+    }
+
+    /**
+     * Set the cache of (signed) SAML Assertions that have been issued for outbound messages. It
+     * is not set by default.
+     */
+    public void setIssuedAssertionCache(IssuedAssertionCache newCache) {
+        issuedAssertionCache = newCache;
+    }
+
+    /**
+     * Get the cache of (signed) SAML Assertions that have been issued for outbound messages
+     */
+    public IssuedAssertionCache getIssuedAssertionCache() {
+        return issuedAssertionCache;
+    }
+
     /**
      * Set the Signature Subject Cert Constraints
      */
@@ -727,6 +916,32 @@ public class RequestData {
         this.expandXopIncludeForSignature = expandXopIncludeForSignature;
     }
 
+    public Executor getDecryptionExecutor() {
+        return decryptionExecutor;
+    }
+
+    /**
+     * Set the Executor on which to decrypt the EncryptedData elements referenced by a
+     * ReferenceList (or EncryptedKey) concurrently. If it is null (the default), they are
+     * decrypted sequentially.
+     */
+    public void setDecryptionExecutor(Executor decryptionExecutor) {
+        this.decryptionExecutor = decryptionExecutor;
+    }
+
+    public Executor getSignatureVerificationExecutor() {
+        return signatureVerificationExecutor;
+    }
+
+    /**
+     * Set the Executor on which to validate the same-document References of a received
+     * Signature concurrently, once the SignatureValue has been verified. If it is null (the
+     * default), the References are validated sequentially.
+     */
+    public void setSignatureVerificationExecutor(Executor signatureVerificationExecutor) {
+        this.signatureVerificationExecutor = signatureVerificationExecutor;
+    }
+
     public Serializer getEncryptionSerializer() {
         return encryptionSerializer;
     }
@@ -0,0 +1,151 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.dom.handler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.wss4j.common.EncryptionActionToken;
+import org.apache.wss4j.common.SecurityActionToken;
+import org.apache.wss4j.common.SignatureActionToken;
+import org.apache.wss4j.common.SignatureEncryptionActionToken;
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.dom.SOAPConstants;
+import org.apache.wss4j.dom.action.Action;
+
+/**
+ * A sender or receiver configuration of a WSHandler that has been compiled once, so that it can
+ * be applied to many messages. The plan holds the decoded configuration (e.g. the Crypto
+ * instances, CallbackHandler, algorithms and parts), and, for a sender, the resolved Action
+ * instances in the order in which they are performed.
+ *
+ * A SecurityPlan is immutable and thread-safe. It holds a copy of the decoded configuration,
+ * taken when the plan is compiled, rather than the RequestData (and message context) it was
+ * compiled from. Applying it to the RequestData of a message copies the configuration again (see
+ * {@link RequestData#RequestData(RequestData)}), including the Signature and Encryption action
+ * tokens, which the actions modify. The configured objects themselves (e.g. the Crypto instances
+ * and CallbackHandler) are shared between messages, as they are for a WSHandler that is not
+ * compiled. Message specific values (e.g. the user names) are fixed by the plan, apart from the
+ * certificate of the "useReqSigCert" Encryption user, which is taken from each message.
+ */
+public final class SecurityPlan {
+
+    private final boolean sender;
+    private final RequestData configuration;
+    private final List<HandlerAction> handlerActions;
+    private final List<Action> resolvedActions;
+    private final boolean mustUnderstand;
+    private final List<Integer> actions;
+
+    SecurityPlan(
+        RequestData configuration,
+        List<HandlerAction> handlerActions,
+        List<Action> resolvedActions,
+        boolean mustUnderstand
+    ) throws WSSecurityException {
+        // Load any Crypto instances of the action tokens from their properties now, rather than
+        // for each message
+        loadCrypto(configuration.getSignatureToken());
+        loadCrypto(configuration.getEncryptionToken());
+        for (HandlerAction handlerAction : handlerActions) {
+            loadCrypto(handlerAction.getActionToken());
+        }
+
+        this.sender = true;
+        this.configuration = new RequestData(configuration);
+        this.handlerActions = Collections.unmodifiableList(new ArrayList<>(handlerActions));
+        this.resolvedActions = Collections.unmodifiableList(new ArrayList<>(resolvedActions));
+        this.mustUnderstand = mustUnderstand;
+
+        List<Integer> actionList = new ArrayList<>(handlerActions.size());
+        for (HandlerAction handlerAction : handlerActions) {
+            actionList.add(handlerAction.getAction());
+        }
+        this.actions = Collections.unmodifiableList(actionList);
+    }
+
+    SecurityPlan(RequestData configuration, List<Integer> actions) {
+        this.sender = false;
+        this.configuration = new RequestData(configuration);
+        this.handlerActions = Collections.emptyList();
+        this.resolvedActions = Collections.emptyList();
+        this.mustUnderstand = false;
+        this.actions = Collections.unmodifiableList(new ArrayList<>(actions));
+    }
+
+    /**
+     * @return whether this is a plan for sending (rather than receiving) messages
+     */
+    public boolean isSender() {
+        return sender;
+    }
+
+    /**
+     * @return the actions of this plan. For a sender these are in the order in which they are
+     * performed, for a receiver they are the actions that are expected in a message.
+     */
+    public List<Integer> getActions() {
+        return actions;
+    }
+
+    SOAPConstants getSoapConstants() {
+        return configuration.getSoapConstants();
+    }
+
+    /**
+     * @return the actions to perform for a message, with copies of their Signature and
+     * Encryption action tokens
+     */
+    List<HandlerAction> copyHandlerActions() {
+        List<HandlerAction> copies = new ArrayList<>(handlerActions.size());
+        for (HandlerAction handlerAction : handlerActions) {
+            SecurityActionToken actionToken = handlerAction.getActionToken();
+            if (actionToken instanceof SignatureActionToken) {
+                actionToken = new SignatureActionToken((SignatureActionToken)actionToken);
+            } else if (actionToken instanceof EncryptionActionToken) {
+                actionToken = new EncryptionActionToken((EncryptionActionToken)actionToken);
+            }
+            copies.add(new HandlerAction(handlerAction.getAction(), actionToken));
+        }
+        return copies;
+    }
+
+    List<Action> getResolvedActions() {
+        return resolvedActions;
+    }
+
+    boolean isMustUnderstand() {
+        return mustUnderstand;
+    }
+
+    /**
+     * Copy the configuration of this plan to the RequestData of a message
+     */
+    void apply(RequestData reqData) {
+        reqData.setConfiguration(configuration);
+    }
+
+    private static void loadCrypto(SecurityActionToken actionToken) throws WSSecurityException {
+        if (actionToken instanceof SignatureEncryptionActionToken) {
+            ((SignatureEncryptionActionToken)actionToken).getCrypto();
+        }
+    }
+}
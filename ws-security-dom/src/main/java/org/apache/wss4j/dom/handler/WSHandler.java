@@ -30,13 +30,16 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
 import javax.security.auth.callback.Callback;
 import javax.security.auth.callback.CallbackHandler;
 
+import org.apache.wss4j.dom.SOAP11Constants;
 import org.apache.wss4j.dom.WSConstants;
+import org.apache.wss4j.dom.action.Action;
 import org.apache.wss4j.dom.engine.WSSConfig;
 import org.apache.wss4j.dom.engine.WSSecurityEngineResult;
 import org.apache.wss4j.common.EncryptionActionToken;
@@ -83,7 +86,95 @@ public abstract class WSHandler {
             List<HandlerAction> actions,
             boolean isRequest
     ) throws WSSecurityException {
+        reqData.setSoapConstants(WSSecurityUtil.getSOAPConstants(doc.getDocumentElement()));
+        List<HandlerAction> actionsToPerform = configureSender(reqData, actions);
+        boolean mu = decodeBooleanConfigValue(
+            reqData.getMsgContext(), WSHandlerConstants.MUST_UNDERSTAND, true
+        );
+        performSenderActions(
+            doc, reqData, actionsToPerform, resolveActions(reqData, actionsToPerform), mu, isRequest
+        );
+    }
+
+    /**
+     * Compile the sender configuration into a SecurityPlan, which can then be applied to many
+     * messages (concurrently) via {@link #doSenderAction(Document, RequestData, SecurityPlan, boolean)}.
+     * The configuration is read from the message context of the given RequestData, and the plan
+     * holds a copy of it, so that the RequestData is not referenced by the plan. The plan is
+     * compiled for the SOAP version of the RequestData, which defaults to SOAP 1.1.
+     *
+     * @param reqData the RequestData holding the configuration to compile
+     * @param actions a list holding the actions to do in the order defined
+     *                in the deployment file or property, plus an optional
+     *                associated SecurityActionToken object for that Action
+     * @return the compiled SecurityPlan
+     * @throws WSSecurityException
+     */
+    protected SecurityPlan compileSenderPlan(
+        RequestData reqData,
+        List<HandlerAction> actions
+    ) throws WSSecurityException {
+        if (reqData.getSoapConstants() == null) {
+            reqData.setSoapConstants(new SOAP11Constants());
+        }
+        // The Encryption certificate of the "useReqSigCert" user is taken from each message
+        X509Certificate encryptionCert = null;
+        if (reqData.getEncryptionToken() != null) {
+            encryptionCert = reqData.getEncryptionToken().getCertificate();
+        }
+        List<HandlerAction> actionsToPerform = configureSender(reqData, actions);
+        EncryptionActionToken encryptionToken = reqData.getEncryptionToken();
+        if (encryptionToken != null
+            && WSHandlerConstants.USE_REQ_SIG_CERT.equals(encryptionToken.getUser())) {
+            encryptionToken.setCertificate(encryptionCert);
+        }
+        boolean mu = decodeBooleanConfigValue(
+            reqData.getMsgContext(), WSHandlerConstants.MUST_UNDERSTAND, true
+        );
+        return new SecurityPlan(
+            reqData, actionsToPerform, resolveActions(reqData, actionsToPerform), mu
+        );
+    }
 
+    /**
+     * Performs the security actions of a compiled SecurityPlan to set-up the SOAP request.
+     *
+     * @param doc   the request as DOM document
+     * @param reqData a data storage to pass values around between methods
+     * @param plan the SecurityPlan returned by {@link #compileSenderPlan(RequestData, List)}
+     * @throws WSSecurityException
+     */
+    protected void doSenderAction(
+        Document doc,
+        RequestData reqData,
+        SecurityPlan plan,
+        boolean isRequest
+    ) throws WSSecurityException {
+        if (!plan.isSender()) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, "empty",
+                new Object[] {"WSHandler: a receiver SecurityPlan cannot be used to send a message"});
+        }
+        String soapNamespace = WSSecurityUtil.getSOAPNamespace(doc.getDocumentElement());
+        if (!plan.getSoapConstants().getEnvelopeURI().equals(soapNamespace)) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, "empty",
+                new Object[] {"WSHandler: the SecurityPlan was compiled for a different SOAP version"});
+        }
+        plan.apply(reqData);
+        handleSpecialUser(reqData);
+        performSenderActions(
+            doc, reqData, plan.copyHandlerActions(), plan.getResolvedActions(),
+            plan.isMustUnderstand(), isRequest
+        );
+    }
+
+    /**
+     * Decode the sender configuration into the given RequestData, and return the actions in the
+     * order in which they are to be performed.
+     */
+    private List<HandlerAction> configureSender(
+        RequestData reqData,
+        List<HandlerAction> actions
+    ) throws WSSecurityException {
         WSSConfig wssConfig = reqData.getWssConfig();
         if (wssConfig == null) {
             wssConfig = WSSConfig.getNewInstance();
@@ -108,12 +199,6 @@ public abstract class WSHandler {
         String actor = getString(WSHandlerConstants.ACTOR, mc);
         reqData.setActor(actor);
 
-        boolean mu = decodeBooleanConfigValue(mc, WSHandlerConstants.MUST_UNDERSTAND, true);
-        WSSecHeader secHeader = new WSSecHeader(actor, mu, doc);
-        secHeader.insertSecurityHeader();
-        reqData.setSecHeader(secHeader);
-        reqData.setSoapConstants(WSSecurityUtil.getSOAPConstants(doc.getDocumentElement()));
-
         // Load CallbackHandler
         if (reqData.getCallbackHandler() == null) {
             CallbackHandler passwordCallbackHandler = getPasswordCallbackHandler(reqData);
@@ -184,20 +269,11 @@ public abstract class WSHandler {
             reqData.setSignatureToken(signatureToken);
         }
         if (signatureToken.getParts().isEmpty()) {
-            signatureToken.getParts().add(WSSecurityUtil.getDefaultEncryptionPart(doc));
-        }
-        /*
-         * If SignatureConfirmation is enabled and this is a response then
-         * insert SignatureConfirmation elements, note their wsu:id in the signature
-         * parts. They will be signed automatically during a (probably) defined
-         * SIGN action.
-         */
-        if (reqData.isEnableSignatureConfirmation() && !isRequest) {
-            String done =
-                (String)getProperty(reqData.getMsgContext(), WSHandlerConstants.SIG_CONF_DONE);
-            if (done == null) {
-                wssConfig.getAction(WSConstants.SC).execute(this, null, reqData);
-            }
+            signatureToken.getParts().add(
+                new WSEncryptionPart(
+                    WSConstants.ELEM_BODY, reqData.getSoapConstants().getEnvelopeURI(), "Content"
+                )
+            );
         }
 
         // See if the Signature and Timestamp actions (in that order) are defined, and if
@@ -217,18 +293,70 @@ public abstract class WSHandler {
             reqData.setOriginalSignatureActionPosition(signatureIndex);
         }
 
+        return actionsToPerform;
+    }
+
+    /**
+     * Resolve the Action instances of the given actions, in the same order
+     */
+    private List<Action> resolveActions(RequestData reqData, List<HandlerAction> actions)
+        throws WSSecurityException {
+        List<Action> resolvedActions = new ArrayList<>(actions.size());
+        for (HandlerAction actionToDo : actions) {
+            if (WSConstants.NO_SECURITY == actionToDo.getAction()) {
+                resolvedActions.add(null);
+            } else {
+                resolvedActions.add(reqData.getWssConfig().getAction(actionToDo.getAction()));
+            }
+        }
+        return resolvedActions;
+    }
+
+    /**
+     * Perform the given actions on the document, using the given (resolved) Action instances
+     */
+    private void performSenderActions(
+        Document doc,
+        RequestData reqData,
+        List<HandlerAction> actionsToPerform,
+        List<Action> resolvedActions,
+        boolean mustUnderstand,
+        boolean isRequest
+    ) throws WSSecurityException {
+        WSSecHeader secHeader = new WSSecHeader(reqData.getActor(), mustUnderstand, doc);
+        secHeader.insertSecurityHeader();
+        reqData.setSecHeader(secHeader);
+
+        /*
+         * If SignatureConfirmation is enabled and this is a response then
+         * insert SignatureConfirmation elements, note their wsu:id in the signature
+         * parts. They will be signed automatically during a (probably) defined
+         * SIGN action.
+         */
+        if (reqData.isEnableSignatureConfirmation() && !isRequest) {
+            String done =
+                (String)getProperty(reqData.getMsgContext(), WSHandlerConstants.SIG_CONF_DONE);
+            if (done == null) {
+                reqData.getWssConfig().getAction(WSConstants.SC).execute(this, null, reqData);
+            }
+        }
+
         /*
          * Here we have all necessary information to perform the requested
          * action(s).
          */
-        for (HandlerAction actionToDo : actionsToPerform) {
+        for (int i = 0; i < actionsToPerform.size(); i++) {
+            HandlerAction actionToDo = actionsToPerform.get(i);
             if (doDebug) {
                 LOG.debug("Performing Action: " + actionToDo.getAction());
             }
 
-            if (WSConstants.NO_SECURITY != actionToDo.getAction()) {
-                wssConfig.getAction(actionToDo.getAction()).execute(
-                    this, actionToDo.getActionToken(), reqData);
+            Action action = resolvedActions.get(i);
+            if (action == null && WSConstants.NO_SECURITY != actionToDo.getAction()) {
+                throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, "empty",
+                    new Object[] {"Unknown action defined: " + actionToDo.getAction()});
+            } else if (action != null) {
+                action.execute(this, actionToDo.getActionToken(), reqData);
             }
         }
 
@@ -355,6 +483,40 @@ public abstract class WSHandler {
         );
     }
 
+    /**
+     * Compile the receiver configuration into a SecurityPlan, which can then be applied to many
+     * messages (concurrently) via {@link #doReceiverAction(SecurityPlan, RequestData)}. The
+     * configuration is read from the message context of the given RequestData, and the plan holds
+     * a snapshot of it, so that the RequestData is not referenced by the plan.
+     *
+     * @param reqData the RequestData holding the configuration to compile
+     * @param actions the actions that are expected in the request
+     * @return the compiled SecurityPlan
+     * @throws WSSecurityException
+     */
+    protected SecurityPlan compileReceiverPlan(RequestData reqData, List<Integer> actions)
+        throws WSSecurityException {
+        doReceiverAction(actions, reqData);
+        return new SecurityPlan(reqData, actions);
+    }
+
+    /**
+     * Apply the configuration of a compiled SecurityPlan to the RequestData of a received
+     * message. The expected actions are available via {@link SecurityPlan#getActions()}.
+     *
+     * @param plan the SecurityPlan returned by {@link #compileReceiverPlan(RequestData, List)}
+     * @param reqData the RequestData of the received message
+     * @throws WSSecurityException
+     */
+    protected void doReceiverAction(SecurityPlan plan, RequestData reqData)
+        throws WSSecurityException {
+        if (plan.isSender()) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, "empty",
+                new Object[] {"WSHandler: a sender SecurityPlan cannot be used to receive a message"});
+        }
+        plan.apply(reqData);
+    }
+
     protected boolean checkReceiverResults(
         List<WSSecurityEngineResult> wsResult, List<Integer> actions
     ) {
@@ -938,9 +1100,9 @@ public abstract class WSHandler {
             if (crypto == null) {
                 Object obj = getProperty(mc, refId);
                 if (obj instanceof Properties) {
-                    crypto = CryptoFactory.getInstance((Properties)obj,
-                                                       Loader.getClassLoader(CryptoFactory.class),
-                                                       getPasswordEncryptor(requestData));
+                    crypto = loadCrypto((Properties)obj,
+                                        Loader.getClassLoader(CryptoFactory.class),
+                                        requestData);
                     cryptos.put(refId, crypto);
                 } else if (obj instanceof Crypto) {
                     // No need to cache this as it's already loaded
@@ -977,6 +1139,24 @@ public abstract class WSHandler {
         return crypto;
     }
 
+    /**
+     * Load a Crypto instance from the given properties. It is obtained from the shared
+     * CryptoRegistry of CryptoFactory if the SHARED_CRYPTO option is enabled, so that handlers
+     * configured with the same properties share the loaded keystores.
+     */
+    private Crypto loadCrypto(
+        Properties properties,
+        ClassLoader classLoader,
+        RequestData reqData
+    ) throws WSSecurityException {
+        boolean sharedCrypto =
+            decodeBooleanConfigValue(reqData.getMsgContext(), WSHandlerConstants.SHARED_CRYPTO, false);
+        if (sharedCrypto) {
+            return CryptoFactory.getSharedInstance(properties, classLoader, getPasswordEncryptor(reqData));
+        }
+        return CryptoFactory.getInstance(properties, classLoader, getPasswordEncryptor(reqData));
+    }
+
     /**
      * A hook to allow subclass to load Crypto instances from property files in a different
      * way.
@@ -990,10 +1170,7 @@ public abstract class WSHandler {
     ) throws WSSecurityException {
         ClassLoader classLoader = this.getClassLoader(reqData.getMsgContext());
         Properties properties = CryptoFactory.getProperties(propFilename, classLoader);
-        return
-            CryptoFactory.getInstance(
-                properties, classLoader, getPasswordEncryptor(reqData)
-            );
+        return loadCrypto(properties, classLoader, reqData);
     }
 
     /**
@@ -1335,6 +1512,31 @@ public abstract class WSHandler {
                 reqData.getMsgContext(), WSHandlerConstants.EXPAND_XOP_INCLUDE_FOR_SIGNATURE, true
             );
         reqData.setExpandXopIncludeForSignature(expandXOP);
+
+        boolean parallelVerification =
+            decodeBooleanConfigValue(
+                reqData.getMsgContext(), WSHandlerConstants.PARALLEL_SIGNATURE_VERIFICATION, false
+            );
+        if (parallelVerification && reqData.getSignatureVerificationExecutor() == null) {
+            reqData.setSignatureVerificationExecutor(
+                getExecutor(reqData.getMsgContext(), WSHandlerConstants.SIGNATURE_VERIFICATION_EXECUTOR)
+            );
+        }
+    }
+
+    /**
+     * Get the Executor configured under the given key
+     */
+    private Executor getExecutor(Object mc, String key) throws WSSecurityException {
+        Object executor = getProperty(mc, key);
+        if (executor == null) {
+            executor = getOption(key);
+        }
+        if (executor instanceof Executor) {
+            return (Executor)executor;
+        }
+        throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, "empty",
+            new Object[] {"WSHandler: no Executor is configured for " + key});
     }
     
     private Collection<Pattern> getCertConstraints(String certConstraints) throws WSSecurityException {
@@ -1372,6 +1574,14 @@ public abstract class WSHandler {
                 false
             );
         reqData.setAllowRSA15KeyTransportAlgorithm(allowRsa15);
+
+        boolean parallelDecryption =
+            decodeBooleanConfigValue(reqData.getMsgContext(), WSHandlerConstants.PARALLEL_DECRYPTION, false);
+        if (parallelDecryption && reqData.getDecryptionExecutor() == null) {
+            reqData.setDecryptionExecutor(
+                getExecutor(reqData.getMsgContext(), WSHandlerConstants.DECRYPTION_EXECUTOR)
+            );
+        }
     }
 
     /**
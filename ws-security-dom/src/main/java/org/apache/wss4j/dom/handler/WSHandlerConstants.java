@@ -60,6 +60,35 @@ public final class WSHandlerConstants extends ConfigurationConstants {
      */
     public static final String USE_ENCODED_PASSWORDS = "useEncodedPasswords";
 
+    /**
+     * Whether to decrypt the EncryptedData elements referenced by a received ReferenceList (or
+     * EncryptedKey) concurrently. The default value is "false". The decryption is done on the
+     * Executor given by DECRYPTION_EXECUTOR, which must be set if this is enabled. The decrypted
+     * data is still placed in the message by the calling thread.
+     */
+    public static final String PARALLEL_DECRYPTION = "parallelDecryption";
+
+    /**
+     * A java.util.concurrent.Executor instance on which to decrypt the EncryptedData elements of
+     * a received message, if PARALLEL_DECRYPTION is enabled.
+     */
+    public static final String DECRYPTION_EXECUTOR = "decryptionExecutor";
+
+    /**
+     * Whether to validate the References of a received Signature concurrently, once the
+     * SignatureValue has been verified. The default value is "false". The References are
+     * validated on the Executor given by SIGNATURE_VERIFICATION_EXECUTOR, which must be set if
+     * this is enabled. Only References to an element of the message, with no Transforms other
+     * than canonicalization, are validated concurrently.
+     */
+    public static final String PARALLEL_SIGNATURE_VERIFICATION = "parallelSignatureVerification";
+
+    /**
+     * A java.util.concurrent.Executor instance on which to validate the References of a received
+     * Signature, if PARALLEL_SIGNATURE_VERIFICATION is enabled.
+     */
+    public static final String SIGNATURE_VERIFICATION_EXECUTOR = "signatureVerificationExecutor";
+
     //
     // Internal storage constants
     //
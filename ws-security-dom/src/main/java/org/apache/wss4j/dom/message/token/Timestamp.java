@@ -19,14 +19,7 @@
 
 package org.apache.wss4j.dom.message.token;
 
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.Locale;
-import java.util.TimeZone;
-
-import javax.xml.datatype.DatatypeConstants;
-import javax.xml.datatype.XMLGregorianCalendar;
 
 import org.apache.wss4j.common.bsp.BSPEnforcer;
 import org.apache.wss4j.common.bsp.BSPRule;
@@ -36,9 +29,8 @@ import org.apache.wss4j.common.util.DateUtil;
 import org.apache.wss4j.common.util.WSCurrentTimeSource;
 import org.apache.wss4j.common.util.WSTimeSource;
 import org.apache.wss4j.common.util.XMLUtils;
+import org.apache.wss4j.common.util.XmlSchemaDateTime;
 import org.apache.wss4j.dom.WSConstants;
-import org.apache.wss4j.dom.engine.WSSConfig;
-import org.apache.wss4j.dom.util.XmlSchemaDateFormat;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
@@ -118,47 +110,43 @@ public class Timestamp {
 
         // Parse the dates
         if (strCreated != null) {
-            XMLGregorianCalendar createdCalendar = null;
+            XmlSchemaDateTime created = null;
             try {
-                createdCalendar =
-                    WSSConfig.DATATYPE_FACTORY.newXMLGregorianCalendar(strCreated);
+                created = XmlSchemaDateTime.parse(strCreated);
             } catch (IllegalArgumentException e) {
                 throw new WSSecurityException(WSSecurityException.ErrorCode.INVALID_SECURITY, e);
             }
 
-            if (createdCalendar.getFractionalSecond() != null
-                && createdCalendar.getFractionalSecond().scale() > 3) {
+            if (created.getFractionalSecondDigits() > 3) {
                 bspEnforcer.handleBSPRule(BSPRule.R3220);
             }
-            if (createdCalendar.getSecond() > 59) {
+            if (created.getSecond() > 59) {
                 bspEnforcer.handleBSPRule(BSPRule.R3213);
             }
-            if (createdCalendar.getTimezone() == DatatypeConstants.FIELD_UNDEFINED) {
+            if (!created.hasTimezone()) {
                 bspEnforcer.handleBSPRule(BSPRule.R3217);
             }
-            createdDate = createdCalendar.toGregorianCalendar().getTime();
+            createdDate = created.toDate();
         }
 
         if (strExpires != null) {
-            XMLGregorianCalendar expiresCalendar = null;
+            XmlSchemaDateTime expires = null;
             try {
-                expiresCalendar =
-                    WSSConfig.DATATYPE_FACTORY.newXMLGregorianCalendar(strExpires);
+                expires = XmlSchemaDateTime.parse(strExpires);
             } catch (IllegalArgumentException e) {
                 throw new WSSecurityException(WSSecurityException.ErrorCode.INVALID_SECURITY, e);
             }
 
-            if (expiresCalendar.getFractionalSecond() != null
-                && expiresCalendar.getFractionalSecond().scale() > 3) {
+            if (expires.getFractionalSecondDigits() > 3) {
                 bspEnforcer.handleBSPRule(BSPRule.R3229);
             }
-            if (expiresCalendar.getSecond() > 59) {
+            if (expires.getSecond() > 59) {
                 bspEnforcer.handleBSPRule(BSPRule.R3215);
             }
-            if (expiresCalendar.getTimezone() == DatatypeConstants.FIELD_UNDEFINED) {
+            if (!expires.hasTimezone()) {
                 bspEnforcer.handleBSPRule(BSPRule.R3223);
             }
-            expiresDate = expiresCalendar.toGregorianCalendar().getTime();
+            expiresDate = expires.toDate();
         }
     }
 
@@ -188,19 +176,12 @@ public class Timestamp {
                 WSConstants.WSU_NS, WSConstants.WSU_PREFIX + ":" + WSConstants.TIMESTAMP_TOKEN_LN
             );
 
-        DateFormat zulu = null;
-        if (milliseconds) {
-            zulu = new XmlSchemaDateFormat();
-        } else {
-            zulu = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.ENGLISH);
-            zulu.setTimeZone(TimeZone.getTimeZone("UTC"));
-        }
         Element elementCreated =
             doc.createElementNS(
                 WSConstants.WSU_NS, WSConstants.WSU_PREFIX + ":" + WSConstants.CREATED_LN
             );
         createdDate = timeSource.now();
-        elementCreated.appendChild(doc.createTextNode(zulu.format(createdDate)));
+        elementCreated.appendChild(doc.createTextNode(XmlSchemaDateTime.format(createdDate, milliseconds)));
         element.appendChild(elementCreated);
         if (ttl != 0) {
             expiresDate = timeSource.now();
@@ -210,7 +191,7 @@ public class Timestamp {
                 doc.createElementNS(
                     WSConstants.WSU_NS, WSConstants.WSU_PREFIX + ":" + WSConstants.EXPIRES_LN
                 );
-            elementExpires.appendChild(doc.createTextNode(zulu.format(expiresDate)));
+            elementExpires.appendChild(doc.createTextNode(XmlSchemaDateTime.format(expiresDate, milliseconds)));
             element.appendChild(elementExpires);
         }
     }
@@ -22,18 +22,14 @@ package org.apache.wss4j.dom.message.token;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.security.Principal;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.Base64;
 import java.util.Date;
 import java.util.List;
-import java.util.TimeZone;
 
 import javax.security.auth.callback.Callback;
 import javax.security.auth.callback.CallbackHandler;
 import javax.security.auth.callback.UnsupportedCallbackException;
-import javax.xml.datatype.XMLGregorianCalendar;
 import javax.xml.namespace.QName;
 
 import org.apache.wss4j.common.bsp.BSPEnforcer;
@@ -48,10 +44,9 @@ import org.apache.wss4j.common.util.UsernameTokenUtil;
 import org.apache.wss4j.common.util.WSCurrentTimeSource;
 import org.apache.wss4j.common.util.WSTimeSource;
 import org.apache.wss4j.common.util.XMLUtils;
+import org.apache.wss4j.common.util.XmlSchemaDateTime;
 import org.apache.wss4j.dom.WSConstants;
-import org.apache.wss4j.dom.engine.WSSConfig;
 import org.apache.wss4j.dom.util.WSSecurityUtil;
-import org.apache.wss4j.dom.util.XmlSchemaDateFormat;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
@@ -213,10 +208,8 @@ public class UsernameToken {
         if (elementCreated != null) {
             String createdString = getCreated();
             if (createdString != null && !"".equals(createdString)) {
-                XMLGregorianCalendar createdCalendar = null;
                 try {
-                    createdCalendar =
-                        WSSConfig.DATATYPE_FACTORY.newXMLGregorianCalendar(createdString);
+                    createdDate = XmlSchemaDateTime.parse(createdString).toDate();
                 } catch (IllegalArgumentException e) {
                     throw new WSSecurityException(
                         WSSecurityException.ErrorCode.INVALID_SECURITY_TOKEN, e,
@@ -224,7 +217,6 @@ public class UsernameToken {
                         new Object[] {"Error parsing UsernameToken Created value"}
                     );
                 }
-                createdDate = createdCalendar.toGregorianCalendar().getTime();
             }
         }
     }
@@ -330,19 +322,12 @@ public class UsernameToken {
         if (elementCreated != null) {
             return;
         }
-        DateFormat zulu = null;
-        if (milliseconds) {
-            zulu = new XmlSchemaDateFormat();
-        } else {
-            zulu = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
-            zulu.setTimeZone(TimeZone.getTimeZone("UTC"));
-        }
         elementCreated =
             doc.createElementNS(
                 WSConstants.WSU_NS, WSConstants.WSU_PREFIX + ":" + WSConstants.CREATED_LN
             );
         Date currentTime = timeSource.now();
-        elementCreated.appendChild(doc.createTextNode(zulu.format(currentTime)));
+        elementCreated.appendChild(doc.createTextNode(XmlSchemaDateTime.format(currentTime, milliseconds)));
         element.appendChild(elementCreated);
     }
 
@@ -0,0 +1,195 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.dom.processor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import javax.crypto.SecretKey;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.dom.WSDataRef;
+import org.apache.wss4j.dom.WSDocInfo;
+import org.apache.wss4j.dom.handler.RequestData;
+import org.apache.wss4j.dom.util.EncryptionUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Decrypts the EncryptedData elements referenced by a ReferenceList (or EncryptedKey).
+ *
+ * If the RequestData has no decryption Executor, each EncryptedData element is decrypted, and
+ * replaced in the document, as soon as it is added. Otherwise decryption is deferred until all of
+ * the elements have been added. The CipherValues are then decrypted concurrently on the Executor,
+ * and the decrypted data is placed in the document by the calling thread, in the order in which
+ * the elements were added, so that the WSDataRefs are the same as when decrypting sequentially.
+ * EncryptedData elements that refer to an attachment are always decrypted by the calling thread.
+ *
+ * If the EncryptedData elements nest, e.g. if one of them is contained in the decrypted data of
+ * another (super-encryption), then the deferred elements are decrypted, and the remaining
+ * elements are decrypted sequentially, as soon as the nesting is detected.
+ */
+final class EncryptedDataDecryptor {
+
+    private final RequestData data;
+    private final WSDocInfo wsDocInfo;
+    private final List<WSDataRef> dataRefs = new ArrayList<>();
+    private final List<PendingDecryption> pending = new ArrayList<>();
+
+    EncryptedDataDecryptor(RequestData data, WSDocInfo wsDocInfo) {
+        this.data = data;
+        this.wsDocInfo = wsDocInfo;
+    }
+
+    /**
+     * Find the EncryptedData element referenced by dataRefURI. If it is not in the document, then
+     * it may be contained in the decrypted data of a deferred EncryptedData element, and so any
+     * deferred decryption is completed before it is looked up again.
+     */
+    Element findEncryptedDataElement(Document doc, String dataRefURI) throws WSSecurityException {
+        if (!pending.isEmpty()
+            && wsDocInfo.getCallbackLookup().getElement(dataRefURI, null, true) == null) {
+            completePending();
+        }
+        return EncryptionUtils.findEncryptedDataElement(doc, wsDocInfo, dataRefURI);
+    }
+
+    /**
+     * Decrypt the given EncryptedData element, or defer doing so if there is a decryption Executor
+     */
+    void decrypt(
+        Document doc,
+        String dataRefURI,
+        Element encData,
+        SecretKey symmetricKey,
+        String symEncAlgo
+    ) throws WSSecurityException {
+        PendingDecryption decryption =
+            new PendingDecryption(doc, dataRefURI, encData, symmetricKey, symEncAlgo);
+        if (data.getDecryptionExecutor() == null) {
+            dataRefs.add(decryption.complete(null));
+            return;
+        }
+
+        for (PendingDecryption other : pending) {
+            if (other.encData == encData) {
+                // The sequential path would not find the EncryptedData element a second time
+                throw new WSSecurityException(
+                    WSSecurityException.ErrorCode.INVALID_SECURITY, "dataRef",
+                    new Object[] {dataRefURI});
+            }
+            if (nests(other.encData, encData)) {
+                completePending();
+                dataRefs.add(decryption.complete(null));
+                return;
+            }
+        }
+        pending.add(decryption);
+    }
+
+    /**
+     * Complete any deferred decryption, and get the WSDataRefs of the decrypted elements
+     */
+    List<WSDataRef> getDataRefs() throws WSSecurityException {
+        completePending();
+        return dataRefs;
+    }
+
+    private static boolean nests(Element encData, Element otherEncData) {
+        short position = encData.compareDocumentPosition(otherEncData);
+        return (position & (Node.DOCUMENT_POSITION_CONTAINS | Node.DOCUMENT_POSITION_CONTAINED_BY)) != 0;
+    }
+
+    private void completePending() throws WSSecurityException {
+        if (pending.size() == 1) {
+            dataRefs.add(pending.get(0).complete(null));
+        } else if (!pending.isEmpty()) {
+            completeConcurrently(data.getDecryptionExecutor());
+        }
+        pending.clear();
+    }
+
+    private void completeConcurrently(Executor executor) throws WSSecurityException {
+        List<CompletableFuture<byte[]>> results = new ArrayList<>(pending.size());
+        for (final PendingDecryption decryption : pending) {
+            final String cipherValue = EncryptionUtils.getInlineCipherValue(decryption.encData);
+            if (cipherValue == null) {
+                results.add(null);
+            } else {
+                results.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return EncryptionUtils.decryptCipherValue(
+                            cipherValue, decryption.symmetricKey, decryption.symEncAlgo
+                        );
+                    } catch (WSSecurityException ex) {
+                        throw new CompletionException(ex);
+                    }
+                }, executor));
+            }
+        }
+
+        for (int i = 0; i < pending.size(); i++) {
+            byte[] decryptedBytes = null;
+            if (results.get(i) != null) {
+                try {
+                    decryptedBytes = results.get(i).join();
+                } catch (CompletionException ex) {
+                    if (ex.getCause() instanceof WSSecurityException) {
+                        throw (WSSecurityException)ex.getCause();
+                    }
+                    throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_CHECK, ex);
+                }
+            }
+            dataRefs.add(pending.get(i).complete(decryptedBytes));
+        }
+    }
+
+    private final class PendingDecryption {
+        private final Document doc;
+        private final String dataRefURI;
+        private final Element encData;
+        private final SecretKey symmetricKey;
+        private final String symEncAlgo;
+
+        PendingDecryption(
+            Document doc, String dataRefURI, Element encData, SecretKey symmetricKey, String symEncAlgo
+        ) {
+            this.doc = doc;
+            this.dataRefURI = dataRefURI;
+            this.encData = encData;
+            this.symmetricKey = symmetricKey;
+            this.symEncAlgo = symEncAlgo;
+        }
+
+        WSDataRef complete(byte[] decryptedBytes) throws WSSecurityException {
+            WSDataRef dataRef =
+                EncryptionUtils.decryptEncryptedData(
+                    doc, dataRefURI, encData, symmetricKey, symEncAlgo,
+                    data.getAttachmentCallbackHandler(), data.getEncryptionSerializer(), decryptedBytes,
+                    wsDocInfo
+                );
+            return dataRef;
+        }
+    }
+}
@@ -165,7 +165,8 @@ public class EncryptedDataProcessor implements Processor {
 
         WSDataRef dataRef = EncryptionUtils.decryptEncryptedData(
                 elem.getOwnerDocument(), encryptedDataId, elem, key, symEncAlgo,
-                request.getAttachmentCallbackHandler(), request.getEncryptionSerializer());
+                request.getAttachmentCallbackHandler(), request.getEncryptionSerializer(), null,
+                wsDocInfo);
 
         WSSecurityEngineResult result =
                 new WSSecurityEngineResult(WSConstants.ENCR, Collections.singletonList(dataRef));
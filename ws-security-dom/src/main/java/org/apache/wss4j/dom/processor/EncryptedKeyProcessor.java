@@ -28,7 +28,6 @@ import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.cert.X509Certificate;
 import java.security.spec.MGF1ParameterSpec;
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
@@ -509,7 +508,7 @@ public class EncryptedKeyProcessor implements Processor {
             return null;
         }
 
-        List<WSDataRef> dataRefs = new ArrayList<>();
+        EncryptedDataDecryptor decryptor = new EncryptedDataDecryptor(data, docInfo);
         for (Node node = refList.getFirstChild(); node != null; node = node.getNextSibling()) {
             if (Node.ELEMENT_NODE == node.getNodeType()
                     && WSConstants.ENC_NS.equals(node.getNamespaceURI())
@@ -517,24 +516,23 @@ public class EncryptedKeyProcessor implements Processor {
                 String dataRefURI = ((Element) node).getAttributeNS(null, "URI");
                 dataRefURI = XMLUtils.getIDFromReference(dataRefURI);
 
-                WSDataRef dataRef =
-                    decryptDataRef(refList.getOwnerDocument(), dataRefURI, docInfo, decryptedBytes, data);
-                dataRefs.add(dataRef);
+                decryptDataRef(refList.getOwnerDocument(), dataRefURI, docInfo, decryptedBytes, data, decryptor);
             }
         }
 
-        return dataRefs;
+        return decryptor.getDataRefs();
     }
 
     /**
      * Decrypt an EncryptedData element referenced by dataRefURI
      */
-    private WSDataRef decryptDataRef(
+    private void decryptDataRef(
         Document doc,
         String dataRefURI,
         WSDocInfo docInfo,
         byte[] decryptedData,
-        RequestData data
+        RequestData data,
+        EncryptedDataDecryptor decryptor
     ) throws WSSecurityException {
         if (LOG.isDebugEnabled()) {
             LOG.debug("found data reference: " + dataRefURI);
@@ -543,7 +541,7 @@ public class EncryptedKeyProcessor implements Processor {
         // Find the encrypted data element referenced by dataRefURI
         //
         Element encryptedDataElement =
-            EncryptionUtils.findEncryptedDataElement(doc, docInfo, dataRefURI);
+            decryptor.findEncryptedDataElement(doc, dataRefURI);
         if (encryptedDataElement != null && data.isRequireSignedEncryptedDataElements()) {
             List<WSSecurityEngineResult> signedResults =
                 docInfo.getResultsByTag(WSConstants.SIGN);
@@ -589,10 +587,7 @@ public class EncryptedKeyProcessor implements Processor {
             algorithmSuiteValidator.checkSymmetricEncryptionAlgorithm(symEncAlgo);
         }
 
-        return EncryptionUtils.decryptEncryptedData(
-            doc, dataRefURI, encryptedDataElement, symmetricKey, symEncAlgo, data.getAttachmentCallbackHandler(),
-            data.getEncryptionSerializer()
-        );
+        decryptor.decrypt(doc, dataRefURI, encryptedDataElement, symmetricKey, symEncAlgo);
     }
 
     /**
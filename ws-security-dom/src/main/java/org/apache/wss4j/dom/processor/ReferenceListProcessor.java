@@ -20,7 +20,6 @@
 package org.apache.wss4j.dom.processor;
 
 import java.security.Principal;
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
@@ -48,7 +47,6 @@ import org.apache.wss4j.dom.str.STRParser;
 import org.apache.wss4j.dom.str.STRParserParameters;
 import org.apache.wss4j.dom.str.STRParserResult;
 import org.apache.wss4j.dom.str.SecurityTokenRefSTRParser;
-import org.apache.wss4j.dom.util.EncryptionUtils;
 import org.apache.wss4j.dom.util.SignatureUtils;
 import org.apache.wss4j.dom.util.X509Util;
 
@@ -87,7 +85,7 @@ public class ReferenceListProcessor implements Processor {
         RequestData data,
         WSDocInfo wsDocInfo
     ) throws WSSecurityException {
-        List<WSDataRef> dataRefs = new ArrayList<>();
+        EncryptedDataDecryptor decryptor = new EncryptedDataDecryptor(data, wsDocInfo);
         for (Node node = elem.getFirstChild();
             node != null;
             node = node.getNextSibling()
@@ -100,26 +98,25 @@ public class ReferenceListProcessor implements Processor {
 
                 // See whether we have already processed the encrypted node
                 if (!wsDocInfo.hasResult(WSConstants.ENCR, dataRefURI)) {
-                    WSDataRef dataRef =
-                        decryptDataRefEmbedded(
-                            elem.getOwnerDocument(), dataRefURI, data, wsDocInfo);
-                    dataRefs.add(dataRef);
+                    decryptDataRefEmbedded(
+                        elem.getOwnerDocument(), dataRefURI, data, wsDocInfo, decryptor);
                 }
             }
         }
 
-        return dataRefs;
+        return decryptor.getDataRefs();
     }
 
 
     /**
      * Decrypt an (embedded) EncryptedData element referenced by dataRefURI.
      */
-    private WSDataRef decryptDataRefEmbedded(
+    private void decryptDataRefEmbedded(
         Document doc,
         String dataRefURI,
         RequestData data,
-        WSDocInfo wsDocInfo
+        WSDocInfo wsDocInfo,
+        EncryptedDataDecryptor decryptor
     ) throws WSSecurityException {
         if (LOG.isDebugEnabled()) {
             LOG.debug("Found data reference: " + dataRefURI);
@@ -128,7 +125,7 @@ public class ReferenceListProcessor implements Processor {
         // Find the encrypted data element referenced by dataRefURI
         //
         Element encryptedDataElement =
-            EncryptionUtils.findEncryptedDataElement(doc, wsDocInfo, dataRefURI);
+            decryptor.findEncryptedDataElement(doc, dataRefURI);
 
         if (encryptedDataElement != null && data.isRequireSignedEncryptedDataElements()) {
             List<WSSecurityEngineResult> signedResults =
@@ -199,11 +196,7 @@ public class ReferenceListProcessor implements Processor {
             algorithmSuiteValidator.checkSymmetricEncryptionAlgorithm(symEncAlgo);
         }
 
-        return
-            EncryptionUtils.decryptEncryptedData(
-                doc, dataRefURI, encryptedDataElement, symmetricKey, symEncAlgo, data.getAttachmentCallbackHandler(),
-                data.getEncryptionSerializer()
-            );
+        decryptor.decrypt(doc, dataRefURI, encryptedDataElement, symmetricKey, symEncAlgo);
     }
 
     /**
@@ -40,6 +40,7 @@ import org.apache.wss4j.common.principal.SAMLTokenPrincipalImpl;
 import org.apache.wss4j.common.saml.SAMLKeyInfo;
 import org.apache.wss4j.common.saml.SAMLUtil;
 import org.apache.wss4j.common.saml.SamlAssertionWrapper;
+import org.apache.wss4j.common.saml.ValidatedAssertionCache;
 import org.apache.wss4j.common.util.DOM2Writer;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.WSDataRef;
@@ -57,15 +58,19 @@ import org.w3c.dom.Element;
 public class SAMLTokenProcessor implements Processor {
     private static final org.slf4j.Logger LOG =
         org.slf4j.LoggerFactory.getLogger(SAMLTokenProcessor.class);
-    private XMLSignatureFactory signatureFactory;
+    /**
+     * A factory per thread, as the default SAMLTokenProcessor instance is used concurrently
+     */
+    private static final ThreadLocal<XMLSignatureFactory> SIGNATURE_FACTORY =
+        ThreadLocal.withInitial(SAMLTokenProcessor::createSignatureFactory);
 
-    public SAMLTokenProcessor() {
+    private static XMLSignatureFactory createSignatureFactory() {
         // Try to install the Santuario Provider - fall back to the JDK provider if this does
         // not work
         try {
-            signatureFactory = XMLSignatureFactory.getInstance("DOM", "ApacheXMLDSig");
+            return XMLSignatureFactory.getInstance("DOM", "ApacheXMLDSig");
         } catch (NoSuchProviderException ex) {
-            signatureFactory = XMLSignatureFactory.getInstance("DOM");
+            return XMLSignatureFactory.getInstance("DOM");
         }
     }
 
@@ -81,13 +86,39 @@ public class SAMLTokenProcessor implements Processor {
         Validator validator =
             data.getValidator(new QName(elem.getNamespaceURI(), elem.getLocalName()));
 
-        SamlAssertionWrapper samlAssertion = new SamlAssertionWrapper(elem);
+        SamlAssertionWrapper samlAssertion = new SamlAssertionWrapper(elem, data.isLazySamlUnmarshalling());
+
+        // See if the (same) assertion has already been validated with this configuration
+        ValidatedAssertionCache validatedAssertionCache = data.getValidatedAssertionCache();
+        String cacheKey = null;
+        if (validatedAssertionCache != null && validator != null) {
+            cacheKey = validatedAssertionCache.getKey(samlAssertion);
+        }
+        SAMLKeyInfo signatureKeyInfo = null;
+        if (samlAssertion.isSigned()) {
+            signatureKeyInfo = getSignatureKeyInfo(samlAssertion, data, wsDocInfo);
+        }
+        // A cached result only applies if the assertion is signed with the same credential
+        boolean cached = cacheKey != null
+            && validatedAssertionCache.contains(cacheKey, signatureKeyInfo);
+
         XMLSignature xmlSignature =
-            verifySignatureKeysAndAlgorithms(samlAssertion, data, wsDocInfo);
+            verifySignatureKeysAndAlgorithms(samlAssertion, signatureKeyInfo, data, cached);
         List<WSDataRef> dataRefs = createDataRefs(elem, samlAssertion, xmlSignature);
 
-        Credential credential =
-            handleSAMLToken(samlAssertion, data, validator, wsDocInfo);
+        Credential credential;
+        try {
+            credential = handleSAMLToken(samlAssertion, data, validator, wsDocInfo, cached);
+        } catch (IllegalStateException ex) {
+            // A statement of a lazily unmarshalled assertion could not be unmarshalled
+            throw new WSSecurityException(
+                WSSecurityException.ErrorCode.INVALID_SECURITY_TOKEN, ex, "invalidSAMLToken",
+                new Object[] {ex.getMessage()}
+            );
+        }
+        if (cacheKey != null && !cached) {
+            validatedAssertionCache.add(cacheKey, samlAssertion);
+        }
         samlAssertion = credential.getSamlAssertion();
         if (LOG.isDebugEnabled()) {
             LOG.debug("SAML Assertion issuer " + samlAssertion.getIssuerString());
@@ -148,6 +179,16 @@ public class SAMLTokenProcessor implements Processor {
         RequestData data,
         Validator validator,
         WSDocInfo docInfo
+    ) throws WSSecurityException {
+        return handleSAMLToken(samlAssertion, data, validator, docInfo, false);
+    }
+
+    private Credential handleSAMLToken(
+        SamlAssertionWrapper samlAssertion,
+        RequestData data,
+        Validator validator,
+        WSDocInfo docInfo,
+        boolean cached
     ) throws WSSecurityException {
         // Parse the subject if it exists
         samlAssertion.parseSubject(
@@ -158,31 +199,38 @@ public class SAMLTokenProcessor implements Processor {
         // Now delegate the rest of the verification to the Validator
         Credential credential = new Credential();
         credential.setSamlAssertion(samlAssertion);
+        credential.setSamlAssertionCached(cached);
         if (validator != null) {
             return validator.validate(credential, data);
         }
         return credential;
     }
 
-    private XMLSignature verifySignatureKeysAndAlgorithms(
+    private SAMLKeyInfo getSignatureKeyInfo(
         SamlAssertionWrapper samlAssertion,
         RequestData data,
         WSDocInfo wsDocInfo
+    ) throws WSSecurityException {
+        KeyInfo keyInfo = samlAssertion.getSignature().getKeyInfo();
+        if (keyInfo == null) {
+            throw new WSSecurityException(
+                WSSecurityException.ErrorCode.FAILURE, "invalidSAMLsecurity",
+                new Object[] {"cannot get certificate or key"}
+            );
+        }
+        return SAMLUtil.getCredentialFromKeyInfo(
+            keyInfo.getDOM(), new WSSSAMLKeyInfoProcessor(data, wsDocInfo), data.getSigVerCrypto()
+        );
+    }
+
+    private XMLSignature verifySignatureKeysAndAlgorithms(
+        SamlAssertionWrapper samlAssertion,
+        SAMLKeyInfo samlKeyInfo,
+        RequestData data,
+        boolean cached
     ) throws WSSecurityException {
         if (samlAssertion.isSigned()) {
             Signature sig = samlAssertion.getSignature();
-            KeyInfo keyInfo = sig.getKeyInfo();
-            if (keyInfo == null) {
-                throw new WSSecurityException(
-                    WSSecurityException.ErrorCode.FAILURE, "invalidSAMLsecurity",
-                    new Object[] {"cannot get certificate or key"}
-                );
-            }
-            SAMLKeyInfo samlKeyInfo =
-                SAMLUtil.getCredentialFromKeyInfo(
-                    keyInfo.getDOM(), new WSSSAMLKeyInfoProcessor(data, wsDocInfo), data.getSigVerCrypto()
-                );
-
             PublicKey key = null;
             if (samlKeyInfo.getCerts() != null && samlKeyInfo.getCerts()[0] != null) {
                 key = samlKeyInfo.getCerts()[0].getPublicKey();
@@ -202,7 +250,7 @@ public class SAMLTokenProcessor implements Processor {
 
             XMLSignature xmlSignature;
             try {
-                xmlSignature = signatureFactory.unmarshalXMLSignature(context);
+                xmlSignature = SIGNATURE_FACTORY.get().unmarshalXMLSignature(context);
             } catch (MarshalException ex) {
                 throw new WSSecurityException(
                     WSSecurityException.ErrorCode.FAILED_CHECK, ex, "invalidSAMLsecurity",
@@ -225,7 +273,13 @@ public class SAMLTokenProcessor implements Processor {
                 }
             }
 
-            samlAssertion.verifySignature(samlKeyInfo);
+            if (cached) {
+                // The signature of the (same) assertion has already been verified with the
+                // same credential
+                samlAssertion.setSignatureKeyInfo(samlKeyInfo);
+            } else {
+                samlAssertion.verifySignature(samlKeyInfo);
+            }
 
             return xmlSignature;
         }
@@ -25,23 +25,28 @@ import java.security.Principal;
 import java.security.PublicKey;
 import java.security.cert.X509Certificate;
 import java.security.spec.AlgorithmParameterSpec;
-import java.text.DateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Base64;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 import javax.xml.crypto.Data;
 import javax.xml.crypto.NodeSetData;
 import javax.xml.crypto.OctetStreamData;
+import javax.xml.crypto.dsig.CanonicalizationMethod;
 import javax.xml.crypto.dsig.Manifest;
 import javax.xml.crypto.dsig.Reference;
 import javax.xml.crypto.dsig.SignedInfo;
 import javax.xml.crypto.dsig.Transform;
 import javax.xml.crypto.dsig.XMLObject;
 import javax.xml.crypto.dsig.XMLSignature;
+import javax.xml.crypto.dsig.XMLSignatureException;
 import javax.xml.crypto.dsig.XMLSignatureFactory;
 import javax.xml.crypto.dsig.XMLValidateContext;
 import javax.xml.crypto.dsig.dom.DOMValidateContext;
@@ -63,6 +68,7 @@ import org.apache.wss4j.common.token.BinarySecurity;
 import org.apache.wss4j.common.token.SecurityTokenReference;
 import org.apache.wss4j.common.util.KeyUtils;
 import org.apache.wss4j.common.util.XMLUtils;
+import org.apache.wss4j.common.util.XmlSchemaDateTime;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.WSDataRef;
 import org.apache.wss4j.dom.WSDocInfo;
@@ -81,26 +87,38 @@ import org.apache.wss4j.dom.transform.STRTransformUtil;
 import org.apache.wss4j.dom.util.EncryptionUtils;
 import org.apache.wss4j.dom.util.WSSecurityUtil;
 import org.apache.wss4j.dom.util.X509Util;
-import org.apache.wss4j.dom.util.XmlSchemaDateFormat;
 import org.apache.wss4j.dom.validate.Credential;
 import org.apache.wss4j.dom.validate.Validator;
+import org.apache.xml.security.c14n.Canonicalizer;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 
 public class SignatureProcessor implements Processor {
     private static final org.slf4j.Logger LOG =
         org.slf4j.LoggerFactory.getLogger(SignatureProcessor.class);
 
-    private XMLSignatureFactory signatureFactory;
+    /**
+     * The default instance of this processor is shared by all WSSConfig instances. An
+     * XMLSignatureFactory is not guaranteed to be thread-safe, so each thread has its own.
+     */
+    private static final Set<String> CANONICALIZATION_ALGORITHMS = new HashSet<>(Arrays.asList(
+        CanonicalizationMethod.EXCLUSIVE, CanonicalizationMethod.EXCLUSIVE_WITH_COMMENTS,
+        CanonicalizationMethod.INCLUSIVE, CanonicalizationMethod.INCLUSIVE_WITH_COMMENTS,
+        Canonicalizer.ALGO_ID_C14N11_OMIT_COMMENTS, Canonicalizer.ALGO_ID_C14N11_WITH_COMMENTS
+    ));
+
+    private static final ThreadLocal<XMLSignatureFactory> SIGNATURE_FACTORY =
+        ThreadLocal.withInitial(SignatureProcessor::createSignatureFactory);
 
-    public SignatureProcessor() {
+    private static XMLSignatureFactory createSignatureFactory() {
         // Try to install the Santuario Provider - fall back to the JDK provider if this does
         // not work
         try {
-            signatureFactory = XMLSignatureFactory.getInstance("DOM", "ApacheXMLDSig");
+            return XMLSignatureFactory.getInstance("DOM", "ApacheXMLDSig");
         } catch (NoSuchProviderException ex) {
-            signatureFactory = XMLSignatureFactory.getInstance("DOM");
+            return XMLSignatureFactory.getInstance("DOM");
         }
     }
 
@@ -149,7 +167,7 @@ public class SignatureProcessor implements Processor {
                 && WSConstants.WSSE_NS.equals(child.getNamespaceURI()))) {
                 data.getBSPEnforcer().handleBSPRule(BSPRule.R5417);
 
-                publicKey = X509Util.parseKeyValue(keyInfoElement, signatureFactory);
+                publicKey = X509Util.parseKeyValue(keyInfoElement, SIGNATURE_FACTORY.get());
                 if (validator != null) {
                     credential.setPublicKey(publicKey);
                     principal = new PublicKeyPrincipalImpl(publicKey);
@@ -339,17 +357,10 @@ public class SignatureProcessor implements Processor {
             key = KeyUtils.prepareSecretKey(signatureMethod, secretKey);
         }
 
-        XMLValidateContext context = new DOMValidateContext(key, elem);
-        context.setProperty("javax.xml.crypto.dsig.cacheReference", Boolean.TRUE);
-        context.setProperty("org.apache.jcp.xml.dsig.secureValidation", Boolean.TRUE);
-        context.setProperty("org.jcp.xml.dsig.secureValidation", Boolean.TRUE);
-        context.setProperty(STRTransform.TRANSFORM_WS_DOC_INFO, wsDocInfo);
-
-        context.setProperty(AttachmentContentSignatureTransform.ATTACHMENT_CALLBACKHANDLER,
-                            data.getAttachmentCallbackHandler());
+        DOMValidateContext context = createValidateContext(key, elem, data, wsDocInfo);
 
         try {
-            XMLSignature xmlSignature = signatureFactory.unmarshalXMLSignature(context);
+            XMLSignature xmlSignature = SIGNATURE_FACTORY.get().unmarshalXMLSignature(context);
             checkBSPCompliance(xmlSignature, data.getBSPEnforcer());
 
             // Check for compliance against the defined AlgorithmSuite
@@ -363,7 +374,11 @@ public class SignatureProcessor implements Processor {
             // Test for replay attacks
             testMessageReplay(elem, xmlSignature.getSignatureValue().getValue(), key, data, wsDocInfo);
 
-            setElementsOnContext(xmlSignature, (DOMValidateContext)context, data, wsDocInfo);
+            setElementsOnContext(xmlSignature, context, data, wsDocInfo);
+            Executor executor = data.getSignatureVerificationExecutor();
+            if (executor != null) {
+                validateReferences(elem, xmlSignature, context, key, data, wsDocInfo, executor);
+            }
             boolean signatureOk = xmlSignature.validate(context);
             if (signatureOk) {
                 return xmlSignature;
@@ -398,6 +413,139 @@ public class SignatureProcessor implements Processor {
         throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_CHECK);
     }
 
+    private static DOMValidateContext createValidateContext(
+        Key key, Element elem, RequestData data, WSDocInfo wsDocInfo
+    ) {
+        DOMValidateContext context = new DOMValidateContext(key, elem);
+        context.setProperty("javax.xml.crypto.dsig.cacheReference", Boolean.TRUE);
+        context.setProperty("org.apache.jcp.xml.dsig.secureValidation", Boolean.TRUE);
+        context.setProperty("org.jcp.xml.dsig.secureValidation", Boolean.TRUE);
+        context.setProperty(STRTransform.TRANSFORM_WS_DOC_INFO, wsDocInfo);
+
+        context.setProperty(AttachmentContentSignatureTransform.ATTACHMENT_CALLBACKHANDLER,
+                            data.getAttachmentCallbackHandler());
+        return context;
+    }
+
+    /**
+     * Validate the References of the signature concurrently on the given Executor, once the
+     * SignatureValue has been validated. The XMLSignature implementation caches the result of
+     * each validation (and the dereferenced data), so XMLSignature.validate does not repeat the
+     * work.
+     *
+     * Only References to an element of the message, with no Transforms other than
+     * canonicalization, are validated concurrently, as these only read the document. Each of
+     * them is validated with its own ValidateContext, as a ValidateContext is not thread-safe.
+     * The other References are validated by XMLSignature.validate on the calling thread.
+     */
+    private static void validateReferences(
+        Element elem,
+        XMLSignature xmlSignature,
+        XMLValidateContext context,
+        Key key,
+        RequestData data,
+        WSDocInfo wsDocInfo,
+        Executor executor
+    ) throws XMLSignatureException {
+        List<?> references = xmlSignature.getSignedInfo().getReferences();
+        if (references.size() < 2 || !xmlSignature.getSignatureValue().validate(context)) {
+            return;
+        }
+
+        CallbackLookup callbackLookup = wsDocInfo.getCallbackLookup();
+        List<Reference> concurrentReferences = new ArrayList<>(references.size());
+        List<XMLValidateContext> contexts = new ArrayList<>(references.size());
+        for (Object refObject : references) {
+            Reference reference = (Reference)refObject;
+            if (isReadOnlyReference(reference)) {
+                DOMValidateContext referenceContext = createValidateContext(key, elem, data, wsDocInfo);
+                try {
+                    if (callbackLookup.getAndRegisterElement(
+                        reference.getURI(), null, true, referenceContext) != null) {
+                        concurrentReferences.add(reference);
+                        contexts.add(referenceContext);
+                    }
+                } catch (WSSecurityException ex) {
+                    // Leave the Reference to be validated on the calling thread
+                    LOG.debug(ex.getMessage(), ex);
+                }
+            }
+        }
+        if (concurrentReferences.size() < 2) {
+            return;
+        }
+
+        // The DOM implementation may expand nodes lazily, so do this before reading it concurrently
+        expandNodes(elem.getOwnerDocument());
+
+        List<CompletableFuture<Boolean>> results = new ArrayList<>(concurrentReferences.size());
+        for (int i = 0; i < concurrentReferences.size(); i++) {
+            final Reference reference = concurrentReferences.get(i);
+            final XMLValidateContext referenceContext = contexts.get(i);
+            results.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return reference.validate(referenceContext);
+                } catch (XMLSignatureException ex) {
+                    throw new CompletionException(ex);
+                }
+            }, executor));
+        }
+        for (CompletableFuture<Boolean> result : results) {
+            try {
+                result.join();
+            } catch (CompletionException ex) {
+                if (ex.getCause() instanceof XMLSignatureException) {
+                    throw (XMLSignatureException)ex.getCause();
+                }
+                throw new XMLSignatureException(ex.getCause());
+            }
+        }
+    }
+
+    /**
+     * @return true if the given Reference is to an element of the message, and has no Transforms
+     *         other than canonicalization
+     */
+    private static boolean isReadOnlyReference(Reference reference) {
+        String uri = reference.getURI();
+        if (uri == null || uri.length() < 2 || uri.charAt(0) != '#') {
+            return false;
+        }
+        for (Object transformObject : reference.getTransforms()) {
+            String algorithm = ((Transform)transformObject).getAlgorithm();
+            if (!CANONICALIZATION_ALGORITHMS.contains(algorithm)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Visit every node (and attribute) of the given tree, so that it is fully expanded
+     */
+    private static void expandNodes(Node startNode) {
+        Node node = startNode;
+        while (node != null) {
+            if (node.getNodeType() == Node.ELEMENT_NODE) {
+                NamedNodeMap attributes = node.getAttributes();
+                for (int i = 0; i < attributes.getLength(); i++) {
+                    attributes.item(i).getNodeValue();
+                }
+            } else {
+                node.getNodeValue();
+            }
+
+            Node next = node.getFirstChild();
+            while (next == null && node != null && node != startNode) {
+                next = node.getNextSibling();
+                if (next == null) {
+                    node = node.getParentNode();
+                }
+            }
+            node = next;
+        }
+    }
+
     /**
      * Retrieve the Reference elements and set them on the ValidateContext
      * @param xmlSignature the XMLSignature object to get the references from
@@ -460,16 +608,13 @@ public class SignatureProcessor implements Processor {
     }
 
     private void handleXopInclude(Element element, WSDocInfo wsDocInfo) {
-        Map<Integer, List<WSSecurityEngineResult>> actionResults = wsDocInfo.getActionResults();
-        if (actionResults != null && actionResults.containsKey(WSConstants.BST)) {
-            for (WSSecurityEngineResult result : actionResults.get(WSConstants.BST)) {
-                Element token = (Element)result.get(WSSecurityEngineResult.TAG_TOKEN_ELEMENT);
-                if (element.equals(token)) {
-                    BinarySecurity binarySecurity =
-                        (BinarySecurity)result.get(WSSecurityEngineResult.TAG_BINARY_SECURITY_TOKEN);
-                    binarySecurity.encodeRawToken();
-                    return;
-                }
+        for (WSSecurityEngineResult result : wsDocInfo.getResultsByTag(WSConstants.BST)) {
+            Element token = (Element)result.get(WSSecurityEngineResult.TAG_TOKEN_ELEMENT);
+            if (element.equals(token)) {
+                BinarySecurity binarySecurity =
+                    (BinarySecurity)result.get(WSSecurityEngineResult.TAG_BINARY_SECURITY_TOKEN);
+                binarySecurity.encodeRawToken();
+                return;
             }
         }
     }
@@ -667,8 +812,7 @@ public class SignatureProcessor implements Processor {
 
         // Test for replay attacks
         Date created = timeStamp.getCreated();
-        DateFormat zulu = new XmlSchemaDateFormat();
-        String identifier = zulu.format(created) + "" + Arrays.hashCode(signatureValue)
+        String identifier = XmlSchemaDateTime.format(created, true) + "" + Arrays.hashCode(signatureValue)
             + "" + Arrays.hashCode(key.getEncoded());
 
         if (replayCache.contains(identifier)) {
@@ -29,9 +29,12 @@ import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.WSDataRef;
 import org.apache.wss4j.dom.WSDocInfo;
 import org.apache.wss4j.dom.callback.CallbackLookup;
+import org.apache.wss4j.dom.callback.IndexingCallbackLookup;
 import org.apache.xml.security.algorithms.JCEMapper;
+import org.apache.xml.security.encryption.AbstractSerializer;
 import org.apache.xml.security.encryption.Serializer;
 import org.apache.xml.security.encryption.XMLCipher;
+import org.apache.xml.security.encryption.XMLCipherUtil;
 import org.apache.xml.security.encryption.XMLEncryptionException;
 import org.apache.xml.security.utils.JavaUtils;
 import org.w3c.dom.Attr;
@@ -53,6 +56,7 @@ import javax.xml.parsers.ParserConfigurationException;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.security.GeneralSecurityException;
 import java.security.NoSuchAlgorithmException;
 import java.util.Base64;
 import java.util.List;
@@ -142,6 +146,37 @@ public final class EncryptionUtils {
         CallbackHandler attachmentCallbackHandler,
         Serializer encryptionSerializer
     ) throws WSSecurityException {
+        return decryptEncryptedData(doc, dataRefURI, encData, symmetricKey, symEncAlgo,
+                                    attachmentCallbackHandler, encryptionSerializer, null, null);
+    }
+
+    /**
+     * Decrypt the EncryptedData argument using a SecretKey.
+     * @param doc The (document) owner of EncryptedData
+     * @param dataRefURI The URI of EncryptedData
+     * @param encData The EncryptedData element
+     * @param symmetricKey The SecretKey with which to decrypt EncryptedData
+     * @param symEncAlgo The symmetric encryption algorithm to use
+     * @param attachmentCallbackHandler The CallbackHandler from which to get attachments
+     * @param encryptionSerializer The Serializer with which to parse the decrypted data
+     * @param decryptedBytes The already decrypted CipherValue of EncryptedData (see
+     * decryptCipherValue), or null if it is to be decrypted here
+     * @param wsDocInfo The WSDocInfo, whose CallbackLookup is updated with the decrypted nodes if
+     * it maintains an index, or null
+     * @throws WSSecurityException
+     */
+    public static WSDataRef
+    decryptEncryptedData(
+        Document doc,
+        String dataRefURI,
+        Element encData,
+        SecretKey symmetricKey,
+        String symEncAlgo,
+        CallbackHandler attachmentCallbackHandler,
+        Serializer encryptionSerializer,
+        byte[] decryptedBytes,
+        WSDocInfo wsDocInfo
+    ) throws WSSecurityException {
 
         // See if it is an attachment, and handle that differently
         String typeStr = encData.getAttributeNS(null, "Type");
@@ -174,6 +209,7 @@ public final class EncryptionUtils {
         Element encDataOrig = encData;
         Node parent = encData.getParentNode();
         Node previousSibling = encData.getPreviousSibling();
+        Node nextSibling = encData.getNextSibling();
         if (content) {
             encData = (Element) encData.getParentNode();
             parent = encData.getParentNode();
@@ -207,6 +243,8 @@ public final class EncryptionUtils {
                 }
                 decryptedNode = decryptXopAttachment(symmetricKey, symEncAlgo, attachmentCallbackHandler,
                                                      xopURI, tempEncData);
+            } else if (decryptedBytes != null) {
+                replaceEncryptedData(xmlCipher, encryptionSerializer, encDataOrig, decryptedBytes);
             } else {
                 //in this case, the XMLCipher knows how to handle encData when it's the parent node
                 // (i.e., when content == true)
@@ -216,10 +254,25 @@ public final class EncryptionUtils {
             throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_CHECK, ex);
         }
 
-        if (parent.getLocalName().equals(WSConstants.ENCRYPTED_HEADER)
-            && parent.getNamespaceURI().equals(WSConstants.WSSE11_NS)
-            || parent.getLocalName().equals(WSConstants.ENCRYPED_ASSERTION_LN)
-            && parent.getNamespaceURI().equals(WSConstants.SAML2_NS)) {
+        if (wsDocInfo != null
+            && wsDocInfo.getCallbackLookup() instanceof IndexingCallbackLookup) {
+            // Index the nodes that replaced the EncryptedData element
+            IndexingCallbackLookup callbackLookup =
+                (IndexingCallbackLookup)wsDocInfo.getCallbackLookup();
+            Node container = content ? encData : parent;
+            Node node = previousSibling == null
+                ? container.getFirstChild() : previousSibling.getNextSibling();
+            while (node != null && node != nextSibling) {
+                callbackLookup.updateIndex(node);
+                node = node.getNextSibling();
+            }
+        }
+
+        if (Node.ELEMENT_NODE == parent.getNodeType()
+            && (parent.getLocalName().equals(WSConstants.ENCRYPTED_HEADER)
+                && parent.getNamespaceURI().equals(WSConstants.WSSE11_NS)
+                || parent.getLocalName().equals(WSConstants.ENCRYPED_ASSERTION_LN)
+                && parent.getNamespaceURI().equals(WSConstants.SAML2_NS))) {
 
             Node decryptedHeader = parent.getFirstChild();
             Node soapHeader = parent.getParentNode();
@@ -247,6 +300,105 @@ public final class EncryptionUtils {
         return dataRef;
     }
 
+    /**
+     * Get the (Base64 encoded) CipherValue of the given EncryptedData element, if it can be
+     * decrypted with decryptCipherValue. Null is returned if the EncryptedData refers to an
+     * attachment or otherwise does not contain the CipherValue directly.
+     * @param encData The EncryptedData element
+     * @return the (Base64 encoded) CipherValue, or null
+     */
+    public static String getInlineCipherValue(Element encData) {
+        String typeStr = encData.getAttributeNS(null, "Type");
+        if (WSConstants.SWA_ATTACHMENT_ENCRYPTED_DATA_TYPE_CONTENT_ONLY.equals(typeStr)
+            || WSConstants.SWA_ATTACHMENT_ENCRYPTED_DATA_TYPE_COMPLETE.equals(typeStr)) {
+            return null;
+        }
+        Element cipherValue = getCipherValueFromEncryptedData(encData);
+        if (cipherValue == null || getXOPURIFromCipherValue(cipherValue) != null) {
+            return null;
+        }
+        return XMLUtils.getElementText(cipherValue);
+    }
+
+    /**
+     * Decrypt the given (Base64 encoded) CipherValue. This does not access the document, and so
+     * may be called concurrently for the EncryptedData elements of a message.
+     * @param cipherValue The (Base64 encoded) CipherValue, including the IV
+     * @param symmetricKey The SecretKey with which to decrypt the CipherValue
+     * @param symEncAlgo The symmetric encryption algorithm to use
+     * @return the decrypted bytes
+     * @throws WSSecurityException
+     */
+    public static byte[] decryptCipherValue(
+        String cipherValue,
+        SecretKey symmetricKey,
+        String symEncAlgo
+    ) throws WSSecurityException {
+        try {
+            byte[] encryptedBytes = Base64.getMimeDecoder().decode(cipherValue);
+            int ivLen = JCEMapper.getIVLengthFromURI(symEncAlgo) / 8;
+            if (encryptedBytes.length < ivLen) {
+                throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_CHECK);
+            }
+            byte[] ivBytes = new byte[ivLen];
+            System.arraycopy(encryptedBytes, 0, ivBytes, 0, ivLen);
+
+            Cipher cipher = createDecryptionCipher(symEncAlgo, symmetricKey, ivBytes);
+            return cipher.doFinal(encryptedBytes, ivLen, encryptedBytes.length - ivLen);
+        } catch (IllegalArgumentException | GeneralSecurityException ex) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_CHECK, ex);
+        }
+    }
+
+    private static Cipher createDecryptionCipher(
+        String symEncAlgo,
+        SecretKey symmetricKey,
+        byte[] ivBytes
+    ) throws WSSecurityException, GeneralSecurityException {
+        String jceAlgorithm = JCEMapper.translateURItoJCEID(symEncAlgo);
+        if (jceAlgorithm == null) {
+            throw new WSSecurityException(
+                WSSecurityException.ErrorCode.UNSUPPORTED_ALGORITHM, "badEncAlgo",
+                new Object[] {symEncAlgo});
+        }
+        String provider = JCEMapper.getProviderId();
+        Cipher cipher = provider == null
+            ? Cipher.getInstance(jceAlgorithm) : Cipher.getInstance(jceAlgorithm, provider);
+        cipher.init(Cipher.DECRYPT_MODE, symmetricKey,
+                    XMLCipherUtil.constructBlockCipherParameters(symEncAlgo, ivBytes, EncryptionUtils.class));
+        return cipher;
+    }
+
+    /**
+     * Replace the EncryptedData element with the (parsed) decrypted data. A configured
+     * encryptionSerializer may be shared between messages, and so is used as it is. Otherwise
+     * the default Serializer of the (per-call) XMLCipher is used, with secure validation enabled.
+     */
+    private static void replaceEncryptedData(
+        XMLCipher xmlCipher,
+        Serializer encryptionSerializer,
+        Element encData,
+        byte[] decryptedBytes
+    ) throws XMLEncryptionException {
+        Serializer serializer = encryptionSerializer;
+        if (serializer == null) {
+            serializer = xmlCipher.getSerializer();
+            if (serializer instanceof AbstractSerializer) {
+                ((AbstractSerializer)serializer).setSecureValidation(true);
+            }
+        }
+        Node parent = encData.getParentNode();
+        Node decryptedNode = serializer.deserialize(decryptedBytes, parent);
+        if (Node.DOCUMENT_NODE == parent.getNodeType()) {
+            // The EncryptedData element is the document element
+            Document doc = (Document)parent;
+            doc.removeChild(doc.getDocumentElement());
+            doc.appendChild(decryptedNode);
+        } else {
+            parent.replaceChild(decryptedNode, encData);
+        }
+    }
+
     private static String getXOPURIFromEncryptedData(Element encData) {
         Element cipherValue = getCipherValueFromEncryptedData(encData);
         if (cipherValue != null) {
@@ -559,4 +711,5 @@ public final class EncryptionUtils {
         }
         return Base64.getMimeDecoder().decode(text);
     }
+
 }
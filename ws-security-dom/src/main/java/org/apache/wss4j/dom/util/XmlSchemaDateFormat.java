@@ -22,16 +22,22 @@ package org.apache.wss4j.dom.util;
 import java.text.DateFormat;
 import java.text.FieldPosition;
 import java.text.ParsePosition;
-import java.text.SimpleDateFormat;
 import java.text.ParseException;
+import java.util.Calendar;
 import java.util.Date;
+import java.util.GregorianCalendar;
 import java.util.Locale;
 import java.util.TimeZone;
 
+import org.apache.wss4j.common.util.XmlSchemaDateTime;
+
 /**
  * A {@link DateFormat} for the format of the dateTime simpleType as specified in the
  * XML Schema specification. See <a href="http://www.w3.org/TR/xmlschema-2/#dateTime">
  * XML Schema Part 2: Datatypes, W3C Recommendation 02 May 2001, Section 3.2.7.1</a>.
+ *
+ * Parsing and formatting are delegated to {@link XmlSchemaDateTime}, so an instance may be shared
+ * by concurrent threads, and instances do not contend on a common lock.
  */
 public class XmlSchemaDateFormat extends DateFormat {
     /**
@@ -45,25 +51,35 @@ public class XmlSchemaDateFormat extends DateFormat {
     private static final org.slf4j.Logger LOG =
         org.slf4j.LoggerFactory.getLogger(XmlSchemaDateFormat.class);
 
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
     /**
-     * DateFormat for Zulu (UTC) form of an XML Schema dateTime string.
+     * Whether parsing is lenient, see {@link #setLenient(boolean)}
      */
-    private static final DateFormat DATEFORMAT_XSD_ZULU = new SimpleDateFormat(
-            "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.ENGLISH);
+    private volatile boolean lenient;
 
-    static {
-        DATEFORMAT_XSD_ZULU.setTimeZone(TimeZone.getTimeZone("UTC"));
+    /**
+     * Specify whether parsing is lenient. By default it is not, and a value with a field that is
+     * out of range (e.g. an hour of 24, a second of 60 or the 30th of February) is rejected. If
+     * parsing is lenient, the fields of the date and time may be out of range, and roll over
+     * into the next field as they do for a lenient {@link java.util.Calendar}. The format itself
+     * (e.g. the separators and the number of digits) is always parsed strictly.
+     */
+    @Override
+    public void setLenient(boolean lenient) {
+        this.lenient = lenient;
     }
 
     @Override
-    public void setLenient(boolean lenient) {
-        DATEFORMAT_XSD_ZULU.setLenient(lenient);
+    public boolean isLenient() {
+        return lenient;
     }
 
     /**
      * This method was snarfed from <tt>org.apache.axis.encoding.ser.CalendarDeserializer</tt>,
      * which was written by Sam Ruby (rubys@us.ibm.com) and Rich Scheuerle (scheu@us.ibm.com).
-     * Better error reporting was added.
+     * Better error reporting was added. On failure, the error index of the ParsePosition is the
+     * index in src at which parsing failed.
      *
      * @see DateFormat#parse(java.lang.String)
      */
@@ -73,97 +89,115 @@ public class XmlSchemaDateFormat extends DateFormat {
         // validate fixed portion of format
         int index = 0;
         try {
-            if (src != null) {
-                if (src.charAt(0) == '+' || src.charAt(0) == '-') {
-                    src = src.substring(1);
-                }
-
-                if (src.length() < 19) {
-                    parsePos.setIndex(src.length() - 1);
-                    handleParseError(parsePos, "TOO_FEW_CHARS");
-                }
-                validateChar(src, parsePos, index = 4, '-', "EXPECTED_DASH");
-                validateChar(src, parsePos, index = 7, '-', "EXPECTED_DASH");
-                validateChar(src, parsePos, index = 10, 'T', "EXPECTED_CAPITAL_T");
-                validateChar(src, parsePos, index = 13, ':', "EXPECTED_COLON_IN_TIME");
-                validateChar(src, parsePos, index = 16, ':', "EXPECTED_COLON_IN_TIME");
+            if (src == null) {
+                handleParseError(parsePos, 0, "NULL");
             }
+            if (!src.isEmpty() && (src.charAt(0) == '+' || src.charAt(0) == '-')) {
+                index = 1;
+            }
+            final int start = index;
 
-            // convert what we have validated so far
-            synchronized (DATEFORMAT_XSD_ZULU) {
-                date = DATEFORMAT_XSD_ZULU.parse(src == null ? null
-                    : src.substring(0, 19) + ".000Z");
+            if (src.length() < start + 19) {
+                handleParseError(parsePos, src.length(), "TOO_FEW_CHARS");
+            }
+            validateDigits(src, parsePos, start, 4);
+            validateChar(src, parsePos, start + 4, '-', "EXPECTED_DASH");
+            validateDigits(src, parsePos, start + 5, 2);
+            validateChar(src, parsePos, start + 7, '-', "EXPECTED_DASH");
+            validateDigits(src, parsePos, start + 8, 2);
+            validateChar(src, parsePos, start + 10, 'T', "EXPECTED_CAPITAL_T");
+            validateDigits(src, parsePos, start + 11, 2);
+            validateChar(src, parsePos, start + 13, ':', "EXPECTED_COLON_IN_TIME");
+            validateDigits(src, parsePos, start + 14, 2);
+            validateChar(src, parsePos, start + 16, ':', "EXPECTED_COLON_IN_TIME");
+            validateDigits(src, parsePos, start + 17, 2);
+
+            if (lenient) {
+                date = parseLenient(src, start);
+            } else {
+                validateRange(src, parsePos, start, 4, 1, 9999, "INVALID_YEAR");
+                validateRange(src, parsePos, start + 5, 2, 1, 12, "INVALID_MONTH");
+                validateRange(src, parsePos, start + 8, 2, 1, 31, "INVALID_DAY");
+                validateRange(src, parsePos, start + 11, 2, 0, 23, "INVALID_HOUR");
+                validateRange(src, parsePos, start + 14, 2, 0, 59, "INVALID_MINUTE");
+                validateRange(src, parsePos, start + 17, 2, 0, 59, "INVALID_SECOND");
+
+                // convert what we have validated so far
+                try {
+                    date = XmlSchemaDateTime.parse(src.substring(start, start + 19) + "Z").toDate();
+                } catch (IllegalArgumentException ex) {
+                    // The day does not exist in the month
+                    date = null;
+                    handleParseError(parsePos, start + 8, "INVALID_DATE");
+                }
             }
 
-            index = 19;
+            index = start + 19;
 
             // parse optional milliseconds
-            if (src != null) {
-                int srcLength = src.length();
-                if (index < srcLength && src.charAt(index) == '.') {
-                    int milliseconds = 0;
-                    int start = ++index;
-
-                    while (index < srcLength
-                            && Character.isDigit(src.charAt(index))) {
-                        index++;
-                    }
+            int srcLength = src.length();
+            if (index < srcLength && src.charAt(index) == '.') {
+                int milliseconds = 0;
+                int fractionStart = ++index;
 
-                    String decimal = src.substring(start, index);
+                while (index < srcLength
+                        && Character.isDigit(src.charAt(index))) {
+                    index++;
+                }
 
-                    if (decimal.length() == 3) {
-                        milliseconds = Integer.parseInt(decimal);
-                    } else if (decimal.length() < 3) {
-                        String substring = decimal + "000";
-                        milliseconds = Integer.parseInt(substring.substring(0, 3));
-                    } else {
-                        milliseconds = Integer.parseInt(decimal.substring(0, 3));
+                String decimal = src.substring(fractionStart, index);
 
-                        if (decimal.charAt(3) >= '5') {
-                            ++milliseconds;
-                        }
-                    }
+                if (decimal.length() == 3) {
+                    milliseconds = Integer.parseInt(decimal);
+                } else if (decimal.length() < 3) {
+                    String substring = decimal + "000";
+                    milliseconds = Integer.parseInt(substring.substring(0, 3));
+                } else {
+                    milliseconds = Integer.parseInt(decimal.substring(0, 3));
 
-                    // add milliseconds to the current date
-                    date.setTime(date.getTime() + milliseconds);
+                    if (decimal.charAt(3) >= '5') {
+                        ++milliseconds;
+                    }
                 }
 
-                // parse optional timezone
-                if (index + 5 < srcLength
-                        && (src.charAt(index) == '+' || src.charAt(index) == '-')) {
-                    validateCharIsDigit(src, parsePos, index + 1, "EXPECTED_NUMERAL");
-                    validateCharIsDigit(src, parsePos, index + 2, "EXPECTED_NUMERAL");
-                    validateChar(src, parsePos, index + 3, ':', "EXPECTED_COLON_IN_TIMEZONE");
-                    validateCharIsDigit(src, parsePos, index + 4, "EXPECTED_NUMERAL");
-                    validateCharIsDigit(src, parsePos, index + 5, "EXPECTED_NUMERAL");
-
-                    final int hours = (src.charAt(index + 1) - '0') * 10
-                        + src.charAt(index + 2) - '0';
-                    final int mins = (src.charAt(index + 4) - '0') * 10
-                        + src.charAt(index + 5) - '0';
-                    int millisecs = (hours * 60 + mins) * 60 * 1000;
-
-                    // subtract millisecs from current date to obtain GMT
-                    if (src.charAt(index) == '+') {
-                        millisecs = -millisecs;
-                    }
+                // add milliseconds to the current date
+                date.setTime(date.getTime() + milliseconds);
+            }
 
-                    date.setTime(date.getTime() + millisecs);
-                    index += 6;
+            // parse optional timezone
+            if (index + 5 < srcLength
+                    && (src.charAt(index) == '+' || src.charAt(index) == '-')) {
+                validateCharIsDigit(src, parsePos, index + 1, "EXPECTED_NUMERAL");
+                validateCharIsDigit(src, parsePos, index + 2, "EXPECTED_NUMERAL");
+                validateChar(src, parsePos, index + 3, ':', "EXPECTED_COLON_IN_TIMEZONE");
+                validateCharIsDigit(src, parsePos, index + 4, "EXPECTED_NUMERAL");
+                validateCharIsDigit(src, parsePos, index + 5, "EXPECTED_NUMERAL");
+
+                final int hours = (src.charAt(index + 1) - '0') * 10
+                    + src.charAt(index + 2) - '0';
+                final int mins = (src.charAt(index + 4) - '0') * 10
+                    + src.charAt(index + 5) - '0';
+                int millisecs = (hours * 60 + mins) * 60 * 1000;
+
+                // subtract millisecs from current date to obtain GMT
+                if (src.charAt(index) == '+') {
+                    millisecs = -millisecs;
                 }
 
-                if (index < srcLength && src.charAt(index) == 'Z') {
-                    index++;
-                }
+                date.setTime(date.getTime() + millisecs);
+                index += 6;
+            }
 
-                if (index < srcLength) {
-                    handleParseError(parsePos, "TOO_MANY_CHARS");
-                }
+            if (index < srcLength && src.charAt(index) == 'Z') {
+                index++;
+            }
+
+            if (index < srcLength) {
+                handleParseError(parsePos, index, "TOO_MANY_CHARS");
             }
         } catch (ParseException pe) {
             LOG.error(pe.toString(), pe);
             index = 0; // IMPORTANT: this tells DateFormat.parse() to throw a ParseException
-            parsePos.setErrorIndex(index);
             date = null;
         }
         parsePos.setIndex(index);
@@ -175,11 +209,7 @@ public class XmlSchemaDateFormat extends DateFormat {
      */
     public StringBuffer format(Date date, StringBuffer appendBuf,
             FieldPosition fieldPos) {
-        String str;
-
-        synchronized (DATEFORMAT_XSD_ZULU) {
-            str = DATEFORMAT_XSD_ZULU.format(date);
-        }
+        String str = XmlSchemaDateTime.format(date, true);
 
         if (appendBuf == null) {
             appendBuf = new StringBuffer();
@@ -190,26 +220,58 @@ public class XmlSchemaDateFormat extends DateFormat {
         return appendBuf;
     }
 
+    /**
+     * Convert the fixed portion of the format, rolling over any field that is out of range
+     */
+    private static Date parseLenient(String src, int start) {
+        Calendar calendar = new GregorianCalendar(UTC, Locale.ENGLISH);
+        calendar.clear();
+        calendar.set(
+            Integer.parseInt(src.substring(start, start + 4)),
+            Integer.parseInt(src.substring(start + 5, start + 7)) - 1,
+            Integer.parseInt(src.substring(start + 8, start + 10)),
+            Integer.parseInt(src.substring(start + 11, start + 13)),
+            Integer.parseInt(src.substring(start + 14, start + 16)),
+            Integer.parseInt(src.substring(start + 17, start + 19))
+        );
+        return calendar.getTime();
+    }
+
     private void validateChar(String str, ParsePosition parsePos, int index,
             char expected, String errorReason) throws ParseException {
         if (str.charAt(index) != expected) {
-            handleParseError(parsePos, errorReason);
+            handleParseError(parsePos, index, errorReason);
         }
     }
 
     private void validateCharIsDigit(String str, ParsePosition parsePos,
             int index, String errorReason) throws ParseException {
         if (!Character.isDigit(str.charAt(index))) {
-            handleParseError(parsePos, errorReason);
+            handleParseError(parsePos, index, errorReason);
         }
     }
 
-    private void handleParseError(ParsePosition parsePos, String errorReason)
+    private void validateDigits(String str, ParsePosition parsePos, int index, int length)
             throws ParseException {
-        throw new ParseException(
-            "INVALID_XSD_DATETIME: " + errorReason,
-            parsePos.getErrorIndex()
-        );
+        for (int i = index; i < index + length; i++) {
+            if (str.charAt(i) < '0' || str.charAt(i) > '9') {
+                handleParseError(parsePos, i, "EXPECTED_NUMERAL");
+            }
+        }
+    }
+
+    private void validateRange(String str, ParsePosition parsePos, int index, int length,
+            int min, int max, String errorReason) throws ParseException {
+        int value = Integer.parseInt(str.substring(index, index + length));
+        if (value < min || value > max) {
+            handleParseError(parsePos, index, errorReason);
+        }
+    }
+
+    private void handleParseError(ParsePosition parsePos, int errorIndex, String errorReason)
+            throws ParseException {
+        parsePos.setErrorIndex(errorIndex);
+        throw new ParseException("INVALID_XSD_DATETIME: " + errorReason, errorIndex);
     }
 
 }
@@ -44,6 +44,7 @@ public class Credential {
     private UsernameToken usernametoken;
     private BinarySecurity binarySecurityToken;
     private SamlAssertionWrapper samlAssertion;
+    private boolean samlAssertionCached;
     private SamlAssertionWrapper transformedToken;
     private SecurityContextToken securityContextToken;
     private Principal principal;
@@ -180,6 +181,24 @@ public class Credential {
         return samlAssertion;
     }
 
+    /**
+     * Set whether the SamlAssertionWrapper to be validated was found in a
+     * ValidatedAssertionCache, i.e. its signature is already verified and trusted
+     * @param samlAssertionCached whether the SamlAssertionWrapper was found in the cache
+     */
+    public void setSamlAssertionCached(boolean samlAssertionCached) {
+        this.samlAssertionCached = samlAssertionCached;
+    }
+
+    /**
+     * Get whether the SamlAssertionWrapper to be validated was found in a
+     * ValidatedAssertionCache, i.e. its signature is already verified and trusted
+     * @return whether the SamlAssertionWrapper was found in the cache
+     */
+    public boolean isSamlAssertionCached() {
+        return samlAssertionCached;
+    }
+
     /**
      * Set an SamlAssertionWrapper instance which corresponds to a Transformed Token.
      * @param transformedToken a transformed SamlAssertionWrapper instance
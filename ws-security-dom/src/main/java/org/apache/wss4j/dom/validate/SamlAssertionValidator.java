@@ -117,8 +117,11 @@ public class SamlAssertionValidator extends SignatureTrustValidator {
         // Validate the assertion against schemas/profiles
         validateAssertion(samlAssertion);
 
-        // Verify trust on the signature
-        if (samlAssertion.isSigned()) {
+        // Verify trust on the signature, unless the (same) assertion has already been trusted.
+        // The trust verification is repeated for a cached assertion if revocation is enabled,
+        // so that the revocation status of the signing certificate is checked for every message.
+        if (samlAssertion.isSigned()
+            && (!credential.isSamlAssertionCached() || data.isRevocationEnabled())) {
             verifySignedAssertion(samlAssertion, data);
         }
         return credential;
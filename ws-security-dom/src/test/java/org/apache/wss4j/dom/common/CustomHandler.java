@@ -24,6 +24,7 @@ import org.apache.wss4j.dom.engine.WSSecurityEngineResult;
 import org.apache.wss4j.dom.handler.HandlerAction;
 import org.apache.wss4j.dom.handler.WSHandler;
 import org.apache.wss4j.dom.handler.RequestData;
+import org.apache.wss4j.dom.handler.SecurityPlan;
 import org.apache.wss4j.dom.handler.WSHandlerResult;
 import org.w3c.dom.Document;
 
@@ -93,6 +94,36 @@ public class CustomHandler extends WSHandler {
         );
     }
 
+    public SecurityPlan compileSender(
+        RequestData reqData,
+        List<HandlerAction> actions
+    ) throws WSSecurityException {
+        return compileSenderPlan(reqData, actions);
+    }
+
+    public void send(
+        Document doc,
+        RequestData reqData,
+        SecurityPlan plan,
+        boolean request
+    ) throws WSSecurityException {
+        doSenderAction(doc, reqData, plan, request);
+    }
+
+    public SecurityPlan compileReceiver(
+        RequestData reqData,
+        List<Integer> actions
+    ) throws WSSecurityException {
+        return compileReceiverPlan(reqData, actions);
+    }
+
+    public void receive(
+        SecurityPlan plan,
+        RequestData reqData
+    ) throws WSSecurityException {
+        doReceiverAction(plan, reqData);
+    }
+
     public void receive(
         List<Integer> actions,
         RequestData reqData
@@ -38,8 +38,13 @@ import org.apache.wss4j.dom.util.WSSecurityUtil;
 import org.junit.Test;
 import org.w3c.dom.Document;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 
 /**
@@ -268,4 +273,62 @@ public class CustomActionProcessorTest extends org.junit.Assert {
         }
     }
 
+    /**
+     * Test that the default processors and validators are shared, but that a custom processor
+     * class is instantiated for each invocation
+     */
+    @Test
+    public void
+    testSharedDefaultProcessors() throws Exception {
+        WSSConfig cfg = WSSConfig.getNewInstance();
+        assertSame(cfg.getProcessor(WSConstants.SIGNATURE), cfg.getProcessor(WSConstants.SIGNATURE));
+        assertSame(cfg.getProcessor(WSConstants.SIGNATURE),
+                   WSSConfig.getNewInstance().getProcessor(WSConstants.SIGNATURE));
+        assertSame(cfg.getValidator(WSConstants.TIMESTAMP), cfg.getValidator(WSConstants.TIMESTAMP));
+        assertNotSame(cfg.getValidator(WSConstants.SAML2_TOKEN), cfg.getValidator(WSConstants.SAML2_TOKEN));
+
+        cfg.setProcessor(WSConstants.SIGNATURE, CustomProcessor.class);
+        assertTrue(cfg.getProcessor(WSConstants.SIGNATURE) instanceof CustomProcessor);
+        assertNotSame(cfg.getProcessor(WSConstants.SIGNATURE), cfg.getProcessor(WSConstants.SIGNATURE));
+    }
+
+    /**
+     * Test that the shared default SignatureProcessor verifies signatures on several threads
+     * at the same time
+     */
+    @Test
+    public void
+    testSharedSignatureProcessorConcurrently() throws Exception {
+        List<String> messages = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+            WSSecHeader secHeader = new WSSecHeader(doc);
+            secHeader.insertSecurityHeader();
+            WSSecSignature builder = new WSSecSignature(secHeader);
+            builder.setUserInfo("16c73ab6-b892-458f-abf5-2f875f74882e", "security");
+            builder.setKeyIdentifierType(WSConstants.ISSUER_SERIAL);
+            messages.add(XMLUtils.prettyDocumentToString(builder.build(crypto)));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<WSHandlerResult>> futures = new ArrayList<>();
+            for (int r = 0; r < 4; r++) {
+                for (final String message : messages) {
+                    Callable<WSHandlerResult> verification = () -> {
+                        WSSecurityEngine secEngine = new WSSecurityEngine();
+                        secEngine.setWssConfig(WSSConfig.getNewInstance());
+                        return secEngine.processSecurityHeader(SOAPUtil.toSOAPPart(message), null, null, crypto);
+                    };
+                    futures.add(executor.submit(verification));
+                }
+            }
+            for (Future<WSHandlerResult> future : futures) {
+                assertNotNull(future.get().getActionResults().get(WSConstants.SIGN));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
 }
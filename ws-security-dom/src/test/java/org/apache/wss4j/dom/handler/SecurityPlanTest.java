@@ -0,0 +1,269 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.dom.handler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.wss4j.common.SignatureActionToken;
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.XMLUtils;
+import org.apache.wss4j.dom.WSConstants;
+import org.apache.wss4j.dom.WSDataRef;
+import org.apache.wss4j.dom.common.CustomHandler;
+import org.apache.wss4j.dom.common.KeystoreCallbackHandler;
+import org.apache.wss4j.dom.common.SOAPUtil;
+import org.apache.wss4j.dom.common.SecurityTestUtil;
+import org.apache.wss4j.dom.engine.WSSConfig;
+import org.apache.wss4j.dom.engine.WSSecurityEngine;
+import org.apache.wss4j.dom.engine.WSSecurityEngineResult;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+
+/**
+ * Some tests for compiling a WSHandler configuration into a SecurityPlan, and applying it to
+ * several messages.
+ */
+public class SecurityPlanTest extends org.junit.Assert {
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(SecurityPlanTest.class);
+
+    private static final String SOAP12_MSG =
+        "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+        + "<s:Envelope xmlns:s=\"http://www.w3.org/2003/05/soap-envelope\">"
+        +   "<s:Body><add xmlns=\"http://ws.apache.org/counter/counter_port_type\">"
+        +   "<value xmlns=\"\">15</value></add></s:Body>"
+        + "</s:Envelope>";
+
+    private CustomHandler handler = new CustomHandler();
+
+    @org.junit.AfterClass
+    public static void cleanup() throws Exception {
+        SecurityTestUtil.cleanup();
+    }
+
+    public SecurityPlanTest() throws Exception {
+        WSSConfig.init();
+    }
+
+    @Test
+    public void testSenderPlan() throws Exception {
+        SecurityPlan senderPlan = compileSenderPlan();
+        assertTrue(senderPlan.isSender());
+        // The Timestamp is signed, and so is added before the Signature
+        assertEquals(
+            Arrays.asList(WSConstants.ENCR, WSConstants.TS, WSConstants.SIGN), senderPlan.getActions()
+        );
+
+        SecurityPlan receiverPlan = compileReceiverPlan();
+        assertFalse(receiverPlan.isSender());
+
+        for (int i = 0; i < 3; i++) {
+            Document doc = send(senderPlan);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(XMLUtils.prettyDocumentToString(doc));
+            }
+            receive(receiverPlan, doc);
+        }
+    }
+
+    @Test
+    public void testConcurrentMessages() throws Exception {
+        final SecurityPlan senderPlan = compileSenderPlan();
+        final SecurityPlan receiverPlan = compileReceiverPlan();
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    public Void call() throws Exception {
+                        receive(receiverPlan, send(senderPlan));
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testDifferentSOAPVersion() throws Exception {
+        SecurityPlan senderPlan = compileSenderPlan();
+
+        Document doc = SOAPUtil.toSOAPPart(SOAP12_MSG);
+        RequestData reqData = new RequestData();
+        reqData.setMsgContext(new java.util.TreeMap<String, Object>());
+        try {
+            handler.send(doc, reqData, senderPlan, true);
+            fail("Failure expected on a SOAP 1.2 message");
+        } catch (WSSecurityException ex) {
+            assertEquals(WSSecurityException.ErrorCode.FAILURE, ex.getErrorCode());
+        }
+    }
+
+    @Test
+    public void testConfigurationSnapshot() throws Exception {
+        RequestData senderConfig = new RequestData();
+        SecurityPlan senderPlan = compileSenderPlan(senderConfig);
+        RequestData receiverConfig = new RequestData();
+        SecurityPlan receiverPlan = compileReceiverPlan(receiverConfig);
+
+        // Changing the RequestData the plans were compiled from does not affect the plans
+        senderConfig.setActor("http://example.com/actor");
+        senderConfig.getSignatureToken().setUser("unknown");
+        senderConfig.getSignatureToken().getParts().clear();
+        receiverConfig.setSigVerCrypto(null);
+        receiverConfig.setDecCrypto(null);
+        receiverConfig.setCallbackHandler(null);
+
+        receive(receiverPlan, send(senderPlan));
+    }
+
+    @Test
+    public void testCopyConfiguration() throws Exception {
+        RequestData configuration = new RequestData();
+        compileSenderPlan(configuration);
+        configuration.setTimeStampTTL(60);
+
+        RequestData reqData = new RequestData();
+        KeystoreCallbackHandler callbackHandler = new KeystoreCallbackHandler();
+        reqData.setCallbackHandler(callbackHandler);
+        reqData.setConfiguration(configuration);
+
+        assertEquals(60, reqData.getTimeStampTTL());
+        assertSame(configuration.getWssConfig(), reqData.getWssConfig());
+        // The objects already set for the message are kept
+        assertSame(callbackHandler, reqData.getCallbackHandler());
+        // The action tokens and their parts are copied, but share the Crypto instance
+        SignatureActionToken signatureToken = reqData.getSignatureToken();
+        assertNotSame(configuration.getSignatureToken(), signatureToken);
+        assertSame(configuration.getSignatureToken().getCrypto(), signatureToken.getCrypto());
+        assertEquals(2, signatureToken.getParts().size());
+        assertNotSame(
+            configuration.getSignatureToken().getParts().get(0), signatureToken.getParts().get(0)
+        );
+        assertNotSame(configuration.getEncryptionToken(), reqData.getEncryptionToken());
+        // The message specific state is not copied
+        assertNull(reqData.getMsgContext());
+    }
+
+    @Test
+    public void testUncompiledSenderKeepsActionTokens() throws Exception {
+        RequestData reqData = new RequestData();
+        reqData.setWssConfig(WSSConfig.getNewInstance());
+        reqData.setUsername("16c73ab6-b892-458f-abf5-2f875f74882e");
+        java.util.Map<String, Object> config = new java.util.TreeMap<String, Object>();
+        config.put(WSHandlerConstants.SIG_PROP_FILE, "crypto.properties");
+        config.put(WSHandlerConstants.SIG_KEY_ID, "DirectReference");
+        config.put(WSHandlerConstants.PW_CALLBACK_REF, new KeystoreCallbackHandler());
+        reqData.setMsgContext(config);
+
+        SignatureActionToken signatureToken = new SignatureActionToken();
+        reqData.setSignatureToken(signatureToken);
+
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        handler.send(doc, reqData, Collections.singletonList(new HandlerAction(WSConstants.SIGN)), true);
+
+        // Without a plan, the actions use the action tokens of the RequestData rather than copies
+        assertSame(signatureToken, reqData.getSignatureToken());
+        assertEquals(1, signatureToken.getParts().size());
+    }
+
+    private SecurityPlan compileSenderPlan() throws WSSecurityException {
+        return compileSenderPlan(new RequestData());
+    }
+
+    private SecurityPlan compileSenderPlan(RequestData reqData) throws WSSecurityException {
+        reqData.setWssConfig(WSSConfig.getNewInstance());
+        reqData.setUsername("16c73ab6-b892-458f-abf5-2f875f74882e");
+
+        java.util.Map<String, Object> config = new java.util.TreeMap<String, Object>();
+        config.put(WSHandlerConstants.SIG_PROP_FILE, "crypto.properties");
+        config.put(WSHandlerConstants.ENC_PROP_FILE, "crypto.properties");
+        config.put(WSHandlerConstants.SIG_KEY_ID, "DirectReference");
+        config.put(WSHandlerConstants.PW_CALLBACK_REF, new KeystoreCallbackHandler());
+        config.put(
+            WSHandlerConstants.SIGNATURE_PARTS,
+            "{}{" + WSConstants.WSU_NS + "}Timestamp;{}{" + WSConstants.URI_SOAP11_ENV + "}Body"
+        );
+        reqData.setMsgContext(config);
+
+        List<HandlerAction> actions = new ArrayList<>();
+        actions.add(new HandlerAction(WSConstants.ENCR));
+        actions.add(new HandlerAction(WSConstants.SIGN));
+        actions.add(new HandlerAction(WSConstants.TS));
+        return handler.compileSender(reqData, actions);
+    }
+
+    private SecurityPlan compileReceiverPlan() throws WSSecurityException {
+        return compileReceiverPlan(new RequestData());
+    }
+
+    private SecurityPlan compileReceiverPlan(RequestData reqData) throws WSSecurityException {
+        reqData.setWssConfig(WSSConfig.getNewInstance());
+
+        java.util.Map<String, Object> config = new java.util.TreeMap<String, Object>();
+        config.put(WSHandlerConstants.SIG_VER_PROP_FILE, "crypto.properties");
+        config.put(WSHandlerConstants.DEC_PROP_FILE, "crypto.properties");
+        config.put(WSHandlerConstants.PW_CALLBACK_REF, new KeystoreCallbackHandler());
+        reqData.setMsgContext(config);
+
+        List<Integer> actions = new ArrayList<>();
+        actions.add(WSConstants.TS);
+        actions.add(WSConstants.SIGN);
+        actions.add(WSConstants.ENCR);
+        return handler.compileReceiver(reqData, actions);
+    }
+
+    private Document send(SecurityPlan plan) throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        RequestData reqData = new RequestData();
+        reqData.setMsgContext(new java.util.TreeMap<String, Object>());
+        handler.send(doc, reqData, plan, true);
+        return doc;
+    }
+
+    private void receive(SecurityPlan plan, Document doc) throws Exception {
+        RequestData reqData = new RequestData();
+        reqData.setMsgContext(new java.util.TreeMap<String, Object>());
+        handler.receive(plan, reqData);
+
+        WSHandlerResult results = new WSSecurityEngine().processSecurityHeader(doc, reqData);
+        assertTrue(handler.checkResultsAnyOrder(results.getResults(), plan.getActions()));
+        @SuppressWarnings("unchecked")
+        final List<WSDataRef> refs =
+            (List<WSDataRef>)results.getActionResults().get(WSConstants.SIGN).get(0)
+                .get(WSSecurityEngineResult.TAG_DATA_REF_URIS);
+        assertEquals(2, refs.size());
+    }
+
+}
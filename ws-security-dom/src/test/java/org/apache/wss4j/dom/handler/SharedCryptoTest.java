@@ -0,0 +1,63 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.wss4j.dom.handler;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.wss4j.common.crypto.Crypto;
+import org.apache.wss4j.dom.common.CustomHandler;
+import org.junit.Test;
+
+/**
+ * Some tests for loading the Crypto instances of a WSHandler from the shared registry of
+ * CryptoFactory.
+ */
+public class SharedCryptoTest extends org.junit.Assert {
+
+    @Test
+    public void testPerHandlerCrypto() throws Exception {
+        Map<String, Object> messageContext = new HashMap<>();
+        messageContext.put(WSHandlerConstants.SIG_PROP_FILE, "crypto.properties");
+
+        // Each handler loads its own Crypto instance by default
+        Crypto crypto = loadSignatureCrypto(new CustomHandler(), messageContext);
+        assertNotNull(crypto);
+        assertNotSame(crypto, loadSignatureCrypto(new CustomHandler(), messageContext));
+    }
+
+    @Test
+    public void testSharedCrypto() throws Exception {
+        Map<String, Object> messageContext = new HashMap<>();
+        messageContext.put(WSHandlerConstants.SIG_PROP_FILE, "crypto.properties");
+        messageContext.put(WSHandlerConstants.SHARED_CRYPTO, "true");
+
+        Crypto crypto = loadSignatureCrypto(new CustomHandler(), messageContext);
+        assertNotNull(crypto);
+        assertSame(crypto, loadSignatureCrypto(new CustomHandler(), messageContext));
+    }
+
+    private static Crypto loadSignatureCrypto(
+        WSHandler handler, Map<String, Object> messageContext
+    ) throws Exception {
+        RequestData reqData = new RequestData();
+        reqData.setMsgContext(messageContext);
+        return handler.loadSignatureCrypto(reqData);
+    }
+}
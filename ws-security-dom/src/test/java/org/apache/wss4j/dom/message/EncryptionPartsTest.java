@@ -28,6 +28,7 @@ import org.apache.wss4j.dom.common.SecurityTestUtil;
 import org.apache.wss4j.dom.engine.WSSConfig;
 import org.apache.wss4j.dom.engine.WSSecurityEngine;
 import org.apache.wss4j.dom.engine.WSSecurityEngineResult;
+import org.apache.wss4j.dom.handler.RequestData;
 import org.apache.wss4j.dom.handler.WSHandlerResult;
 import org.apache.wss4j.common.WSEncryptionPart;
 import org.apache.wss4j.common.crypto.Crypto;
@@ -43,6 +44,8 @@ import javax.security.auth.callback.CallbackHandler;
 import javax.xml.namespace.QName;
 
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * This is some unit tests for encryption using encryption using parts. Note that the "soapMsg" below
@@ -559,6 +562,188 @@ public class EncryptionPartsTest extends org.junit.Assert {
         assertTrue(outputString.contains("asf2"));
     }
 
+    /**
+     * Test decrypting a number of EncryptedData elements concurrently. The results must be the
+     * same as when they are decrypted sequentially.
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testParallelDecryption() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPMSG);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecEncrypt encrypt = new WSSecEncrypt(secHeader);
+        encrypt.setUserInfo("16c73ab6-b892-458f-abf5-2f875f74882e", "security");
+        encrypt.setKeyIdentifierType(WSConstants.ISSUER_SERIAL);
+        encrypt.getParts().add(new WSEncryptionPart("bar1", "urn:foo.bar", "Element"));
+        encrypt.getParts().add(new WSEncryptionPart("foobar", "urn:foo.bar", "Header"));
+        encrypt.getParts().add(new WSEncryptionPart("bar2", "urn:foo.bar", "Content"));
+        encrypt.getParts().add(new WSEncryptionPart("Body", WSConstants.URI_SOAP11_ENV, "Content"));
+
+        String encryptedMessage = XMLUtils.prettyDocumentToString(encrypt.build(crypto));
+
+        Document sequentialDoc = SOAPUtil.toSOAPPart(encryptedMessage);
+        WSHandlerResult sequentialResults = verify(sequentialDoc);
+
+        Document parallelDoc = SOAPUtil.toSOAPPart(encryptedMessage);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        WSHandlerResult parallelResults = null;
+        try {
+            RequestData data = new RequestData();
+            data.setDecCrypto(crypto);
+            data.setCallbackHandler(callbackHandler);
+            data.setDecryptionExecutor(executor);
+            parallelResults = secEngine.processSecurityHeader(parallelDoc, data);
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(XMLUtils.prettyDocumentToString(sequentialDoc),
+                     XMLUtils.prettyDocumentToString(parallelDoc));
+
+        final List<WSDataRef> sequentialRefs =
+            (List<WSDataRef>) sequentialResults.getActionResults().get(WSConstants.ENCR).get(0)
+                .get(WSSecurityEngineResult.TAG_DATA_REF_URIS);
+        final List<WSDataRef> parallelRefs =
+            (List<WSDataRef>) parallelResults.getActionResults().get(WSConstants.ENCR).get(0)
+                .get(WSSecurityEngineResult.TAG_DATA_REF_URIS);
+        assertEquals(4, parallelRefs.size());
+        for (int i = 0; i < sequentialRefs.size(); i++) {
+            WSDataRef sequentialRef = sequentialRefs.get(i);
+            WSDataRef parallelRef = parallelRefs.get(i);
+            assertEquals(sequentialRef.getWsuId(), parallelRef.getWsuId());
+            assertEquals(sequentialRef.getName(), parallelRef.getName());
+            assertEquals(sequentialRef.getXpath(), parallelRef.getXpath());
+            assertEquals(sequentialRef.isContent(), parallelRef.isContent());
+            assertEquals(sequentialRef.getAlgorithm(), parallelRef.getAlgorithm());
+            assertNotNull(parallelRef.getProtectedElement());
+            assertSame(parallelDoc, parallelRef.getProtectedElement().getOwnerDocument());
+        }
+    }
+
+
+    /**
+     * Test decrypting concurrently where the ReferenceList refers to an EncryptedData element that
+     * is contained in the encrypted data of another (super-encryption).
+     */
+    @Test
+    public void testParallelDecryptionSuperEncryption() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPMSG);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecEncrypt encrypt = new WSSecEncrypt(secHeader);
+        encrypt.setUserInfo("16c73ab6-b892-458f-abf5-2f875f74882e", "security");
+        encrypt.setKeyIdentifierType(WSConstants.ISSUER_SERIAL);
+        encrypt.prepare(crypto);
+
+        // Encrypt the Body content twice with the same key, and refer to the outer EncryptedData
+        // element first
+        Element innerRefs = encrypt.encrypt();
+        Element refs = encrypt.encryptForRef(null, encrypt.getParts());
+        while (innerRefs.getFirstChild() != null) {
+            refs.appendChild(innerRefs.getFirstChild());
+        }
+        encrypt.addInternalRefElement(refs);
+        encrypt.prependToHeader();
+        encrypt.prependBSTElementToHeader();
+        assertEquals(2, refs.getElementsByTagNameNS(WSConstants.ENC_NS, "DataReference").getLength());
+
+        String encryptedMessage = XMLUtils.prettyDocumentToString(doc);
+        assertFalse(encryptedMessage.contains("testMethod"));
+
+        Document parallelDoc = SOAPUtil.toSOAPPart(encryptedMessage);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        WSHandlerResult results = null;
+        try {
+            RequestData data = new RequestData();
+            data.setDecCrypto(crypto);
+            data.setCallbackHandler(callbackHandler);
+            data.setDecryptionExecutor(executor);
+            results = secEngine.processSecurityHeader(parallelDoc, data);
+        } finally {
+            executor.shutdown();
+        }
+
+        assertTrue(XMLUtils.prettyDocumentToString(parallelDoc).contains("testMethod"));
+        @SuppressWarnings("unchecked")
+        final List<WSDataRef> refList =
+            (List<WSDataRef>) results.getActionResults().get(WSConstants.ENCR).get(0)
+                .get(WSSecurityEngineResult.TAG_DATA_REF_URIS);
+        assertEquals(2, refList.size());
+    }
+
+
+    /**
+     * Test streaming the decryption of a large Body, where the CipherValue is split across a
+     * number of Text nodes, and the decrypted content uses a namespace prefix declared on the
+     * Envelope.
+     */
+    @Test
+    public void testLargeEncryptedContent() throws Exception {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            body.append("<foo:item foo:index=\"").append(i).append("\">value-").append(i).append("</foo:item>");
+        }
+        String soapMessage = SOAPMSG.replace("<ns1:testMethod", body + "<ns1:testMethod");
+        Document doc = SOAPUtil.toSOAPPart(soapMessage);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecEncrypt encrypt = new WSSecEncrypt(secHeader);
+        encrypt.setUserInfo("16c73ab6-b892-458f-abf5-2f875f74882e", "security");
+        encrypt.setKeyIdentifierType(WSConstants.ISSUER_SERIAL);
+        encrypt.setSymmetricEncAlgorithm(WSConstants.AES_128_GCM);
+        Document encryptedDoc = encrypt.build(crypto);
+
+        Element cipherValue =
+            (Element)encryptedDoc.getElementsByTagNameNS(WSConstants.ENC_NS, "CipherValue").item(1);
+        String text = cipherValue.getTextContent();
+        cipherValue.setTextContent(text.substring(0, 1001));
+        for (int i = 1001; i < text.length(); i += 1000) {
+            cipherValue.appendChild(
+                encryptedDoc.createTextNode(text.substring(i, Math.min(i + 1000, text.length())))
+            );
+        }
+
+        verify(encryptedDoc);
+
+        Element bodyElement = WSSecurityUtil.findBodyElement(encryptedDoc);
+        assertEquals(5000, bodyElement.getElementsByTagNameNS("urn:foo.bar", "item").getLength());
+        Element item = (Element)bodyElement.getElementsByTagNameNS("urn:foo.bar", "item").item(4999);
+        assertEquals("value-4999", item.getTextContent());
+        assertEquals("4999", item.getAttributeNS("urn:foo.bar", "index"));
+    }
+
+    /**
+     * Test that decryption fails if the CipherValue has been modified.
+     */
+    @Test
+    public void testModifiedCipherValue() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPMSG);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecEncrypt encrypt = new WSSecEncrypt(secHeader);
+        encrypt.setUserInfo("16c73ab6-b892-458f-abf5-2f875f74882e", "security");
+        encrypt.setKeyIdentifierType(WSConstants.ISSUER_SERIAL);
+        encrypt.setSymmetricEncAlgorithm(WSConstants.AES_128_GCM);
+        Document encryptedDoc = encrypt.build(crypto);
+
+        Element cipherValue =
+            (Element)encryptedDoc.getElementsByTagNameNS(WSConstants.ENC_NS, "CipherValue").item(1);
+        String text = cipherValue.getTextContent();
+        char replacement = text.charAt(30) == 'A' ? 'B' : 'A';
+        cipherValue.setTextContent(text.substring(0, 30) + replacement + text.substring(31));
+
+        try {
+            verify(encryptedDoc);
+            fail("Failure expected on a modified CipherValue");
+        } catch (WSSecurityException ex) {
+            assertEquals(WSSecurityException.ErrorCode.FAILED_CHECK, ex.getErrorCode());
+        }
+    }
 
     /**
      * Verifies the soap envelope
@@ -30,6 +30,7 @@ import org.apache.wss4j.dom.common.SecurityTestUtil;
 import org.apache.wss4j.dom.engine.WSSConfig;
 import org.apache.wss4j.dom.engine.WSSecurityEngine;
 import org.apache.wss4j.dom.engine.WSSecurityEngineResult;
+import org.apache.wss4j.dom.handler.RequestData;
 import org.apache.wss4j.dom.handler.WSHandlerResult;
 import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.crypto.CryptoFactory;
@@ -50,6 +51,10 @@ import org.w3c.dom.Element;
 import java.io.InputStream;
 import java.security.KeyStore;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.xml.namespace.QName;
 
@@ -468,6 +473,72 @@ public class SignaturePartsTest extends org.junit.Assert {
         assertFalse(foundHeader);
     }
 
+    /**
+     * Test validating the References of a signature concurrently
+     */
+    @Test
+    public void testParallelVerification() throws Exception {
+        final AtomicInteger tasks = new AtomicInteger();
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        Executor executor = command -> {
+            tasks.incrementAndGet();
+            executorService.execute(command);
+        };
+        try {
+            Document signedDoc = signParts();
+            RequestData data = new RequestData();
+            data.setSigVerCrypto(crypto);
+            data.setSignatureVerificationExecutor(executor);
+            WSHandlerResult results = secEngine.processSecurityHeader(signedDoc, data);
+            assertEquals(3, tasks.get());
+
+            WSSecurityEngineResult actionResult =
+                results.getActionResults().get(WSConstants.SIGN).get(0);
+            @SuppressWarnings("unchecked")
+            final List<WSDataRef> refs =
+                (List<WSDataRef>) actionResult.get(WSSecurityEngineResult.TAG_DATA_REF_URIS);
+            assertEquals(3, refs.size());
+            for (WSDataRef ref : refs) {
+                assertNotNull(ref.getProtectedElement());
+            }
+
+            // Now modify one of the signed parts
+            signedDoc = signParts();
+            Element fooElement =
+                XMLUtils.findElement(signedDoc.getDocumentElement(), "foobar", "urn:foo.bar");
+            fooElement.setTextContent("modified");
+
+            data = new RequestData();
+            data.setSigVerCrypto(crypto);
+            data.setSignatureVerificationExecutor(executor);
+            try {
+                secEngine.processSecurityHeader(signedDoc, data);
+                fail("Failure expected on a modified signed part");
+            } catch (WSSecurityException ex) {
+                assertEquals(WSSecurityException.ErrorCode.FAILED_CHECK, ex.getErrorCode());
+            }
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    private Document signParts() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPMSG);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecTimestamp timestamp = new WSSecTimestamp(secHeader);
+        timestamp.build();
+
+        WSSecSignature sign = new WSSecSignature(secHeader);
+        sign.setUserInfo("16c73ab6-b892-458f-abf5-2f875f74882e", "security");
+        sign.setKeyIdentifierType(WSConstants.ISSUER_SERIAL);
+        sign.getParts().add(new WSEncryptionPart("Body", WSConstants.URI_SOAP11_ENV, ""));
+        sign.getParts().add(new WSEncryptionPart("foobar", "urn:foo.bar", ""));
+        sign.getParts().add(new WSEncryptionPart("Timestamp", WSConstants.WSU_NS, ""));
+
+        return sign.build(crypto);
+    }
 
     /**
      * Test getting a DOM Element from WSEncryptionPart directly
@@ -0,0 +1,141 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.dom.misc;
+
+import org.apache.wss4j.common.crypto.Crypto;
+import org.apache.wss4j.common.crypto.CryptoFactory;
+import org.apache.wss4j.dom.WSConstants;
+import org.apache.wss4j.dom.callback.IndexingCallbackLookup;
+import org.apache.wss4j.dom.common.KeystoreCallbackHandler;
+import org.apache.wss4j.dom.common.SOAPUtil;
+import org.apache.wss4j.dom.engine.WSSConfig;
+import org.apache.wss4j.dom.engine.WSSecurityEngine;
+import org.apache.wss4j.dom.message.WSSecEncrypt;
+import org.apache.wss4j.dom.message.WSSecHeader;
+import org.apache.wss4j.dom.util.WSSecurityUtil;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Some tests for locating Elements by Id via the IndexingCallbackLookup.
+ */
+public class IndexingCallbackLookupTest extends org.junit.Assert {
+
+    @Test
+    public void testLookup() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        Element body = WSSecurityUtil.findBodyElement(doc);
+        body.setAttributeNS(WSConstants.WSU_NS, "wsu:Id", "body");
+        Element wsuIdElement = addElement(body, WSConstants.WSU_NS, "wsu:Id", "id1");
+        Element idElement = addElement(body, null, "Id", "id2");
+        Element samlElement = addElement(body, null, "AssertionID", "saml1");
+
+        IndexingCallbackLookup callbackLookup = new IndexingCallbackLookup(doc);
+        assertSame(body, callbackLookup.getElement("#body", null, true));
+        assertSame(wsuIdElement, callbackLookup.getElement("#id1", null, true));
+        assertSame(idElement, callbackLookup.getElement("id2", null, true));
+        assertSame(samlElement, callbackLookup.getElement("saml1", null, true));
+        assertSame(samlElement,
+                   callbackLookup.getElement("saml1", WSConstants.WSS_SAML_KI_VALUE_TYPE, true));
+        assertNull(callbackLookup.getElement("saml1", WSConstants.X509TOKEN_NS + "#X509v3", true));
+        assertNull(callbackLookup.getElement("#unknown", null, true));
+    }
+
+    @Test
+    public void testMultipleElements() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        Element body = WSSecurityUtil.findBodyElement(doc);
+        Element first = addElement(body, WSConstants.WSU_NS, "wsu:Id", "id1");
+        addElement(body, null, "Id", "id1");
+
+        IndexingCallbackLookup callbackLookup = new IndexingCallbackLookup(doc);
+        assertNull(callbackLookup.getElement("#id1", null, true));
+        assertSame(first, callbackLookup.getElement("#id1", null, false));
+    }
+
+    @Test
+    public void testUpdatedDocument() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        Element body = WSSecurityUtil.findBodyElement(doc);
+        Element element = addElement(body, WSConstants.WSU_NS, "wsu:Id", "id1");
+
+        IndexingCallbackLookup callbackLookup = new IndexingCallbackLookup(doc);
+        assertSame(element, callbackLookup.getElement("#id1", null, true));
+
+        // A removed element is no longer found
+        body.removeChild(element);
+        assertNull(callbackLookup.getElement("#id1", null, true));
+
+        // An added element that is not in the index is found by walking the tree
+        Element addedElement = addElement(body, WSConstants.WSU_NS, "wsu:Id", "id2");
+        assertSame(addedElement, callbackLookup.getElement("#id2", null, true));
+
+        // A duplicate added element is detected once the index is updated
+        body.appendChild(element);
+        callbackLookup.updateIndex(element);
+        assertSame(element, callbackLookup.getElement("#id1", null, true));
+        callbackLookup.updateIndex(addedElement);
+        callbackLookup.updateIndex(addElement(body, null, "Id", "id2"));
+        assertNull(callbackLookup.getElement("#id2", null, true));
+
+        // A changed Id is detected
+        element.setAttributeNS(WSConstants.WSU_NS, "wsu:Id", "id3");
+        assertNull(callbackLookup.getElement("#id1", null, true));
+        assertSame(element, callbackLookup.getElement("#id3", null, true));
+    }
+
+    /**
+     * The elements of a decrypted Body are indexed, so that an element in the decrypted data that
+     * duplicates the Id of an element that was indexed before decryption is detected
+     */
+    @Test
+    public void testDecryptedDuplicateId() throws Exception {
+        WSSConfig.init();
+        Crypto crypto = CryptoFactory.getInstance("crypto.properties");
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        addElement(WSSecurityUtil.findBodyElement(doc), null, "Id", "id1");
+
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+        WSSecEncrypt encrypt = new WSSecEncrypt(secHeader);
+        encrypt.setUserInfo("16c73ab6-b892-458f-abf5-2f875f74882e");
+        encrypt.setKeyIdentifierType(WSConstants.ISSUER_SERIAL);
+        encrypt.build(crypto);
+        Element headerElement =
+            addElement(secHeader.getSecurityHeaderElement(), WSConstants.WSU_NS, "wsu:Id", "id1");
+
+        IndexingCallbackLookup callbackLookup = new IndexingCallbackLookup(doc);
+        assertSame(headerElement, callbackLookup.getElement("#id1", null, true));
+
+        WSSecurityEngine secEngine = new WSSecurityEngine();
+        secEngine.setCallbackLookup(callbackLookup);
+        secEngine.processSecurityHeader(doc, null, new KeystoreCallbackHandler(), crypto);
+        assertNull(callbackLookup.getElement("#id1", null, true));
+    }
+
+    private static Element addElement(Element parent, String namespace, String qualifiedName, String id) {
+        Element element = parent.getOwnerDocument().createElementNS("urn:test", "test:Element");
+        element.setAttributeNS(WSConstants.XMLNS_NS, "xmlns:test", "urn:test");
+        element.setAttributeNS(namespace, qualifiedName, id);
+        parent.appendChild(element);
+        return element;
+    }
+}
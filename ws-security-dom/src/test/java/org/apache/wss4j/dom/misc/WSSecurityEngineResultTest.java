@@ -0,0 +1,100 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.dom.misc;
+
+import java.util.List;
+import java.util.Map;
+
+import org.apache.wss4j.dom.WSConstants;
+import org.apache.wss4j.dom.WSDocInfo;
+import org.apache.wss4j.dom.engine.WSSecurityEngineResult;
+import org.junit.Test;
+
+/**
+ * Some tests for the accessors of WSSecurityEngineResult, and the indexing of results by WSDocInfo.
+ */
+public class WSSecurityEngineResultTest extends org.junit.Assert {
+
+    @Test
+    public void testAccessors() throws Exception {
+        WSSecurityEngineResult result = new WSSecurityEngineResult(WSConstants.SIGN);
+        assertEquals(Integer.valueOf(WSConstants.SIGN), result.getAction());
+        assertNull(result.getId());
+
+        result.put(WSSecurityEngineResult.TAG_ID, "sig-1");
+        assertEquals("sig-1", result.getId());
+        assertEquals("sig-1", result.remove(WSSecurityEngineResult.TAG_ID));
+        assertNull(result.getId());
+    }
+
+    @Test
+    public void testDocInfoIndexes() throws Exception {
+        WSDocInfo wsDocInfo = new WSDocInfo(null);
+
+        WSSecurityEngineResult timestamp = new WSSecurityEngineResult(WSConstants.TS);
+        timestamp.put(WSSecurityEngineResult.TAG_ID, "TS-1");
+        wsDocInfo.addResult(timestamp);
+        WSSecurityEngineResult signature = new WSSecurityEngineResult(WSConstants.SIGN);
+        signature.put(WSSecurityEngineResult.TAG_ID, "SIG-1");
+        wsDocInfo.addResult(signature);
+        WSSecurityEngineResult otherSignature = new WSSecurityEngineResult(WSConstants.SIGN);
+        wsDocInfo.addResult(otherSignature);
+
+        assertSame(signature, wsDocInfo.getResult("#SIG-1"));
+        assertSame(timestamp, wsDocInfo.getResult("TS-1"));
+        assertNull(wsDocInfo.getResult("#unknown"));
+        assertTrue(wsDocInfo.hasResult(WSConstants.SIGN, "#SIG-1"));
+        assertFalse(wsDocInfo.hasResult(WSConstants.TS, "#SIG-1"));
+        assertFalse(wsDocInfo.hasResult(WSConstants.ENCR, "#SIG-1"));
+
+        List<WSSecurityEngineResult> signatures = wsDocInfo.getResultsByTag(WSConstants.SIGN);
+        assertEquals(2, signatures.size());
+        assertSame(signatures, wsDocInfo.getResultsByTag(WSConstants.SIGN));
+        assertTrue(wsDocInfo.getResultsByTag(WSConstants.ENCR).isEmpty());
+        assertEquals(3, wsDocInfo.getResults().size());
+        assertEquals(2, wsDocInfo.getActionResults().size());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testResultsAreUnmodifiable() throws Exception {
+        WSDocInfo wsDocInfo = new WSDocInfo(null);
+        wsDocInfo.addResult(new WSSecurityEngineResult(WSConstants.SIGN));
+        wsDocInfo.getResults().add(new WSSecurityEngineResult(WSConstants.TS));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testActionResultsAreUnmodifiable() throws Exception {
+        WSDocInfo wsDocInfo = new WSDocInfo(null);
+        wsDocInfo.addResult(new WSSecurityEngineResult(WSConstants.SIGN));
+        wsDocInfo.getActionResults().get(WSConstants.SIGN).clear();
+    }
+
+    @Test
+    public void testResultViews() throws Exception {
+        WSDocInfo wsDocInfo = new WSDocInfo(null);
+        wsDocInfo.addResult(new WSSecurityEngineResult(WSConstants.SIGN));
+        List<WSSecurityEngineResult> results = wsDocInfo.getResults();
+        Map<Integer, List<WSSecurityEngineResult>> actionResults = wsDocInfo.getActionResults();
+
+        wsDocInfo.addResult(new WSSecurityEngineResult(WSConstants.TS));
+        assertEquals(2, results.size());
+        assertEquals(2, actionResults.size());
+    }
+}
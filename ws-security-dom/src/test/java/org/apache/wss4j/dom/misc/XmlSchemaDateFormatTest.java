@@ -0,0 +1,82 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.dom.misc;
+
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.util.Date;
+
+import org.apache.wss4j.dom.util.XmlSchemaDateFormat;
+import org.junit.Test;
+
+/**
+ * Some tests for parsing xsd:dateTime values with XmlSchemaDateFormat.
+ */
+public class XmlSchemaDateFormatTest extends org.junit.Assert {
+
+    @Test
+    public void testParse() throws Exception {
+        DateFormat format = new XmlSchemaDateFormat();
+        assertEquals(new Date(1488968130123L), format.parse("2017-03-08T10:15:30.123Z"));
+        assertEquals(new Date(1488948330000L), format.parse("2017-03-08T10:15:30+05:30"));
+        assertEquals("2017-03-08T10:15:30.123Z", format.format(new Date(1488968130123L)));
+    }
+
+    @Test
+    public void testErrorIndex() throws Exception {
+        assertErrorIndex("2017-03-08T10:15:30.123ZZ", 24);
+        assertErrorIndex("2017-03-08X10:15:30Z", 10);
+        assertErrorIndex("2017-03-0aT10:15:30Z", 9);
+        assertErrorIndex("2017-13-08T10:15:30Z", 5);
+        assertErrorIndex("2017-02-30T10:15:30Z", 8);
+        assertErrorIndex("2017-03-08T24:15:00Z", 11);
+        assertErrorIndex("2017-03-08T24:00:00Z", 11);
+        assertErrorIndex("2017-03-08T10:15:60Z", 17);
+        assertErrorIndex("+2017-03-08T10:15:61Z", 18);
+        assertErrorIndex("2017-03-08T10:15:30+05-30", 22);
+        assertErrorIndex("2017-03-08T10", 13);
+        assertErrorIndex("", 0);
+    }
+
+    @Test
+    public void testLenient() throws Exception {
+        DateFormat format = new XmlSchemaDateFormat();
+        assertFalse(format.isLenient());
+        format.setLenient(true);
+        assertTrue(format.isLenient());
+
+        // The out of range fields roll over into the next field
+        assertEquals(
+            format.parse("2017-03-03T00:01:00Z"), format.parse("2017-02-30T24:00:60Z")
+        );
+        assertEquals(new Date(1488968130123L), format.parse("2017-03-08T10:15:30.123Z"));
+        // Other instances are not affected
+        assertErrorIndex("2017-02-30T24:00:60Z", 11);
+    }
+
+    private static void assertErrorIndex(String value, int errorIndex) {
+        try {
+            new XmlSchemaDateFormat().parse(value);
+            fail("Failure expected on parsing " + value);
+        } catch (ParseException ex) {
+            assertEquals(value, errorIndex, ex.getErrorOffset());
+        }
+    }
+}
@@ -0,0 +1,234 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.dom.saml;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.security.auth.callback.Callback;
+import javax.security.auth.callback.CallbackHandler;
+import javax.security.auth.callback.UnsupportedCallbackException;
+
+import org.apache.wss4j.common.crypto.Crypto;
+import org.apache.wss4j.common.crypto.CryptoFactory;
+import org.apache.wss4j.common.saml.IssuedAssertionCache;
+import org.apache.wss4j.common.saml.SAMLCallback;
+import org.apache.wss4j.common.saml.SamlAssertionWrapper;
+import org.apache.wss4j.common.saml.bean.ConditionsBean;
+import org.apache.wss4j.common.saml.builder.SAML2Constants;
+import org.apache.wss4j.common.util.WSTimeSource;
+import org.apache.wss4j.dom.WSConstants;
+import org.apache.wss4j.dom.common.CustomHandler;
+import org.apache.wss4j.dom.common.SAML2CallbackHandler;
+import org.apache.wss4j.dom.common.SOAPUtil;
+import org.apache.wss4j.dom.common.SecurityTestUtil;
+import org.apache.wss4j.dom.engine.WSSConfig;
+import org.apache.wss4j.dom.engine.WSSecurityEngine;
+import org.apache.wss4j.dom.engine.WSSecurityEngineResult;
+import org.apache.wss4j.dom.handler.HandlerAction;
+import org.apache.wss4j.dom.handler.RequestData;
+import org.apache.wss4j.dom.handler.WSHandlerConstants;
+import org.apache.wss4j.dom.handler.WSHandlerResult;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+/**
+ * Some tests for reusing signed SAML Assertions that have been issued for outbound messages.
+ */
+public class IssuedAssertionCacheTest extends org.junit.Assert {
+    private WSSecurityEngine secEngine = new WSSecurityEngine();
+    private Crypto crypto = null;
+
+    @org.junit.AfterClass
+    public static void cleanup() throws Exception {
+        SecurityTestUtil.cleanup();
+    }
+
+    public IssuedAssertionCacheTest() throws Exception {
+        WSSConfig config = WSSConfig.getNewInstance();
+        secEngine.setWssConfig(config);
+
+        crypto = CryptoFactory.getInstance("crypto.properties");
+    }
+
+    /**
+     * The same signed Assertion is sent in several messages
+     */
+    @Test
+    public void testCachedAssertion() throws Exception {
+        IssuedAssertionCache cache = new IssuedAssertionCache();
+        CallbackHandler samlCallbackHandler = new CachingCallbackHandler("joe");
+
+        String id = send(samlCallbackHandler, cache);
+        assertEquals(id, send(samlCallbackHandler, cache));
+        assertEquals(id, send(samlCallbackHandler, cache));
+
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(2, cache.getHitCount());
+
+        // A different cache key gets a different Assertion
+        assertNotEquals(id, send(new CachingCallbackHandler("bob"), cache));
+        assertEquals(2, cache.size());
+    }
+
+    /**
+     * The cached Assertion is sent in concurrent messages, each of which gets a DOM of its own
+     */
+    @Test
+    public void testConcurrentMessages() throws Exception {
+        final IssuedAssertionCache cache = new IssuedAssertionCache();
+        final CallbackHandler samlCallbackHandler = new CachingCallbackHandler("joe");
+        String id = send(samlCallbackHandler, cache);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                futures.add(executor.submit(() -> send(samlCallbackHandler, cache)));
+            }
+            for (Future<String> future : futures) {
+                assertEquals(id, future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, cache.getMissCount());
+        assertEquals(16, cache.getHitCount());
+    }
+
+    /**
+     * A new Assertion is issued before the cached Assertion expires
+     */
+    @Test
+    public void testRefresh() throws Exception {
+        MutableTimeSource timeSource = new MutableTimeSource();
+        IssuedAssertionCache cache = new IssuedAssertionCache();
+        cache.setTimeSource(timeSource);
+        CallbackHandler samlCallbackHandler = new CachingCallbackHandler("joe");
+
+        // The Assertion expires after 5 minutes, and so is refreshed after 4 minutes
+        String id = send(samlCallbackHandler, cache);
+        timeSource.advance(200L);
+        assertEquals(id, send(samlCallbackHandler, cache));
+        timeSource.advance(60L);
+        assertNotEquals(id, send(samlCallbackHandler, cache));
+        assertEquals(2, cache.getMissCount());
+    }
+
+    /**
+     * An Assertion with a OneTimeUse Condition is never cached
+     */
+    @Test
+    public void testOneTimeUse() throws Exception {
+        IssuedAssertionCache cache = new IssuedAssertionCache();
+        CachingCallbackHandler samlCallbackHandler = new CachingCallbackHandler("joe");
+        ConditionsBean conditions = new ConditionsBean();
+        conditions.setTokenPeriodMinutes(5);
+        conditions.setOneTimeUse(true);
+        samlCallbackHandler.setConditions(conditions);
+
+        String id = send(samlCallbackHandler, cache);
+        assertNotEquals(id, send(samlCallbackHandler, cache));
+        assertEquals(0, cache.size());
+    }
+
+    /**
+     * Send a message with a signed Assertion, verify it, and return the ID of the Assertion
+     */
+    private String send(CallbackHandler samlCallbackHandler, IssuedAssertionCache cache) throws Exception {
+        RequestData reqData = new RequestData();
+        reqData.setWssConfig(WSSConfig.getNewInstance());
+        reqData.setIssuedAssertionCache(cache);
+
+        java.util.Map<String, Object> config = new java.util.TreeMap<String, Object>();
+        config.put(WSHandlerConstants.SAML_CALLBACK_REF, samlCallbackHandler);
+        reqData.setMsgContext(config);
+
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        CustomHandler handler = new CustomHandler();
+        handler.send(
+            doc,
+            reqData,
+            Collections.singletonList(new HandlerAction(WSConstants.ST_UNSIGNED)),
+            true
+        );
+
+        RequestData requestData = new RequestData();
+        requestData.setSigVerCrypto(crypto);
+        WSHandlerResult results = secEngine.processSecurityHeader(doc, requestData);
+        WSSecurityEngineResult actionResult =
+            results.getActionResults().get(WSConstants.ST_SIGNED).get(0);
+        SamlAssertionWrapper receivedSamlAssertion =
+            (SamlAssertionWrapper) actionResult.get(WSSecurityEngineResult.TAG_SAML_ASSERTION);
+        assertTrue(receivedSamlAssertion.isSigned());
+        return receivedSamlAssertion.getId();
+    }
+
+    /**
+     * A CallbackHandler that issues a signed Bearer Assertion for the given subject, and uses the
+     * subject as the cache key
+     */
+    private static class CachingCallbackHandler implements CallbackHandler {
+        private final SAML2CallbackHandler delegate;
+        private final String subjectName;
+
+        CachingCallbackHandler(String subjectName) throws Exception {
+            this.subjectName = subjectName;
+            delegate = new SAML2CallbackHandler();
+            delegate.setStatement(SAML2CallbackHandler.Statement.AUTHN);
+            delegate.setConfirmationMethod(SAML2Constants.CONF_BEARER);
+            delegate.setIssuer("www.example.com");
+            delegate.setSubjectName(subjectName);
+            delegate.setIssuerCrypto(CryptoFactory.getInstance("crypto.properties"));
+            delegate.setIssuerName("16c73ab6-b892-458f-abf5-2f875f74882e");
+            delegate.setIssuerPassword("security");
+        }
+
+        void setConditions(ConditionsBean conditions) {
+            delegate.setConditions(conditions);
+        }
+
+        public void handle(Callback[] callbacks) throws IOException, UnsupportedCallbackException {
+            delegate.handle(callbacks);
+            SAMLCallback callback = (SAMLCallback) callbacks[0];
+            callback.setSignAssertion(true);
+            callback.setCacheKey(subjectName);
+        }
+    }
+
+    private static class MutableTimeSource implements WSTimeSource {
+        private long time = System.currentTimeMillis();
+
+        void advance(long seconds) {
+            time += seconds * 1000L;
+        }
+
+        public Date now() {
+            return new Date(time);
+        }
+    }
+}
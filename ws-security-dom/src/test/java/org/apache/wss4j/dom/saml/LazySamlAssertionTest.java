@@ -0,0 +1,210 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.dom.saml;
+
+import java.util.Collections;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.apache.wss4j.common.crypto.Crypto;
+import org.apache.wss4j.common.crypto.CryptoFactory;
+import org.apache.wss4j.common.crypto.CryptoType;
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.saml.SAMLCallback;
+import org.apache.wss4j.common.saml.SAMLKeyInfo;
+import org.apache.wss4j.common.saml.SAMLUtil;
+import org.apache.wss4j.common.saml.SamlAssertionWrapper;
+import org.apache.wss4j.common.saml.bean.AttributeBean;
+import org.apache.wss4j.common.saml.bean.AttributeStatementBean;
+import org.apache.wss4j.common.saml.builder.SAML2Constants;
+import org.apache.wss4j.common.util.XMLUtils;
+import org.apache.wss4j.dom.WSConstants;
+import org.apache.wss4j.dom.common.SAML2CallbackHandler;
+import org.apache.wss4j.dom.common.SOAPUtil;
+import org.apache.wss4j.dom.common.SecurityTestUtil;
+import org.apache.wss4j.dom.engine.WSSConfig;
+import org.apache.wss4j.dom.engine.WSSecurityEngine;
+import org.apache.wss4j.dom.engine.WSSecurityEngineResult;
+import org.apache.wss4j.dom.handler.RequestData;
+import org.apache.wss4j.dom.handler.WSHandlerResult;
+import org.apache.wss4j.dom.message.WSSecHeader;
+import org.apache.wss4j.dom.message.WSSecSAMLToken;
+import org.junit.Test;
+import org.opensaml.saml.saml2.core.Assertion;
+import org.opensaml.saml.saml2.core.Statement;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Some tests for deferring the unmarshalling of the statements of a SAML 2.0 Assertion.
+ */
+public class LazySamlAssertionTest extends org.junit.Assert {
+    private WSSecurityEngine secEngine = new WSSecurityEngine();
+    private Crypto crypto = null;
+
+    @org.junit.AfterClass
+    public static void cleanup() throws Exception {
+        SecurityTestUtil.cleanup();
+    }
+
+    public LazySamlAssertionTest() throws Exception {
+        WSSConfig config = WSSConfig.getNewInstance();
+        secEngine.setWssConfig(config);
+
+        crypto = CryptoFactory.getInstance("crypto.properties");
+    }
+
+    /**
+     * The statements of a lazily unmarshalled Assertion are the same as those of a fully
+     * unmarshalled Assertion, in the same order
+     */
+    @Test
+    public void testLazyStatements() throws Exception {
+        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+        dbf.setNamespaceAware(true);
+        Document doc = dbf.newDocumentBuilder().newDocument();
+        Element assertionElement = createAssertion().toDOM(doc);
+        doc.appendChild(assertionElement);
+
+        Assertion full = new SamlAssertionWrapper(assertionElement).getSaml2();
+        SamlAssertionWrapper lazyAssertion = new SamlAssertionWrapper(assertionElement, true);
+        Assertion lazy = lazyAssertion.getSaml2();
+
+        assertEquals(full.getID(), lazy.getID());
+        assertEquals(full.getIssuer().getValue(), lazy.getIssuer().getValue());
+        assertNotNull(lazy.getSubject());
+        assertNotNull(lazy.getConditions());
+        assertNotNull(lazy.getSignature());
+
+        // Only the AttributeStatement is unmarshalled here
+        assertEquals(1, lazy.getAttributeStatements().size());
+        assertEquals(
+            "http://custom-ns/attr",
+            lazy.getAttributeStatements().get(0).getAttributes().get(0).getName()
+        );
+        assertSame(assertionElement, lazy.getDOM());
+
+        assertEquals(1, lazy.getAuthnStatements().size());
+        List<Statement> fullStatements = full.getStatements();
+        List<Statement> lazyStatements = lazy.getStatements();
+        assertEquals(fullStatements.size(), lazyStatements.size());
+        for (int i = 0; i < fullStatements.size(); i++) {
+            assertEquals(
+                fullStatements.get(i).getElementQName(), lazyStatements.get(i).getElementQName()
+            );
+        }
+        assertSame(assertionElement, lazy.getDOM());
+
+        // The signature is still valid
+        SAMLKeyInfo keyInfo = new SAMLKeyInfo();
+        CryptoType cryptoType = new CryptoType(CryptoType.TYPE.ALIAS);
+        cryptoType.setAlias("16c73ab6-b892-458f-abf5-2f875f74882e");
+        keyInfo.setCerts(crypto.getX509Certificates(cryptoType));
+        lazyAssertion.verifySignature(keyInfo);
+    }
+
+    /**
+     * Process a signed Assertion with lazy unmarshalling enabled
+     */
+    @Test
+    public void testProcessLazily() throws Exception {
+        SamlAssertionWrapper samlAssertion = createAssertion();
+
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecSAMLToken wsSign = new WSSecSAMLToken(secHeader);
+        Document signedDoc = wsSign.build(samlAssertion);
+        String message = XMLUtils.prettyDocumentToString(signedDoc);
+
+        RequestData requestData = new RequestData();
+        requestData.setSigVerCrypto(crypto);
+        requestData.setLazySamlUnmarshalling(true);
+        WSHandlerResult results =
+            secEngine.processSecurityHeader(SOAPUtil.toSOAPPart(message), requestData);
+
+        WSSecurityEngineResult actionResult =
+            results.getActionResults().get(WSConstants.ST_SIGNED).get(0);
+        SamlAssertionWrapper receivedSamlAssertion =
+            (SamlAssertionWrapper) actionResult.get(WSSecurityEngineResult.TAG_SAML_ASSERTION);
+        assertNotNull(receivedSamlAssertion.getSignatureKeyInfo());
+        assertEquals(1, receivedSamlAssertion.getSaml2().getAttributeStatements().size());
+        assertEquals(1, receivedSamlAssertion.getSaml2().getAuthnStatements().size());
+    }
+
+    /**
+     * A statement that cannot be unmarshalled is reported as an invalid security token
+     */
+    @Test
+    public void testMalformedStatement() throws Exception {
+        SAML2CallbackHandler callbackHandler = new SAML2CallbackHandler();
+        callbackHandler.setStatement(SAML2CallbackHandler.Statement.AUTHN);
+        callbackHandler.setConfirmationMethod(SAML2Constants.CONF_SENDER_VOUCHES);
+        callbackHandler.setIssuer("www.example.com");
+
+        SAMLCallback samlCallback = new SAMLCallback();
+        SAMLUtil.doSAMLCallback(callbackHandler, samlCallback);
+        SamlAssertionWrapper samlAssertion = new SamlAssertionWrapper(samlCallback);
+
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecSAMLToken wsSign = new WSSecSAMLToken(secHeader);
+        Document unsignedDoc = wsSign.build(samlAssertion);
+        Element authnStatement =
+            XMLUtils.findElement(unsignedDoc.getDocumentElement(), "AuthnStatement", WSConstants.SAML2_NS);
+        authnStatement.setAttributeNS(null, "AuthnInstant", "not-a-date");
+        String message = XMLUtils.prettyDocumentToString(unsignedDoc);
+
+        RequestData requestData = new RequestData();
+        requestData.setLazySamlUnmarshalling(true);
+        try {
+            secEngine.processSecurityHeader(SOAPUtil.toSOAPPart(message), requestData);
+            fail("Failure expected on a malformed statement");
+        } catch (WSSecurityException ex) {
+            assertEquals(WSSecurityException.ErrorCode.INVALID_SECURITY_TOKEN, ex.getErrorCode());
+        }
+    }
+
+    private SamlAssertionWrapper createAssertion() throws Exception {
+        SAML2CallbackHandler callbackHandler = new SAML2CallbackHandler();
+        callbackHandler.setStatement(SAML2CallbackHandler.Statement.AUTHN);
+        callbackHandler.setConfirmationMethod(SAML2Constants.CONF_BEARER);
+        callbackHandler.setIssuer("www.example.com");
+
+        SAMLCallback samlCallback = new SAMLCallback();
+        SAMLUtil.doSAMLCallback(callbackHandler, samlCallback);
+
+        AttributeBean attributeBean = new AttributeBean();
+        attributeBean.setQualifiedName("http://custom-ns/attr");
+        attributeBean.addAttributeValue("attr-value");
+        AttributeStatementBean attributeStatementBean = new AttributeStatementBean();
+        attributeStatementBean.setSamlAttributes(Collections.singletonList(attributeBean));
+        samlCallback.setAttributeStatementData(Collections.singletonList(attributeStatementBean));
+
+        SamlAssertionWrapper samlAssertion = new SamlAssertionWrapper(samlCallback);
+        samlAssertion.signAssertion("16c73ab6-b892-458f-abf5-2f875f74882e", "security", crypto, false);
+        return samlAssertion;
+    }
+
+}
@@ -0,0 +1,188 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.dom.saml;
+
+import org.apache.wss4j.common.crypto.Crypto;
+import org.apache.wss4j.common.crypto.CryptoFactory;
+import org.apache.wss4j.common.crypto.CryptoType;
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.saml.SAMLCallback;
+import org.apache.wss4j.common.saml.SAMLKeyInfo;
+import org.apache.wss4j.common.saml.SAMLUtil;
+import org.apache.wss4j.common.saml.SamlAssertionWrapper;
+import org.apache.wss4j.common.saml.ValidatedAssertionCache;
+import org.apache.wss4j.common.saml.bean.ConditionsBean;
+import org.apache.wss4j.common.saml.builder.SAML2Constants;
+import org.apache.wss4j.common.util.XMLUtils;
+import org.apache.wss4j.dom.WSConstants;
+import org.apache.wss4j.dom.common.SAML2CallbackHandler;
+import org.apache.wss4j.dom.common.SOAPUtil;
+import org.apache.wss4j.dom.common.SecurityTestUtil;
+import org.apache.wss4j.dom.engine.WSSConfig;
+import org.apache.wss4j.dom.engine.WSSecurityEngine;
+import org.apache.wss4j.dom.engine.WSSecurityEngineResult;
+import org.apache.wss4j.dom.handler.RequestData;
+import org.apache.wss4j.dom.handler.WSHandlerResult;
+import org.apache.wss4j.dom.message.WSSecHeader;
+import org.apache.wss4j.dom.message.WSSecSAMLToken;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Some tests for caching signed SAML Assertions that have been successfully validated.
+ */
+public class ValidatedAssertionCacheTest extends org.junit.Assert {
+    private WSSecurityEngine secEngine = new WSSecurityEngine();
+    private Crypto crypto = null;
+
+    @org.junit.AfterClass
+    public static void cleanup() throws Exception {
+        SecurityTestUtil.cleanup();
+    }
+
+    public ValidatedAssertionCacheTest() throws Exception {
+        WSSConfig config = WSSConfig.getNewInstance();
+        secEngine.setWssConfig(config);
+
+        crypto = CryptoFactory.getInstance("crypto.properties");
+    }
+
+    /**
+     * The same signed Bearer Assertion is sent in several messages
+     */
+    @Test
+    public void testCachedAssertion() throws Exception {
+        String message = createMessage(new ConditionsBean());
+
+        ValidatedAssertionCache cache = new ValidatedAssertionCache();
+        for (int i = 0; i < 3; i++) {
+            WSHandlerResult results = verify(SOAPUtil.toSOAPPart(message), cache);
+            WSSecurityEngineResult actionResult =
+                results.getActionResults().get(WSConstants.ST_SIGNED).get(0);
+            SamlAssertionWrapper receivedSamlAssertion =
+                (SamlAssertionWrapper) actionResult.get(WSSecurityEngineResult.TAG_SAML_ASSERTION);
+            assertNotNull(receivedSamlAssertion.getSignatureKeyInfo());
+            assertNotNull(actionResult.get(WSSecurityEngineResult.TAG_DATA_REF_URIS));
+        }
+
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(2, cache.getHitCount());
+    }
+
+    /**
+     * A modified Assertion must not match the cached entry of the original Assertion
+     */
+    @Test
+    public void testModifiedAssertion() throws Exception {
+        String message = createMessage(new ConditionsBean());
+
+        ValidatedAssertionCache cache = new ValidatedAssertionCache();
+        verify(SOAPUtil.toSOAPPart(message), cache);
+
+        Document doc = SOAPUtil.toSOAPPart(message);
+        Element issuer =
+            XMLUtils.findElement(doc.getDocumentElement(), "Issuer", WSConstants.SAML2_NS);
+        issuer.setTextContent("www.example.org");
+        try {
+            verify(doc, cache);
+            fail("Failure expected on a modified Assertion");
+        } catch (WSSecurityException ex) {
+            assertEquals(WSSecurityException.ErrorCode.FAILURE, ex.getErrorCode());
+        }
+        assertEquals(0, cache.getHitCount());
+    }
+
+    /**
+     * A cached validation result only matches the credential the signature was verified with
+     */
+    @Test
+    public void testDifferentCredential() throws Exception {
+        String message = createMessage(new ConditionsBean());
+
+        ValidatedAssertionCache cache = new ValidatedAssertionCache();
+        WSHandlerResult results = verify(SOAPUtil.toSOAPPart(message), cache);
+        SamlAssertionWrapper receivedSamlAssertion =
+            (SamlAssertionWrapper) results.getActionResults().get(WSConstants.ST_SIGNED).get(0)
+                .get(WSSecurityEngineResult.TAG_SAML_ASSERTION);
+        String key = cache.getKey(receivedSamlAssertion);
+        assertNotNull(key);
+
+        assertTrue(cache.contains(key, receivedSamlAssertion.getSignatureKeyInfo()));
+
+        Crypto otherCrypto = CryptoFactory.getInstance("wss40.properties");
+        CryptoType cryptoType = new CryptoType(CryptoType.TYPE.ALIAS);
+        cryptoType.setAlias("wss40");
+        SAMLKeyInfo otherKeyInfo = new SAMLKeyInfo(otherCrypto.getX509Certificates(cryptoType));
+        assertFalse(cache.contains(key, otherKeyInfo));
+        assertFalse(cache.contains(key, null));
+
+        // The cached entry of the original credential is retained
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    /**
+     * An Assertion with a OneTimeUse Condition is never cached
+     */
+    @Test
+    public void testOneTimeUse() throws Exception {
+        ConditionsBean conditions = new ConditionsBean();
+        conditions.setTokenPeriodMinutes(5);
+        conditions.setOneTimeUse(true);
+        String message = createMessage(conditions);
+
+        ValidatedAssertionCache cache = new ValidatedAssertionCache();
+        verify(SOAPUtil.toSOAPPart(message), cache);
+        verify(SOAPUtil.toSOAPPart(message), cache);
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getHitCount());
+    }
+
+    private String createMessage(ConditionsBean conditions) throws Exception {
+        SAML2CallbackHandler callbackHandler = new SAML2CallbackHandler();
+        callbackHandler.setStatement(SAML2CallbackHandler.Statement.AUTHN);
+        callbackHandler.setConfirmationMethod(SAML2Constants.CONF_BEARER);
+        callbackHandler.setIssuer("www.example.com");
+        callbackHandler.setConditions(conditions);
+
+        SAMLCallback samlCallback = new SAMLCallback();
+        SAMLUtil.doSAMLCallback(callbackHandler, samlCallback);
+        SamlAssertionWrapper samlAssertion = new SamlAssertionWrapper(samlCallback);
+        samlAssertion.signAssertion("16c73ab6-b892-458f-abf5-2f875f74882e", "security", crypto, false);
+
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecSAMLToken wsSign = new WSSecSAMLToken(secHeader);
+        return XMLUtils.prettyDocumentToString(wsSign.build(samlAssertion));
+    }
+
+    private WSHandlerResult verify(Document doc, ValidatedAssertionCache cache) throws Exception {
+        RequestData requestData = new RequestData();
+        requestData.setSigVerCrypto(crypto);
+        requestData.setValidatedAssertionCache(cache);
+
+        return secEngine.processSecurityHeader(doc, requestData);
+    }
+
+}
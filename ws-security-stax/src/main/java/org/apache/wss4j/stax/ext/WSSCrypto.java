@@ -46,14 +46,28 @@ class WSSCrypto {
     private CertStore crlCertStore;
     private PasswordEncryptor passwordEncryptor;
 
-    public Crypto getCrypto() throws WSSConfigurationException {
+    /**
+     * @param shared whether a Crypto that is loaded from properties may be taken from the shared
+     *               CryptoRegistry of CryptoFactory
+     */
+    public Crypto getCrypto(boolean shared) throws WSSConfigurationException {
 
         if (keyStore == cachedKeyStore && cachedCrypto != null) {
             return cachedCrypto;
         }
 
         Merlin crypto = null;
-        if (cryptoProperties != null) {
+        if (cryptoProperties != null && shared && isSharable()) {
+            try {
+                // Endpoints configured with the same properties share the loaded keystores
+                crypto = (Merlin)CryptoFactory.getSharedInstance(cryptoProperties,
+                                                                 Loader.getClassLoader(CryptoFactory.class),
+                                                                 passwordEncryptor);
+                keyStore = crypto.getKeyStore();
+            } catch (Exception e) {
+                throw new WSSConfigurationException(WSSConfigurationException.ErrorCode.FAILURE, e, "signatureCryptoFailure");
+            }
+        } else if (cryptoProperties != null) {
             try {
                 Constructor<?> ctor =
                     cryptoClass.getConstructor(Properties.class, ClassLoader.class, PasswordEncryptor.class);
@@ -82,6 +96,23 @@ class WSSCrypto {
         return crypto;
     }
 
+    /**
+     * The shared CryptoRegistry only creates Merlin instances, so a Crypto is only taken from it
+     * if neither a custom crypto class nor a custom crypto provider is configured.
+     */
+    private boolean isSharable() {
+        if (cryptoClass != Merlin.class) {
+            return false;
+        }
+        String cryptoClassName = cryptoProperties.getProperty("org.apache.wss4j.crypto.provider");
+        if (cryptoClassName == null) {
+            cryptoClassName = cryptoProperties.getProperty("org.apache.ws.security.crypto.provider");
+        }
+        return cryptoClassName == null
+            || cryptoClassName.equals("org.apache.wss4j.common.crypto.Merlin")
+            || cryptoClassName.equals("org.apache.ws.security.components.crypto.Merlin");
+    }
+
     public void setCrypto(Crypto crypto) {
         cachedCrypto = crypto;
         if (crypto instanceof Merlin) {
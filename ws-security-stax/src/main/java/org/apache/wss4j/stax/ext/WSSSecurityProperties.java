@@ -43,6 +43,7 @@ import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.crypto.Merlin;
 import org.apache.wss4j.common.crypto.PasswordEncryptor;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.saml.IssuedAssertionCache;
 import org.apache.wss4j.stax.securityToken.WSSecurityTokenConstants;
 import org.apache.wss4j.stax.validate.Validator;
 import org.apache.xml.security.stax.ext.XMLSecurityProperties;
@@ -105,9 +106,11 @@ public class WSSSecurityProperties extends XMLSecurityProperties {
     private boolean useReqSigCertForEncryption = false;
     private String encryptionCompressionAlgorithm;
     private boolean enableRevocation = false;
+    private boolean sharedCrypto = false;
     private ReplayCache timestampReplayCache;
     private ReplayCache nonceReplayCache;
     private ReplayCache samlOneTimeUseReplayCache;
+    private IssuedAssertionCache issuedAssertionCache;
     private boolean validateSamlSubjectConfirmation = true;
     private Collection<Pattern> subjectDNPatterns = new ArrayList<>();
     private Collection<Pattern> issuerDNPatterns = new ArrayList<>();
@@ -159,9 +162,11 @@ public class WSSSecurityProperties extends XMLSecurityProperties {
         this.useReqSigCertForEncryption = wssSecurityProperties.useReqSigCertForEncryption;
         this.encryptionCompressionAlgorithm = wssSecurityProperties.encryptionCompressionAlgorithm;
         this.enableRevocation = wssSecurityProperties.enableRevocation;
+        this.sharedCrypto = wssSecurityProperties.sharedCrypto;
         this.timestampReplayCache = wssSecurityProperties.timestampReplayCache;
         this.nonceReplayCache = wssSecurityProperties.nonceReplayCache;
         this.samlOneTimeUseReplayCache = wssSecurityProperties.samlOneTimeUseReplayCache;
+        this.issuedAssertionCache = wssSecurityProperties.issuedAssertionCache;
         this.allowRSA15KeyTransportAlgorithm = wssSecurityProperties.allowRSA15KeyTransportAlgorithm;
         this.derivedKeyIterations = wssSecurityProperties.derivedKeyIterations;
         this.useDerivedKeyForMAC = wssSecurityProperties.useDerivedKeyForMAC;
@@ -365,7 +370,7 @@ public class WSSSecurityProperties extends XMLSecurityProperties {
             return null;
         }
 
-        return signatureWSSCrypto.getCrypto();
+        return signatureWSSCrypto.getCrypto(sharedCrypto);
     }
 
     public void setSignatureCrypto(Crypto sigCrypto) {
@@ -442,7 +447,7 @@ public class WSSSecurityProperties extends XMLSecurityProperties {
             return null;
         }
         signatureVerificationWSSCrypto.setCrlCertStore(crlCertStore);
-        return signatureVerificationWSSCrypto.getCrypto();
+        return signatureVerificationWSSCrypto.getCrypto(sharedCrypto);
     }
 
     public void setSignatureVerificationCrypto(Crypto sigVerCrypto) {
@@ -536,7 +541,7 @@ public class WSSSecurityProperties extends XMLSecurityProperties {
             return null;
         }
 
-        return decryptionWSSCrypto.getCrypto();
+        return decryptionWSSCrypto.getCrypto(sharedCrypto);
     }
 
     public void setDecryptionCrypto(Crypto decCrypto) {
@@ -631,7 +636,7 @@ public class WSSSecurityProperties extends XMLSecurityProperties {
         }
 
         encryptionWSSCrypto.setCrlCertStore(this.getCrlCertStore());
-        return encryptionWSSCrypto.getCrypto();
+        return encryptionWSSCrypto.getCrypto(sharedCrypto);
     }
 
     public void setEncryptionCrypto(Crypto encCrypto) {
@@ -683,6 +688,20 @@ public class WSSSecurityProperties extends XMLSecurityProperties {
         this.enableRevocation = enableRevocation;
     }
 
+    public boolean isSharedCrypto() {
+        return sharedCrypto;
+    }
+
+    /**
+     * Set whether the Crypto instances that are loaded from properties are taken from the shared
+     * CryptoRegistry of CryptoFactory, so that endpoints configured with the same properties
+     * share the loaded keystores. The default is false. A shared Crypto instance must not be
+     * modified.
+     */
+    public void setSharedCrypto(boolean sharedCrypto) {
+        this.sharedCrypto = sharedCrypto;
+    }
+
     public CertStore getCrlCertStore() {
         return crlCertStore;
     }
@@ -816,6 +835,21 @@ public class WSSSecurityProperties extends XMLSecurityProperties {
         this.samlCallbackHandler = samlCallbackHandler;
     }
 
+    /**
+     * Set the cache of (signed) SAML Assertions that have been issued for outbound messages. It
+     * is not set by default.
+     */
+    public void setIssuedAssertionCache(IssuedAssertionCache issuedAssertionCache) {
+        this.issuedAssertionCache = issuedAssertionCache;
+    }
+
+    /**
+     * Get the cache of (signed) SAML Assertions that have been issued for outbound messages
+     */
+    public IssuedAssertionCache getIssuedAssertionCache() {
+        return issuedAssertionCache;
+    }
+
     public boolean isValidateSamlSubjectConfirmation() {
         return validateSamlSubjectConfirmation;
     }
@@ -36,6 +36,7 @@ import org.apache.wss4j.common.crypto.CryptoType;
 import org.apache.wss4j.common.ext.WSPasswordCallback;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.saml.OpenSAMLUtil;
+import org.apache.wss4j.common.saml.IssuedAssertionCache;
 import org.apache.wss4j.common.saml.SAMLCallback;
 import org.apache.wss4j.common.saml.SAMLKeyInfo;
 import org.apache.wss4j.common.saml.SAMLUtil;
@@ -82,18 +83,29 @@ public class SAMLTokenOutputProcessor extends AbstractOutputProcessor {
         try {
             final SAMLCallback samlCallback = new SAMLCallback();
             SAMLUtil.doSAMLCallback(((WSSSecurityProperties) getSecurityProperties()).getSamlCallbackHandler(), samlCallback);
-            SamlAssertionWrapper samlAssertionWrapper = new SamlAssertionWrapper(samlCallback);
-
-            if (samlCallback.isSignAssertion()) {
-                samlAssertionWrapper.signAssertion(
-                        samlCallback.getIssuerKeyName(),
-                        samlCallback.getIssuerKeyPassword(),
-                        samlCallback.getIssuerCrypto(),
-                        samlCallback.isSendKeyValue(),
-                        samlCallback.getCanonicalizationAlgorithm(),
-                        samlCallback.getSignatureAlgorithm(),
-                        samlCallback.getSignatureDigestAlgorithm()
-                );
+            IssuedAssertionCache issuedAssertionCache =
+                ((WSSSecurityProperties) getSecurityProperties()).getIssuedAssertionCache();
+            SamlAssertionWrapper samlAssertionWrapper = null;
+            if (issuedAssertionCache != null) {
+                samlAssertionWrapper = issuedAssertionCache.get(samlCallback);
+            }
+
+            if (samlAssertionWrapper == null) {
+                samlAssertionWrapper = new SamlAssertionWrapper(samlCallback);
+                if (samlCallback.isSignAssertion()) {
+                    samlAssertionWrapper.signAssertion(
+                            samlCallback.getIssuerKeyName(),
+                            samlCallback.getIssuerKeyPassword(),
+                            samlCallback.getIssuerCrypto(),
+                            samlCallback.isSendKeyValue(),
+                            samlCallback.getCanonicalizationAlgorithm(),
+                            samlCallback.getSignatureAlgorithm(),
+                            samlCallback.getSignatureDigestAlgorithm()
+                    );
+                }
+                if (issuedAssertionCache != null) {
+                    samlAssertionWrapper = issuedAssertionCache.add(samlCallback, samlAssertionWrapper);
+                }
             }
 
             boolean senderVouches = false;
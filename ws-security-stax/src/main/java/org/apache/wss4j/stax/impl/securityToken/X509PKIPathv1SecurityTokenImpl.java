@@ -18,24 +18,17 @@
  */
 package org.apache.wss4j.stax.impl.securityToken;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.security.cert.CertPath;
-import java.security.cert.Certificate;
-import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
-import java.util.Iterator;
-import java.util.List;
 
 import javax.security.auth.callback.CallbackHandler;
 
 import org.apache.wss4j.common.crypto.Crypto;
+import org.apache.wss4j.common.crypto.X509CertificateCache;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.stax.ext.WSInboundSecurityContext;
 import org.apache.wss4j.stax.ext.WSSSecurityProperties;
 import org.apache.wss4j.stax.securityToken.WSSecurityTokenConstants;
 import org.apache.xml.security.exceptions.XMLSecurityException;
-import org.apache.xml.security.stax.impl.util.UnsynchronizedByteArrayInputStream;
 
 public class X509PKIPathv1SecurityTokenImpl extends X509SecurityTokenImpl {
 
@@ -49,18 +42,13 @@ public class X509PKIPathv1SecurityTokenImpl extends X509SecurityTokenImpl {
         super(WSSecurityTokenConstants.X509PkiPathV1Token, wsInboundSecurityContext, crypto,
                 callbackHandler, id, keyIdentifier, securityProperties, true);
 
-        try (InputStream in = new UnsynchronizedByteArrayInputStream(binaryContent)) {
-            CertPath certPath = getCrypto().getCertificateFactory().generateCertPath(in);
-            List<? extends Certificate> l = certPath.getCertificates();
-            X509Certificate[] certs = new X509Certificate[l.size()];
-            Iterator<? extends Certificate> iterator = l.iterator();
-            for (int i = 0; i < l.size(); i++) {
-                certs[i] = (X509Certificate) iterator.next();
-            }
-            if (certs.length > 0) {
+        try {
+            X509Certificate[] certs =
+                X509CertificateCache.getInstance().getCertificates(binaryContent, getCrypto());
+            if (certs != null && certs.length > 0) {
                 setX509Certificates(certs);
             }
-        } catch (CertificateException | IOException e) {
+        } catch (WSSecurityException e) {
             throw new WSSecurityException(WSSecurityException.ErrorCode.INVALID_SECURITY, e, "parseError");
         }
     }
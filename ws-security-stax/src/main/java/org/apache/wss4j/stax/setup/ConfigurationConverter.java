@@ -175,6 +175,10 @@ public final class ConfigurationConverter {
             }
         }
 
+        properties.setSharedCrypto(
+            decodeBooleanConfigValue(ConfigurationConstants.SHARED_CRYPTO, false, config)
+        );
+
         String sigPropRef = getString(ConfigurationConstants.SIG_PROP_REF_ID, config);
         boolean foundSigRef = false;
         if (sigPropRef != null) {
@@ -20,8 +20,11 @@ package org.apache.wss4j.stax.test;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Properties;
 
 import org.apache.wss4j.common.ConfigurationConstants;
+import org.apache.wss4j.common.crypto.Merlin;
+import org.apache.wss4j.common.crypto.PasswordEncryptor;
 import org.apache.wss4j.stax.ext.WSSConstants;
 import org.apache.wss4j.stax.ext.WSSConstants.UsernameTokenPasswordType;
 import org.apache.wss4j.stax.ext.WSSSecurityProperties;
@@ -207,4 +210,39 @@ public class ConfigurationConverterTest extends AbstractTestBase {
         WSSec.validateAndApplyDefaultsToInboundSecurityProperties(properties);
     }
 
+    @Test
+    public void testSharedSignatureCrypto() throws Exception {
+        Map<String, Object> config = new HashMap<String, Object>();
+        config.put(ConfigurationConstants.ACTION, ConfigurationConstants.SIGNATURE);
+        config.put(ConfigurationConstants.SIG_VER_PROP_FILE, "receiver-crypto.properties");
+
+        // The Crypto is not shared by default
+        WSSSecurityProperties properties = ConfigurationConverter.convert(config);
+        Assert.assertNotSame(properties.getSignatureVerificationCrypto(),
+                             ConfigurationConverter.convert(config).getSignatureVerificationCrypto());
+
+        // The Crypto is only loaded when it is first used, and is then shared
+        config.put(ConfigurationConstants.SHARED_CRYPTO, "true");
+        properties = ConfigurationConverter.convert(config);
+        WSSSecurityProperties otherProperties = ConfigurationConverter.convert(config);
+        Assert.assertNotNull(properties.getSignatureVerificationCrypto());
+        Assert.assertSame(properties.getSignatureVerificationCrypto(),
+                          otherProperties.getSignatureVerificationCrypto());
+
+        // A custom crypto class is honoured
+        properties = ConfigurationConverter.convert(config);
+        properties.setSignatureVerificationCryptoClass(CustomMerlin.class);
+        Assert.assertTrue(properties.getSignatureVerificationCrypto() instanceof CustomMerlin);
+    }
+
+    public static class CustomMerlin extends Merlin {
+        public CustomMerlin() {
+        }
+
+        public CustomMerlin(Properties properties, ClassLoader loader, PasswordEncryptor passwordEncryptor)
+            throws Exception {
+            super(properties, loader, passwordEncryptor);
+        }
+    }
+
 }